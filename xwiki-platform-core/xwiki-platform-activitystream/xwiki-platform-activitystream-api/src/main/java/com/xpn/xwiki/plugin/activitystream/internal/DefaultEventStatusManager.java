@@ -21,18 +21,24 @@
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.hibernate.Session;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.eventstream.Event;
 import org.xwiki.eventstream.EventStatus;
 import org.xwiki.eventstream.EventStatusManager;
+import org.xwiki.eventstream.events.EventStatusAddOrUpdatedEvent;
 import org.xwiki.eventstream.internal.DefaultEventStatus;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryManager;
 import org.xwiki.text.StringUtils;
@@ -55,6 +61,8 @@
 @Singleton
 public class DefaultEventStatusManager implements EventStatusManager
 {
+    private static final String SELECT_STATUS = "select eventStatus from ActivityEventStatusImpl eventStatus ";
+
     @Inject
     private QueryManager queryManager;
 
@@ -67,6 +75,9 @@ public class DefaultEventStatusManager implements EventStatusManager
     @Inject
     private Provider<XWikiContext> contextProvider;
 
+    @Inject
+    private ObservationManager observationManager;
+
     @Override
     public List<EventStatus> getEventStatus(List<Event> events, List<String> entityIds) throws Exception
     {
@@ -78,17 +89,11 @@ public List<EventStatus> getEventStatus(List<Event> events, List<String> entityI
         }
 
         // Get the ActivityEventStatus from the database and convert them
-        Query query = queryManager.createQuery("select eventStatus from ActivityEventStatusImpl eventStatus "
+        Query query = queryManager.createQuery(SELECT_STATUS
                 + "where eventStatus.activityEvent.id in :eventIds and eventStatus.entityId in :entityIds", Query.HQL);
         query.bindValue("eventIds", getEventIds(events));
         query.bindValue("entityIds", entityIds);
-        for (ActivityEventStatus activityEventStatus : query.<ActivityEventStatus>execute()) {
-            results.add(new DefaultEventStatus(
-                    eventConverter.convertActivityToEvent(activityEventStatus.getActivityEvent()),
-                    activityEventStatus.getEntityId(),
-                    activityEventStatus.isRead())
-            );
-        }
+        results.addAll(convertActivityStatuses(query.<ActivityEventStatus>execute()));
 
         // For status that are not present in the database, we create objects with read = false
         for (Event event : events) {
@@ -106,6 +111,50 @@ public List<EventStatus> getEventStatus(List<Event> events, List<String> entityI
         return results;
     }
 
+    @Override
+    public List<EventStatus> getEventStatus(String entityId, boolean onlyUnread, Date untilDate, Date fromDate,
+        int offset, int limit) throws Exception
+    {
+        StringBuilder statement = new StringBuilder(SELECT_STATUS);
+        statement.append("where eventStatus.entityId = :entityId");
+        if (onlyUnread) {
+            statement.append(" and eventStatus.read = false");
+        }
+        if (untilDate != null) {
+            statement.append(" and eventStatus.activityEvent.date <= :untilDate");
+        }
+        if (fromDate != null) {
+            statement.append(" and eventStatus.activityEvent.date >= :fromDate");
+        }
+        statement.append(" order by eventStatus.activityEvent.date desc");
+
+        Query query = queryManager.createQuery(statement.toString(), Query.HQL);
+        query.bindValue("entityId", entityId);
+        if (untilDate != null) {
+            query.bindValue("untilDate", untilDate);
+        }
+        if (fromDate != null) {
+            query.bindValue("fromDate", fromDate);
+        }
+        query.setOffset(offset);
+        query.setLimit(limit);
+
+        return convertActivityStatuses(query.<ActivityEventStatus>execute());
+    }
+
+    private List<EventStatus> convertActivityStatuses(List<ActivityEventStatus> activityEventStatuses)
+    {
+        List<EventStatus> results = new ArrayList<>(activityEventStatuses.size());
+        for (ActivityEventStatus activityEventStatus : activityEventStatuses) {
+            results.add(new DefaultEventStatus(
+                    eventConverter.convertActivityToEvent(activityEventStatus.getActivityEvent()),
+                    activityEventStatus.getEntityId(),
+                    activityEventStatus.isRead())
+            );
+        }
+        return results;
+    }
+
     /**
      * @param events a list of events
      * @return the list of the events' id
@@ -153,6 +202,89 @@ public void saveEventStatus(EventStatus eventStatus) throws Exception
                 context.setWikiId(oriDatabase);
             }
         }
+
+        this.observationManager.notify(new EventStatusAddOrUpdatedEvent(), eventStatus);
+    }
+
+    @Override
+    public void createEventStatuses(List<EventStatus> eventStatuses) throws Exception
+    {
+        if (eventStatuses.isEmpty()) {
+            return;
+        }
+
+        List<ActivityEventStatus> statuses = new ArrayList<>(eventStatuses.size());
+        for (EventStatus eventStatus : eventStatuses) {
+            statuses.add(eventConverter.convertEventStatusToActivityStatus(eventStatus));
+        }
+
+        boolean[] created = new boolean[statuses.size()];
+
+        if (configuration.useLocalStore()) {
+            createEventStatusesInStore(statuses, created);
+        }
+
+        if (configuration.useMainStore()) {
+            XWikiContext context = contextProvider.get();
+            // store the statuses in the main database
+            String oriDatabase = context.getWikiId();
+            context.setWikiId(context.getMainXWiki());
+            try {
+                createEventStatusesInStore(statuses, created);
+            } finally {
+                context.setWikiId(oriDatabase);
+            }
+        }
+
+        for (int i = 0; i < created.length; i++) {
+            if (created[i]) {
+                this.observationManager.notify(new EventStatusAddOrUpdatedEvent(), eventStatuses.get(i));
+            }
+        }
+    }
+
+    private void createEventStatusesInStore(List<ActivityEventStatus> statuses, boolean[] created)
+        throws ActivityStreamException
+    {
+        Set<String> eventIds = new HashSet<>();
+        Set<String> entityIds = new HashSet<>();
+        for (ActivityEventStatus status : statuses) {
+            eventIds.add(status.getActivityEvent().getEventId());
+            entityIds.add(status.getEntityId());
+        }
+
+        XWikiContext context = contextProvider.get();
+        XWikiHibernateStore hibernateStore = context.getWiki().getHibernateStore();
+        try {
+            hibernateStore.beginTransaction(context);
+            Session session = hibernateStore.getSession(context);
+
+            // Find the statuses which already exist, with a single query
+            org.hibernate.Query query = session.createQuery("select eventStatus.activityEvent.id, "
+                + "eventStatus.entityId from ActivityEventStatusImpl eventStatus "
+                + "where eventStatus.activityEvent.id in (:eventIds) and eventStatus.entityId in (:entityIds)");
+            query.setParameterList("eventIds", eventIds);
+            query.setParameterList("entityIds", entityIds);
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = query.list();
+            Set<Pair<Object, Object>> existing = new HashSet<>();
+            for (Object[] row : rows) {
+                existing.add(Pair.of(row[0], row[1]));
+            }
+
+            for (int i = 0; i < statuses.size(); i++) {
+                ActivityEventStatus status = statuses.get(i);
+                if (existing.add(Pair.of(status.getActivityEvent().getEventId(), status.getEntityId()))) {
+                    session.save(status);
+                    created[i] = true;
+                }
+            }
+
+            hibernateStore.endTransaction(context, true);
+        } catch (XWikiException e) {
+            hibernateStore.endTransaction(context, false);
+            throw new ActivityStreamException(e);
+        }
     }
 
     private void saveEventStatusInStore(ActivityEventStatus eventStatus) throws ActivityStreamException
@@ -162,7 +294,8 @@ private void saveEventStatusInStore(ActivityEventStatus eventStatus) throws Acti
         try {
             hibernateStore.beginTransaction(context);
             Session session = hibernateStore.getSession(context);
-            session.save(eventStatus);
+            // The status might already exist (e.g. unread status created when the event was stored)
+            session.saveOrUpdate(eventStatus);
             hibernateStore.endTransaction(context, true);
         } catch (XWikiException e) {
             hibernateStore.endTransaction(context, false);
@@ -19,6 +19,8 @@
  */
 package org.xwiki.eventstream;
 
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
@@ -51,4 +53,40 @@
      * @throws Exception if an error occurs
      */
     void saveEventStatus(EventStatus eventStatus) throws Exception;
+
+    /**
+     * Save in the storage the given statuses, except the ones which already exist: the stored statuses are left
+     * unchanged (e.g. an event already marked as read by the user stays read). Implementations should save them in a
+     * single transaction, the default one saves the missing statuses one by one with
+     * {@link #saveEventStatus(EventStatus)}.
+     *
+     * @param eventStatuses the statuses to create
+     * @throws Exception if an error occurs
+     * @since 9.10RC1
+     */
+    default void createEventStatuses(List<EventStatus> eventStatuses) throws Exception
+    {
+        for (EventStatus eventStatus : eventStatuses) {
+            if (getEventStatus(Collections.singletonList(eventStatus.getEvent()),
+                Collections.singletonList(eventStatus.getEntityId())).isEmpty()) {
+                saveEventStatus(eventStatus);
+            }
+        }
+    }
+
+    /**
+     * Get the statuses stored for the given entity, from the most recent event to the oldest one.
+     *
+     * @param entityId the id of the entity (user or group)
+     * @param onlyUnread if only the statuses of unread events should be returned
+     * @param untilDate do not return statuses of events happened after this date (can be null)
+     * @param fromDate do not return statuses of events happened before this date (can be null)
+     * @param offset the index of the first status to return
+     * @param limit the maximum number of statuses to return
+     * @return the statuses of the given entity
+     * @throws Exception if an error occurs
+     * @since 9.10RC1
+     */
+    List<EventStatus> getEventStatus(String entityId, boolean onlyUnread, Date untilDate, Date fromDate, int offset,
+        int limit) throws Exception;
 }
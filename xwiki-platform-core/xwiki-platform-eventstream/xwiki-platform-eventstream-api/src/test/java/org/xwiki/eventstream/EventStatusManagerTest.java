@@ -0,0 +1,64 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.eventstream;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.xwiki.eventstream.internal.DefaultEvent;
+import org.xwiki.eventstream.internal.DefaultEventStatus;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the default methods of {@link EventStatusManager}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class EventStatusManagerTest
+{
+    @Test
+    public void createEventStatusesKeepsTheExistingOnes() throws Exception
+    {
+        EventStatusManager manager = mock(EventStatusManager.class, Mockito.CALLS_REAL_METHODS);
+
+        Event event = new DefaultEvent();
+        EventStatus existingStatus = new DefaultEventStatus(event, "xwiki:XWiki.UserA", true);
+        EventStatus newStatus = new DefaultEventStatus(event, "xwiki:XWiki.UserB", false);
+
+        doReturn(Collections.emptyList()).when(manager).getEventStatus(any(), any());
+        doReturn(Arrays.asList(existingStatus)).when(manager).getEventStatus(Arrays.asList(event),
+            Arrays.asList("xwiki:XWiki.UserA"));
+        doNothing().when(manager).saveEventStatus(any());
+
+        manager.createEventStatuses(Arrays.asList(existingStatus, newStatus));
+
+        verify(manager).saveEventStatus(newStatus);
+        verify(manager, never()).saveEventStatus(existingStatus);
+    }
+}
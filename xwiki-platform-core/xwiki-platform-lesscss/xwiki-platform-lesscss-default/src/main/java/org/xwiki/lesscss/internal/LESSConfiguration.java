@@ -56,4 +56,33 @@ public boolean isGenerateInlineSourceMaps()
     {
         return configurationSource.getProperty(CONFIGURATION_PREFIX + "generateInlineSourceMaps", false);
     }
+
+    /**
+     * @return whether the compiled LESS resources should also be stored in the permanent directory, so that they don't
+     * have to be compiled again after a restart (or by the other nodes of a cluster sharing that directory)
+     * @since 9.10RC1
+     */
+    public boolean isPersistentCacheEnabled()
+    {
+        return configurationSource.getProperty(CONFIGURATION_PREFIX + "persistentCache.enabled", false);
+    }
+
+    /**
+     * @return the maximum number of compiled LESS resources kept in the persistent cache
+     * @since 9.10RC1
+     */
+    public int getPersistentCacheMaximumEntries()
+    {
+        return configurationSource.getProperty(CONFIGURATION_PREFIX + "persistentCache.maximumEntries", 1000);
+    }
+
+    /**
+     * @return whether the main style of all the skins should be compiled with all the color themes in background when
+     * the wiki is started, so that the persistent cache is ready before the first visitors come
+     * @since 9.10RC1
+     */
+    public boolean isPrecompilationEnabled()
+    {
+        return configurationSource.getProperty(CONFIGURATION_PREFIX + "persistentCache.precompile", false);
+    }
 }
@@ -0,0 +1,268 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.lesscss.internal.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+import org.xwiki.lesscss.internal.LESSConfiguration;
+
+/**
+ * Store the results of the LESS compilations in the permanent directory, so that they survive restarts and can be
+ * shared by the nodes of a cluster using the same permanent directory.
+ * <p>
+ * A result is identified by the hash of the compiled LESS code (after the Velocity execution), of the skin and of the
+ * compilation options. Since the LESS code can import some skin templates, the hashes of these templates are stored
+ * with the result and must still match the current templates for the result to be reused. Thanks to this, a stored
+ * result never needs to be invalidated: it's just not found anymore when one of its inputs change, and it's evicted
+ * when the maximum number of entries is reached.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = PersistentLESSCache.class)
+@Singleton
+public class PersistentLESSCache implements Initializable
+{
+    /**
+     * The subdirectory in the permanent directory where the compiled LESS resources are stored.
+     */
+    public static final String ROOT_DIRECTORY = "cache/lesscss";
+
+    private static final String FILE_EXTENSION = ".properties";
+
+    private static final String CSS_PROPERTY = "css";
+
+    private static final String IMPORT_PROPERTY_PREFIX = "import.";
+
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * A result stored in the persistent cache.
+     *
+     * @version $Id$
+     */
+    public static class Entry
+    {
+        private final String css;
+
+        private final Map<String, String> importHashes;
+
+        /**
+         * @param css the result of the compilation
+         * @param importHashes the hashes of the templates imported by the compiled LESS code, by template name
+         */
+        public Entry(String css, Map<String, String> importHashes)
+        {
+            this.css = css;
+            this.importHashes = importHashes;
+        }
+
+        /**
+         * @return the result of the compilation
+         */
+        public String getCSS()
+        {
+            return this.css;
+        }
+
+        /**
+         * @return the hashes of the templates imported by the compiled LESS code, by template name
+         */
+        public Map<String, String> getImportHashes()
+        {
+            return this.importHashes;
+        }
+    }
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private LESSConfiguration lessConfiguration;
+
+    @Inject
+    private Logger logger;
+
+    private File rootDirectory;
+
+    private int maximumEntries;
+
+    /**
+     * The keys of the stored results, from the least to the most recently used. The results themselves stay on the
+     * disk: once read, they are kept in memory by the {@link LESSResourcesCache}.
+     */
+    private final Map<String, Boolean> keys = new LinkedHashMap<>(16, 0.75F, true);
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        if (!this.lessConfiguration.isPersistentCacheEnabled()) {
+            return;
+        }
+
+        this.rootDirectory = new File(this.environment.getPermanentDirectory(), ROOT_DIRECTORY);
+        this.maximumEntries = this.lessConfiguration.getPersistentCacheMaximumEntries();
+
+        // Warm up the list of stored results, the least recently stored first
+        File[] files = this.rootDirectory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                this.keys.put(StringUtils.removeEnd(file.getName(), FILE_EXTENSION), Boolean.TRUE);
+            }
+            evict();
+        }
+    }
+
+    /**
+     * @return true if the persistent cache is enabled
+     */
+    public boolean isEnabled()
+    {
+        return this.rootDirectory != null;
+    }
+
+    /**
+     * @param lessCode the LESS code to compile, after the Velocity execution
+     * @param skin the skin holding the imported templates
+     * @param inlineSourceMap whether the result contains inline sourcemaps
+     * @return the key identifying the result of the compilation in the persistent cache
+     */
+    public String getKey(String lessCode, String skin, boolean inlineSourceMap)
+    {
+        return DigestUtils.sha256Hex(
+            (skin + SEPARATOR + inlineSourceMap + SEPARATOR + lessCode).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param key the key identifying the result of the compilation
+     * @return the stored result, or null if it's not in the cache
+     */
+    public Entry get(String key)
+    {
+        File file = getFile(key);
+        // The file can also have been stored by another node sharing the same directory
+        if (!file.exists()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            this.logger.warn("Failed to read the compiled LESS resource [{}]: {}", file, e.getMessage());
+            return null;
+        }
+
+        String css = properties.getProperty(CSS_PROPERTY);
+        if (css == null) {
+            return null;
+        }
+        Map<String, String> importHashes = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(IMPORT_PROPERTY_PREFIX)) {
+                importHashes.put(name.substring(IMPORT_PROPERTY_PREFIX.length()), properties.getProperty(name));
+            }
+        }
+
+        synchronized (this.keys) {
+            this.keys.put(key, Boolean.TRUE);
+        }
+
+        return new Entry(css, Collections.unmodifiableMap(importHashes));
+    }
+
+    /**
+     * @param key the key identifying the result of the compilation
+     * @param css the result of the compilation
+     * @param importHashes the hashes of the templates imported by the compiled LESS code, by template name
+     */
+    public void set(String key, String css, Map<String, String> importHashes)
+    {
+        Properties properties = new Properties();
+        properties.setProperty(CSS_PROPERTY, css);
+        for (Map.Entry<String, String> importHash : importHashes.entrySet()) {
+            properties.setProperty(IMPORT_PROPERTY_PREFIX + importHash.getKey(), importHash.getValue());
+        }
+
+        File file = getFile(key);
+        try {
+            Files.createDirectories(this.rootDirectory.toPath());
+
+            // Write a temporary file first so that the other threads and nodes never read a partial result
+            File temporaryFile = File.createTempFile(key, null, this.rootDirectory);
+            try (Writer writer = Files.newBufferedWriter(temporaryFile.toPath(), StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+            try {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to store the compiled LESS resource [{}]: {}", file, e.getMessage());
+            return;
+        }
+
+        synchronized (this.keys) {
+            this.keys.put(key, Boolean.TRUE);
+            evict();
+        }
+    }
+
+    private void evict()
+    {
+        Iterator<String> iterator = this.keys.keySet().iterator();
+        while (this.keys.size() > this.maximumEntries && iterator.hasNext()) {
+            getFile(iterator.next()).delete();
+            iterator.remove();
+        }
+    }
+
+    private File getFile(String key)
+    {
+        return new File(this.rootDirectory, key + FILE_EXTENSION);
+    }
+}
@@ -20,6 +20,8 @@
 package org.xwiki.lesscss.internal.compiler;
 
 import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Semaphore;
 
 import javax.inject.Inject;
@@ -32,6 +34,7 @@
 import org.xwiki.lesscss.compiler.LESSCompilerException;
 import org.xwiki.lesscss.internal.LESSConfiguration;
 import org.xwiki.lesscss.internal.cache.CachedCompilerInterface;
+import org.xwiki.lesscss.internal.cache.PersistentLESSCache;
 import org.xwiki.lesscss.internal.compiler.less4j.Less4jCompiler;
 import org.xwiki.lesscss.internal.resources.LESSSkinFileResourceReference;
 import org.xwiki.lesscss.resources.LESSResourceReference;
@@ -67,6 +70,9 @@ public class CachedLESSCompiler implements CachedCompilerInterface<String>, Init
     @Inject
     private LESSConfiguration lessConfiguration;
 
+    @Inject
+    private PersistentLESSCache persistentCache;
+
     private Semaphore semaphore;
 
     @Override
@@ -105,6 +111,9 @@ public String compute(LESSResourceReference lessResourceReference, boolean inclu
 
             // Compile the LESS code
             if (useLESS) {
+                if (persistentCache.isEnabled()) {
+                    return compileWithPersistentCache(lessCode, skin);
+                }
                 return less4JCompiler.compile(lessCode, skin, lessConfiguration.isGenerateInlineSourceMaps());
             }
 
@@ -118,6 +127,35 @@ public String compute(LESSResourceReference lessResourceReference, boolean inclu
         }
     }
 
+    private String compileWithPersistentCache(String lessCode, String skin) throws Less4jException
+    {
+        boolean inlineSourceMap = lessConfiguration.isGenerateInlineSourceMaps();
+        String key = persistentCache.getKey(lessCode, skin, inlineSourceMap);
+
+        // The result of a previous compilation can be reused if the imported templates have not changed since then
+        PersistentLESSCache.Entry entry = persistentCache.get(key);
+        if (entry != null && isUpToDate(entry, skin)) {
+            return entry.getCSS();
+        }
+
+        Map<String, String> importHashes = new HashMap<>();
+        String css = less4JCompiler.compile(lessCode, skin, inlineSourceMap, importHashes);
+        persistentCache.set(key, css, importHashes);
+
+        return css;
+    }
+
+    private boolean isUpToDate(PersistentLESSCache.Entry entry, String skin)
+    {
+        for (Map.Entry<String, String> importHash : entry.getImportHashes().entrySet()) {
+            if (!importHash.getValue().equals(less4JCompiler.getImportHash(importHash.getKey(), skin))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     private String executeVelocity(String source, String skin)
     {
         // Get the XWiki object
@@ -0,0 +1,155 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.lesscss.internal.compiler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.lesscss.compiler.LESSCompiler;
+import org.xwiki.lesscss.compiler.LESSCompilerException;
+import org.xwiki.lesscss.resources.LESSResourceReference;
+import org.xwiki.lesscss.resources.LESSResourceReferenceFactory;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xpn.xwiki.web.XWikiServletRequest;
+import com.xpn.xwiki.web.XWikiServletRequestStub;
+
+/**
+ * Compile the main style of all the skins with all the color themes of the current wiki, and without any color theme
+ * (i.e. with the color theme configured for the wiki), so that the results are stored in the caches before the first
+ * visitors ask for them.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = LESSPrecompiler.class)
+@Singleton
+public class LESSPrecompiler
+{
+    private static final String SKINS_QUERY =
+        "select distinct doc.fullName from Document doc, doc.object(XWiki.XWikiSkins) as skin";
+
+    private static final String COLOR_THEMES_QUERY =
+        "select distinct doc.fullName from Document doc, doc.object(ColorThemes.ColorThemeClass) as colorTheme";
+
+    private static final String FLAMINGO_THEMES_QUERY =
+        "select distinct doc.fullName from Document doc, doc.object(FlamingoThemesCode.ThemeClass) as theme";
+
+    private static final String COLOR_THEME_FIELD = "colorTheme";
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private LESSCompiler lessCompiler;
+
+    @Inject
+    private LESSResourceReferenceFactory lessResourceReferenceFactory;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Compile the main style of all the skins with all the color themes of the current wiki, and without any color
+     * theme.
+     *
+     * @throws QueryException if the skins or the color themes cannot be found
+     */
+    public void precompile() throws QueryException
+    {
+        XWikiContext xcontext = xcontextProvider.get();
+
+        Set<String> skins = new LinkedHashSet<>();
+        skins.add(xcontext.getWiki().getSkin(xcontext));
+        skins.addAll(search(SKINS_QUERY));
+
+        List<String> colorThemes = new ArrayList<>();
+        // No color theme in the request, like most visitors: the color theme configured for the wiki is used
+        colorThemes.add(null);
+        colorThemes.addAll(search(COLOR_THEMES_QUERY));
+        colorThemes.addAll(search(FLAMINGO_THEMES_QUERY));
+
+        LESSResourceReference mainSkinStyle =
+            lessResourceReferenceFactory.createReferenceForSkinFile(CachedLESSCompiler.MAIN_SKIN_STYLE_FILENAME);
+
+        XWikiRequest originalRequest = xcontext.getRequest();
+        try {
+            for (String colorTheme : colorThemes) {
+                // The color theme is taken from the request, as if a visitor had asked for it
+                xcontext.setRequest(createRequest(originalRequest, colorTheme));
+                for (String skin : skins) {
+                    precompile(mainSkinStyle, skin, colorTheme);
+                }
+            }
+        } finally {
+            xcontext.setRequest(originalRequest);
+        }
+    }
+
+    private void precompile(LESSResourceReference lessResourceReference, String skin, String colorTheme)
+    {
+        this.logger.debug("Precompiling [{}] for the skin [{}] and the color theme [{}].", lessResourceReference,
+            skin, colorTheme);
+
+        try {
+            lessCompiler.compile(lessResourceReference, false, true, skin, false);
+        } catch (LESSCompilerException e) {
+            this.logger.warn("Failed to precompile [{}] for the skin [{}] and the color theme [{}]: {}",
+                lessResourceReference, skin, colorTheme, e.getMessage());
+        }
+    }
+
+    private XWikiRequest createRequest(XWikiRequest originalRequest, String colorTheme)
+    {
+        XWikiServletRequestStub request = new XWikiServletRequestStub();
+        if (originalRequest != null) {
+            // Keep the same server so that the generated URLs are the same as for the other requests
+            request.setScheme(originalRequest.getScheme());
+            request.setServerName(originalRequest.getServerName());
+            request.setContextPath(originalRequest.getContextPath());
+            request.setrequestURL(originalRequest.getRequestURL());
+        }
+        if (colorTheme != null) {
+            request.put(COLOR_THEME_FIELD, colorTheme);
+        }
+
+        return new XWikiServletRequest(request);
+    }
+
+    private List<String> search(String statement) throws QueryException
+    {
+        return queryManager.createQuery(statement, Query.XWQL).execute();
+    }
+}
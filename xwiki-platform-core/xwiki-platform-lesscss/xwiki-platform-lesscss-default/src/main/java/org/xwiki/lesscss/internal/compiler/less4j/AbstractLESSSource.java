@@ -19,6 +19,8 @@
  */
 package org.xwiki.lesscss.internal.compiler.less4j;
 
+import java.util.Map;
+
 import org.xwiki.skin.Resource;
 import org.xwiki.skin.Skin;
 import org.xwiki.template.TemplateManager;
@@ -37,6 +39,11 @@ public abstract class AbstractLESSSource extends LessSource
 
     protected Skin skin;
     
+    /**
+     * The hashes of the content of the imported templates, indexed by template name (can be null).
+     */
+    protected Map<String, String> importHashes;
+
     private String folder;
 
     /**
@@ -46,10 +53,25 @@ public abstract class AbstractLESSSource extends LessSource
      * @param folder the folder in which the template is located
      */
     public AbstractLESSSource(TemplateManager templateManager, Skin skin, String folder)
+    {
+        this(templateManager, skin, folder, null);
+    }
+
+    /**
+     * Constructor recording the hashes of the content of the imported templates.
+     * @param templateManager the template manager component
+     * @param skin the skin holding the templates
+     * @param folder the folder in which the template is located
+     * @param importHashes the map in which the hashes of the imported templates are recorded (can be null)
+     * @since 9.10RC1
+     */
+    public AbstractLESSSource(TemplateManager templateManager, Skin skin, String folder,
+        Map<String, String> importHashes)
     {
         this.templateManager = templateManager;
         this.skin = skin;
         this.folder = folder;
+        this.importHashes = importHashes;
     }
     
     @Override
@@ -58,7 +80,7 @@ public LessSource relativeSource(String filename) throws FileNotFound
         String template = folder + "/" + filename;
         Resource resource = skin.getResource(template);
         if (resource != null) {
-            return new TemplateLESSSource(templateManager, skin, template);
+            return new TemplateLESSSource(templateManager, skin, template, importHashes);
         }
 
         // The file has not been found
@@ -19,6 +19,8 @@
  */
 package org.xwiki.lesscss.internal.compiler.less4j;
 
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -56,6 +58,24 @@
      * @throws Less4jException if problems occur
      */
     public String compile(String lessCode, String skin, boolean inlineSourceMap) throws Less4jException
+    {
+        return compile(lessCode, skin, inlineSourceMap, null);
+    }
+
+    /**
+     * Compile the LESS code and get the included files from the skin templates, recording the hashes of the content
+     * of these included files so that the result can be reused as long as they don't change.
+     * @param lessCode code to compile
+     * @param skin skin holding the templates
+     * @param inlineSourceMap whether to create inline sourcemaps in the generated css
+     * @param importHashes the map in which the hashes of the included templates are recorded, indexed by template
+     * name (can be null)
+     * @return the results of the LESS compilation
+     * @throws Less4jException if problems occur
+     * @since 9.10RC1
+     */
+    public String compile(String lessCode, String skin, boolean inlineSourceMap, Map<String, String> importHashes)
+        throws Less4jException
     {
         LessCompiler lessCompiler = new DefaultLessCompiler();
         LessCompiler.Configuration options = new LessCompiler.Configuration();
@@ -63,8 +83,24 @@ public String compile(String lessCode, String skin, boolean inlineSourceMap) thr
         options.getSourceMapConfiguration().setInline(inlineSourceMap);
         options.getSourceMapConfiguration().setIncludeSourcesContent(true);
         LessSource lessSource = 
-            new CustomContentLESSSource(lessCode, templateManager, skinManager.getSkin(skin));
+            new CustomContentLESSSource(lessCode, templateManager, skinManager.getSkin(skin), importHashes);
         LessCompiler.CompilationResult lessResult = lessCompiler.compile(lessSource, options);
         return lessResult.getCss();
     }
+
+    /**
+     * @param templateName the name of a template included by some LESS code
+     * @param skin skin holding the templates
+     * @return the hash of the current content of the template, or null if it cannot be read
+     * @since 9.10RC1
+     */
+    public String getImportHash(String templateName, String skin)
+    {
+        try {
+            return TemplateLESSSource.hash(
+                new TemplateLESSSource(templateManager, skinManager.getSkin(skin), templateName).getContent());
+        } catch (LessSource.FileNotFound | LessSource.CannotReadFile e) {
+            return null;
+        }
+    }
 }
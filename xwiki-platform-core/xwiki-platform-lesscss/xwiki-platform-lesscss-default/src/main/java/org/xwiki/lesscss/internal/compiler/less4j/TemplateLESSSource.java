@@ -19,6 +19,10 @@
  */
 package org.xwiki.lesscss.internal.compiler.less4j;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.xwiki.lesscss.internal.compiler.CachedLESSCompiler;
 import org.xwiki.skin.Skin;
@@ -46,7 +50,21 @@ public class TemplateLESSSource extends AbstractLESSSource
      */
     public TemplateLESSSource(TemplateManager templateManager, Skin skin, String templateName)
     {
-        super(templateManager, skin, getParentFolder(templateName));
+        this(templateManager, skin, templateName, null);
+    }
+
+    /**
+     * Constructor recording the hash of the content of the template, and of the templates it imports.
+     * @param templateManager the template manager component
+     * @param skin the skin holding the template
+     * @param templateName the name of the template
+     * @param importHashes the map in which the hashes of the imported templates are recorded (can be null)
+     * @since 9.10RC1
+     */
+    public TemplateLESSSource(TemplateManager templateManager, Skin skin, String templateName,
+        Map<String, String> importHashes)
+    {
+        super(templateManager, skin, getParentFolder(templateName), importHashes);
         this.templateName = templateName;
     }
 
@@ -60,8 +78,27 @@ private static String getParentFolder(String templateName)
         return StringUtils.substringBeforeLast(templateName, FILE_SEPARATOR);
     }
 
+    /**
+     * @param content the content of a template
+     * @return the hash of the content, as recorded for the imported templates
+     * @since 9.10RC1
+     */
+    public static String hash(String content)
+    {
+        return DigestUtils.sha256Hex(content.getBytes(StandardCharsets.UTF_8));
+    }
+
     @Override
     public String getContent() throws FileNotFound, CannotReadFile
+    {
+        String content = readContent();
+        if (importHashes != null) {
+            importHashes.put(templateName, hash(content));
+        }
+        return content;
+    }
+
+    private String readContent() throws CannotReadFile
     {
         try {
             // We execute velocity on the main skin file only (which is included by SSX objects using LESS).
@@ -0,0 +1,106 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.lesscss.internal.listeners;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.bridge.event.ApplicationReadyEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.lesscss.internal.LESSConfiguration;
+import org.xwiki.lesscss.internal.compiler.LESSPrecompiler;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.query.QueryException;
+
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+
+/**
+ * Start the precompilation of the main style of all the skins with all the color themes in background when XWiki is
+ * ready, if it's enabled.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component
+@Named("lessPrecompilation")
+@Singleton
+public class LESSPrecompilationListener implements EventListener
+{
+    @Inject
+    private LESSConfiguration lessConfiguration;
+
+    @Inject
+    private LESSPrecompiler lessPrecompiler;
+
+    @Inject
+    private Logger logger;
+
+    @Override
+    public String getName()
+    {
+        return "LESS Precompilation Listener";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Arrays.<Event>asList(new ApplicationReadyEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        // Precompiling is only useful when the results survive the restarts
+        if (!lessConfiguration.isPersistentCacheEnabled() || !lessConfiguration.isPrecompilationEnabled()) {
+            return;
+        }
+
+        Thread thread = new Thread(new AbstractXWikiRunnable()
+        {
+            @Override
+            protected void runInternal()
+            {
+                precompile();
+            }
+        });
+        thread.setName("LESS precompilation");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private void precompile()
+    {
+        this.logger.info("Start the precompilation of the skins.");
+
+        try {
+            lessPrecompiler.precompile();
+            this.logger.info("Precompilation of the skins done.");
+        } catch (QueryException e) {
+            this.logger.warn("Failed to precompile the skins: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.lesscss.internal.cache;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xwiki.environment.Environment;
+import org.xwiki.lesscss.internal.LESSConfiguration;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link PersistentLESSCache}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class PersistentLESSCacheTest
+{
+    @Rule
+    public MockitoComponentMockingRule<PersistentLESSCache> mocker =
+            new MockitoComponentMockingRule<>(PersistentLESSCache.class);
+
+    @Rule
+    public TemporaryFolder permanentDirectory = new TemporaryFolder();
+
+    private LESSConfiguration lessConfiguration;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Environment environment = mocker.getInstance(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(permanentDirectory.getRoot());
+
+        lessConfiguration = mocker.getInstance(LESSConfiguration.class);
+        when(lessConfiguration.isPersistentCacheEnabled()).thenReturn(true);
+        when(lessConfiguration.getPersistentCacheMaximumEntries()).thenReturn(2);
+    }
+
+    @Test
+    public void setAndGet() throws Exception
+    {
+        PersistentLESSCache persistentCache = mocker.getComponentUnderTest();
+        assertTrue(persistentCache.isEnabled());
+
+        String key = persistentCache.getKey("@color: red; a { color: @color; }", "skin", false);
+        assertNotEquals(key, persistentCache.getKey("@color: blue; a { color: @color; }", "skin", false));
+        assertNotEquals(key, persistentCache.getKey("@color: red; a { color: @color; }", "skin2", false));
+        assertNotEquals(key, persistentCache.getKey("@color: red; a { color: @color; }", "skin", true));
+        assertNull(persistentCache.get(key));
+
+        Map<String, String> importHashes = new HashMap<>();
+        importHashes.put("less/style.less.vm", "hash1");
+        importHashes.put("less/subdir/variables.less", "hash2");
+        persistentCache.set(key, "a{color:é}\n", importHashes);
+
+        PersistentLESSCache.Entry entry = persistentCache.get(key);
+        assertEquals("a{color:é}\n", entry.getCSS());
+        assertEquals(importHashes, entry.getImportHashes());
+        assertTrue(new File(permanentDirectory.getRoot(), "cache/lesscss/" + key + ".properties").exists());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception
+    {
+        PersistentLESSCache persistentCache = mocker.getComponentUnderTest();
+
+        persistentCache.set("key1", "css1", Collections.emptyMap());
+        persistentCache.set("key2", "css2", Collections.emptyMap());
+        persistentCache.get("key1");
+        persistentCache.set("key3", "css3", Collections.emptyMap());
+
+        assertEquals("css1", persistentCache.get("key1").getCSS());
+        assertNull(persistentCache.get("key2"));
+        assertEquals("css3", persistentCache.get("key3").getCSS());
+    }
+
+    @Test
+    public void warmUp() throws Exception
+    {
+        // Results stored before a restart
+        File directory = new File(permanentDirectory.getRoot(), "cache/lesscss");
+        directory.mkdirs();
+        for (int i = 1; i <= 3; ++i) {
+            File file = new File(directory, "key" + i + ".properties");
+            file.createNewFile();
+            file.setLastModified(i * 10000L);
+        }
+
+        mocker.getComponentUnderTest();
+
+        // Only the most recent results are kept
+        assertFalse(new File(directory, "key1.properties").exists());
+        assertTrue(new File(directory, "key2.properties").exists());
+        assertTrue(new File(directory, "key3.properties").exists());
+    }
+
+    @Test
+    public void disabled() throws Exception
+    {
+        when(lessConfiguration.isPersistentCacheEnabled()).thenReturn(false);
+
+        assertFalse(mocker.getComponentUnderTest().isEnabled());
+    }
+}
@@ -19,6 +19,10 @@
  */
 package org.xwiki.lesscss.internal.compiler;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.inject.Provider;
 
 import org.junit.Before;
@@ -26,6 +30,7 @@
 import org.junit.Test;
 import org.xwiki.lesscss.compiler.LESSCompilerException;
 import org.xwiki.lesscss.internal.LESSConfiguration;
+import org.xwiki.lesscss.internal.cache.PersistentLESSCache;
 import org.xwiki.lesscss.internal.compiler.less4j.Less4jCompiler;
 import org.xwiki.lesscss.internal.resources.LESSSkinFileResourceReference;
 import org.xwiki.lesscss.resources.LESSResourceReference;
@@ -40,6 +45,7 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -194,4 +200,54 @@ public void computeSkinFileWhenException() throws Exception
             caughtException.getMessage());
 
     }
+
+    @Test
+    public void computeSkinFileWithPersistentCache() throws Exception
+    {
+        // Mocks
+        PersistentLESSCache persistentCache = mocker.getInstance(PersistentLESSCache.class);
+        when(persistentCache.isEnabled()).thenReturn(true);
+        when(persistentCache.getKey("Some LESS content", "skin", false)).thenReturn("key");
+        LESSResourceReference resource = mock(LESSSkinFileResourceReference.class);
+        when(resource.getContent(eq("skin"))).thenReturn("Some LESS content");
+        when(less4jCompiler.compile(eq("Some LESS content"), eq("skin"), eq(false), anyMap())).thenAnswer(
+            invocation -> {
+                Map<String, String> importHashes = invocation.getArgument(3);
+                importHashes.put("less/variables.less", "hash");
+                return "output";
+            });
+
+        // Tests
+        assertEquals("output", mocker.getComponentUnderTest().compute(resource, false, false, true, "skin"));
+
+        // Verify
+        verify(persistentCache).set("key", "output", Collections.singletonMap("less/variables.less", "hash"));
+    }
+
+    @Test
+    public void computeSkinFileFromPersistentCache() throws Exception
+    {
+        // Mocks
+        PersistentLESSCache persistentCache = mocker.getInstance(PersistentLESSCache.class);
+        when(persistentCache.isEnabled()).thenReturn(true);
+        when(persistentCache.getKey("Some LESS content", "skin", false)).thenReturn("key");
+        Map<String, String> importHashes = new HashMap<>();
+        importHashes.put("less/variables.less", "hash");
+        when(persistentCache.get("key")).thenReturn(new PersistentLESSCache.Entry("stored output", importHashes));
+        when(less4jCompiler.getImportHash("less/variables.less", "skin")).thenReturn("hash");
+        LESSResourceReference resource = mock(LESSSkinFileResourceReference.class);
+        when(resource.getContent(eq("skin"))).thenReturn("Some LESS content");
+
+        // Tests
+        assertEquals("stored output", mocker.getComponentUnderTest().compute(resource, false, false, true, "skin"));
+
+        // The stored output is outdated when an imported template has changed
+        when(less4jCompiler.getImportHash("less/variables.less", "skin")).thenReturn("other hash");
+        when(less4jCompiler.compile(eq("Some LESS content"), eq("skin"), eq(false), anyMap())).thenReturn("output");
+        assertEquals("output", mocker.getComponentUnderTest().compute(resource, false, false, true, "skin"));
+
+        // Verify
+        verify(less4jCompiler, times(1)).compile(eq("Some LESS content"), eq("skin"), eq(false), anyMap());
+        verify(persistentCache).set("key", "output", Collections.emptyMap());
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.lesscss.internal.compiler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.lesscss.compiler.LESSCompiler;
+import org.xwiki.lesscss.resources.LESSResourceReference;
+import org.xwiki.lesscss.resources.LESSResourceReferenceFactory;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.web.XWikiRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link LESSPrecompiler}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class LESSPrecompilerTest
+{
+    @Rule
+    public MockitoComponentMockingRule<LESSPrecompiler> mocker =
+        new MockitoComponentMockingRule<>(LESSPrecompiler.class);
+
+    private XWikiContext xcontext;
+
+    private XWikiRequest originalRequest;
+
+    private LESSResourceReference mainSkinStyle;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Provider<XWikiContext> xcontextProvider = this.mocker.registerMockComponent(XWikiContext.TYPE_PROVIDER);
+        this.xcontext = mock(XWikiContext.class);
+        when(xcontextProvider.get()).thenReturn(this.xcontext);
+        XWiki xwiki = mock(XWiki.class);
+        when(this.xcontext.getWiki()).thenReturn(xwiki);
+        when(xwiki.getSkin(this.xcontext)).thenReturn("XWiki.DefaultSkin");
+
+        this.originalRequest = mock(XWikiRequest.class);
+        when(this.originalRequest.getScheme()).thenReturn("https");
+        when(this.originalRequest.getServerName()).thenReturn("www.example.org");
+        when(this.xcontext.getRequest()).thenReturn(this.originalRequest);
+
+        QueryManager queryManager = this.mocker.getInstance(QueryManager.class);
+        mockQuery(queryManager, "XWiki.XWikiSkins", Collections.emptyList());
+        mockQuery(queryManager, "ColorThemes.ColorThemeClass", Arrays.<Object>asList("ColorThemes.Mint"));
+        mockQuery(queryManager, "FlamingoThemesCode.ThemeClass", Arrays.<Object>asList("FlamingoThemes.Charcoal"));
+
+        this.mainSkinStyle = mock(LESSResourceReference.class);
+        LESSResourceReferenceFactory referenceFactory = this.mocker.getInstance(LESSResourceReferenceFactory.class);
+        when(referenceFactory.createReferenceForSkinFile(CachedLESSCompiler.MAIN_SKIN_STYLE_FILENAME))
+            .thenReturn(this.mainSkinStyle);
+    }
+
+    private void mockQuery(QueryManager queryManager, String className, List<Object> results) throws Exception
+    {
+        Query query = mock(Query.class);
+        when(query.execute()).thenReturn(results);
+        when(queryManager.createQuery(contains(className), eq(Query.XWQL))).thenReturn(query);
+    }
+
+    @Test
+    public void precompile() throws Exception
+    {
+        this.mocker.getComponentUnderTest().precompile();
+
+        LESSCompiler lessCompiler = this.mocker.getInstance(LESSCompiler.class);
+        verify(lessCompiler, times(3)).compile(this.mainSkinStyle, false, true, "XWiki.DefaultSkin", false);
+
+        // Without color theme, then with each color theme, and finally the original request is restored
+        ArgumentCaptor<XWikiRequest> requestCaptor = ArgumentCaptor.forClass(XWikiRequest.class);
+        verify(this.xcontext, times(4)).setRequest(requestCaptor.capture());
+        List<XWikiRequest> requests = requestCaptor.getAllValues();
+        assertNull(requests.get(0).getParameter("colorTheme"));
+        assertEquals("ColorThemes.Mint", requests.get(1).getParameter("colorTheme"));
+        assertEquals("FlamingoThemes.Charcoal", requests.get(2).getParameter("colorTheme"));
+        assertSame(this.originalRequest, requests.get(3));
+
+        // The precompilation requests target the same server as the original one
+        assertEquals("www.example.org", requests.get(0).getServerName());
+        assertEquals("https", requests.get(0).getScheme());
+    }
+}
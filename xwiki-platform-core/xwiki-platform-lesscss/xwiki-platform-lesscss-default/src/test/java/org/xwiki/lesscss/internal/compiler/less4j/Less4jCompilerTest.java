@@ -21,6 +21,8 @@
 
 import java.io.FileInputStream;
 import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Before;
@@ -103,7 +105,8 @@ public void compile() throws Exception
         // Test
         StringWriter source = new StringWriter();
         IOUtils.copy(new FileInputStream(getClass().getResource("/style3.less").getFile()), source);
-        String result = mocker.getComponentUnderTest().compile(source.toString(), "skin", false);
+        Map<String, String> importHashes = new HashMap<>();
+        String result = mocker.getComponentUnderTest().compile(source.toString(), "skin", false, importHashes);
 
 	    // Now with sourcemaps.
         String result2 = mocker.getComponentUnderTest().compile(source.toString(), "skin", true);
@@ -114,6 +117,12 @@ public void compile() throws Exception
         assertEquals(expected.toString(), result);
 
         assertTrue(result2.contains("/*# sourceMappingURL=data:application/json;base64,"));
+
+        // The imported templates are recorded with the hashes of their content
+        assertEquals(3, importHashes.size());
+        assertEquals(TemplateLESSSource.hash(import2source.toString()), importHashes.get("less/subdir/import2.less"));
+        assertEquals(importHashes.get("less/style.less.vm"),
+            mocker.getComponentUnderTest().getImportHash("less/style.less.vm", "skin"));
     }
 
     @Test
@@ -19,6 +19,7 @@
  */
 package org.xwiki.mail;
 
+import java.util.Collection;
 import java.util.Map;
 
 import org.xwiki.component.annotation.Role;
@@ -50,6 +51,21 @@
      */
     void onPrepareMessageSuccess(ExtendedMimeMessage message, Map<String, Object> parameters);
 
+    /**
+     * Called when several mails have been prepared with success, before any of them is put on the send queue.
+     * Listeners storing the mail statuses can override it to store them all at once.
+     *
+     * @param messages the messages to be sent
+     * @param parameters some parameters specifying addition context data
+     * @since 9.10RC1
+     */
+    default void onPrepareMessagesSuccess(Collection<ExtendedMimeMessage> messages, Map<String, Object> parameters)
+    {
+        for (ExtendedMimeMessage message : messages) {
+            onPrepareMessageSuccess(message, parameters);
+        }
+    }
+
     /**
      * Called when a mail has failed to be prepared.
      *
@@ -101,4 +101,37 @@
      * @since 6.4RC1
      */
     long getSendWaitTime();
+
+    /**
+     * @return the number of threads sending mails in parallel, each of them using its own connection to the SMTP
+     *         server. The delay returned by {@link #getSendWaitTime()} is respected between two mails sent by the same
+     *         thread, and the one returned by {@link #getSendServerWaitTime()} between two mails sent to the same SMTP
+     *         server, whatever the number of threads.
+     * @since 9.10RC1
+     */
+    default int getSendThreadCount()
+    {
+        return 1;
+    }
+
+    /**
+     * @return the number of threads serializing the prepared mails of a batch in parallel. The mails themselves are
+     *         still created one after the other since the mail iterators and factories are not thread safe.
+     * @since 9.10RC1
+     */
+    default int getPrepareThreadCount()
+    {
+        return 1;
+    }
+
+    /**
+     * @return the minimum delay to wait between two mails sent to the same SMTP server by all the sender threads, in
+     *         milliseconds, or 0 if the number of mails sent to a server is only limited by the number of threads and
+     *         {@link #getSendWaitTime()}
+     * @since 9.10RC1
+     */
+    default long getSendServerWaitTime()
+    {
+        return 0;
+    }
 }
@@ -103,6 +103,9 @@ public class DefaultMailSenderConfiguration implements MailSenderConfiguration
     private static final String PASSWORD_PROPERTY = "password";
     private static final String PROPERTIES_PROPERTY = "properties";
     private static final String SEND_WAIT_TIME = "sendWaitTime";
+    private static final String SEND_THREAD_COUNT = "sendThreadCount";
+    private static final String SEND_SERVER_WAIT_TIME = "sendServerWaitTime";
+    private static final String PREPARE_THREAD_COUNT = "prepareThreadCount";
 
     @Inject
     private Logger logger;
@@ -318,4 +321,26 @@ public long getSendWaitTime()
 
         return waitTime;
     }
+
+    @Override
+    public int getSendThreadCount()
+    {
+        // The mail sender threads are started before any wiki is accessed so this can only be configured in the xwiki
+        // properties file
+        return Math.max(1, this.xwikiPropertiesSource.getProperty(PREFIX + SEND_THREAD_COUNT, 1));
+    }
+
+    @Override
+    public int getPrepareThreadCount()
+    {
+        // Shared by all the wikis since the mail prepare thread is shared
+        return Math.max(1, this.xwikiPropertiesSource.getProperty(PREFIX + PREPARE_THREAD_COUNT, 1));
+    }
+
+    @Override
+    public long getSendServerWaitTime()
+    {
+        // Shared by all the wikis since the mail sender threads are shared
+        return Math.max(0L, this.xwikiPropertiesSource.getProperty(PREFIX + SEND_SERVER_WAIT_TIME, 0L));
+    }
 }
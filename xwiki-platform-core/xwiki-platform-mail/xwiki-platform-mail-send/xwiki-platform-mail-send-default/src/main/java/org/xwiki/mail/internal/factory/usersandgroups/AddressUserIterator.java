@@ -19,10 +19,10 @@
  */
 package org.xwiki.mail.internal.factory.usersandgroups;
 
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import javax.mail.Address;
 
@@ -45,9 +45,13 @@ public class AddressUserIterator extends UserIterator<Address>
 
     private Iterator<Address> addressIterator;
 
-    private List<Address> excludedAddresses;
+    private Set<Address> excludedAddresses;
 
-    private List<Address> processedAddresses = new ArrayList<>();
+    /**
+     * Used to not return the same address twice. It's a hash set since it can contain a lot of addresses when sending
+     * mails to big groups.
+     */
+    private Set<Address> processedAddresses = new HashSet<>();
 
     private Address lookaheadAddress;
 
@@ -65,7 +69,7 @@ public AddressUserIterator(UsersAndGroupsSource usersAndGroupsSource,
             usersAndGroupsSource.getExcludedUserAndGroupReferences(), new AddressUserDataExtractor(),
             explicitDocumentReferenceResolver, execution);
         this.addressIterator = usersAndGroupsSource.getIncludedAddresses().iterator();
-        this.excludedAddresses = usersAndGroupsSource.getExcludedAddresses();
+        this.excludedAddresses = new HashSet<>(usersAndGroupsSource.getExcludedAddresses());
         this.usersAndGroupsSource = usersAndGroupsSource;
     }
 
@@ -108,9 +112,7 @@ private Address getNext()
             } else {
                 return null;
             }
-        } while (this.excludedAddresses.contains(address) || this.processedAddresses.contains(address));
-
-        this.processedAddresses.add(address);
+        } while (this.excludedAddresses.contains(address) || !this.processedAddresses.add(address));
 
         return address;
     }
@@ -19,7 +19,10 @@
  */
 package org.xwiki.mail.internal.thread;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
@@ -37,6 +40,11 @@
      */
     private Queue<T> mailQueue = new ConcurrentLinkedQueue<>();
 
+    /**
+     * The mails currently being processed, which are still in the queue.
+     */
+    private Set<T> claimedItems = Collections.newSetFromMap(new IdentityHashMap<>());
+
     /**
      * @return the mail queue containing all pending mails to be sent
      */
@@ -63,9 +71,28 @@ public T peekMessage()
         return getMailQueue().peek();
     }
 
+    @Override
+    public synchronized T claimMessage()
+    {
+        // Only the items being processed can be before the one we're looking for so this does not go far
+        for (T mailQueueItem : getMailQueue()) {
+            if (this.claimedItems.add(mailQueueItem)) {
+                return mailQueueItem;
+            }
+        }
+
+        return null;
+    }
+
     @Override
     public boolean removeMessageFromQueue(T mailQueueItem)
     {
-        return getMailQueue().remove(mailQueueItem);
+        boolean removed = getMailQueue().remove(mailQueueItem);
+
+        synchronized (this) {
+            this.claimedItems.remove(mailQueueItem);
+        }
+
+        return removed;
     }
 }
@@ -48,6 +48,15 @@
      */
     T peekMessage();
 
+    /**
+     * Get the next mail on the queue which is not already being processed by another thread. The mail stays on the
+     * queue until {@link #removeMessageFromQueue(MailQueueItem)} is called.
+     *
+     * @return the next mail on the queue waiting to be processed, or null if there's none
+     * @since 9.10RC1
+     */
+    T claimMessage();
+
     /**
      * Removes the next mail on the queue.
      *
@@ -33,6 +33,7 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.phase.Disposable;
+import org.xwiki.mail.MailSenderConfiguration;
 import org.xwiki.observation.EventListener;
 import org.xwiki.observation.event.Event;
 
@@ -64,6 +65,8 @@ public class MailSenderInitializerListener implements EventListener, Disposable
      */
     private static final Logger SHUTDOWN_LOGGER = LoggerFactory.getLogger("org.xwiki.shutdown");
 
+    private static final String SEND_THREAD_NAME = "Mail Sender Thread";
+
     @Inject
     @Named("prepare")
     private MailRunnable prepareMailRunnable;
@@ -72,9 +75,12 @@ public class MailSenderInitializerListener implements EventListener, Disposable
     @Named("send")
     private MailRunnable sendMailRunnable;
 
+    @Inject
+    private MailSenderConfiguration configuration;
+
     private Thread prepareMailThread;
 
-    private Thread sendMailThread;
+    private List<Thread> sendMailThreads = new ArrayList<>();
 
     @Override
     public String getName()
@@ -97,12 +103,15 @@ public void onEvent(Event event, Object o, Object o1)
         this.prepareMailThread.setDaemon(true);
         this.prepareMailThread.start();
 
-        // Step 2: Start the Mail Sender Thread
-        this.sendMailThread = new Thread(this.sendMailRunnable);
-        this.sendMailThread.setName("Mail Sender Thread");
-        this.sendMailThread.setDaemon(true);
-        this.sendMailThread.start();
-
+        // Step 2: Start the Mail Sender Threads, each of them sending mails using its own connection
+        int sendThreadCount = this.configuration.getSendThreadCount();
+        for (int i = 0; i < sendThreadCount; i++) {
+            Thread sendMailThread = new Thread(this.sendMailRunnable);
+            sendMailThread.setName(sendThreadCount > 1 ? SEND_THREAD_NAME + ' ' + (i + 1) : SEND_THREAD_NAME);
+            sendMailThread.setDaemon(true);
+            sendMailThread.start();
+            this.sendMailThreads.add(sendMailThread);
+        }
     }
 
     /**
@@ -112,14 +121,18 @@ public void onEvent(Event event, Object o, Object o1)
      */
     private void stopMailThreads() throws InterruptedException
     {
-        // Step 1: Stop the Mail Sender Thread
+        // Step 1: Stop the Mail Sender Threads
 
-        if (this.sendMailThread != null) {
+        if (!this.sendMailThreads.isEmpty()) {
             this.sendMailRunnable.stopProcessing();
-            // Make sure the Thread goes out of sleep if it's sleeping so that it stops immediately.
-            this.sendMailThread.interrupt();
-            // Wait till the thread goes away
-            this.sendMailThread.join();
+            for (Thread sendMailThread : this.sendMailThreads) {
+                // Make sure the Thread goes out of sleep if it's sleeping so that it stops immediately.
+                sendMailThread.interrupt();
+            }
+            for (Thread sendMailThread : this.sendMailThreads) {
+                // Wait till the thread goes away
+                sendMailThread.join();
+            }
             SHUTDOWN_LOGGER.debug(String.format("Mail Prepare Thread has been stopped"));
         }
 
@@ -19,8 +19,14 @@
  */
 package org.xwiki.mail.internal.thread;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -31,6 +37,7 @@
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.context.ExecutionContextException;
@@ -44,7 +51,9 @@
 
 /**
  * Runnable that regularly check for mail items on a Prepare Queue, and for each mail item there, generate the message
- * to send and persist it and put that reference on the Send Queue for sending.
+ * to send and persist it and put that reference on the Send Queue for sending. The messages are handled by chunks: the
+ * messages of a chunk are serialized in parallel and their statuses are given to the listener at once before they are
+ * put on the Send Queue.
  *
  * @version $Id$
  * @since 6.4
@@ -54,6 +63,11 @@
 @Singleton
 public class PrepareMailRunnable extends AbstractMailRunnable
 {
+    /**
+     * The maximum number of messages created before being serialized and put on the Send Queue.
+     */
+    private static final int CHUNK_SIZE = 100;
+
     @Inject
     private MailQueueManager<PrepareMailQueueItem> prepareMailQueueManager;
 
@@ -64,8 +78,23 @@ public class PrepareMailRunnable extends AbstractMailRunnable
     @Named("filesystem")
     private MailContentStore mailContentStore;
 
+    private ExecutorService serializeExecutor;
+
     @Override
     public void run()
+    {
+        BasicThreadFactory factory =
+            new BasicThreadFactory.Builder().namingPattern("Mail Serialize Thread %d").daemon(true).build();
+        this.serializeExecutor = Executors.newFixedThreadPool(this.configuration.getPrepareThreadCount(), factory);
+
+        try {
+            processQueue();
+        } finally {
+            this.serializeExecutor.shutdownNow();
+        }
+    }
+
+    private void processQueue()
     {
         do {
             try {
@@ -114,22 +143,33 @@ protected void prepareMail(PrepareMailQueueItem item) throws ExecutionContextExc
         try {
             boolean shouldStop = false;
             while (!shouldStop) {
+                List<MimeMessage> messages = new ArrayList<>(CHUNK_SIZE);
                 // Note that we need to have the hasNext() call after the context is ready since the implementation can
                 // need a valid XWiki Context.
                 prepareContext(item.getContext());
                 try {
-                    if (messageIterator.hasNext()) {
-                        MimeMessage mimeMessage = messageIterator.next();
-                        prepareSingleMail(mimeMessage, item);
-                        messageCounter++;
-                    } else {
-                        shouldStop = true;
+                    try {
+                        while (!shouldStop && messages.size() < CHUNK_SIZE) {
+                            if (messageIterator.hasNext()) {
+                                messages.add(messageIterator.next());
+                            } else {
+                                shouldStop = true;
+                            }
+                        }
+                    } finally {
+                        // Make sure the messages created so far are sent even if the next one failed to be created
+                        prepareMessages(messages, item);
+                        messageCounter += messages.size();
                     }
                 } finally {
                     removeContext();
                 }
             }
         } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                // The thread has been stopped while waiting for the messages to be serialized
+                Thread.currentThread().interrupt();
+            }
             if (listener != null) {
                 listener.onPrepareFatalError(e, Collections.<String, Object>emptyMap());
             }
@@ -158,38 +198,62 @@ protected void prepareContext(ExecutionContext executionContext) throws Executio
         }
     }
 
-    private void prepareSingleMail(MimeMessage mimeMessage, PrepareMailQueueItem item)
+    private void prepareMessages(List<MimeMessage> mimeMessages, PrepareMailQueueItem item)
+        throws InterruptedException
     {
+        if (mimeMessages.isEmpty()) {
+            return;
+        }
+
         MailListener listener = item.getListener();
 
-        // Step 1: Try to complete message with From and Bcc from configuration if needed
-        completeMessage(mimeMessage);
+        // Step 1: Persist the MimeMessages in parallel
+        List<ExtendedMimeMessage> messages = new ArrayList<>(mimeMessages.size());
+        List<Future<?>> futures = new ArrayList<>(mimeMessages.size());
+        for (MimeMessage mimeMessage : mimeMessages) {
+            // Try to complete message with From and Bcc from configuration if needed
+            completeMessage(mimeMessage);
 
-        // Ensure mimeMessage to be extended
-        ExtendedMimeMessage message = ExtendedMimeMessage.wrap(mimeMessage);
+            // Ensure mimeMessage to be extended
+            ExtendedMimeMessage message = ExtendedMimeMessage.wrap(mimeMessage);
+            messages.add(message);
 
-        // Step 2: Persist the MimeMessage
-        // Note: Message identifier is stabilized at this step by the serialization process
-        try {
-            this.mailContentStore.save(item.getBatchId(), message);
-        } catch (Exception e) {
-            // An error occurred, notify the user if a listener has been provided
-            if (listener != null) {
-                listener.onPrepareMessageError(message, e, Collections.<String, Object>emptyMap());
+            // Note: Message identifier is stabilized at this step by the serialization process
+            futures.add(this.serializeExecutor.submit(() -> {
+                this.mailContentStore.save(item.getBatchId(), message);
+                return null;
+            }));
+        }
+
+        List<ExtendedMimeMessage> preparedMessages = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            ExtendedMimeMessage message = messages.get(i);
+            try {
+                futures.get(i).get();
+                preparedMessages.add(message);
+            } catch (ExecutionException e) {
+                // An error occurred, notify the user if a listener has been provided
+                if (listener != null) {
+                    Exception exception = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    listener.onPrepareMessageError(message, exception, Collections.<String, Object>emptyMap());
+                }
             }
-            return;
         }
 
-        // Step 3: Notify the user that the MimeMessage is prepared
-        if (listener != null) {
-            listener.onPrepareMessageSuccess(message, Collections.<String, Object>emptyMap());
+        // Step 2: Notify the user that the MimeMessages are prepared. Note that this must be done before putting them
+        // on the Mail Send Queue since a listener storing the statuses needs them to be stored before the mails are
+        // sent (a mail found in the Send Queue must have a stored prepared status so that it can be resent).
+        if (listener != null && !preparedMessages.isEmpty()) {
+            listener.onPrepareMessagesSuccess(preparedMessages, Collections.<String, Object>emptyMap());
         }
 
-        // Step 4: Put the MimeMessage id on the Mail Send Queue for sending
+        // Step 3: Put the MimeMessage ids on the Mail Send Queue for sending
         // Extract the wiki id from the context
-        this.sendMailQueueManager.addToQueue(new SendMailQueueItem(message.getUniqueMessageId(),
-            item.getSession(), listener, item.getBatchId(), extractWikiId(item)));
-
+        String wikiId = extractWikiId(item);
+        for (ExtendedMimeMessage message : preparedMessages) {
+            this.sendMailQueueManager.addToQueue(new SendMailQueueItem(message.getUniqueMessageId(),
+                item.getSession(), listener, item.getBatchId(), wikiId));
+        }
     }
 
     private String extractWikiId(PrepareMailQueueItem item)
@@ -20,6 +20,8 @@
 package org.xwiki.mail.internal.thread;
 
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -41,7 +43,8 @@
 import com.xpn.xwiki.XWikiContext;
 
 /**
- * Runnable that regularly check for mails on a Queue, and for each mail tries to send it.
+ * Runnable that regularly check for mails on a Queue, and for each mail tries to send it. Several threads can execute
+ * this runnable to send mails in parallel (see {@link org.xwiki.mail.MailSenderConfiguration#getSendThreadCount()}).
  *
  * @version $Id$
  * @since 6.4
@@ -51,6 +54,11 @@
 @Singleton
 public class SendMailRunnable extends AbstractMailRunnable
 {
+    /**
+     * The number of mails sent between two logs of the sending statistics.
+     */
+    private static final int STATISTICS_INTERVAL = 100;
+
     @Inject
     private MailQueueManager<SendMailQueueItem> sendMailQueueManager;
 
@@ -64,28 +72,74 @@ public class SendMailRunnable extends AbstractMailRunnable
     @Inject
     private Provider<XWikiContext> contextProvider;
 
-    private Transport currentTransport;
+    @Inject
+    private SendMailThrottler throttler;
+
+    /**
+     * The number of mails sent successfully by all the sender threads.
+     */
+    private final AtomicLong sentCount = new AtomicLong();
+
+    /**
+     * The number of mails which failed to be sent by all the sender threads.
+     */
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * The connection to the SMTP server of a sender thread, reused to send several mails.
+     */
+    private static final class Connection
+    {
+        private Transport transport;
+
+        private Session session;
 
-    private Session currentSession;
+        private int count;
 
-    private int count;
+        /**
+         * The time at which the last mail was sent using this connection.
+         */
+        private long lastSendTime;
+    }
 
     @Override
     public void run()
     {
+        // This is executed by each sender thread, each of them having its own connection
+        Connection connection = new Connection();
         try {
             // Make sure we initialize an execution context.
             prepareContext();
 
-            runInternal();
+            runInternal(connection);
         } catch (ExecutionContextException e) {
             // Not much to do but log.
             logger.error("Failed to initialize the send mail thread's execution context", e);
         } finally {
-            closeTransport();
+            closeTransport(connection);
         }
     }
 
+    /**
+     * @return the number of mails sent successfully since the application started
+     * @since 9.10RC1
+     */
+    public long getSentMailCount()
+    {
+        return this.sentCount.get();
+    }
+
+    /**
+     * @return the number of mails which failed to be sent since the application started
+     * @since 9.10RC1
+     */
+    public long getFailedMailCount()
+    {
+        return this.failedCount.get();
+    }
+
     private void prepareContext() throws ExecutionContextException
     {
         // Create a single execution context and use it for the send mail thread.
@@ -96,36 +150,35 @@ private void prepareContext() throws ExecutionContextException
     private void prepareContextForQueueItem(SendMailQueueItem mailItem)
     {
         // Set the current wiki in the context. This is needed for example to be able to locate the configuration
-        // properties when processing the mail queue items (in waitSendWaitTime()).
+        // properties when processing the mail queue items (e.g. the send wait time).
         XWikiContext xcontext = this.contextProvider.get();
         xcontext.setWikiId(mailItem.getWikiId());
     }
 
-    private void runInternal()
+    private void runInternal(Connection connection)
     {
         do {
             try {
-                // Handle next message in the queue
-                if (this.sendMailQueueManager.hasMessage()) {
+                // Handle next message in the queue which is not already handled by another sender thread
+                SendMailQueueItem mailItem = this.sendMailQueueManager.claimMessage();
+                if (mailItem != null) {
                     // Important: only remove the mail item from the queue after the mail has been sent as
                     // otherwise, MailSender.waitTillSent() may return before the mail is actually sent!
-                    SendMailQueueItem mailItem = this.sendMailQueueManager.peekMessage();
+                    // Note that a mail interrupted while waiting to be sent is marked as failed before being removed so
+                    // that it can be resent later.
                     try {
-                        sendMail(mailItem);
+                        sendMail(mailItem, connection);
                     } finally {
                         this.sendMailQueueManager.removeMessageFromQueue(mailItem);
                     }
-                    // Email throttling: Wait before processing the next mail queue item
-                    // Note: it's important that we wait after the previous item has been removed from the queue in
-                    // order to let users know as soon as possible that their mail has been sent (otherwise when sending
-                    // a synchronous mail, the user would have to wait the send wait time!).
-                    waitSendWaitTime();
+                } else {
+                    // Note: a short pause to catch thread interruptions and to be kind on CPU.
+                    Thread.sleep(50L);
                 }
-                // Note: a short pause to catch thread interruptions and to be kind on CPU.
-                Thread.sleep(50L);
             } catch (InterruptedException e) {
                 // Thread has been stopped, exit
                 this.logger.debug("Mail Sender Thread was forcefully stopped", e);
+                Thread.currentThread().interrupt();
                 break;
             } catch (Exception e) {
                 // There was an unexpected problem, we just log the problem but keep the thread alive!
@@ -138,8 +191,10 @@ private void runInternal()
      * Send the mail.
      *
      * @param item the queue item containing all the data for sending the mail
+     * @param connection the connection to the SMTP server of the current thread
+     * @throws InterruptedException if the thread is interrupted while waiting to send the mail
      */
-    protected void sendMail(SendMailQueueItem item)
+    private void sendMail(SendMailQueueItem item, Connection connection) throws InterruptedException
     {
         prepareContextForQueueItem(item);
 
@@ -156,31 +211,50 @@ protected void sendMail(SendMailQueueItem item)
             return;
         }
 
+        // Step 2: Email throttling: wait until a mail can be sent without being considered as a spammer. The send wait
+        // time is respected between two mails sent by the current thread while the server wait time is respected
+        // between two mails sent to the same SMTP server by all the sender threads.
+        try {
+            waitBeforeSending(connection);
+            this.throttler.waitForSlot(item.getSession(), this.configuration.getSendServerWaitTime());
+        } catch (InterruptedException e) {
+            // The mail won't be sent since the thread is stopping: mark it as failed so that it's not lost
+            this.failedCount.incrementAndGet();
+            if (listener != null) {
+                listener.onSendMessageError(message, e, Collections.<String, Object>emptyMap());
+            }
+            throw e;
+        }
+        connection.lastSendTime = System.currentTimeMillis();
+
         try {
-            // Step 2: If the current Session in use is different from the one passed then close
+            // Step 3: If the current Session in use is different from the one passed then close
             // the current Transport, get a new one and reconnect.
             // Also do that every 100 mails sent.
             // TODO: explain why!
-            if (item.getSession() != this.currentSession || (this.count % 100) == 0) {
-                closeTransport();
-                this.currentSession = item.getSession();
-                this.currentTransport = this.currentSession.getTransport("smtp");
-                this.currentTransport.connect();
-            } else if (!this.currentTransport.isConnected()) {
-                this.currentTransport.connect();
+            if (item.getSession() != connection.session || (connection.count % 100) == 0) {
+                closeTransport(connection);
+                connection.session = item.getSession();
+                connection.transport = connection.session.getTransport("smtp");
+                connection.transport.connect();
+            } else if (!connection.transport.isConnected()) {
+                connection.transport.connect();
             }
 
-            // Step 3: Send the mail
+            // Step 4: Send the mail
             // Unlike the static send method, the sendMessage method does not call the saveChanges method on the
             // message; this prevent the MessageID header to be changed.
-            this.currentTransport.sendMessage(message, message.getAllRecipients());
-            this.count++;
+            connection.transport.sendMessage(message, message.getAllRecipients());
+            connection.count++;
+            logStatistics(this.sentCount.incrementAndGet());
 
-            // Step 4: Notify the user of the success if a listener has been provided
+            // Step 5: Notify the user of the success if a listener has been provided
             if (listener != null) {
                 listener.onSendMessageSuccess(message, Collections.<String, Object>emptyMap());
             }
         } catch (Exception e) {
+            this.failedCount.incrementAndGet();
+
             // An error occurred, notify the user if a listener has been provided.
             if (listener != null) {
                 listener.onSendMessageError(message, e, Collections.<String, Object>emptyMap());
@@ -188,17 +262,31 @@ protected void sendMail(SendMailQueueItem item)
         }
     }
 
-    private void waitSendWaitTime() throws InterruptedException
+    private void waitBeforeSending(Connection connection) throws InterruptedException
+    {
+        if (connection.lastSendTime > 0) {
+            long waitTime = connection.lastSendTime + this.configuration.getSendWaitTime() - System.currentTimeMillis();
+            if (waitTime > 0) {
+                Thread.sleep(waitTime);
+            }
+        }
+    }
+
+    private void logStatistics(long sent)
     {
-        long sendWaitTime = this.configuration.getSendWaitTime();
-        Thread.sleep(sendWaitTime);
+        if (sent % STATISTICS_INTERVAL == 0 && this.logger.isDebugEnabled()) {
+            long elapsed = Math.max(1L, System.currentTimeMillis() - this.startTime);
+            this.logger.debug("[{}] mails sent and [{}] failures with [{}] threads, [{}] mails per minute on average",
+                sent, this.failedCount.get(), this.configuration.getSendThreadCount(),
+                sent * TimeUnit.MINUTES.toMillis(1) / elapsed);
+        }
     }
 
-    private void closeTransport()
+    private void closeTransport(Connection connection)
     {
-        if (this.currentTransport != null) {
+        if (connection.transport != null) {
             try {
-                this.currentTransport.close();
+                connection.transport.close();
             } catch (MessagingException e) {
                 this.logger.warn("Failed to close JavaMail Transport connection. Reason [{}]",
                     ExceptionUtils.getRootCauseMessage(e));
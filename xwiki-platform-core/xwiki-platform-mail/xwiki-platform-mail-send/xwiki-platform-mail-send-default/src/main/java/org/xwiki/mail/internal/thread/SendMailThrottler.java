@@ -0,0 +1,82 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.mail.internal.thread;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+import javax.mail.Session;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.mail.internal.configuration.DefaultMailSenderConfiguration;
+
+/**
+ * Make sure that mails are not sent too fast to the same SMTP server, whatever the number of threads sending mails, in
+ * order to not be considered as a spammer by mail servers.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = SendMailThrottler.class)
+@Singleton
+public class SendMailThrottler
+{
+    /**
+     * The time at which the next mail can be sent to each SMTP server.
+     */
+    private final Map<String, AtomicLong> nextSendTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Wait until a mail can be sent to the SMTP server of the passed session and reserve the corresponding slot.
+     *
+     * @param session the session used to send the mail
+     * @param serverWaitTime the minimum delay between two mails sent to the same SMTP server, in milliseconds
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void waitForSlot(Session session, long serverWaitTime) throws InterruptedException
+    {
+        if (serverWaitTime <= 0) {
+            return;
+        }
+
+        AtomicLong nextSendTime = this.nextSendTimes.computeIfAbsent(getServer(session), k -> new AtomicLong());
+
+        long now;
+        long reserved;
+        long sendTime;
+        do {
+            now = System.currentTimeMillis();
+            reserved = nextSendTime.get();
+            sendTime = Math.max(now, reserved);
+        } while (!nextSendTime.compareAndSet(reserved, sendTime + serverWaitTime));
+
+        if (sendTime > now) {
+            Thread.sleep(sendTime - now);
+        }
+    }
+
+    private String getServer(Session session)
+    {
+        return session.getProperty(DefaultMailSenderConfiguration.JAVAMAIL_SMTP_HOST) + ':'
+            + session.getProperty(DefaultMailSenderConfiguration.JAVAMAIL_SMTP_PORT);
+    }
+}
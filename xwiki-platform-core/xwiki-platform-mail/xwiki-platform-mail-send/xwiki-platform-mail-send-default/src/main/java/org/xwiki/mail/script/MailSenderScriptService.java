@@ -24,6 +24,7 @@
 import java.util.Iterator;
 import java.util.Map;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.mail.Message;
@@ -38,6 +39,8 @@
 import org.xwiki.mail.MailSenderConfiguration;
 import org.xwiki.mail.MimeMessageFactory;
 import org.xwiki.mail.internal.script.MimeMessageFactoryProvider;
+import org.xwiki.mail.internal.thread.MailRunnable;
+import org.xwiki.mail.internal.thread.SendMailRunnable;
 
 /**
  * Expose Mail Sending API to scripts.
@@ -64,6 +67,10 @@ public class MailSenderScriptService extends AbstractMailScriptService
      */
     static final String ERROR_KEY = "scriptservice.mailsender.error";
 
+    @Inject
+    @Named("send")
+    private MailRunnable sendMailRunnable;
+
     /**
      * Creates a pre-filled Mime Message by running the Component implementation of {@link
      * org.xwiki.mail.MimeMessageFactory} corresponding to the passed hint.
@@ -282,6 +289,26 @@ public MailSenderConfiguration getConfiguration()
         return this.senderConfiguration;
     }
 
+    /**
+     * @return the number of mails sent successfully by the mail sender threads since the application started
+     * @since 9.10RC1
+     */
+    public long getSentMailCount()
+    {
+        return this.sendMailRunnable instanceof SendMailRunnable
+            ? ((SendMailRunnable) this.sendMailRunnable).getSentMailCount() : 0;
+    }
+
+    /**
+     * @return the number of mails which failed to be sent by the mail sender threads since the application started
+     * @since 9.10RC1
+     */
+    public long getFailedMailCount()
+    {
+        return this.sendMailRunnable instanceof SendMailRunnable
+            ? ((SendMailRunnable) this.sendMailRunnable).getFailedMailCount() : 0;
+    }
+
     @Override
     protected String getErrorKey()
     {
@@ -58,6 +58,7 @@
 import org.xwiki.mail.internal.thread.PrepareMailRunnable;
 import org.xwiki.mail.internal.thread.SendMailQueueManager;
 import org.xwiki.mail.internal.thread.SendMailRunnable;
+import org.xwiki.mail.internal.thread.SendMailThrottler;
 import org.xwiki.mail.internal.thread.context.Copier;
 import org.xwiki.mail.script.MailSenderScriptService;
 import org.xwiki.mail.script.ScriptMailResult;
@@ -101,6 +102,7 @@
     MemoryMailListener.class,
     DefaultSessionFactory.class,
     SendMailRunnable.class,
+    SendMailThrottler.class,
     PrepareMailRunnable.class,
     PrepareMailQueueManager.class,
     SendMailQueueManager.class,
@@ -209,6 +211,8 @@ public void sendTextMail() throws Exception
             .hasNext());
         assertFalse("There should not be any mails in the ready state!",
             result.getStatusResult().getByState(MailState.PREPARE_SUCCESS).hasNext());
+        assertEquals(3, this.scriptService.getSentMailCount());
+        assertEquals(0, this.scriptService.getFailedMailCount());
 
         // Verify that the mails have been received (wait maximum 30 seconds).
         this.mail.waitForIncomingEmail(30000L, 3);
@@ -104,6 +104,24 @@ public long getSendWaitTime()
         return 0;
     }
 
+    @Override
+    public int getSendThreadCount()
+    {
+        return 1;
+    }
+
+    @Override
+    public long getSendServerWaitTime()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getPrepareThreadCount()
+    {
+        return 2;
+    }
+
     public void setBCCAddresses(List<String> addresses)
     {
         this.bccAddresses = addresses;
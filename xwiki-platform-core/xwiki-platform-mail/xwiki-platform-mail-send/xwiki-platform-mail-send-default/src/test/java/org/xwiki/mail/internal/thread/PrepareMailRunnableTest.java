@@ -19,10 +19,15 @@
  */
 package org.xwiki.mail.internal.thread;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Provider;
 import javax.mail.Session;
@@ -31,6 +36,7 @@
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -39,6 +45,7 @@
 import org.xwiki.mail.ExtendedMimeMessage;
 import org.xwiki.mail.MailContentStore;
 import org.xwiki.mail.MailListener;
+import org.xwiki.mail.MailSenderConfiguration;
 import org.xwiki.mail.MailState;
 import org.xwiki.mail.MailStatus;
 import org.xwiki.mail.MailStatusResult;
@@ -56,8 +63,13 @@
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 
 /**
@@ -81,6 +93,66 @@ public void setUp() throws Exception
     {
         Provider<XWikiContext> xwikiContextProvider = this.mocker.registerMockComponent(XWikiContext.TYPE_PROVIDER);
         when(xwikiContextProvider.get()).thenReturn(Mockito.mock(XWikiContext.class));
+
+        MailSenderConfiguration configuration = this.mocker.getInstance(MailSenderConfiguration.class);
+        when(configuration.getPrepareThreadCount()).thenReturn(2);
+    }
+
+    @Test
+    public void prepareMailNotifiesListenerBeforeQueueingEachChunk() throws Exception
+    {
+        Session session = Session.getDefaultInstance(new Properties());
+
+        List<MimeMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            MimeMessage message = new MimeMessage(session);
+            message.setText("Content" + i);
+            messages.add(message);
+        }
+
+        ExecutionContext context = new ExecutionContext();
+        XWikiContext xContext = new XWikiContext();
+        xContext.setWikiId("wiki");
+        context.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, xContext);
+
+        MailListener listener = mock(MailListener.class);
+        CountDownLatch prepareEnd = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            prepareEnd.countDown();
+            return null;
+        }).when(listener).onPrepareEnd(anyMap());
+
+        MailQueueManager<PrepareMailQueueItem> prepareMailQueueManager =
+            this.mocker.getInstance(new DefaultParameterizedType(null, MailQueueManager.class,
+                PrepareMailQueueItem.class));
+        MailQueueManager<SendMailQueueItem> sendMailQueueManager =
+            this.mocker.getInstance(new DefaultParameterizedType(null, MailQueueManager.class,
+                SendMailQueueItem.class));
+
+        prepareMailQueueManager.addToQueue(new PrepareMailQueueItem(messages, session, listener,
+            UUID.randomUUID().toString(), context));
+
+        MailRunnable runnable = this.mocker.getComponentUnderTest();
+        Thread thread = new Thread(runnable);
+        thread.start();
+
+        try {
+            assertTrue(prepareEnd.await(10, TimeUnit.SECONDS));
+        } finally {
+            runnable.stopProcessing();
+            thread.interrupt();
+            thread.join();
+        }
+
+        // The listener must know about the prepared messages (e.g. to store their statuses) before they can be sent
+        InOrder inOrder = inOrder(listener, sendMailQueueManager);
+        inOrder.verify(listener).onPrepareMessagesSuccess(
+            argThat((Collection<ExtendedMimeMessage> chunk) -> chunk.size() == 100), anyMap());
+        inOrder.verify(sendMailQueueManager, times(100)).addToQueue(any(SendMailQueueItem.class));
+        inOrder.verify(listener).onPrepareMessagesSuccess(
+            argThat((Collection<ExtendedMimeMessage> chunk) -> chunk.size() == 50), anyMap());
+        inOrder.verify(sendMailQueueManager, times(50)).addToQueue(any(SendMailQueueItem.class));
+        inOrder.verify(listener).onPrepareEnd(anyMap());
     }
 
     @Test
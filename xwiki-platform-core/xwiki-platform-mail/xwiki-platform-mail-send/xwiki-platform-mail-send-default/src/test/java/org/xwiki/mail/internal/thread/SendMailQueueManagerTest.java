@@ -0,0 +1,59 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.mail.internal.thread;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for {@link SendMailQueueManager}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class SendMailQueueManagerTest
+{
+    private SendMailQueueManager queueManager = new SendMailQueueManager();
+
+    @Test
+    public void claimMessage()
+    {
+        SendMailQueueItem item1 = mock(SendMailQueueItem.class);
+        SendMailQueueItem item2 = mock(SendMailQueueItem.class);
+        this.queueManager.addToQueue(item1);
+        this.queueManager.addToQueue(item2);
+
+        // Each item can only be claimed once, by a single sender thread
+        assertSame(item1, this.queueManager.claimMessage());
+        assertSame(item2, this.queueManager.claimMessage());
+        assertNull(this.queueManager.claimMessage());
+
+        // The claimed items stay in the queue until they are removed
+        assertTrue(this.queueManager.hasMessage());
+        assertTrue(this.queueManager.removeMessageFromQueue(item1));
+        assertTrue(this.queueManager.removeMessageFromQueue(item2));
+        assertFalse(this.queueManager.hasMessage());
+    }
+}
@@ -23,6 +23,7 @@
 import java.util.Iterator;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Provider;
 import javax.mail.Session;
@@ -47,7 +48,11 @@
 import com.xpn.xwiki.XWikiContext;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
 
 /**
@@ -206,4 +211,57 @@ public void sendMailWhenMailRetrievalFails() throws Exception
         }
         assertEquals(2, errorCount);
     }
+
+    @Test
+    public void sendMailWhenInterrupted() throws Exception
+    {
+        Session session = Session.getInstance(new Properties());
+
+        MimeMessage msg = new MimeMessage(session);
+        msg.setText("Content");
+        ExtendedMimeMessage message = new ExtendedMimeMessage(msg);
+        String id = message.getUniqueMessageId();
+
+        MemoryMailListener listener = this.mocker.getInstance(MailListener.class, "memory");
+        String batchId = UUID.randomUUID().toString();
+        listener.onPrepareBegin(batchId, Collections.<String, Object>emptyMap());
+        ((UpdateableMailStatusResult) listener.getMailStatusResult()).setTotalSize(1);
+
+        listener.onPrepareMessageSuccess(message, Collections.<String, Object>emptyMap());
+        SendMailQueueItem item = new SendMailQueueItem(id, session, listener, batchId, "xwiki");
+
+        MailQueueManager<SendMailQueueItem> mailQueueManager = this.mocker.getInstance(
+            new DefaultParameterizedType(null, MailQueueManager.class, SendMailQueueItem.class));
+
+        MailContentStore contentStore = this.mocker.getInstance(MailContentStore.class, "filesystem");
+        when(contentStore.load(session, batchId, id)).thenReturn(message);
+
+        // Simulate the thread being stopped while waiting to send the mail
+        SendMailThrottler throttler = this.mocker.getInstance(SendMailThrottler.class);
+        doThrow(new InterruptedException()).when(throttler).waitForSlot(any(Session.class), anyLong());
+
+        mailQueueManager.addToQueue(item);
+
+        SendMailRunnable runnable = this.mocker.getComponentUnderTest();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread thread = new Thread(() -> {
+            runnable.run();
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        thread.start();
+
+        // The thread stops by itself, without having to call stopProcessing()
+        thread.join(10000L);
+        assertFalse(thread.isAlive());
+        assertTrue(interrupted.get());
+
+        // The mail is not lost silently: it's marked as failed so that it can be resent
+        assertTrue(listener.getMailStatusResult().isProcessed());
+        Iterator<MailStatus> statuses = listener.getMailStatusResult().getByState(MailState.SEND_ERROR);
+        assertEquals(id, statuses.next().getMessageId());
+        assertFalse(statuses.hasNext());
+        assertFalse(mailQueueManager.hasMessage());
+        assertEquals(1, runnable.getFailedMailCount());
+        assertEquals(0, runnable.getSentMailCount());
+    }
 }
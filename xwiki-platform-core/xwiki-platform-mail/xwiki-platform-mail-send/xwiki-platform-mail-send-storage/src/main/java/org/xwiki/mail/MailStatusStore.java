@@ -19,6 +19,7 @@
  */
 package org.xwiki.mail;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -43,6 +44,23 @@
      */
     void save(MailStatus status, Map<String, Object> parameters) throws MailStoreException;
 
+    /**
+     * Saves several mail statuses in the store. Implementations are encouraged to save them all at once (e.g. in a
+     * single database transaction).
+     *
+     * @param statuses the mail statuses to be saved
+     * @param parameters some parameters specifying addition context data (for example the current wiki is stored under
+     *        the {@code wiki} key)
+     * @throws MailStoreException when an error occurs saving the data
+     * @since 9.10RC1
+     */
+    default void save(Collection<MailStatus> statuses, Map<String, Object> parameters) throws MailStoreException
+    {
+        for (MailStatus status : statuses) {
+            save(status, parameters);
+        }
+    }
+
     /**
      * Load message status for the message matching the given message Id.
      *
@@ -19,6 +19,9 @@
  */
 package org.xwiki.mail.internal;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -93,6 +96,35 @@ public void onPrepareMessageSuccess(ExtendedMimeMessage message, Map<String, Obj
         saveStatus(status, parameters);
     }
 
+    @Override
+    public void onPrepareMessagesSuccess(Collection<ExtendedMimeMessage> messages, Map<String, Object> parameters)
+    {
+        String wikiId =
+            ((XWikiContext) execution.getContext().getProperty(XWikiContext.EXECUTIONCONTEXT_KEY)).getWikiId();
+
+        List<MailStatus> statuses = new ArrayList<>(messages.size());
+        for (ExtendedMimeMessage message : messages) {
+            super.onPrepareMessageSuccess(message, parameters);
+
+            MailStatus status = new MailStatus(getBatchId(), message, MailState.PREPARE_SUCCESS);
+            status.setWiki(wikiId);
+            statuses.add(status);
+        }
+
+        // Save all the statuses in a single transaction. Note that the messages are put on the send queue only after
+        // this method returns so their prepared status is always stored before they can be sent or resent.
+        try {
+            this.mailStatusStore.save(statuses, parameters);
+        } catch (MailStoreException e) {
+            // Try to save the statuses one by one to not lose all of them because of a single one
+            this.logger.warn("Failed to save [{}] mail statuses at once to the database, saving them one by one. "
+                + "Reason [{}].", statuses.size(), ExceptionUtils.getRootCauseMessage(e));
+            for (MailStatus status : statuses) {
+                saveStatus(status, parameters);
+            }
+        }
+    }
+
     @Override
     public void onPrepareMessageError(ExtendedMimeMessage message, Exception exception, Map<String, Object> parameters)
     {
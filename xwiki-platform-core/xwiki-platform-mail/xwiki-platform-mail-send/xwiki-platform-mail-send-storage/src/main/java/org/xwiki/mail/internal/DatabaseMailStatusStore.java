@@ -19,6 +19,8 @@
  */
 package org.xwiki.mail.internal;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -56,6 +58,14 @@ public class DatabaseMailStatusStore implements MailStatusStore
 {
     private static final String ID_PARAMETER_NAME = "id";
 
+    private static final String DELETE_QUERY =
+        String.format("delete from %s where mail_id=:id", MailStatus.class.getName());
+
+    private static final String IDS_PARAMETER_NAME = "ids";
+
+    private static final String DELETE_ALL_QUERY =
+        String.format("delete from %s where mail_id in (:ids)", MailStatus.class.getName());
+
     @Inject
     private Logger logger;
 
@@ -68,6 +78,30 @@ public class DatabaseMailStatusStore implements MailStatusStore
 
     @Override
     public void save(final MailStatus status, final Map<String, Object> parameters) throws MailStoreException
+    {
+        try {
+            saveInTransaction(Collections.singletonList(status));
+        } catch (Exception e) {
+            throw new MailStoreException(String.format("Failed to save mail status [%s] to the database.", status), e);
+        }
+    }
+
+    @Override
+    public void save(Collection<MailStatus> statuses, Map<String, Object> parameters) throws MailStoreException
+    {
+        if (statuses.isEmpty()) {
+            return;
+        }
+
+        try {
+            saveInTransaction(statuses);
+        } catch (Exception e) {
+            throw new MailStoreException(
+                String.format("Failed to save [%s] mail statuses to the database.", statuses.size()), e);
+        }
+    }
+
+    private void saveInTransaction(final Collection<MailStatus> statuses) throws XWikiException
     {
         XWikiHibernateBaseStore store = (XWikiHibernateBaseStore) this.hibernateStore;
 
@@ -77,23 +111,32 @@ public void save(final MailStatus status, final Map<String, Object> parameters)
         xwikiContext.setWikiId(xwikiContext.getMainXWiki());
 
         try {
-            // Delete any previous state of the message
-            delete(status.getMessageId(), parameters);
-
             store.executeWrite(xwikiContext, new XWikiHibernateBaseStore.HibernateCallback<Object>()
             {
                 @Override
                 public Object doInHibernate(Session session) throws HibernateException, XWikiException
                 {
-                    session.save(status);
+                    // Delete any previous state of the messages, in the same transaction
+                    List<String> messageIds = new ArrayList<>(statuses.size());
+                    for (MailStatus status : statuses) {
+                        messageIds.add(status.getMessageId());
+                    }
+                    session.createQuery(DELETE_ALL_QUERY).setParameterList(IDS_PARAMETER_NAME, messageIds)
+                        .executeUpdate();
+
+                    for (MailStatus status : statuses) {
+                        session.save(status);
+                    }
                     return null;
                 }
             });
 
             // Log the save for debugging purpose
-            this.logger.debug("Saved mail status [{}]", status);
-        } catch (Exception e) {
-            throw new MailStoreException(String.format("Failed to save mail status [%s] to the database.", status), e);
+            if (this.logger.isDebugEnabled()) {
+                for (MailStatus status : statuses) {
+                    this.logger.debug("Saved mail status [{}]", status);
+                }
+            }
         } finally {
             xwikiContext.setWikiId(currentWiki);
         }
@@ -219,8 +262,7 @@ public void delete(final String uniqueMessageId, Map<String, Object> parameters)
                 public Object doInHibernate(Session session) throws HibernateException, XWikiException
                 {
                     // Delete the message
-                    String queryString = String.format("delete from %s where mail_id=:id", MailStatus.class.getName());
-                    session.createQuery(queryString).setParameter(ID_PARAMETER_NAME, uniqueMessageId).executeUpdate();
+                    session.createQuery(DELETE_QUERY).setParameter(ID_PARAMETER_NAME, uniqueMessageId).executeUpdate();
                     return null;
                 }
             });
@@ -20,6 +20,7 @@
 package org.xwiki.mail.internal;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.UUID;
 
@@ -45,10 +46,13 @@
 import com.xpn.xwiki.XWikiContext;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -104,6 +108,40 @@ public void onPrepareSuccess() throws Exception
         verify(mailStatusStore).save(argThat(new isSameMailStatus(MailState.PREPARE_SUCCESS, "mywiki")), anyMap());
     }
 
+    @Test
+    public void onPrepareMessagesSuccess() throws Exception
+    {
+        MailStatusStore mailStatusStore = this.mocker.getInstance(MailStatusStore.class, "database");
+
+        MailListener listener = this.mocker.getComponentUnderTest();
+        listener.onPrepareBegin(batchId, Collections.<String, Object>emptyMap());
+        listener.onPrepareMessagesSuccess(Arrays.asList(this.message), Collections.<String, Object>emptyMap());
+
+        // The statuses are saved all at once
+        ArgumentCaptor<Collection<MailStatus>> statusesCapture = ArgumentCaptor.forClass(Collection.class);
+        verify(mailStatusStore).save(statusesCapture.capture(), anyMap());
+        verify(mailStatusStore, never()).save(any(MailStatus.class), anyMap());
+        assertEquals(1, statusesCapture.getValue().size());
+        assertTrue(new isSameMailStatus(MailState.PREPARE_SUCCESS, "mywiki").matches(
+            statusesCapture.getValue().iterator().next()));
+    }
+
+    @Test
+    public void onPrepareMessagesSuccessWhenSaveFails() throws Exception
+    {
+        MailStatusStore mailStatusStore = this.mocker.getInstance(MailStatusStore.class, "database");
+        doThrow(new MailStoreException("error")).when(mailStatusStore).save(anyCollection(), anyMap());
+
+        MailListener listener = this.mocker.getComponentUnderTest();
+        listener.onPrepareBegin(batchId, Collections.<String, Object>emptyMap());
+        listener.onPrepareMessagesSuccess(Arrays.asList(this.message), Collections.<String, Object>emptyMap());
+
+        // The statuses are saved one by one when they cannot be saved at once
+        verify(mailStatusStore).save(argThat(new isSameMailStatus(MailState.PREPARE_SUCCESS, "mywiki")), anyMap());
+        assertEquals("Failed to save [1] mail statuses at once to the database, saving them one by one. "
+            + "Reason [MailStoreException: error].", this.logRule.getMessage(0));
+    }
+
     @Test
     public void onPrepareError() throws Exception
     {
@@ -51,4 +51,13 @@
      * @since 9.6RC1
      */
     int liveNotificationsGraceTime();
+
+    /**
+     * When the inbox is enabled, the users who should be notified about an event are computed when the event is
+     * stored, so that displaying the notifications of a user only requires to read the inbox of that user.
+     *
+     * @return true if the notifications should be stored in a per-user inbox
+     * @since 9.10RC1
+     */
+    boolean isInboxEnabled();
 }
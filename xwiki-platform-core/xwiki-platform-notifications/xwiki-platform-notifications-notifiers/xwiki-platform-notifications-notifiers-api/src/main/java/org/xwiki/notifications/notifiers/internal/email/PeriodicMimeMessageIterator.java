@@ -26,6 +26,7 @@
 
 import javax.inject.Inject;
 
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
@@ -34,6 +35,8 @@
 import org.xwiki.notifications.CompositeEvent;
 import org.xwiki.notifications.NotificationException;
 import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.notifications.sources.NotificationEventIndex;
+import org.xwiki.notifications.sources.NotificationEventIndexManager;
 import org.xwiki.notifications.sources.NotificationManager;
 
 /**
@@ -50,11 +53,16 @@ public class PeriodicMimeMessageIterator extends AbstractMimeMessageIterator
     @Inject
     private NotificationManager notificationManager;
 
+    @Inject
+    private NotificationEventIndexManager eventIndexManager;
+
     @Inject
     private EntityReferenceSerializer<String> serializer;
 
     private Date lastTrigger;
 
+    private NotificationEventIndex eventIndex;
+
     /**
      * Initialize the iterator.
      *
@@ -67,11 +75,24 @@ public void initialize(NotificationUserIterator userIterator, Map<String, Object
             Date lastTrigger, DocumentReference templateReference)
     {
         this.lastTrigger = lastTrigger;
+
+        // Load the events of the period only once for all the users
+        try {
+            this.eventIndex = eventIndexManager.createIndex(lastTrigger);
+        } catch (NotificationException e) {
+            logger.warn("Failed to load the events which happened since [{}], they will be queried for each user. "
+                    + "Reason [{}].", lastTrigger, ExceptionUtils.getRootCauseMessage(e));
+        }
+
         super.initialize(userIterator, factoryParameters, templateReference);
     }
 
     protected List<CompositeEvent> retrieveCompositeEventList(DocumentReference user) throws NotificationException
     {
+        if (eventIndex != null) {
+            return eventIndexManager.getEvents(eventIndex, user, NotificationFormat.EMAIL);
+        }
+
         return notificationManager.getEvents(serializer.serialize(user),
                 NotificationFormat.EMAIL, false, Integer.MAX_VALUE / 4, null,
                 lastTrigger, Collections.emptyList());
@@ -40,6 +40,8 @@
 import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.notifications.CompositeEvent;
 import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.notifications.sources.NotificationEventIndex;
+import org.xwiki.notifications.sources.NotificationEventIndexManager;
 import org.xwiki.notifications.sources.NotificationManager;
 import org.xwiki.notifications.notifiers.email.NotificationEmailRenderer;
 import org.xwiki.notifications.notifiers.internal.email.NotificationUserIterator;
@@ -51,6 +53,9 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -166,4 +171,40 @@ public void test() throws Exception
         assertEquals(iterator, iterator.iterator());
     }
 
+    @Test
+    public void withEventIndex() throws Exception
+    {
+        DocumentReference templateReference = new DocumentReference("xwiki", "XWiki", "Template");
+        Map<String, Object> factoryParameters = new HashedMap();
+
+        NotificationUserIterator userIterator = mock(NotificationUserIterator.class);
+        DocumentReference userA = new DocumentReference("xwiki", "XWiki", "UserA");
+        when(userIterator.hasNext()).thenReturn(true, false);
+        when(userIterator.next()).thenReturn(userA);
+        DocumentReference userClass = new DocumentReference("xwiki", "XWiki", "XWikiUsers");
+        when(documentAccessBridge.getProperty(userA, userClass, 0, "email")).thenReturn("userA@xwiki.org");
+
+        // The events of the period are loaded once and the events of each user are taken from them
+        NotificationEventIndexManager eventIndexManager = mocker.getInstance(NotificationEventIndexManager.class);
+        NotificationEventIndex eventIndex = mock(NotificationEventIndex.class);
+        when(eventIndexManager.createIndex(new Date(0L))).thenReturn(eventIndex);
+        CompositeEvent event1 = mock(CompositeEvent.class);
+        when(eventIndexManager.getEvents(eventIndex, userA, NotificationFormat.EMAIL))
+                .thenReturn(Arrays.asList(event1));
+
+        MimeMessage message = mock(MimeMessage.class);
+        when(factory.createMessage(templateReference, factoryParameters)).thenReturn(message);
+
+        PeriodicMimeMessageIterator iterator = mocker.getComponentUnderTest();
+        iterator.initialize(userIterator, factoryParameters, new Date(0L), templateReference);
+
+        assertTrue(iterator.hasNext());
+        assertEquals(message, iterator.next());
+        Map<String, Object> velocityVariables = (Map<String, Object>) factoryParameters.get("velocityVariables");
+        assertEquals(Arrays.asList(event1), velocityVariables.get("events"));
+        assertFalse(iterator.hasNext());
+
+        verify(notificationManager, never()).getEvents(any(), any(NotificationFormat.class), anyBoolean(), anyInt(),
+                any(), any(), any());
+    }
 }
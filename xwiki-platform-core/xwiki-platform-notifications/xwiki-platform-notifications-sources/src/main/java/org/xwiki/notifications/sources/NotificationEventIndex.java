@@ -0,0 +1,41 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources;
+
+import java.util.Date;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * The events of a period, loaded once so that the notifications of many users can be computed for that period without
+ * querying the events for each of them.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ * @see NotificationEventIndexManager
+ */
+@Unstable
+public interface NotificationEventIndex
+{
+    /**
+     * @return the date from which the events have been loaded
+     */
+    Date getFromDate();
+}
@@ -0,0 +1,63 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources;
+
+import java.util.Date;
+import java.util.List;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.NotificationException;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Get the notifications of many users for the same period (e.g. for the notification emails) by loading the events of
+ * the period only once, instead of querying the events for each user.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Role
+@Unstable
+public interface NotificationEventIndexManager
+{
+    /**
+     * Load and index all the events which happened since the given date.
+     *
+     * @param fromDate only load the events which happened after this date
+     * @return the index of the events
+     * @throws NotificationException if the events cannot be loaded
+     */
+    NotificationEventIndex createIndex(Date fromDate) throws NotificationException;
+
+    /**
+     * Get the notifications of a user among the indexed events.
+     *
+     * @param index the index of the events of the period, created with {@link #createIndex(Date)}
+     * @param user the user interested in the notifications
+     * @param format only match notifications enabled for that format
+     * @return the matching composite events
+     * @throws NotificationException if error happens
+     */
+    List<CompositeEvent> getEvents(NotificationEventIndex index, DocumentReference user, NotificationFormat format)
+        throws NotificationException;
+}
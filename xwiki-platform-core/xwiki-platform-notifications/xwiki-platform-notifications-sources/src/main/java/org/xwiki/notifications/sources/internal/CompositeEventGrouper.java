@@ -0,0 +1,317 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.xwiki.eventstream.Event;
+import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.NotificationException;
+import org.xwiki.notifications.internal.SimilarityCalculator;
+
+/**
+ * Group the events into composite events, according to their similarity.
+ * <p>
+ * Two events can only be similar if they have the same document and group id, the same document and type, or the
+ * same type when the new event has no document (see {@link SimilarityCalculator}). So instead of computing the
+ * similarity between the new event and every event already grouped, each composite event indexes its events by these
+ * keys and only the first event matching each key is compared, which gives the same result since all the other events
+ * of a composite event matching the same key have the same similarity with the new event.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class CompositeEventGrouper
+{
+    /**
+     * The similarity is lowered by this value when it's lower than the similarity between the events of the composite
+     * event.
+     */
+    private static final int PENALTY = 5;
+
+    private final SimilarityCalculator similarityCalculator;
+
+    private final List<CompositeEvent> compositeEvents = new ArrayList<>();
+
+    private final Map<CompositeEvent, EventIndex> indexes = new IdentityHashMap<>();
+
+    /**
+     * The events of a composite event, indexed by the keys which can make them similar to another event.
+     */
+    private static class EventIndex
+    {
+        private final Map<Object, List<Event>> byDocumentAndGroupId = new HashMap<>();
+
+        private final Map<Object, List<Event>> byDocumentAndType = new HashMap<>();
+
+        private final Map<Object, List<Event>> byType = new HashMap<>();
+
+        void add(Event event)
+        {
+            add(this.byDocumentAndGroupId, getDocumentAndGroupId(event), event);
+            add(this.byDocumentAndType, getDocumentAndType(event), event);
+            add(this.byType, event.getType(), event);
+        }
+
+        void remove(Event event)
+        {
+            remove(this.byDocumentAndGroupId, getDocumentAndGroupId(event), event);
+            remove(this.byDocumentAndType, getDocumentAndType(event), event);
+            remove(this.byType, event.getType(), event);
+        }
+
+        Event getFirstWithDocumentAndGroupId(Event event)
+        {
+            return getFirst(this.byDocumentAndGroupId, getDocumentAndGroupId(event));
+        }
+
+        Event getFirstWithDocumentAndType(Event event)
+        {
+            return getFirst(this.byDocumentAndType, getDocumentAndType(event));
+        }
+
+        Event getFirstWithType(Event event)
+        {
+            return getFirst(this.byType, event.getType());
+        }
+
+        private static void add(Map<Object, List<Event>> map, Object key, Event event)
+        {
+            if (key != null) {
+                map.computeIfAbsent(key, k -> new LinkedList<>()).add(event);
+            }
+        }
+
+        private static void remove(Map<Object, List<Event>> map, Object key, Event event)
+        {
+            if (key != null) {
+                List<Event> events = map.get(key);
+                if (events != null) {
+                    events.remove(event);
+                    if (events.isEmpty()) {
+                        map.remove(key);
+                    }
+                }
+            }
+        }
+
+        private static Event getFirst(Map<Object, List<Event>> map, Object key)
+        {
+            if (key != null) {
+                List<Event> events = map.get(key);
+                if (events != null) {
+                    return events.get(0);
+                }
+            }
+
+            return null;
+        }
+
+        private static Object getDocumentAndGroupId(Event event)
+        {
+            if (event.getDocument() != null && event.getGroupId() != null) {
+                return new ImmutablePair<>(event.getDocument(), event.getGroupId());
+            }
+
+            return null;
+        }
+
+        private static Object getDocumentAndType(Event event)
+        {
+            if (event.getDocument() != null && event.getType() != null) {
+                return new ImmutablePair<>(event.getDocument(), event.getType());
+            }
+
+            return null;
+        }
+    }
+
+    private class BestSimilarity
+    {
+        public int value;
+        public CompositeEvent compositeEvent;
+        public Event event;
+
+        public boolean isCompositeEventCompatibleWith(Event event)
+        {
+            // Here we have a composite event made of A and B.
+            // - if A is a "create" or an "update" event
+            // - if A and B have the same groupId (which means A or B is a "create" or an "update" event basically)
+            // - if B has the same type than E
+            // (or vice versa)
+            // It means the "update" event A has been triggered for technical reason, but the interesting event is
+            // B, which we can group with the event E even if it lowers the similarity between the events.
+            return compositeEvent.getSimilarityBetweenEvents() >= SimilarityCalculator.SAME_GROUP_ID
+                    && compositeEvent.getType().equals(event.getType());
+        }
+    }
+
+    /**
+     * @param similarityCalculator the calculator used to compute the similarity between two events
+     */
+    public CompositeEventGrouper(SimilarityCalculator similarityCalculator)
+    {
+        this.similarityCalculator = similarityCalculator;
+    }
+
+    /**
+     * @return the composite events created so far
+     */
+    public List<CompositeEvent> getCompositeEvents()
+    {
+        return this.compositeEvents;
+    }
+
+    /**
+     * Add an event to the most similar composite event, or to a new composite event.
+     *
+     * @param event the event to group
+     * @throws NotificationException if the event cannot be added to a composite event
+     */
+    public void recordEvent(Event event) throws NotificationException
+    {
+        BestSimilarity bestSimilarity = getBestSimilarity(event);
+
+        if (bestSimilarity.compositeEvent != null) {
+            if (bestSimilarity.value > bestSimilarity.compositeEvent.getSimilarityBetweenEvents()
+                    && bestSimilarity.compositeEvent.getEvents().size() > 1) {
+                // We have found an event A inside a composite event C1 that have a greater similarity with the event E
+                // than the similarity between events (A, B, C) of that composite event (C1).
+                //
+                // It means we must remove the existing event A from that composite event C1 and create a new composite
+                // event C2 made of A and E.
+                remove(bestSimilarity.compositeEvent, bestSimilarity.event);
+
+                // Instead of creating a new composite event with A and E, we first look if an other composite event can
+                // match with A and E.
+                BestSimilarity bestSecondChoice = getBestSimilarity(event);
+                if (bestSecondChoice.compositeEvent != null
+                        && bestSecondChoice.isCompositeEventCompatibleWith(event)) {
+                    // We have found a composite event C2 made of events (X, Y) which have a greater similarity between
+                    // themselves than between X and the event E.
+                    // It means we cannot add E in C2.
+                    // But there is actually an exception:
+                    // - if X is a "create" or an "update" event
+                    // - if X and Y have the same groupId
+                    // - if Y has the same type than E
+                    // (or vice versa)
+                    // It means the "update" event X has been triggered for technical reason, but the interesting event
+                    // is Y, which we can group with the event E.
+                    add(bestSecondChoice.compositeEvent, bestSimilarity.event,
+                            bestSecondChoice.compositeEvent.getSimilarityBetweenEvents());
+                    add(bestSecondChoice.compositeEvent, event,
+                            bestSecondChoice.compositeEvent.getSimilarityBetweenEvents());
+                } else {
+                    CompositeEvent newCompositeEvent = create(event);
+                    add(newCompositeEvent, bestSimilarity.event, bestSimilarity.value);
+                }
+
+                return;
+            } else if (bestSimilarity.value >= bestSimilarity.compositeEvent.getSimilarityBetweenEvents()) {
+                // We have found a composite event C1 made of events (A, B, C) which have the same similarity between
+                // themselves than between A end E.
+                // All we need to do it to add E to C1.
+                add(bestSimilarity.compositeEvent, event, bestSimilarity.value);
+                return;
+            } else if (bestSimilarity.isCompositeEventCompatibleWith(event)) {
+                // We have found a composite event C1 made of events (A, B) which have a greater similarity between
+                // themselves than between A and the event E.
+                // It means we cannot add E in C1.
+                // But there is actually an exception:
+                // - if A is a "create" or an "update" event
+                // - if A and B have the same groupId
+                // - if B has the same type than E
+                // (or vice versa)
+                // It means the "update" event A has been triggered for technical reason, but the interesting event is
+                // B, which we can group with the event E.
+                add(bestSimilarity.compositeEvent, event, bestSimilarity.compositeEvent.getSimilarityBetweenEvents());
+                return;
+            }
+        }
+        // We haven't found an event that is similar to the current one, so we create a new composite event
+        create(event);
+    }
+
+    private CompositeEvent create(Event event)
+    {
+        CompositeEvent compositeEvent = new CompositeEvent(event);
+        EventIndex index = new EventIndex();
+        index.add(event);
+
+        this.compositeEvents.add(compositeEvent);
+        this.indexes.put(compositeEvent, index);
+
+        return compositeEvent;
+    }
+
+    private void add(CompositeEvent compositeEvent, Event event, int similarity) throws NotificationException
+    {
+        compositeEvent.add(event, similarity);
+        this.indexes.get(compositeEvent).add(event);
+    }
+
+    private void remove(CompositeEvent compositeEvent, Event event)
+    {
+        compositeEvent.remove(event);
+        this.indexes.get(compositeEvent).remove(event);
+    }
+
+    private BestSimilarity getBestSimilarity(Event event)
+    {
+        BestSimilarity bestSimilarity = new BestSimilarity();
+
+        // Looking for the most similar event inside the existing composite events. Only the first event matching each
+        // key is compared since it's the one that would have been kept when comparing all the events in order.
+        for (CompositeEvent existingCompositeEvent : this.compositeEvents) {
+            EventIndex index = this.indexes.get(existingCompositeEvent);
+            if (event.getDocument() != null) {
+                compare(event, index.getFirstWithDocumentAndGroupId(event), existingCompositeEvent, bestSimilarity);
+                compare(event, index.getFirstWithDocumentAndType(event), existingCompositeEvent, bestSimilarity);
+            } else {
+                compare(event, index.getFirstWithType(event), existingCompositeEvent, bestSimilarity);
+            }
+        }
+
+        return bestSimilarity;
+    }
+
+    private void compare(Event event, Event existingEvent, CompositeEvent existingCompositeEvent,
+            BestSimilarity bestSimilarity)
+    {
+        if (existingEvent != null) {
+            int similarity = similarityCalculator.computeSimilarity(event, existingEvent);
+            if (similarity < existingCompositeEvent.getSimilarityBetweenEvents()) {
+                // Penality
+                similarity -= PENALTY;
+            }
+            if (similarity > bestSimilarity.value) {
+                bestSimilarity.value = similarity;
+                bestSimilarity.event = existingEvent;
+                bestSimilarity.compositeEvent = existingCompositeEvent;
+            }
+        }
+    }
+}
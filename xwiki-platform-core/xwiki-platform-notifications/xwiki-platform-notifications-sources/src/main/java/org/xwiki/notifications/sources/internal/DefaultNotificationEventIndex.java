@@ -0,0 +1,202 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xwiki.eventstream.Event;
+import org.xwiki.notifications.filters.expression.AndNode;
+import org.xwiki.notifications.filters.expression.EqualsNode;
+import org.xwiki.notifications.filters.expression.EventProperty;
+import org.xwiki.notifications.filters.expression.ExpressionNode;
+import org.xwiki.notifications.filters.expression.InNode;
+import org.xwiki.notifications.filters.expression.OrNode;
+import org.xwiki.notifications.filters.expression.PropertyValueNode;
+import org.xwiki.notifications.filters.expression.generics.AbstractBinaryOperatorNode;
+import org.xwiki.notifications.filters.expression.generics.AbstractNode;
+import org.xwiki.notifications.filters.expression.generics.AbstractValueNode;
+import org.xwiki.notifications.sources.NotificationEventIndex;
+
+/**
+ * The events of a period, loaded once and indexed by location, type and author so that the events which can match the
+ * preferences and filters of a user are found without going through all the events.
+ * <p>
+ * The index only returns candidates: the expression generated for the user still has to be evaluated on each of them
+ * with {@link ExpressionNodeEvaluator}. Only the equality conditions on an indexed property which are required by the
+ * expression are used to restrict the candidates, any other condition keeps all the events.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class DefaultNotificationEventIndex implements NotificationEventIndex
+{
+    private static final Set<EventProperty> INDEXED_PROPERTIES =
+        EnumSet.of(EventProperty.TYPE, EventProperty.WIKI, EventProperty.PAGE, EventProperty.USER);
+
+    private final Date fromDate;
+
+    private final List<Event> events;
+
+    private final ExpressionNodeEvaluator evaluator;
+
+    /**
+     * The positions of the events in the list of events, by indexed property and value.
+     */
+    private final Map<EventProperty, Map<Object, Set<Integer>>> indexes = new EnumMap<>(EventProperty.class);
+
+    /**
+     * @param fromDate the date from which the events have been loaded
+     * @param events the events of the period, ordered by date (most recent first)
+     * @param evaluator the evaluator used to get the values of the indexed properties
+     */
+    public DefaultNotificationEventIndex(Date fromDate, List<Event> events, ExpressionNodeEvaluator evaluator)
+    {
+        this.fromDate = fromDate;
+        this.events = events;
+        this.evaluator = evaluator;
+
+        for (EventProperty property : INDEXED_PROPERTIES) {
+            this.indexes.put(property, new HashMap<>());
+        }
+        for (int i = 0; i < events.size(); ++i) {
+            for (EventProperty property : INDEXED_PROPERTIES) {
+                Object value = evaluator.getValue(property, events.get(i));
+                if (value != null) {
+                    this.indexes.get(property).computeIfAbsent(value, k -> new HashSet<>()).add(i);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Date getFromDate()
+    {
+        return this.fromDate;
+    }
+
+    /**
+     * @return all the events of the period, ordered by date (most recent first)
+     */
+    public List<Event> getEvents()
+    {
+        return this.events;
+    }
+
+    /**
+     * @param expression the expression generated for a user
+     * @return the events which can match the given expression, ordered by date (most recent first)
+     */
+    public List<Event> getCandidates(ExpressionNode expression)
+    {
+        Set<Integer> positions = getPositions(expression);
+        if (positions == null) {
+            return this.events;
+        }
+
+        List<Integer> sortedPositions = new ArrayList<>(positions);
+        Collections.sort(sortedPositions);
+
+        List<Event> candidates = new ArrayList<>(sortedPositions.size());
+        for (Integer position : sortedPositions) {
+            candidates.add(this.events.get(position));
+        }
+
+        return candidates;
+    }
+
+    /**
+     * @return the positions of the events which can match the expression, or null if any event can match it
+     */
+    private Set<Integer> getPositions(ExpressionNode node)
+    {
+        if (node instanceof OrderByNode) {
+            return getPositions(((OrderByNode) node).getQuery());
+        } else if (node instanceof AndNode) {
+            return intersect(getPositions(((AndNode) node).getLeftOperand()),
+                getPositions(((AndNode) node).getRightOperand()));
+        } else if (node instanceof OrNode) {
+            return union(getPositions(((OrNode) node).getLeftOperand()),
+                getPositions(((OrNode) node).getRightOperand()));
+        } else if (node instanceof EqualsNode) {
+            AbstractBinaryOperatorNode operator = (AbstractBinaryOperatorNode) node;
+            Set<Integer> positions = lookup(operator.getLeftOperand(), operator.getRightOperand());
+            return positions != null ? positions : lookup(operator.getRightOperand(), operator.getLeftOperand());
+        } else if (node instanceof InNode) {
+            InNode operator = (InNode) node;
+            Set<Integer> positions = new HashSet<>();
+            for (AbstractValueNode value : operator.getValues()) {
+                positions = union(positions, lookup(operator.getLeftOperand(), value));
+            }
+            return positions;
+        }
+
+        return null;
+    }
+
+    private Set<Integer> lookup(AbstractNode property, AbstractNode value)
+    {
+        if (property instanceof PropertyValueNode && value instanceof AbstractValueNode
+                && !(value instanceof PropertyValueNode)) {
+            Map<Object, Set<Integer>> index = this.indexes.get(((PropertyValueNode) property).getContent());
+            if (index != null) {
+                Object key = this.evaluator.getValue((AbstractValueNode) value, null);
+                Set<Integer> positions = key != null ? index.get(key.toString()) : null;
+                return positions != null ? new HashSet<>(positions) : new HashSet<>();
+            }
+        }
+
+        return null;
+    }
+
+    private Set<Integer> intersect(Set<Integer> left, Set<Integer> right)
+    {
+        if (left == null) {
+            return right;
+        } else if (right == null) {
+            return left;
+        }
+
+        Set<Integer> smaller = left.size() < right.size() ? left : right;
+        Set<Integer> bigger = smaller == left ? right : left;
+        smaller.retainAll(bigger);
+
+        return smaller;
+    }
+
+    private Set<Integer> union(Set<Integer> left, Set<Integer> right)
+    {
+        if (left == null || right == null) {
+            return null;
+        }
+
+        left.addAll(right);
+
+        return left;
+    }
+}
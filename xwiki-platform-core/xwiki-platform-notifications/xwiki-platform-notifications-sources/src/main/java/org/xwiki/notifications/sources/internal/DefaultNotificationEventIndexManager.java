@@ -0,0 +1,199 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.EventStream;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.NotificationException;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.notifications.filters.NotificationFilter;
+import org.xwiki.notifications.filters.NotificationFilterManager;
+import org.xwiki.notifications.filters.expression.ExpressionNode;
+import org.xwiki.notifications.internal.SimilarityCalculator;
+import org.xwiki.notifications.sources.NotificationEventIndex;
+import org.xwiki.notifications.sources.NotificationEventIndexManager;
+import org.xwiki.notifications.sources.NotificationManager;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+/**
+ * Default implementation of {@link NotificationEventIndexManager}: the events of the period are loaded in a
+ * {@link DefaultNotificationEventIndex} and the expression generated for each user is evaluated on them with
+ * {@link ExpressionNodeEvaluator}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component
+@Singleton
+public class DefaultNotificationEventIndexManager implements NotificationEventIndexManager
+{
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String FROM_DATE = "fromDate";
+
+    @Inject
+    private EventStream eventStream;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private QueryGenerator queryGenerator;
+
+    @Inject
+    private ExpressionNodeEvaluator evaluator;
+
+    @Inject
+    private AuthorizationManager authorizationManager;
+
+    @Inject
+    private NotificationFilterManager notificationFilterManager;
+
+    @Inject
+    private SimilarityCalculator similarityCalculator;
+
+    @Inject
+    private NotificationManager notificationManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    @Named("user")
+    private ConfigurationSource userPreferencesSource;
+
+    @Override
+    public NotificationEventIndex createIndex(Date fromDate) throws NotificationException
+    {
+        // The hidden flag is not available on the events so the hidden events are excluded here, like the query
+        // generated for the users would do
+        StringBuilder statement = new StringBuilder("where event.date >= :fromDate");
+        if (userPreferencesSource.getProperty("displayHiddenDocuments", 0) == 0) {
+            statement.append(" and event.hidden <> true");
+        }
+        // Ascending order so that the events stored while loading the period don't shift the next batches
+        statement.append(" order by event.date asc, event.id asc");
+
+        List<Event> events = new ArrayList<>();
+        try {
+            List<Event> batch;
+            int offset = 0;
+            do {
+                Query query = queryManager.createQuery(statement.toString(), Query.HQL);
+                query.bindValue(FROM_DATE, fromDate);
+                query.setLimit(BATCH_SIZE);
+                query.setOffset(offset);
+
+                batch = eventStream.searchEvents(query);
+                events.addAll(batch);
+                offset += BATCH_SIZE;
+            } while (batch.size() == BATCH_SIZE);
+        } catch (QueryException e) {
+            throw new NotificationException(
+                String.format("Failed to load the events which happened since [%s].", fromDate), e);
+        }
+
+        // Most recent events first, like the notifications
+        Collections.reverse(events);
+
+        return new DefaultNotificationEventIndex(fromDate, events, evaluator);
+    }
+
+    @Override
+    public List<CompositeEvent> getEvents(NotificationEventIndex index, DocumentReference user,
+            NotificationFormat format) throws NotificationException
+    {
+        if (!(index instanceof DefaultNotificationEventIndex)) {
+            throw new NotificationException(String.format("Unsupported event index [%s].", index));
+        }
+
+        try {
+            // The start date is already handled by the index
+            ExpressionNode expression = queryGenerator.generateQueryExpression(user, format, false, null, null,
+                    Collections.emptyList());
+            if (expression == null) {
+                return Collections.emptyList();
+            }
+
+            // Some filters could generate conditions that only the database can check
+            if (!evaluator.canEvaluate(expression)) {
+                return notificationManager.getEvents(serializer.serialize(user), format, false,
+                        Integer.MAX_VALUE / 4, null, index.getFromDate(), Collections.emptyList());
+            }
+
+            Set<NotificationFilter> filters = notificationFilterManager.getAllFilters(user);
+            CompositeEventGrouper grouper = new CompositeEventGrouper(similarityCalculator);
+            for (Event event : ((DefaultNotificationEventIndex) index).getCandidates(expression)) {
+                if (!evaluator.matches(expression, event)) {
+                    continue;
+                }
+
+                // Don't record events concerning a doc the user cannot see
+                DocumentReference document = event.getDocument();
+                if (document != null && !authorizationManager.hasAccess(Right.VIEW, user, document)) {
+                    continue;
+                }
+
+                if (filterEvent(filters, event, user, format)) {
+                    continue;
+                }
+
+                grouper.recordEvent(event);
+            }
+
+            return grouper.getCompositeEvents();
+        } catch (NotificationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new NotificationException("Fail to get the list of notifications.", e);
+        }
+    }
+
+    private boolean filterEvent(Set<NotificationFilter> filters, Event event, DocumentReference user,
+            NotificationFormat format)
+    {
+        for (NotificationFilter filter : filters) {
+            if (filter.filterEvent(event, user, format)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -34,6 +34,7 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.NotificationConfiguration;
 import org.xwiki.notifications.NotificationException;
 import org.xwiki.notifications.NotificationFormat;
 import org.xwiki.notifications.filters.NotificationFilter;
@@ -80,6 +81,15 @@ public class DefaultNotificationManager implements NotificationManager
     @Inject
     private NotificationFilterManager notificationFilterManager;
 
+    @Inject
+    private NotificationConfiguration notificationConfiguration;
+
+    @Inject
+    private NotificationInboxManager inboxManager;
+
+    @Inject
+    private NotificationCountCache countCache;
+
     /**
      * For internal use, avoid to give more than 7 parameters to methods.
      */
@@ -111,7 +121,7 @@ public class DefaultNotificationManager implements NotificationManager
     public List<CompositeEvent> getEvents(String userId, boolean onlyUnread, int expectedCount)
             throws NotificationException
     {
-        return getEvents(new ArrayList<>(),
+        return getEvents(new CompositeEventGrouper(similarityCalculator),
                 new Parameters(
                     documentReferenceResolver.resolve(userId),
                     NotificationFormat.ALERT,
@@ -128,7 +138,7 @@ public List<CompositeEvent> getEvents(String userId, boolean onlyUnread, int exp
     public List<CompositeEvent> getEvents(String userId, boolean onlyUnread, int count, Date untilDate,
             List<String> blackList) throws NotificationException
     {
-        return getEvents(new ArrayList<>(),
+        return getEvents(new CompositeEventGrouper(similarityCalculator),
                 new Parameters(
                         documentReferenceResolver.resolve(userId),
                         NotificationFormat.ALERT,
@@ -145,7 +155,7 @@ public List<CompositeEvent> getEvents(String userId, boolean onlyUnread, int cou
     public List<CompositeEvent> getEvents(String userId, boolean onlyUnread, int expectedCount, Date untilDate,
             Date fromDate, List<String> blackList) throws NotificationException
     {
-        return getEvents(new ArrayList<>(),
+        return getEvents(new CompositeEventGrouper(similarityCalculator),
                 new Parameters(
                         documentReferenceResolver.resolve(userId),
                         NotificationFormat.ALERT,
@@ -162,7 +172,7 @@ public List<CompositeEvent> getEvents(String userId, boolean onlyUnread, int exp
     public List<CompositeEvent> getEvents(String userId, NotificationFormat format, boolean onlyUnread,
             int expectedCount, Date untilDate, Date fromDate, List<String> blackList) throws NotificationException
     {
-        return getEvents(new ArrayList<>(),
+        return getEvents(new CompositeEventGrouper(similarityCalculator),
                 new Parameters(
                         documentReferenceResolver.resolve(userId),
                         format,
@@ -180,7 +190,16 @@ public long getEventsCount(String userId, boolean onlyUnread, int maxCount) thro
     {
         DocumentReference user = documentReferenceResolver.resolve(userId);
 
-        List<CompositeEvent> events = getEvents(new ArrayList<>(),
+        // The unread count is polled by the UI so we keep it in memory until it's invalidated
+        if (onlyUnread) {
+            Long count = countCache.get(user, maxCount);
+            if (count != null) {
+                return count;
+            }
+        }
+        long generation = countCache.getGeneration();
+
+        List<CompositeEvent> events = getEvents(new CompositeEventGrouper(similarityCalculator),
                 new Parameters(
                         user,
                         NotificationFormat.ALERT,
@@ -192,12 +211,21 @@ public long getEventsCount(String userId, boolean onlyUnread, int maxCount) thro
                 )
         );
 
+        if (onlyUnread) {
+            countCache.set(user, maxCount, events.size(), generation);
+        }
+
         return events.size();
     }
 
-    private List<CompositeEvent> getEvents(List<CompositeEvent> results, Parameters parameters)
+    private List<CompositeEvent> getEvents(CompositeEventGrouper grouper, Parameters parameters)
             throws NotificationException
     {
+        // The inbox only contains the events matching the alert preferences of the users
+        if (parameters.format == NotificationFormat.ALERT && notificationConfiguration.isInboxEnabled()) {
+            return getEventsFromInbox(grouper, parameters);
+        }
+
         // Because the user might not be able to see all notifications because of the rights, we take from the database
         // more events than expected and we will filter afterwards.
         final int batchSize = parameters.expectedCount * 2;
@@ -227,25 +255,60 @@ private List<CompositeEvent> getEvents(List<CompositeEvent> results, Parameters
                 }
 
                 // Record this event
-                recordEvent(results, event);
+                grouper.recordEvent(event);
                 // If the expected count is reached, stop now
-                if (results.size() >= parameters.expectedCount) {
-                    return results;
+                if (grouper.getCompositeEvents().size() >= parameters.expectedCount) {
+                    return grouper.getCompositeEvents();
                 }
             }
 
             // If we haven't get the expected number of events, perform a new batch
-            if (results.size() < parameters.expectedCount && batch.size() == batchSize) {
+            if (grouper.getCompositeEvents().size() < parameters.expectedCount && batch.size() == batchSize) {
                 parameters.blackList.addAll(getEventsIds(batch));
-                getEvents(results, parameters);
+                getEvents(grouper, parameters);
             }
 
-            return results;
+            return grouper.getCompositeEvents();
         } catch (Exception e) {
             throw new NotificationException("Fail to get the list of notifications.", e);
         }
     }
 
+    private List<CompositeEvent> getEventsFromInbox(CompositeEventGrouper grouper, Parameters parameters)
+            throws NotificationException
+    {
+        // The preferences and the filters of the user have already been applied when the events have been added to
+        // the inbox but the rights could have changed since then.
+        final int batchSize = parameters.expectedCount * 2;
+        int offset = 0;
+        List<Event> batch;
+        do {
+            batch = inboxManager.getEvents(parameters.userReference, parameters.onlyUnread, parameters.endDate,
+                    parameters.fromDate, offset, batchSize);
+
+            for (Event event : batch) {
+                if (parameters.blackList.contains(event.getId())) {
+                    continue;
+                }
+
+                DocumentReference document = event.getDocument();
+                if (document != null && !authorizationManager.hasAccess(Right.VIEW, parameters.userReference,
+                        document)) {
+                    continue;
+                }
+
+                grouper.recordEvent(event);
+                if (grouper.getCompositeEvents().size() >= parameters.expectedCount) {
+                    return grouper.getCompositeEvents();
+                }
+            }
+
+            offset += batchSize;
+        } while (batch.size() == batchSize);
+
+        return grouper.getCompositeEvents();
+    }
+
     private boolean filterEvent(Event event, DocumentReference user, NotificationFormat format)
             throws NotificationException
     {
@@ -267,115 +330,6 @@ private List<String> getEventsIds(List<Event> events)
         return list;
     }
 
-    private class BestSimilarity
-    {
-        public int value;
-        public CompositeEvent compositeEvent;
-        public Event event;
-
-        public boolean isCompositeEventCompatibleWith(Event event)
-        {
-            // Here we have a composite event made of A and B.
-            // - if A is a "create" or an "update" event
-            // - if A and B have the same groupId (which means A or B is a "create" or an "update" event basically)
-            // - if B has the same type than E
-            // (or vice versa)
-            // It means the "update" event A has been triggered for technical reason, but the interesting event is
-            // B, which we can group with the event E even if it lowers the similarity between the events.
-            return compositeEvent.getSimilarityBetweenEvents() >= SimilarityCalculator.SAME_GROUP_ID
-                    && compositeEvent.getType().equals(event.getType());
-        }
-    }
-
-    private void recordEvent(List<CompositeEvent> results, Event event) throws NotificationException
-    {
-        BestSimilarity bestSimilarity = getBestSimilarity(results, event);
-
-        if (bestSimilarity.compositeEvent != null) {
-            if (bestSimilarity.value > bestSimilarity.compositeEvent.getSimilarityBetweenEvents()
-                    && bestSimilarity.compositeEvent.getEvents().size() > 1) {
-                // We have found an event A inside a composite event C1 that have a greater similarity with the event E
-                // than the similarity between events (A, B, C) of that composite event (C1).
-                //
-                // It means we must remove the existing event A from that composite event C1 and create a new composite
-                // event C2 made of A and E.
-                bestSimilarity.compositeEvent.remove(bestSimilarity.event);
-
-                // Instead of creating a new composite event with A and E, we first look if an other composite event can
-                // match with A and E.
-                BestSimilarity bestSecondChoice = getBestSimilarity(results, event);
-                if (bestSecondChoice.compositeEvent != null
-                        && bestSecondChoice.isCompositeEventCompatibleWith(event)) {
-                    // We have found a composite event C2 made of events (X, Y) which have a greater similarity between
-                    // themselves than between X and the event E.
-                    // It means we cannot add E in C2.
-                    // But there is actually an exception:
-                    // - if X is a "create" or an "update" event
-                    // - if X and Y have the same groupId
-                    // - if Y has the same type than E
-                    // (or vice versa)
-                    // It means the "update" event X has been triggered for technical reason, but the interesting event
-                    // is Y, which we can group with the event E.
-                    bestSecondChoice.compositeEvent.add(bestSimilarity.event,
-                            bestSecondChoice.compositeEvent.getSimilarityBetweenEvents());
-                    bestSecondChoice.compositeEvent.add(event,
-                            bestSecondChoice.compositeEvent.getSimilarityBetweenEvents());
-                } else {
-                    CompositeEvent newCompositeEvent = new CompositeEvent(event);
-                    newCompositeEvent.add(bestSimilarity.event, bestSimilarity.value);
-                    results.add(newCompositeEvent);
-                }
-
-                return;
-            } else if (bestSimilarity.value >= bestSimilarity.compositeEvent.getSimilarityBetweenEvents()) {
-                // We have found a composite event C1 made of events (A, B, C) which have the same similarity between
-                // themselves than between A end E.
-                // All we need to do it to add E to C1.
-                bestSimilarity.compositeEvent.add(event, bestSimilarity.value);
-                return;
-            } else if (bestSimilarity.isCompositeEventCompatibleWith(event)) {
-                // We have found a composite event C1 made of events (A, B) which have a greater similarity between
-                // themselves than between A and the event E.
-                // It means we cannot add E in C1.
-                // But there is actually an exception:
-                // - if A is a "create" or an "update" event
-                // - if A and B have the same groupId
-                // - if B has the same type than E
-                // (or vice versa)
-                // It means the "update" event A has been triggered for technical reason, but the interesting event is
-                // B, which we can group with the event E.
-                bestSimilarity.compositeEvent.add(event,
-                        bestSimilarity.compositeEvent.getSimilarityBetweenEvents());
-                return;
-            }
-        }
-        // We haven't found an event that is similar to the current one, so we create a new composite event
-        results.add(new CompositeEvent(event));
-    }
-
-    private BestSimilarity getBestSimilarity(List<CompositeEvent> results, Event event)
-    {
-        BestSimilarity bestSimilarity = new BestSimilarity();
-
-        // Looking for the most similar event inside the existing composite events
-        for (CompositeEvent existingCompositeEvent : results) {
-            for (Event existingEvent : existingCompositeEvent.getEvents()) {
-                int similarity = similarityCalculator.computeSimilarity(event, existingEvent);
-                if (similarity < existingCompositeEvent.getSimilarityBetweenEvents()) {
-                    // Penality
-                    similarity -= 5;
-                }
-                if (similarity > bestSimilarity.value) {
-                    bestSimilarity.value = similarity;
-                    bestSimilarity.event = existingEvent;
-                    bestSimilarity.compositeEvent = existingCompositeEvent;
-                }
-            }
-        }
-
-        return bestSimilarity;
-    }
-
     @Override
     public List<NotificationPreference> getPreferences() throws NotificationException
     {
@@ -0,0 +1,331 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Date;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.eventstream.Event;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.notifications.filters.expression.AndNode;
+import org.xwiki.notifications.filters.expression.BooleanValueNode;
+import org.xwiki.notifications.filters.expression.DateValueNode;
+import org.xwiki.notifications.filters.expression.EntityReferenceNode;
+import org.xwiki.notifications.filters.expression.EqualsNode;
+import org.xwiki.notifications.filters.expression.EventProperty;
+import org.xwiki.notifications.filters.expression.ExpressionNode;
+import org.xwiki.notifications.filters.expression.GreaterThanNode;
+import org.xwiki.notifications.filters.expression.InNode;
+import org.xwiki.notifications.filters.expression.LesserThanNode;
+import org.xwiki.notifications.filters.expression.NotEqualsNode;
+import org.xwiki.notifications.filters.expression.NotNode;
+import org.xwiki.notifications.filters.expression.OrNode;
+import org.xwiki.notifications.filters.expression.PropertyValueNode;
+import org.xwiki.notifications.filters.expression.StartsWith;
+import org.xwiki.notifications.filters.expression.StringValueNode;
+import org.xwiki.notifications.filters.expression.generics.AbstractBinaryOperatorNode;
+import org.xwiki.notifications.filters.expression.generics.AbstractValueNode;
+
+/**
+ * Evaluate {@link ExpressionNode} based abstract syntax trees against events kept in memory, with the same semantic
+ * as the HQL query generated by {@link ExpressionNodeToHQLConverter}: a comparison involving a missing value is
+ * unknown, and an unknown condition does not match.
+ * <p>
+ * The hidden flag of the events is not available on {@link Event}, so the events given to this evaluator are expected
+ * to have been filtered by the query which loaded them and are considered as not hidden.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = ExpressionNodeEvaluator.class)
+@Singleton
+public class ExpressionNodeEvaluator
+{
+    private static final int IMPORTANCE_FACTOR = 10;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    @Named("local")
+    private EntityReferenceSerializer<String> localSerializer;
+
+    /**
+     * @param node the expression to check
+     * @return true if all the nodes of the given expression are supported by this evaluator
+     */
+    public boolean canEvaluate(ExpressionNode node)
+    {
+        if (node instanceof OrderByNode) {
+            return canEvaluate(((OrderByNode) node).getQuery());
+        } else if (node instanceof NotNode) {
+            return canEvaluate(((NotNode) node).getOperand());
+        } else if (node instanceof AndNode || node instanceof OrNode) {
+            AbstractBinaryOperatorNode operator = (AbstractBinaryOperatorNode) node;
+            return canEvaluate(operator.getLeftOperand()) && canEvaluate(operator.getRightOperand());
+        } else if (node instanceof EqualsNode || node instanceof NotEqualsNode || node instanceof StartsWith
+                || node instanceof GreaterThanNode || node instanceof LesserThanNode) {
+            AbstractBinaryOperatorNode operator = (AbstractBinaryOperatorNode) node;
+            return isValue(operator.getLeftOperand()) && isValue(operator.getRightOperand());
+        } else if (node instanceof InNode) {
+            return isValue(((InNode) node).getLeftOperand());
+        }
+
+        return false;
+    }
+
+    /**
+     * @param node the expression to evaluate
+     * @param event the event
+     * @return true if the given event matches the expression
+     */
+    public boolean matches(ExpressionNode node, Event event)
+    {
+        return Boolean.TRUE.equals(evaluateBlock(node, event));
+    }
+
+    /**
+     * Get the value of a property of an event, as it is stored by the event stream.
+     *
+     * @param property the property
+     * @param event the event
+     * @return the value of the property, or null if the event has no value for it
+     */
+    public Object getValue(EventProperty property, Event event)
+    {
+        switch (property) {
+            case ID:
+                return event.getId();
+            case GROUP_ID:
+                return event.getGroupId();
+            case STREAM:
+                return event.getStream();
+            case DATE:
+                return normalize(event.getDate());
+            case APPLICATION:
+                return event.getApplication();
+            case BODY:
+                return event.getBody();
+            case TYPE:
+                return event.getType();
+            case HIDDEN:
+                return Boolean.FALSE;
+            case PAGE:
+                return serialize(this.localSerializer, event.getDocument());
+            case IMPORTANCE:
+                return event.getImportance() != null ? (event.getImportance().ordinal() + 1) * IMPORTANCE_FACTOR
+                    : null;
+            case SPACE:
+                return serialize(this.localSerializer, event.getSpace());
+            case TITLE:
+                return event.getTitle();
+            case USER:
+                return serialize(this.serializer, event.getUser());
+            case WIKI:
+                return serialize(this.serializer, event.getWiki());
+            case URL:
+                return event.getUrl() != null ? event.getUrl().toString() : null;
+            case DOCUMENT_VERSION:
+                return event.getDocumentVersion();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the value of a node, as it would be bound to the HQL query.
+     *
+     * @param value the value node
+     * @param event the event, used when the node is a {@link PropertyValueNode}
+     * @return the value of the node
+     */
+    public Object getValue(AbstractValueNode value, Event event)
+    {
+        if (value instanceof PropertyValueNode) {
+            return getValue(((PropertyValueNode) value).getContent(), event);
+        } else if (value instanceof StringValueNode) {
+            return ((StringValueNode) value).getContent();
+        } else if (value instanceof EntityReferenceNode) {
+            return serialize(this.serializer, ((EntityReferenceNode) value).getContent());
+        } else if (value instanceof DateValueNode) {
+            return normalize(((DateValueNode) value).getContent());
+        } else if (value instanceof BooleanValueNode) {
+            return ((BooleanValueNode) value).getContent();
+        }
+
+        return null;
+    }
+
+    private boolean isValue(ExpressionNode node)
+    {
+        return node instanceof AbstractValueNode;
+    }
+
+    private Boolean evaluateBlock(ExpressionNode node, Event event)
+    {
+        if (node instanceof OrderByNode) {
+            return evaluateBlock(((OrderByNode) node).getQuery(), event);
+        } else if (node instanceof NotNode) {
+            Boolean operand = evaluateBlock(((NotNode) node).getOperand(), event);
+            return operand != null ? !operand : null;
+        } else if (node instanceof AndNode) {
+            return and(evaluateBlock(((AndNode) node).getLeftOperand(), event),
+                evaluateBlock(((AndNode) node).getRightOperand(), event));
+        } else if (node instanceof OrNode) {
+            return or(evaluateBlock(((OrNode) node).getLeftOperand(), event),
+                evaluateBlock(((OrNode) node).getRightOperand(), event));
+        } else if (node instanceof InNode) {
+            return evaluateIn((InNode) node, event);
+        } else if (node instanceof AbstractBinaryOperatorNode) {
+            return evaluateComparison((AbstractBinaryOperatorNode) node, event);
+        }
+
+        // Unsupported node (e.g. the list of read events): the condition is unknown
+        return null;
+    }
+
+    private Boolean evaluateComparison(AbstractBinaryOperatorNode operator, Event event)
+    {
+        if (!isValue(operator.getLeftOperand()) || !isValue(operator.getRightOperand())) {
+            return null;
+        }
+
+        Object left = getValue((AbstractValueNode) operator.getLeftOperand(), event);
+        Object right = getValue((AbstractValueNode) operator.getRightOperand(), event);
+        if (left == null || right == null) {
+            return null;
+        }
+
+        if (operator instanceof EqualsNode) {
+            return same(left, right);
+        } else if (operator instanceof NotEqualsNode) {
+            return !same(left, right);
+        } else if (operator instanceof StartsWith) {
+            return left.toString().startsWith(right.toString());
+        } else if (operator instanceof GreaterThanNode) {
+            Integer comparison = compare(left, right);
+            return comparison != null ? comparison >= 0 : null;
+        } else if (operator instanceof LesserThanNode) {
+            Integer comparison = compare(left, right);
+            return comparison != null ? comparison <= 0 : null;
+        }
+
+        return null;
+    }
+
+    private Boolean evaluateIn(InNode operator, Event event)
+    {
+        if (!isValue(operator.getLeftOperand())) {
+            return null;
+        }
+
+        Object left = getValue((AbstractValueNode) operator.getLeftOperand(), event);
+        if (left == null) {
+            return null;
+        }
+
+        Boolean result = Boolean.FALSE;
+        for (AbstractValueNode value : operator.getValues()) {
+            Object right = getValue(value, event);
+            result = or(result, right != null ? same(left, right) : null);
+        }
+
+        return result;
+    }
+
+    private Boolean and(Boolean left, Boolean right)
+    {
+        if (Boolean.FALSE.equals(left) || Boolean.FALSE.equals(right)) {
+            return Boolean.FALSE;
+        } else if (left == null || right == null) {
+            return null;
+        }
+
+        return Boolean.TRUE;
+    }
+
+    private Boolean or(Boolean left, Boolean right)
+    {
+        if (Boolean.TRUE.equals(left) || Boolean.TRUE.equals(right)) {
+            return Boolean.TRUE;
+        } else if (left == null || right == null) {
+            return null;
+        }
+
+        return Boolean.FALSE;
+    }
+
+    private boolean same(Object left, Object right)
+    {
+        if (left.getClass() != right.getClass()) {
+            Integer comparison = compare(left, right);
+            if (comparison != null) {
+                return comparison == 0;
+            }
+
+            return left.toString().equals(right.toString());
+        }
+
+        return left.equals(right);
+    }
+
+    private Integer compare(Object left, Object right)
+    {
+        if (left instanceof Number || right instanceof Number) {
+            // Like the database, convert the string values compared with a number (e.g. the importance)
+            Long leftNumber = toLong(left);
+            Long rightNumber = toLong(right);
+            return leftNumber != null && rightNumber != null ? leftNumber.compareTo(rightNumber) : null;
+        } else if (left instanceof String && right instanceof String) {
+            return ((String) left).compareTo((String) right);
+        }
+
+        return null;
+    }
+
+    private Long toLong(Object value)
+    {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+
+        try {
+            return Long.valueOf(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Long normalize(Date date)
+    {
+        // The dates coming from the database can be timestamps, which are not comparable with plain dates
+        return date != null ? date.getTime() : null;
+    }
+
+    private String serialize(EntityReferenceSerializer<String> entitySerializer, EntityReference reference)
+    {
+        return reference != null ? entitySerializer.serialize(reference) : null;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.observation.ObservationManager;
+
+/**
+ * Keep in memory the number of unread notifications of the users, so that polling it does not require to run the
+ * whole notification pipeline each time. The counts are invalidated when new events are stored or when the status of
+ * an event changes, on all the members of the cluster, and when the preferences, filters or rights of the users might
+ * have changed (see {@link NotificationCountListener}).
+ * <p>
+ * The invalidations are applied immediately on this member of the cluster, but they are sent to the other members at
+ * most every {@value #BROADCAST_DELAY} milliseconds, all together, so that adding an event to the inbox of many users
+ * does not send a message per user.
+ * <p>
+ * Not all the changes of rights can be detected (e.g. the rights set on any page) so the counts are approximate: a
+ * cached count is kept at most {@value #TIME_TO_LIVE} milliseconds.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = NotificationCountCache.class)
+@Singleton
+public class NotificationCountCache implements Disposable
+{
+    /**
+     * The maximum time a count is cached, in milliseconds.
+     */
+    static final long TIME_TO_LIVE = 60000L;
+
+    /**
+     * The maximum time before an invalidation is sent to the other members of the cluster, in milliseconds.
+     */
+    static final long BROADCAST_DELAY = 1000L;
+
+    /**
+     * A count and the maximum it has been computed with.
+     */
+    private static final class Count
+    {
+        private final long value;
+
+        private final int maxCount;
+
+        private final long expirationTime;
+
+        Count(long value, int maxCount)
+        {
+            this.value = value;
+            this.maxCount = maxCount;
+            this.expirationTime = System.currentTimeMillis() + TIME_TO_LIVE;
+        }
+    }
+
+    @Inject
+    private ObservationManager observationManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    private final Map<String, Count> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each invalidation, to avoid caching a count computed before an invalidation.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * The users whose count has been invalidated since the last broadcast. Guarded by {@code this}.
+     */
+    private final Set<String> pendingUserIds = new LinkedHashSet<>();
+
+    /**
+     * {@code true} if all the counts have been invalidated since the last broadcast. Guarded by {@code this}.
+     */
+    private boolean pendingAll;
+
+    /**
+     * {@code true} if the pending invalidations will be broadcast soon. Guarded by {@code this}.
+     */
+    private boolean broadcastScheduled;
+
+    /**
+     * Created when the first invalidation is broadcast. Guarded by {@code this}.
+     */
+    private ScheduledExecutorService broadcastExecutor;
+
+    @Override
+    public synchronized void dispose() throws ComponentLifecycleException
+    {
+        if (this.broadcastExecutor != null) {
+            this.broadcastExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param user the user
+     * @param maxCount the maximum number of events to count
+     * @return the cached count or null if it's not known
+     */
+    public Long get(DocumentReference user, int maxCount)
+    {
+        Count count = this.counts.get(this.serializer.serialize(user));
+        if (count != null && count.expirationTime > System.currentTimeMillis()) {
+            // A count lower than the maximum it has been computed with is exact
+            if (count.value < count.maxCount) {
+                return Math.min(count.value, maxCount);
+            }
+            // Otherwise we only know there are at least that many events
+            if (maxCount <= count.maxCount) {
+                return (long) maxCount;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the current generation of the cache, to pass to {@link #set(DocumentReference, int, long, long)}
+     */
+    public long getGeneration()
+    {
+        return this.generation.get();
+    }
+
+    /**
+     * Cache a count, unless an invalidation happened since it started to be computed.
+     *
+     * @param user the user
+     * @param maxCount the maximum number of events which has been used to compute the count
+     * @param count the count
+     * @param generation the generation of the cache before the count started to be computed
+     */
+    public void set(DocumentReference user, int maxCount, long count, long generation)
+    {
+        String userId = this.serializer.serialize(user);
+        this.counts.put(userId, new Count(count, maxCount));
+
+        // Don't keep a value which might have been computed before an invalidation
+        if (this.generation.get() != generation) {
+            this.counts.remove(userId);
+        }
+    }
+
+    /**
+     * Invalidate the cached count of a user, on all the members of the cluster.
+     *
+     * @param userId the serialized reference of the user
+     */
+    public void invalidate(String userId)
+    {
+        invalidate(Collections.singleton(userId));
+    }
+
+    /**
+     * Invalidate the cached counts of several users, on all the members of the cluster.
+     *
+     * @param userIds the serialized references of the users
+     */
+    public void invalidate(Collection<String> userIds)
+    {
+        invalidateLocally(userIds);
+
+        synchronized (this) {
+            if (!this.pendingAll) {
+                this.pendingUserIds.addAll(userIds);
+            }
+            scheduleBroadcast();
+        }
+    }
+
+    /**
+     * Invalidate all the cached counts, on all the members of the cluster.
+     */
+    public void invalidateAll()
+    {
+        invalidateLocally(null);
+
+        synchronized (this) {
+            this.pendingAll = true;
+            this.pendingUserIds.clear();
+            scheduleBroadcast();
+        }
+    }
+
+    /**
+     * Invalidate cached counts only on this member of the cluster.
+     *
+     * @param userIds the ids of the users, or null to invalidate all the counts
+     */
+    void invalidateLocally(Collection<String> userIds)
+    {
+        this.generation.incrementAndGet();
+
+        if (userIds != null) {
+            for (String userId : userIds) {
+                this.counts.remove(userId);
+            }
+        } else {
+            this.counts.clear();
+        }
+    }
+
+    /**
+     * Send the pending invalidations to the other members of the cluster.
+     */
+    void broadcast()
+    {
+        Collection<String> userIds;
+        synchronized (this) {
+            this.broadcastScheduled = false;
+            if (this.pendingAll) {
+                userIds = null;
+            } else if (!this.pendingUserIds.isEmpty()) {
+                userIds = new ArrayList<>(this.pendingUserIds);
+            } else {
+                return;
+            }
+            this.pendingAll = false;
+            this.pendingUserIds.clear();
+        }
+
+        // The counts have already been invalidated on this member: the listener does it again, which is harmless
+        this.observationManager.notify(new NotificationCountInvalidatedEvent(), userIds);
+    }
+
+    private void scheduleBroadcast()
+    {
+        if (!this.broadcastScheduled) {
+            if (this.broadcastExecutor == null) {
+                this.broadcastExecutor = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+                    .namingPattern("Notification count invalidation thread").daemon(true).build());
+            } else if (this.broadcastExecutor.isShutdown()) {
+                return;
+            }
+            this.broadcastExecutor.schedule(this::broadcast, BROADCAST_DELAY, TimeUnit.MILLISECONDS);
+            this.broadcastScheduled = true;
+        }
+    }
+}
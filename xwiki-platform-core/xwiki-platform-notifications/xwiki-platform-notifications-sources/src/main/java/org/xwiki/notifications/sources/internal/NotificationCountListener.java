@@ -0,0 +1,112 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.bridge.event.AbstractDocumentEvent;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.eventstream.EventStatus;
+import org.xwiki.eventstream.events.EventStatusAddOrUpdatedEvent;
+import org.xwiki.eventstream.events.EventStreamAddedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.notifications.NotificationConfiguration;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Invalidate the cached notification counts when they might have changed. Besides the new events and the changes of
+ * event status, all the counts are invalidated when a document which can hold the notification preferences and
+ * filters of the users, their groups or the rights of the wiki and of the spaces is modified: the documents of the
+ * {@code XWiki} space and its children (users, groups, wiki preferences) and the space preferences documents.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component
+@Singleton
+@Named(NotificationCountListener.NAME)
+public class NotificationCountListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "Notification Count Listener";
+
+    private static final String XWIKI_SPACE = "XWiki";
+
+    private static final String SPACE_PREFERENCES = "WebPreferences";
+
+    @Inject
+    private NotificationCountCache countCache;
+
+    @Inject
+    private NotificationConfiguration notificationConfiguration;
+
+    /**
+     * Constructs a new {@link NotificationCountListener}.
+     */
+    public NotificationCountListener()
+    {
+        super(NAME, Arrays.asList(new EventStreamAddedEvent(), new EventStatusAddOrUpdatedEvent(),
+            new NotificationCountInvalidatedEvent(), new DocumentCreatedEvent(), new DocumentUpdatedEvent(),
+            new DocumentDeletedEvent()));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof NotificationCountInvalidatedEvent) {
+            // Sent by this cache or by another member of the cluster
+            this.countCache.invalidateLocally((Collection<String>) source);
+        } else if (event instanceof AbstractDocumentEvent) {
+            if (isPreferencesDocument(((DocumentModelBridge) source).getDocumentReference())) {
+                // The document events are received by each member of the cluster
+                this.countCache.invalidateLocally(null);
+            }
+        } else if (event instanceof EventStatusAddOrUpdatedEvent) {
+            // Also called when an event is added to the inbox of a user, many users at once: the invalidations are
+            // grouped by the cache before being sent to the other members of the cluster
+            String entityId = ((EventStatus) source).getEntityId();
+            if (!NotificationInboxManager.DISPATCHED_ENTITY_ID.equals(entityId)) {
+                this.countCache.invalidate(entityId);
+            }
+        } else if (!this.notificationConfiguration.isInboxEnabled()) {
+            // Without the inbox we don't know which users are concerned by a new event
+            this.countCache.invalidateAll();
+        }
+    }
+
+    private boolean isPreferencesDocument(DocumentReference documentReference)
+    {
+        return SPACE_PREFERENCES.equals(documentReference.getName())
+            || XWIKI_SPACE.equals(documentReference.getSpaceReferences().get(0).getName());
+    }
+}
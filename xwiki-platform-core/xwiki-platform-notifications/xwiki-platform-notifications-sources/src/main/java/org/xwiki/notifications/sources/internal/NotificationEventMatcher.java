@@ -0,0 +1,160 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.EventStream;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.notifications.NotificationException;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.notifications.filters.NotificationFilter;
+import org.xwiki.notifications.filters.NotificationFilterManager;
+import org.xwiki.notifications.filters.expression.EventProperty;
+import org.xwiki.notifications.filters.expression.ExpressionNode;
+import org.xwiki.notifications.filters.expression.generics.AbstractOperatorNode;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+import static org.xwiki.notifications.filters.expression.generics.ExpressionBuilder.value;
+
+/**
+ * Check if a given user should be notified about a given event, according to the notification preferences and filters
+ * of the user.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = NotificationEventMatcher.class)
+@Singleton
+public class NotificationEventMatcher
+{
+    @Inject
+    private QueryGenerator queryGenerator;
+
+    @Inject
+    private ExpressionNodeToHQLConverter hqlConverter;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private EventStream eventStream;
+
+    @Inject
+    private AuthorizationManager authorizationManager;
+
+    @Inject
+    private NotificationFilterManager notificationFilterManager;
+
+    /**
+     * Find the users who should be notified about an event among the given users. The users sharing the same
+     * notification preferences and filters are matched with a single query.
+     *
+     * @param event the event
+     * @param users the users to check
+     * @return the users who should be notified about the given event, in the given order
+     * @throws NotificationException if the notification preferences or filters of a user cannot be retrieved
+     * @throws QueryException if a query matching the event fails
+     */
+    public List<DocumentReference> match(Event event, List<DocumentReference> users)
+        throws NotificationException, QueryException
+    {
+        // Group the users by condition on the event
+        Map<ExpressionNode, List<DocumentReference>> usersByCondition = new LinkedHashMap<>();
+        DocumentReference document = event.getDocument();
+        for (DocumentReference user : users) {
+            // Don't notify users about documents they cannot see
+            if (document != null && !this.authorizationManager.hasAccess(Right.VIEW, user, document)) {
+                continue;
+            }
+
+            // Reuse the query used to display the notifications of the user, restricted to the given event, so that
+            // the inbox contains exactly the events which would have been displayed otherwise
+            ExpressionNode expression = this.queryGenerator.generateQueryExpression(user, NotificationFormat.ALERT,
+                false, null, null, Collections.emptyList());
+            if (expression != null) {
+                ExpressionNode condition =
+                    expression instanceof OrderByNode ? ((OrderByNode) expression).getQuery() : expression;
+                usersByCondition.computeIfAbsent(condition, key -> new ArrayList<>()).add(user);
+            }
+        }
+
+        Set<DocumentReference> matchingUsers = new HashSet<>();
+        for (Map.Entry<ExpressionNode, List<DocumentReference>> entry : usersByCondition.entrySet()) {
+            if (match(event, (AbstractOperatorNode) entry.getKey())) {
+                for (DocumentReference user : entry.getValue()) {
+                    if (!isFiltered(event, user)) {
+                        matchingUsers.add(user);
+                    }
+                }
+            }
+        }
+
+        // Keep the order of the given users
+        List<DocumentReference> result = new ArrayList<>(matchingUsers.size());
+        for (DocumentReference user : users) {
+            if (matchingUsers.contains(user)) {
+                result.add(user);
+            }
+        }
+
+        return result;
+    }
+
+    private boolean match(Event event, AbstractOperatorNode condition) throws QueryException
+    {
+        ExpressionNodeToHQLConverter.HQLQuery hqlQuery =
+            this.hqlConverter.parse(condition.and(value(EventProperty.ID).eq(value(event.getId()))));
+
+        Query query = this.queryManager.createQuery(String.format("where %s", hqlQuery.getQuery()), Query.HQL);
+        for (Map.Entry<String, Object> queryParameter : hqlQuery.getQueryParameters().entrySet()) {
+            query.bindValue(queryParameter.getKey(), queryParameter.getValue());
+        }
+        query.setLimit(1);
+
+        return !this.eventStream.searchEvents(query).isEmpty();
+    }
+
+    private boolean isFiltered(Event event, DocumentReference user) throws NotificationException
+    {
+        for (NotificationFilter filter : this.notificationFilterManager.getAllFilters(user)) {
+            if (filter.filterEvent(event, user, NotificationFormat.ALERT)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
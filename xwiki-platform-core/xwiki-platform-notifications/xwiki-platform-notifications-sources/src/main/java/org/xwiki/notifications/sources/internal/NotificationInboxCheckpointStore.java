@@ -0,0 +1,120 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Properties;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.environment.Environment;
+
+/**
+ * Persists the progress of the {@link NotificationInboxManager} on this member of the cluster, in order to limit the
+ * events to look at when loading the events stored while the inbox was not running (or which could not be queued). The
+ * events which have already been added to the inboxes are known from the database, so that they are not handled again
+ * by the other members of the cluster.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = NotificationInboxCheckpointStore.class)
+@Singleton
+public class NotificationInboxCheckpointStore
+{
+    private static final String FILE_PATH = "notifications/inbox.properties";
+
+    private static final String LAST_DISPATCHED_DATE = "lastDispatchedDate";
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private Logger logger;
+
+    private Properties checkpoints;
+
+    /**
+     * @return the date of the most recent event added to the inboxes, {@code null} if the inbox has never been used
+     */
+    public synchronized Date getLastDispatchedDate()
+    {
+        String value = getCheckpoints().getProperty(LAST_DISPATCHED_DATE);
+
+        return value != null ? new Date(Long.parseLong(value)) : null;
+    }
+
+    /**
+     * Remember the date of the most recent event added to the inboxes.
+     *
+     * @param date the date of the event
+     */
+    public synchronized void setLastDispatchedDate(Date date)
+    {
+        getCheckpoints().setProperty(LAST_DISPATCHED_DATE, String.valueOf(date.getTime()));
+
+        save();
+    }
+
+    private File getFile()
+    {
+        return new File(this.environment.getPermanentDirectory(), FILE_PATH);
+    }
+
+    private Properties getCheckpoints()
+    {
+        if (this.checkpoints == null) {
+            this.checkpoints = new Properties();
+
+            File file = getFile();
+            if (file.exists()) {
+                try (InputStream stream = new FileInputStream(file)) {
+                    this.checkpoints.load(stream);
+                } catch (IOException e) {
+                    this.logger.error("Failed to load the notification inbox checkpoints from [{}]", file, e);
+                }
+            }
+        }
+
+        return this.checkpoints;
+    }
+
+    private void save()
+    {
+        File file = getFile();
+
+        file.getParentFile().mkdirs();
+
+        try (OutputStream stream = new FileOutputStream(file)) {
+            this.checkpoints.store(stream, null);
+        } catch (IOException e) {
+            this.logger.error("Failed to save the notification inbox checkpoints in [{}]", file, e);
+        }
+    }
+}
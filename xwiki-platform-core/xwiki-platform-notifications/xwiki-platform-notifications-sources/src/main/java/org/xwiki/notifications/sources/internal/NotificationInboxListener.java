@@ -0,0 +1,75 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.ApplicationReadyEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.eventstream.events.EventStreamAddedEvent;
+import org.xwiki.notifications.NotificationConfiguration;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Add the events stored in the event stream to the inbox of the users who should be notified about them, when the
+ * notification inbox is enabled. The events stored while the wiki was stopped are handled when it's ready.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component
+@Singleton
+@Named(NotificationInboxListener.NAME)
+public class NotificationInboxListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "Notification Inbox Listener";
+
+    @Inject
+    private NotificationConfiguration notificationConfiguration;
+
+    @Inject
+    private NotificationInboxManager inboxManager;
+
+    /**
+     * Constructs a new {@link NotificationInboxListener}.
+     */
+    public NotificationInboxListener()
+    {
+        super(NAME, new EventStreamAddedEvent(), new ApplicationReadyEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (this.notificationConfiguration.isEnabled() && this.notificationConfiguration.isInboxEnabled()) {
+            if (event instanceof ApplicationReadyEvent) {
+                this.inboxManager.start();
+            } else {
+                this.inboxManager.addEvent((org.xwiki.eventstream.Event) source);
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.context.concurrent.ExecutionContextRunnable;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.EventStatus;
+import org.xwiki.eventstream.EventStatusManager;
+import org.xwiki.eventstream.EventStream;
+import org.xwiki.eventstream.internal.DefaultEventStatus;
+import org.xwiki.model.ModelContext;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.notifications.NotificationException;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+/**
+ * Manage the notification inbox of the users. When an event is stored, each user who should be notified about it gets
+ * an unread status for this event. The notifications of a user can then be displayed from these statuses, without
+ * evaluating the notification preferences and filters of the user again.
+ * <p>
+ * The events are queued in memory and handled by a dedicated thread. Once an event has been handled, a read status
+ * of the {@value #DISPATCHED_ENTITY_ID} entity is stored for it, in the same database as the statuses of the users. The
+ * events which have been stored while the inbox was not running, or which could not be queued because the queue was
+ * full, are loaded again from the event store, skipping the ones already handled, by any member of the cluster. The
+ * date of the last event handled by this member is persisted (see {@link NotificationInboxCheckpointStore}) to limit
+ * the events to look at. The first time the inbox is started, all the stored events are handled, from the oldest one.
+ * <p>
+ * The statuses of the users are only created when they don't exist yet, so handling an event again never marks as
+ * unread an event the user has already read.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = NotificationInboxManager.class)
+@Singleton
+public class NotificationInboxManager implements Disposable
+{
+    private static final int USERS_BATCH_SIZE = 100;
+
+    private static final int EVENTS_BATCH_SIZE = 100;
+
+    private static final int QUEUE_CAPACITY = 10000;
+
+    /**
+     * The minimum time between two saves of the checkpoint, in milliseconds.
+     */
+    private static final long CHECKPOINT_INTERVAL = 10000L;
+
+    /**
+     * The entity for which a status is stored once an event has been added to the inboxes. It's not a serialized
+     * document reference so it cannot be the id of a user or a group.
+     */
+    static final String DISPATCHED_ENTITY_ID = "notifications.inbox";
+
+    private static final String FROM_DATE = "fromDate";
+
+    private static final String FROM_ID = "fromId";
+
+    private static final String DISPATCHED_ENTITY = "dispatchedEntity";
+
+    // Older events first, like they are queued, starting after the given event and skipping the handled ones
+    private static final String EVENTS_QUERY = "where (event.date > :fromDate "
+        + "or (event.date = :fromDate and event.id > :fromId)) and not exists (select eventStatus "
+        + "from ActivityEventStatusImpl eventStatus where eventStatus.activityEvent = event "
+        + "and eventStatus.entityId = :dispatchedEntity) order by event.date asc, event.id asc";
+
+    private static final String USERS_QUERY =
+        "select distinct doc.fullName from Document doc, doc.object(XWiki.XWikiUsers) objUser order by doc.fullName";
+
+    @Inject
+    private NotificationEventMatcher eventMatcher;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private EventStatusManager eventStatusManager;
+
+    @Inject
+    private EventStream eventStream;
+
+    @Inject
+    private NotificationInboxCheckpointStore checkpointStore;
+
+    @Inject
+    private DocumentReferenceResolver<String> documentReferenceResolver;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private WikiDescriptorManager wikiDescriptorManager;
+
+    @Inject
+    private ModelContext modelContext;
+
+    @Inject
+    @Named("context")
+    private ComponentManager componentManager;
+
+    @Inject
+    private Logger logger;
+
+    private final BlockingQueue<Event> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * {@code true} when some events could not be queued and should be loaded from the event store. Guarded by
+     * {@link #queue}.
+     */
+    private boolean overflow;
+
+    /**
+     * The date of the most recent handled event.
+     */
+    private volatile Date lastDispatchedDate;
+
+    private long lastCheckpointTime;
+
+    private Thread inboxThread;
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        if (this.inboxThread != null) {
+            this.inboxThread.interrupt();
+
+            // Remember the events handled since the last checkpoint
+            Date date = this.lastDispatchedDate;
+            if (date != null) {
+                this.checkpointStore.setLastDispatchedDate(date);
+            }
+        }
+    }
+
+    /**
+     * Start handling the events which have been stored since the inbox last stopped, if any.
+     */
+    public void start()
+    {
+        startInboxThread();
+    }
+
+    /**
+     * Add an event to the inbox of the users who should be notified about it. The event is handled asynchronously.
+     *
+     * @param event the event which has just been stored
+     */
+    public void addEvent(Event event)
+    {
+        startInboxThread();
+
+        synchronized (this.queue) {
+            if (!this.queue.offer(event)) {
+                // The event will be loaded from the event store once the queue is handled
+                this.overflow = true;
+            }
+        }
+    }
+
+    /**
+     * @param user the user
+     * @param onlyUnread if only unread events should be returned
+     * @param untilDate do not return events happened after this date (can be null)
+     * @param fromDate do not return events happened before this date (can be null)
+     * @param offset the index of the first event to return
+     * @param limit the maximum number of events to return
+     * @return the events from the inbox of the user, from the most recent to the oldest one
+     * @throws NotificationException if the inbox cannot be read
+     */
+    public List<Event> getEvents(DocumentReference user, boolean onlyUnread, Date untilDate, Date fromDate,
+        int offset, int limit) throws NotificationException
+    {
+        try {
+            List<EventStatus> statuses = this.eventStatusManager.getEventStatus(this.serializer.serialize(user),
+                onlyUnread, untilDate, fromDate, offset, limit);
+
+            List<Event> events = new ArrayList<>(statuses.size());
+            for (EventStatus status : statuses) {
+                events.add(status.getEvent());
+            }
+
+            return events;
+        } catch (Exception e) {
+            throw new NotificationException(String.format("Failed to read the notification inbox of [%s].", user), e);
+        }
+    }
+
+    private synchronized void startInboxThread()
+    {
+        // Computing the users interested in an event can take a while so it's done in a dedicated thread, in order to
+        // not slow down the request which generated the event
+        if (this.inboxThread == null) {
+            this.inboxThread = new Thread(new ExecutionContextRunnable(this::run, this.componentManager));
+            this.inboxThread.setName("Notification inbox thread");
+            this.inboxThread.setDaemon(true);
+            this.inboxThread.start();
+        }
+    }
+
+    private void run()
+    {
+        // Handle the events stored while the inbox was not running
+        this.lastDispatchedDate = this.checkpointStore.getLastDispatchedDate();
+        if (!catchUp()) {
+            return;
+        }
+
+        while (!Thread.currentThread().isInterrupted()) {
+            Event event;
+            boolean skippedEvents;
+            try {
+                event = this.queue.take();
+                synchronized (this.queue) {
+                    skippedEvents = this.overflow;
+                    if (skippedEvents) {
+                        // The queued events are loaded again with the skipped ones
+                        this.overflow = false;
+                        this.queue.clear();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (skippedEvents) {
+                this.logger.warn("The notification inbox queue is full, loading the skipped events from the store");
+                if (!catchUp()) {
+                    return;
+                }
+            } else {
+                dispatchSafely(event);
+            }
+        }
+    }
+
+    /**
+     * Handle the events stored since the last handled event.
+     *
+     * @return {@code false} if the thread has been interrupted
+     */
+    private boolean catchUp()
+    {
+        // Events with the same date as the last handled event might not have been handled. The handled events (by this
+        // member of the cluster or by another one) are filtered out by the query, which is why the events are paged
+        // on their date and id rather than with an offset. When this member has never handled any event, all the
+        // stored events are handled, starting from the oldest one.
+        Date fromDate = this.lastDispatchedDate != null ? this.lastDispatchedDate : new Date(0);
+        String fromId = "";
+        List<Event> events;
+        do {
+            try {
+                Query query = this.queryManager.createQuery(EVENTS_QUERY, Query.HQL);
+                query.bindValue(FROM_DATE, fromDate);
+                query.bindValue(FROM_ID, fromId);
+                query.bindValue(DISPATCHED_ENTITY, DISPATCHED_ENTITY_ID);
+                query.setLimit(EVENTS_BATCH_SIZE);
+                events = this.eventStream.searchEvents(query);
+            } catch (QueryException e) {
+                this.logger.error("Failed to load the events stored since [{}] in the notification inboxes",
+                    fromDate, e);
+                return true;
+            }
+
+            for (Event event : events) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                dispatchSafely(event);
+
+                fromDate = event.getDate();
+                fromId = event.getId();
+            }
+        } while (events.size() == EVENTS_BATCH_SIZE);
+
+        return true;
+    }
+
+    private void dispatchSafely(Event event)
+    {
+        try {
+            dispatch(event);
+        } catch (Exception e) {
+            this.logger.warn("Failed to add the event [{}] to the notification inboxes: [{}]", event.getId(),
+                ExceptionUtils.getRootCauseMessage(e));
+        }
+
+        checkpoint(event);
+    }
+
+    private void checkpoint(Event event)
+    {
+        Date date = event.getDate();
+        if (date != null && (this.lastDispatchedDate == null || date.after(this.lastDispatchedDate))) {
+            this.lastDispatchedDate = date;
+        }
+
+        long now = System.currentTimeMillis();
+        if (this.lastDispatchedDate != null && now - this.lastCheckpointTime >= CHECKPOINT_INTERVAL) {
+            this.checkpointStore.setLastDispatchedDate(this.lastDispatchedDate);
+            this.lastCheckpointTime = now;
+        }
+    }
+
+    private void dispatch(Event event) throws Exception
+    {
+        String mainWikiId = this.wikiDescriptorManager.getMainWikiId();
+        String eventWikiId = event.getWiki() != null ? event.getWiki().getName() : mainWikiId;
+
+        EntityReference currentReference = this.modelContext.getCurrentEntityReference();
+        try {
+            // The event is matched against the preferences of the users in the wiki where it has been stored
+            this.modelContext.setCurrentEntityReference(new WikiReference(eventWikiId));
+
+            // Global users can be notified about the events of any wiki while local users are only notified about the
+            // events of their own wiki
+            dispatch(event, mainWikiId);
+            if (!mainWikiId.equals(eventWikiId)) {
+                dispatch(event, eventWikiId);
+            }
+
+            // Remember that the event has been handled, for all the members of the cluster
+            this.eventStatusManager.createEventStatuses(
+                Collections.singletonList(new DefaultEventStatus(event, DISPATCHED_ENTITY_ID, true)));
+        } finally {
+            this.modelContext.setCurrentEntityReference(currentReference);
+        }
+    }
+
+    private void dispatch(Event event, String usersWikiId) throws Exception
+    {
+        WikiReference usersWiki = new WikiReference(usersWikiId);
+
+        int offset = 0;
+        List<String> users;
+        do {
+            Query query = this.queryManager.createQuery(USERS_QUERY, Query.XWQL);
+            query.setWiki(usersWikiId);
+            query.setOffset(offset);
+            query.setLimit(USERS_BATCH_SIZE);
+            users = query.execute();
+
+            List<DocumentReference> userReferences = new ArrayList<>(users.size());
+            for (String user : users) {
+                userReferences.add(this.documentReferenceResolver.resolve(user, usersWiki));
+            }
+
+            // The statuses of a batch of users are saved in a single transaction
+            List<EventStatus> statuses = new ArrayList<>();
+            for (DocumentReference userReference : this.eventMatcher.match(event, userReferences)) {
+                statuses.add(new DefaultEventStatus(event, this.serializer.serialize(userReference), false));
+            }
+            if (!statuses.isEmpty()) {
+                this.eventStatusManager.createEventStatuses(statuses);
+            }
+
+            offset += USERS_BATCH_SIZE;
+        } while (users.size() == USERS_BATCH_SIZE);
+    }
+}
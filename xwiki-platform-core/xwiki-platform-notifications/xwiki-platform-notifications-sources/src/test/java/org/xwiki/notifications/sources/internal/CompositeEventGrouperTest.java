@@ -0,0 +1,124 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.internal.DefaultEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.internal.SimilarityCalculator;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link CompositeEventGrouper}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class CompositeEventGrouperTest
+{
+    private CompositeEventGrouper grouper;
+
+    @Before
+    public void setUp()
+    {
+        this.grouper = new CompositeEventGrouper(new SimilarityCalculator());
+    }
+
+    private Event createEvent(String id, String type, String groupId, DocumentReference document)
+    {
+        DefaultEvent event = new DefaultEvent();
+        event.setId(id);
+        event.setType(type);
+        event.setGroupId(groupId);
+        event.setDocument(document);
+        return event;
+    }
+
+    @Test
+    public void recordEventsOfTheSameDocumentAndType() throws Exception
+    {
+        DocumentReference docA = new DocumentReference("xwiki", "Space", "A");
+        DocumentReference docB = new DocumentReference("xwiki", "Space", "B");
+
+        Event event1 = createEvent("1", "update", "g1", docA);
+        Event event2 = createEvent("2", "update", "g2", docB);
+        Event event3 = createEvent("3", "update", "g3", docA);
+        Event event4 = createEvent("4", "blog", "g4", null);
+        Event event5 = createEvent("5", "blog", "g5", null);
+
+        for (Event event : Arrays.asList(event1, event2, event3, event4, event5)) {
+            this.grouper.recordEvent(event);
+        }
+
+        List<CompositeEvent> results = this.grouper.getCompositeEvents();
+        assertEquals(3, results.size());
+        assertEquals(Arrays.asList(event1, event3), results.get(0).getEvents());
+        assertEquals(SimilarityCalculator.SAME_DOCUMENT_AND_TYPE, results.get(0).getSimilarityBetweenEvents());
+        assertEquals(Arrays.asList(event2), results.get(1).getEvents());
+        assertEquals(Arrays.asList(event4, event5), results.get(2).getEvents());
+        assertEquals(SimilarityCalculator.SAME_TYPE_BUT_NO_DOCUMENT, results.get(2).getSimilarityBetweenEvents());
+    }
+
+    @Test
+    public void recordEventWithTheSameGroupIdThanAGroupedEvent() throws Exception
+    {
+        DocumentReference doc = new DocumentReference("xwiki", "Space", "A");
+
+        Event event1 = createEvent("1", "update", "g1", doc);
+        Event event2 = createEvent("2", "update", "g2", doc);
+        Event event3 = createEvent("3", "addComment", "g2", doc);
+
+        for (Event event : Arrays.asList(event1, event2, event3)) {
+            this.grouper.recordEvent(event);
+        }
+
+        // The event 2 is moved with the event 3 since they have been triggered by the same action
+        List<CompositeEvent> results = this.grouper.getCompositeEvents();
+        assertEquals(2, results.size());
+        assertEquals(Arrays.asList(event1), results.get(0).getEvents());
+        assertEquals(Arrays.asList(event3, event2), results.get(1).getEvents());
+        assertEquals(SimilarityCalculator.SAME_GROUP_ID, results.get(1).getSimilarityBetweenEvents());
+    }
+
+    @Test
+    public void recordManyEvents() throws Exception
+    {
+        int documents = 10;
+        int events = 10000;
+        for (int i = 0; i < events; i++) {
+            this.grouper.recordEvent(createEvent(String.valueOf(i), "update", "g" + i,
+                new DocumentReference("xwiki", "Space", "Page" + (i % documents))));
+        }
+
+        List<CompositeEvent> results = this.grouper.getCompositeEvents();
+        assertEquals(documents, results.size());
+        for (int i = 0; i < documents; i++) {
+            assertEquals(events / documents, results.get(i).getEvents().size());
+            assertEquals("Page" + i, results.get(i).getDocument().getName());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.internal.DefaultEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.notifications.filters.expression.EntityReferenceNode;
+import org.xwiki.notifications.filters.expression.EventProperty;
+import org.xwiki.notifications.filters.expression.NotEqualsNode;
+import org.xwiki.notifications.filters.expression.PropertyValueNode;
+import org.xwiki.notifications.filters.expression.generics.AbstractOperatorNode;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.xwiki.notifications.filters.expression.generics.ExpressionBuilder.not;
+import static org.xwiki.notifications.filters.expression.generics.ExpressionBuilder.value;
+
+/**
+ * Unit tests for {@link DefaultNotificationEventIndex} and {@link ExpressionNodeEvaluator}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class NotificationEventIndexTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<ExpressionNodeEvaluator> mocker =
+            new MockitoComponentMockingRule<>(ExpressionNodeEvaluator.class);
+
+    private ExpressionNodeEvaluator evaluator;
+
+    private DocumentReference userA = new DocumentReference("xwiki", "XWiki", "UserA");
+
+    private DocumentReference userB = new DocumentReference("xwiki", "XWiki", "UserB");
+
+    private Event event1;
+
+    private Event event2;
+
+    private Event event3;
+
+    private DefaultNotificationEventIndex index;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        EntityReferenceSerializer<String> serializer = mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        EntityReferenceSerializer<String> localSerializer =
+                mocker.getInstance(EntityReferenceSerializer.TYPE_STRING, "local");
+        when(serializer.serialize(userA)).thenReturn("xwiki:XWiki.UserA");
+        when(serializer.serialize(userB)).thenReturn("xwiki:XWiki.UserB");
+        when(serializer.serialize(new WikiReference("xwiki"))).thenReturn("xwiki");
+        when(localSerializer.serialize(new SpaceReference("Space", new WikiReference("xwiki")))).thenReturn("Space");
+        for (String page : Arrays.asList("Page1", "Page2")) {
+            when(localSerializer.serialize(new DocumentReference("xwiki", "Space", page))).thenReturn("Space." + page);
+        }
+
+        this.evaluator = mocker.getComponentUnderTest();
+
+        this.event1 = createEvent("1", "create", "Page1", userA, new Date(30L));
+        this.event2 = createEvent("2", "addComment", "Page2", userB, new Date(20L));
+        this.event3 = createEvent("3", "update", "Page2", userB, new Date(10L));
+
+        this.index = new DefaultNotificationEventIndex(new Date(0L), Arrays.asList(event1, event2, event3), evaluator);
+    }
+
+    private Event createEvent(String id, String type, String page, DocumentReference user, Date date)
+    {
+        DefaultEvent event = new DefaultEvent();
+        event.setId(id);
+        event.setType(type);
+        event.setDocument(new DocumentReference("xwiki", "Space", page));
+        event.setUser(user);
+        event.setDate(date);
+        return event;
+    }
+
+    @Test
+    public void getCandidatesByType()
+    {
+        AbstractOperatorNode expression = value(EventProperty.TYPE).eq(value("update"))
+                .and(value(EventProperty.DATE).greaterThan(value(new Date(15L))));
+
+        assertEquals(Arrays.asList(event3), index.getCandidates(expression));
+        assertFalse(evaluator.matches(expression, event1));
+        // Too old
+        assertFalse(evaluator.matches(expression, event3));
+        assertTrue(evaluator.matches(value(EventProperty.TYPE).eq(value("update")), event3));
+    }
+
+    @Test
+    public void getCandidatesWithInclusiveLocation()
+    {
+        // Preference on the update events, or any event of a watched page, never the events of the user itself
+        AbstractOperatorNode watchedPage = value(EventProperty.WIKI).eq(value("xwiki"))
+                .and(value(EventProperty.PAGE).eq(value("Space.Page2")));
+        AbstractOperatorNode expression = new NotEqualsNode(new PropertyValueNode(EventProperty.USER),
+                new EntityReferenceNode(userA)).and(value(EventProperty.TYPE).eq(value("update")).or(watchedPage));
+
+        assertEquals(Arrays.asList(event2, event3), index.getCandidates(expression));
+        assertTrue(evaluator.matches(expression, event2));
+        assertTrue(evaluator.matches(expression, event3));
+    }
+
+    @Test
+    public void getCandidatesWithoutIndexedCondition()
+    {
+        AbstractOperatorNode expression = not(value(EventProperty.SPACE).startsWith(value("Other")));
+
+        assertEquals(Arrays.asList(event1, event2, event3), index.getCandidates(expression));
+        assertTrue(evaluator.matches(expression, event2));
+    }
+
+    @Test
+    public void canEvaluate()
+    {
+        assertTrue(evaluator.canEvaluate(value(EventProperty.TYPE).inStrings(Arrays.asList("update", "create"))));
+        assertFalse(evaluator.canEvaluate(not(new InListOfReadEventsNode(userA))));
+    }
+}
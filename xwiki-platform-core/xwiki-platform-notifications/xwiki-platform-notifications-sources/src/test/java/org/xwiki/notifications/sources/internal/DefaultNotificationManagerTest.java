@@ -34,6 +34,7 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.NotificationConfiguration;
 import org.xwiki.notifications.NotificationException;
 import org.xwiki.notifications.NotificationFormat;
 import org.xwiki.notifications.preferences.NotificationPreferenceProperty;
@@ -54,6 +55,8 @@
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
@@ -143,6 +146,53 @@ public void getEventsWith2Queries() throws Exception
         assertEquals(event5, results.get(1).getEvents().get(0));
     }
 
+    @Test
+    public void getEventsFromInbox() throws Exception
+    {
+        NotificationConfiguration configuration = mocker.getInstance(NotificationConfiguration.class);
+        when(configuration.isInboxEnabled()).thenReturn(true);
+        NotificationInboxManager inboxManager = mocker.getInstance(NotificationInboxManager.class);
+
+        Event event1 = mock(Event.class);
+        Event event2 = mock(Event.class);
+        Event event3 = mock(Event.class);
+        Event event4 = mock(Event.class);
+        Event event5 = mock(Event.class);
+
+        DocumentReference doc1 = new DocumentReference("xwiki", "Main", "WebHome");
+        DocumentReference doc2 = new DocumentReference("xwiki", "PrivateSpace", "WebHome");
+        when(event1.getDocument()).thenReturn(doc1);
+        when(event2.getDocument()).thenReturn(doc2);
+        when(event3.getDocument()).thenReturn(doc1);
+        when(event4.getDocument()).thenReturn(doc1);
+        when(event5.getDocument()).thenReturn(doc1);
+        when(authorizationManager.hasAccess(Right.VIEW, userReference, doc1)).thenReturn(true);
+        when(authorizationManager.hasAccess(Right.VIEW, userReference, doc2)).thenReturn(false);
+
+        when(event1.getType()).thenReturn("type1");
+        when(event2.getType()).thenReturn("type2");
+        when(event3.getType()).thenReturn("type3");
+        when(event4.getType()).thenReturn("type4");
+        when(event5.getType()).thenReturn("type5");
+        when(event3.getId()).thenReturn("event3");
+
+        when(inboxManager.getEvents(userReference, true, null, null, 0, 4)).thenReturn(
+                Arrays.asList(event1, event2, event3, event4));
+        when(inboxManager.getEvents(userReference, true, null, null, 4, 4)).thenReturn(
+                Arrays.asList(event5));
+
+        // Test
+        List<CompositeEvent> results = mocker.getComponentUnderTest().getEvents("xwiki:XWiki.UserA", true, 2,
+                null, Arrays.asList("event3"));
+
+        // Verify
+        assertEquals(2, results.size());
+        assertEquals(event1, results.get(0).getEvents().get(0));
+        assertEquals(event4, results.get(1).getEvents().get(0));
+        verify(queryGenerator, never()).generateQuery(any(DocumentReference.class), any(NotificationFormat.class),
+                anyBoolean(), nullable(Date.class), nullable(Date.class), nullable(List.class));
+    }
+
     @Test
     public void getEventsWhenNoPreferences() throws Exception
     {
@@ -201,6 +251,21 @@ public void getEventsCount() throws Exception
         // Verify
         assertEquals(5, result);
         verifyZeroInteractions(event3);
+        verify(mocker.getInstance(NotificationCountCache.class)).set(userReference, 5, 5, 0);
+    }
+
+    @Test
+    public void getEventsCountFromCache() throws Exception
+    {
+        NotificationCountCache countCache = mocker.getInstance(NotificationCountCache.class);
+        when(countCache.get(userReference, 5)).thenReturn(3L);
+
+        // Test
+        long result = mocker.getComponentUnderTest().getEventsCount("xwiki:XWiki.UserA", true, 5);
+
+        // Verify
+        assertEquals(3, result);
+        verifyZeroInteractions(eventStream);
     }
 
     @Test
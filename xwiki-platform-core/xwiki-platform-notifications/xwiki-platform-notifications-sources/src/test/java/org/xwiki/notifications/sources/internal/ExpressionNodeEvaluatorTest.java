@@ -0,0 +1,384 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.internal.DefaultEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.notifications.filters.expression.BooleanValueNode;
+import org.xwiki.notifications.filters.expression.DateValueNode;
+import org.xwiki.notifications.filters.expression.EntityReferenceNode;
+import org.xwiki.notifications.filters.expression.EqualsNode;
+import org.xwiki.notifications.filters.expression.EventProperty;
+import org.xwiki.notifications.filters.expression.GreaterThanNode;
+import org.xwiki.notifications.filters.expression.InNode;
+import org.xwiki.notifications.filters.expression.LesserThanNode;
+import org.xwiki.notifications.filters.expression.NotEqualsNode;
+import org.xwiki.notifications.filters.expression.NotNode;
+import org.xwiki.notifications.filters.expression.PropertyValueNode;
+import org.xwiki.notifications.filters.expression.StartsWith;
+import org.xwiki.notifications.filters.expression.generics.AbstractOperatorNode;
+import org.xwiki.notifications.filters.expression.generics.AbstractValueNode;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+import static org.xwiki.notifications.filters.expression.generics.ExpressionBuilder.value;
+
+/**
+ * Unit tests for {@link ExpressionNodeEvaluator}, checking that it matches the same events as the HQL query generated
+ * by {@link ExpressionNodeToHQLConverter} for each operator and event property.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class ExpressionNodeEvaluatorTest
+{
+    /**
+     * The operators supported by the evaluator.
+     */
+    private enum Operator
+    {
+        EQUALS(EqualsNode::new),
+        NOT_EQUALS(NotEqualsNode::new),
+        STARTS_WITH(StartsWith::new),
+        GREATER_THAN(GreaterThanNode::new),
+        LESSER_THAN(LesserThanNode::new),
+        IN((left, right) -> new InNode(left, Arrays.asList(right)));
+
+        private final BiFunction<AbstractValueNode, AbstractValueNode, AbstractOperatorNode> factory;
+
+        Operator(BiFunction<AbstractValueNode, AbstractValueNode, AbstractOperatorNode> factory)
+        {
+            this.factory = factory;
+        }
+    }
+
+    private static final Pattern NOT_PATTERN = Pattern.compile(" NOT \\((.*)\\)");
+
+    private static final Pattern LIKE_PATTERN =
+            Pattern.compile("event\\.(\\w+) LIKE concat\\((\\S+), '%'\\) ESCAPE '!'");
+
+    private static final Pattern IN_PATTERN = Pattern.compile("event\\.(\\w+) IN \\((.*)\\)");
+
+    private static final Pattern COMPARISON_PATTERN = Pattern.compile("event\\.(\\w+) (=|<>|>=|<=) (\\S+)");
+
+    @Rule
+    public final MockitoComponentMockingRule<ExpressionNodeEvaluator> evaluatorMocker =
+            new MockitoComponentMockingRule<>(ExpressionNodeEvaluator.class);
+
+    @Rule
+    public final MockitoComponentMockingRule<ExpressionNodeToHQLConverter> converterMocker =
+            new MockitoComponentMockingRule<>(ExpressionNodeToHQLConverter.class);
+
+    private ExpressionNodeEvaluator evaluator;
+
+    private ExpressionNodeToHQLConverter converter;
+
+    private DocumentReference userA = new DocumentReference("xwiki", "XWiki", "UserA");
+
+    private DocumentReference userB = new DocumentReference("xwiki", "XWiki", "UserB");
+
+    private WikiReference wiki = new WikiReference("xwiki");
+
+    private DocumentReference page = new DocumentReference("xwiki", "Space", "page");
+
+    /**
+     * The values to compare each property with.
+     */
+    private Map<EventProperty, List<AbstractValueNode>> operands = new EnumMap<>(EventProperty.class);
+
+    @Before
+    public void setUp() throws Exception
+    {
+        for (MockitoComponentMockingRule<?> mocker : Arrays.asList(this.evaluatorMocker, this.converterMocker)) {
+            EntityReferenceSerializer<String> serializer = mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+            when(serializer.serialize(this.userA)).thenReturn("xwiki:XWiki.UserA");
+            when(serializer.serialize(this.userB)).thenReturn("xwiki:XWiki.UserB");
+            when(serializer.serialize(this.wiki)).thenReturn("xwiki");
+        }
+        EntityReferenceSerializer<String> localSerializer =
+                this.evaluatorMocker.getInstance(EntityReferenceSerializer.TYPE_STRING, "local");
+        when(localSerializer.serialize(this.page)).thenReturn("Space.page");
+        when(localSerializer.serialize(new SpaceReference("Space", this.wiki))).thenReturn("Space");
+
+        this.evaluator = this.evaluatorMocker.getComponentUnderTest();
+        this.converter = this.converterMocker.getComponentUnderTest();
+
+        this.operands.put(EventProperty.ID, strings("id"));
+        this.operands.put(EventProperty.GROUP_ID, strings("group"));
+        this.operands.put(EventProperty.STREAM, strings("stream"));
+        this.operands.put(EventProperty.APPLICATION, strings("application"));
+        this.operands.put(EventProperty.BODY, strings("body"));
+        this.operands.put(EventProperty.TYPE, strings("update"));
+        this.operands.put(EventProperty.PAGE, strings("Space.page"));
+        this.operands.put(EventProperty.SPACE, strings("Space"));
+        this.operands.put(EventProperty.TITLE, strings("title"));
+        this.operands.put(EventProperty.URL, strings("http://www.xwiki.org/page"));
+        this.operands.put(EventProperty.DOCUMENT_VERSION, strings("2.1"));
+        this.operands.put(EventProperty.USER, Arrays.asList(new EntityReferenceNode(this.userA),
+                new EntityReferenceNode(this.userB), value("xwiki:XWiki.UserA"), value("xwiki:")));
+        this.operands.put(EventProperty.WIKI,
+                Arrays.asList(new EntityReferenceNode(this.wiki), value("xwiki"), value("other")));
+        this.operands.put(EventProperty.DATE,
+                Arrays.asList(value(new Date(20L)), value(new Date(10L)), value(new Date(30L))));
+        // The importance is stored as a priority
+        this.operands.put(EventProperty.IMPORTANCE, Arrays.asList(value("30"), value("20"), value("40")));
+        this.operands.put(EventProperty.HIDDEN, Arrays.asList(new BooleanValueNode(false), new BooleanValueNode(true)));
+    }
+
+    private List<AbstractValueNode> strings(String value)
+    {
+        return Arrays.asList(value(value), value(value.substring(0, 1)), value(value + "s"), value("a"), value("z"));
+    }
+
+    private Event createEvent() throws Exception
+    {
+        DefaultEvent event = new DefaultEvent();
+        event.setId("id");
+        event.setGroupId("group");
+        event.setStream("stream");
+        event.setDate(new Date(20L));
+        event.setApplication("application");
+        event.setBody("body");
+        event.setType("update");
+        event.setDocument(this.page);
+        event.setImportance(Event.Importance.MEDIUM);
+        event.setTitle("title");
+        event.setUser(this.userA);
+        event.setUrl(new URL("http://www.xwiki.org/page"));
+        event.setDocumentVersion("2.1");
+        return event;
+    }
+
+    /**
+     * @return the columns of the event as they are stored by the event stream
+     */
+    private Map<String, Object> createRow()
+    {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", "id");
+        row.put("requestId", "group");
+        row.put("stream", "stream");
+        row.put("date", new Date(20L));
+        row.put("application", "application");
+        row.put("body", "body");
+        row.put("type", "update");
+        row.put("hidden", false);
+        row.put("page", "Space.page");
+        row.put("priority", (Event.Importance.MEDIUM.ordinal() + 1) * 10);
+        row.put("space", "Space");
+        row.put("title", "title");
+        row.put("user", "xwiki:XWiki.UserA");
+        row.put("wiki", "xwiki");
+        row.put("url", "http://www.xwiki.org/page");
+        row.put("version", "2.1");
+        return row;
+    }
+
+    private Map<String, Object> createEmptyRow()
+    {
+        Map<String, Object> row = new HashMap<>();
+        row.put("hidden", false);
+        // The importance of an event is never missing
+        row.put("priority", (Event.Importance.MEDIUM.ordinal() + 1) * 10);
+        return row;
+    }
+
+    private boolean isSupported(EventProperty property, Operator operator)
+    {
+        switch (operator) {
+            case STARTS_WITH:
+                return property != EventProperty.DATE && property != EventProperty.IMPORTANCE
+                    && property != EventProperty.HIDDEN;
+            case GREATER_THAN:
+            case LESSER_THAN:
+            case IN:
+                return property != EventProperty.HIDDEN;
+            default:
+                return true;
+        }
+    }
+
+    private List<AbstractOperatorNode> getExpressions()
+    {
+        List<AbstractOperatorNode> expressions = new ArrayList<>();
+        for (Map.Entry<EventProperty, List<AbstractValueNode>> entry : this.operands.entrySet()) {
+            for (Operator operator : Operator.values()) {
+                if (isSupported(entry.getKey(), operator)) {
+                    for (AbstractValueNode operand : entry.getValue()) {
+                        AbstractOperatorNode expression =
+                                operator.factory.apply(new PropertyValueNode(entry.getKey()), operand);
+                        expressions.add(expression);
+                        expressions.add(new NotNode(expression));
+                    }
+                }
+            }
+        }
+        return expressions;
+    }
+
+    @Test
+    public void matchesLikeTheQuery() throws Exception
+    {
+        Event event = createEvent();
+        Map<String, Object> row = createRow();
+
+        List<AbstractOperatorNode> expressions = getExpressions();
+        int matches = 0;
+        for (AbstractOperatorNode expression : expressions) {
+            assertTrue(this.evaluator.canEvaluate(expression));
+
+            ExpressionNodeToHQLConverter.HQLQuery query = this.converter.parse(expression);
+            boolean expected = Boolean.TRUE.equals(evaluate(query.getQuery(), query.getQueryParameters(), row));
+            assertEquals(query.getQuery() + " " + query.getQueryParameters(), expected,
+                    this.evaluator.matches(expression, event));
+
+            if (expected) {
+                matches++;
+            }
+        }
+
+        // Make sure the table covers both the matching and the not matching cases
+        assertTrue(matches > 0);
+        assertTrue(matches < expressions.size());
+    }
+
+    @Test
+    public void doesNotMatchMissingValuesLikeTheQuery()
+    {
+        Event event = new DefaultEvent();
+        Map<String, Object> row = createEmptyRow();
+
+        for (AbstractOperatorNode expression : getExpressions()) {
+            ExpressionNodeToHQLConverter.HQLQuery query = this.converter.parse(expression);
+            boolean expected = Boolean.TRUE.equals(evaluate(query.getQuery(), query.getQueryParameters(), row));
+            assertEquals(query.getQuery() + " " + query.getQueryParameters(), expected,
+                    this.evaluator.matches(expression, event));
+        }
+    }
+
+    /**
+     * Evaluate the generated HQL condition on a stored event like the database would do: a comparison involving a
+     * null value is unknown and the parameters are converted to the type of the column.
+     */
+    private Boolean evaluate(String condition, Map<String, Object> parameters, Map<String, Object> row)
+    {
+        Matcher matcher = NOT_PATTERN.matcher(condition);
+        if (matcher.matches()) {
+            Boolean operand = evaluate(matcher.group(1), parameters, row);
+            return operand != null ? !operand : null;
+        }
+
+        matcher = LIKE_PATTERN.matcher(condition);
+        if (matcher.matches()) {
+            Object column = row.get(matcher.group(1));
+            Object prefix = getParameter(matcher.group(2), parameters);
+            if (column == null || prefix == null) {
+                return null;
+            }
+            return column.toString().startsWith(prefix.toString().replaceAll("!([%_!])", "$1"));
+        }
+
+        matcher = IN_PATTERN.matcher(condition);
+        if (matcher.matches()) {
+            Object column = row.get(matcher.group(1));
+            if (column == null) {
+                return null;
+            }
+            Boolean result = Boolean.FALSE;
+            for (String token : matcher.group(2).split(", ")) {
+                Object value = getParameter(token, parameters);
+                if (value != null && compare(column, value) == 0) {
+                    return Boolean.TRUE;
+                } else if (value == null) {
+                    result = null;
+                }
+            }
+            return result;
+        }
+
+        matcher = COMPARISON_PATTERN.matcher(condition);
+        if (matcher.matches()) {
+            Object column = row.get(matcher.group(1));
+            Object value = getParameter(matcher.group(3), parameters);
+            if (column == null || value == null) {
+                return null;
+            }
+            int comparison = compare(column, value);
+            switch (matcher.group(2)) {
+                case "=":
+                    return comparison == 0;
+                case "<>":
+                    return comparison != 0;
+                case ">=":
+                    return comparison >= 0;
+                default:
+                    return comparison <= 0;
+            }
+        }
+
+        fail("Unexpected condition [" + condition + "]");
+        return null;
+    }
+
+    private Object getParameter(String token, Map<String, Object> parameters)
+    {
+        if (token.startsWith(":")) {
+            return parameters.get(token.substring(1));
+        }
+
+        // Literal
+        return Boolean.valueOf(token);
+    }
+
+    private int compare(Object column, Object value)
+    {
+        if (column instanceof Date) {
+            return Long.compare(((Date) column).getTime(), ((Date) value).getTime());
+        } else if (column instanceof Integer) {
+            return Long.compare((Integer) column, Long.parseLong(value.toString()));
+        } else if (column instanceof Boolean) {
+            return Boolean.compare((Boolean) column, (Boolean) value);
+        }
+
+        return column.toString().compareTo(value.toString());
+    }
+}
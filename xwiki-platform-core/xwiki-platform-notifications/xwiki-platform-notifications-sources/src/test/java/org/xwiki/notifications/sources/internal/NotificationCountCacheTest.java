@@ -0,0 +1,215 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.events.EventStatusAddOrUpdatedEvent;
+import org.xwiki.eventstream.internal.DefaultEventStatus;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link NotificationCountCache} and {@link NotificationCountListener}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class NotificationCountCacheTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<NotificationCountCache> mocker =
+        new MockitoComponentMockingRule<>(NotificationCountCache.class);
+
+    private DocumentReference userA = new DocumentReference("xwiki", "XWiki", "UserA");
+
+    private DocumentReference userB = new DocumentReference("xwiki", "XWiki", "UserB");
+
+    private NotificationCountCache cache;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(this.userA)).thenReturn("xwiki:XWiki.UserA");
+        when(serializer.serialize(this.userB)).thenReturn("xwiki:XWiki.UserB");
+
+        this.cache = this.mocker.getComponentUnderTest();
+    }
+
+    @Test
+    public void getExactCount()
+    {
+        this.cache.set(this.userA, 20, 5L, this.cache.getGeneration());
+
+        assertEquals(Long.valueOf(5L), this.cache.get(this.userA, 20));
+        assertEquals(Long.valueOf(5L), this.cache.get(this.userA, 100));
+        assertEquals(Long.valueOf(3L), this.cache.get(this.userA, 3));
+        assertNull(this.cache.get(this.userB, 20));
+    }
+
+    @Test
+    public void getMaximumCount()
+    {
+        // There are at least 20 events
+        this.cache.set(this.userA, 20, 20L, this.cache.getGeneration());
+
+        assertEquals(Long.valueOf(10L), this.cache.get(this.userA, 10));
+        assertEquals(Long.valueOf(20L), this.cache.get(this.userA, 20));
+        assertNull(this.cache.get(this.userA, 30));
+    }
+
+    @Test
+    public void setAfterInvalidation()
+    {
+        long generation = this.cache.getGeneration();
+
+        // The count is invalidated while it's computed
+        this.cache.invalidate("xwiki:XWiki.UserB");
+        this.cache.set(this.userA, 20, 5L, generation);
+
+        assertNull(this.cache.get(this.userA, 20));
+    }
+
+    @Test
+    public void invalidate() throws Exception
+    {
+        this.cache.set(this.userA, 20, 5L, this.cache.getGeneration());
+        this.cache.set(this.userB, 20, 6L, this.cache.getGeneration());
+
+        this.cache.invalidate("xwiki:XWiki.UserA");
+
+        assertNull(this.cache.get(this.userA, 20));
+        assertEquals(Long.valueOf(6L), this.cache.get(this.userB, 20));
+
+        this.cache.invalidateAll();
+
+        assertNull(this.cache.get(this.userB, 20));
+    }
+
+    @Test
+    public void broadcastInvalidationsTogether() throws Exception
+    {
+        ObservationManager observationManager = this.mocker.getInstance(ObservationManager.class);
+
+        this.cache.invalidate("xwiki:XWiki.UserA");
+        this.cache.invalidate(Arrays.asList("xwiki:XWiki.UserA", "xwiki:XWiki.UserB"));
+        this.cache.broadcast();
+
+        // A single message for all the invalidations
+        verify(observationManager).notify(any(NotificationCountInvalidatedEvent.class),
+            eq(Arrays.asList("xwiki:XWiki.UserA", "xwiki:XWiki.UserB")));
+
+        this.cache.invalidate("xwiki:XWiki.UserA");
+        this.cache.invalidateAll();
+        this.cache.invalidate("xwiki:XWiki.UserB");
+        this.cache.broadcast();
+
+        verify(observationManager).notify(any(NotificationCountInvalidatedEvent.class), isNull());
+
+        // Nothing left to broadcast
+        this.cache.broadcast();
+        verify(observationManager, times(2)).notify(any(NotificationCountInvalidatedEvent.class), any());
+    }
+
+    @Test
+    public void invalidateWhenInvalidatedByAnotherMember() throws Exception
+    {
+        NotificationCountListener listener = new NotificationCountListener();
+        ReflectionUtils.setFieldValue(listener, "countCache", this.cache);
+
+        this.cache.set(this.userA, 20, 5L, this.cache.getGeneration());
+        this.cache.set(this.userB, 20, 6L, this.cache.getGeneration());
+
+        listener.onEvent(new NotificationCountInvalidatedEvent(), Arrays.asList("xwiki:XWiki.UserA"), null);
+
+        assertNull(this.cache.get(this.userA, 20));
+        assertEquals(Long.valueOf(6L), this.cache.get(this.userB, 20));
+
+        listener.onEvent(new NotificationCountInvalidatedEvent(), null, null);
+
+        assertNull(this.cache.get(this.userB, 20));
+
+        // Don't send back the invalidations received from the other members
+        this.cache.broadcast();
+        ObservationManager observationManager = this.mocker.getInstance(ObservationManager.class);
+        verify(observationManager, never()).notify(any(NotificationCountInvalidatedEvent.class), any());
+    }
+
+    @Test
+    public void invalidateWhenEventIsAddedToInbox() throws Exception
+    {
+        NotificationCountListener listener = new NotificationCountListener();
+        ReflectionUtils.setFieldValue(listener, "countCache", this.cache);
+
+        this.cache.set(this.userA, 20, 5L, this.cache.getGeneration());
+        long generation = this.cache.getGeneration();
+
+        // The status remembering that the event has been added to the inboxes is not about a user
+        Event event = mock(Event.class);
+        listener.onEvent(new EventStatusAddOrUpdatedEvent(),
+            new DefaultEventStatus(event, NotificationInboxManager.DISPATCHED_ENTITY_ID, true), null);
+        assertEquals(generation, this.cache.getGeneration());
+
+        listener.onEvent(new EventStatusAddOrUpdatedEvent(), new DefaultEventStatus(event, "xwiki:XWiki.UserA", false),
+            null);
+        assertNull(this.cache.get(this.userA, 20));
+    }
+
+    @Test
+    public void invalidateWhenPreferencesChange() throws Exception
+    {
+        NotificationCountListener listener = new NotificationCountListener();
+        ReflectionUtils.setFieldValue(listener, "countCache", this.cache);
+
+        this.cache.set(this.userA, 20, 5L, this.cache.getGeneration());
+
+        // A page outside of the XWiki space
+        DocumentModelBridge document = mock(DocumentModelBridge.class);
+        when(document.getDocumentReference()).thenReturn(new DocumentReference("xwiki", "Space", "Page"));
+        listener.onEvent(new DocumentUpdatedEvent(), document, null);
+        assertEquals(Long.valueOf(5L), this.cache.get(this.userA, 20));
+
+        // The profile of a user
+        when(document.getDocumentReference()).thenReturn(this.userB);
+        listener.onEvent(new DocumentUpdatedEvent(), document, null);
+        assertNull(this.cache.get(this.userA, 20));
+    }
+}
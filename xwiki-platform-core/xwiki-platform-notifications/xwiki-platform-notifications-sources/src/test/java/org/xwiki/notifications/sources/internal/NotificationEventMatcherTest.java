@@ -0,0 +1,153 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.EventStream;
+import org.xwiki.eventstream.internal.DefaultEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.notifications.filters.NotificationFilter;
+import org.xwiki.notifications.filters.NotificationFilterManager;
+import org.xwiki.notifications.filters.expression.EventProperty;
+import org.xwiki.notifications.filters.expression.ExpressionNode;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.xwiki.notifications.filters.expression.generics.ExpressionBuilder.value;
+
+/**
+ * Unit tests for {@link NotificationEventMatcher}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class NotificationEventMatcherTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<NotificationEventMatcher> mocker =
+        new MockitoComponentMockingRule<>(NotificationEventMatcher.class);
+
+    private DocumentReference userA = new DocumentReference("xwiki", "XWiki", "UserA");
+
+    private DocumentReference userB = new DocumentReference("xwiki", "XWiki", "UserB");
+
+    private DocumentReference userC = new DocumentReference("xwiki", "XWiki", "UserC");
+
+    private DocumentReference userD = new DocumentReference("xwiki", "XWiki", "UserD");
+
+    private DocumentReference userE = new DocumentReference("xwiki", "XWiki", "UserE");
+
+    private DocumentReference document = new DocumentReference("xwiki", "Space", "Page");
+
+    private DefaultEvent event;
+
+    private QueryGenerator queryGenerator;
+
+    private QueryManager queryManager;
+
+    private Query matchingQuery;
+
+    private Query notMatchingQuery;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.event = new DefaultEvent();
+        this.event.setId("id");
+        this.event.setType("update");
+        this.event.setDocument(this.document);
+
+        this.queryGenerator = this.mocker.getInstance(QueryGenerator.class);
+
+        ExpressionNodeToHQLConverter hqlConverter = this.mocker.getInstance(ExpressionNodeToHQLConverter.class);
+        when(hqlConverter.parse(any())).thenReturn(new ExpressionNodeToHQLConverter.HQLQuery());
+
+        // The first condition matches the event and the second one doesn't
+        this.queryManager = this.mocker.getInstance(QueryManager.class);
+        this.matchingQuery = mock(Query.class);
+        this.notMatchingQuery = mock(Query.class);
+        when(this.queryManager.createQuery(anyString(), eq(Query.HQL))).thenReturn(this.matchingQuery,
+            this.notMatchingQuery);
+        EventStream eventStream = this.mocker.getInstance(EventStream.class);
+        when(eventStream.searchEvents(this.matchingQuery)).thenReturn(Arrays.<Event>asList(this.event));
+        when(eventStream.searchEvents(this.notMatchingQuery)).thenReturn(Collections.emptyList());
+
+        AuthorizationManager authorizationManager = this.mocker.getInstance(AuthorizationManager.class);
+        when(authorizationManager.hasAccess(eq(Right.VIEW), any(), eq(this.document))).thenReturn(true);
+        when(authorizationManager.hasAccess(Right.VIEW, this.userD, this.document)).thenReturn(false);
+
+        NotificationFilter filter = mock(NotificationFilter.class);
+        when(filter.filterEvent(this.event, this.userE, NotificationFormat.ALERT)).thenReturn(true);
+        NotificationFilterManager filterManager = this.mocker.getInstance(NotificationFilterManager.class);
+        when(filterManager.getAllFilters(any())).thenReturn(Collections.singleton(filter));
+    }
+
+    private void mockCondition(DocumentReference user, String type) throws Exception
+    {
+        ExpressionNode condition = value(EventProperty.TYPE).eq(value(type));
+        when(this.queryGenerator.generateQueryExpression(eq(user), eq(NotificationFormat.ALERT), eq(false), isNull(),
+            isNull(), any())).thenReturn(condition);
+    }
+
+    @Test
+    public void matchUsersSharingTheSameCondition() throws Exception
+    {
+        mockCondition(this.userA, "update");
+        mockCondition(this.userB, "create");
+        mockCondition(this.userC, "update");
+        mockCondition(this.userD, "update");
+        mockCondition(this.userE, "update");
+
+        assertEquals(Arrays.asList(this.userA, this.userC), this.mocker.getComponentUnderTest().match(this.event,
+            Arrays.asList(this.userA, this.userB, this.userC, this.userD, this.userE)));
+
+        // One query per distinct condition
+        verify(this.queryManager, times(2)).createQuery(anyString(), eq(Query.HQL));
+    }
+
+    @Test
+    public void matchUserWithoutPreferences() throws Exception
+    {
+        assertTrue(this.mocker.getComponentUnderTest().match(this.event, Arrays.asList(this.userA)).isEmpty());
+
+        verify(this.queryManager, never()).createQuery(anyString(), anyString());
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.EventStatus;
+import org.xwiki.eventstream.EventStatusManager;
+import org.xwiki.eventstream.EventStream;
+import org.xwiki.eventstream.internal.DefaultEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link NotificationInboxManager}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class NotificationInboxManagerTest
+{
+    private static final long TIMEOUT = 10000L;
+
+    @Rule
+    public final MockitoComponentMockingRule<NotificationInboxManager> mocker =
+        new MockitoComponentMockingRule<>(NotificationInboxManager.class);
+
+    private DocumentReference userA = new DocumentReference("xwiki", "XWiki", "UserA");
+
+    private DocumentReference userB = new DocumentReference("xwiki", "XWiki", "UserB");
+
+    private DefaultEvent event;
+
+    private NotificationEventMatcher eventMatcher;
+
+    private EventStatusManager eventStatusManager;
+
+    private EventStream eventStream;
+
+    private NotificationInboxCheckpointStore checkpointStore;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.event = new DefaultEvent();
+        this.event.setId("id");
+        this.event.setWiki(new WikiReference("xwiki"));
+        this.event.setDate(new Date(1000L));
+
+        // Run the inbox thread
+        ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class, "context");
+        when(componentManager.getInstance(ExecutionContextManager.class))
+            .thenReturn(mock(ExecutionContextManager.class));
+        when(componentManager.getInstance(Execution.class)).thenReturn(mock(Execution.class));
+
+        WikiDescriptorManager wikiDescriptorManager = this.mocker.getInstance(WikiDescriptorManager.class);
+        when(wikiDescriptorManager.getMainWikiId()).thenReturn("xwiki");
+
+        Query usersQuery = mock(Query.class);
+        when(usersQuery.execute()).thenReturn(Arrays.<Object>asList("XWiki.UserA", "XWiki.UserB"));
+        QueryManager queryManager = this.mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(startsWith("select distinct doc.fullName"), eq(Query.XWQL)))
+            .thenReturn(usersQuery);
+
+        DocumentReferenceResolver<String> resolver = this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING);
+        when(resolver.resolve("XWiki.UserA", new WikiReference("xwiki"))).thenReturn(this.userA);
+        when(resolver.resolve("XWiki.UserB", new WikiReference("xwiki"))).thenReturn(this.userB);
+
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(this.userB)).thenReturn("xwiki:XWiki.UserB");
+
+        // Only the second user is interested in the event
+        this.eventMatcher = this.mocker.getInstance(NotificationEventMatcher.class);
+        when(this.eventMatcher.match(any(Event.class), eq(Arrays.asList(this.userA, this.userB))))
+            .thenReturn(Arrays.asList(this.userB));
+
+        this.eventStatusManager = this.mocker.getInstance(EventStatusManager.class);
+        this.eventStream = this.mocker.getInstance(EventStream.class);
+        this.checkpointStore = this.mocker.getInstance(NotificationInboxCheckpointStore.class);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.mocker.getComponentUnderTest().dispose();
+    }
+
+    private void verifyAddedToInbox(Event event) throws Exception
+    {
+        verify(this.eventStatusManager, timeout(TIMEOUT)).createEventStatuses(argThat(
+            (List<EventStatus> statuses) -> statuses.size() == 1 && statuses.get(0).getEvent() == event
+                && "xwiki:XWiki.UserB".equals(statuses.get(0).getEntityId()) && !statuses.get(0).isRead()));
+        verify(this.eventStatusManager, timeout(TIMEOUT)).createEventStatuses(argThat(
+            (List<EventStatus> statuses) -> statuses.size() == 1 && statuses.get(0).getEvent() == event
+                && NotificationInboxManager.DISPATCHED_ENTITY_ID.equals(statuses.get(0).getEntityId())));
+    }
+
+    private Query mockEventsQuery(List<Event> events) throws Exception
+    {
+        Query eventsQuery = mock(Query.class);
+        QueryManager queryManager = this.mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(startsWith("where (event.date > :fromDate"), eq(Query.HQL)))
+            .thenReturn(eventsQuery);
+        when(this.eventStream.searchEvents(eventsQuery)).thenReturn(events);
+        return eventsQuery;
+    }
+
+    @Test
+    public void addEvent() throws Exception
+    {
+        when(this.checkpointStore.getLastDispatchedDate()).thenReturn(new Date(500L));
+        mockEventsQuery(Collections.emptyList());
+
+        this.mocker.getComponentUnderTest().addEvent(this.event);
+
+        verifyAddedToInbox(this.event);
+        verify(this.checkpointStore, timeout(TIMEOUT)).setLastDispatchedDate(this.event.getDate());
+    }
+
+    @Test
+    public void startWithoutCheckpoint() throws Exception
+    {
+        Query eventsQuery = mockEventsQuery(Arrays.asList(this.event));
+
+        this.mocker.getComponentUnderTest().start();
+
+        // The inbox has never been used before so all the stored events are handled, from the oldest one
+        verifyAddedToInbox(this.event);
+        verify(eventsQuery, timeout(TIMEOUT)).bindValue("fromDate", new Date(0));
+        verify(eventsQuery, timeout(TIMEOUT)).bindValue("fromId", "");
+        verify(this.checkpointStore, timeout(TIMEOUT)).setLastDispatchedDate(this.event.getDate());
+    }
+
+    @Test
+    public void startWithEventsStoredWhileStopped() throws Exception
+    {
+        Date lastDispatchedDate = new Date(500L);
+        when(this.checkpointStore.getLastDispatchedDate()).thenReturn(lastDispatchedDate);
+
+        Query eventsQuery = mockEventsQuery(Arrays.asList(this.event));
+
+        this.mocker.getComponentUnderTest().start();
+
+        verifyAddedToInbox(this.event);
+        verify(eventsQuery, timeout(TIMEOUT)).bindValue("fromDate", lastDispatchedDate);
+        verify(eventsQuery, timeout(TIMEOUT)).bindValue("fromId", "");
+        // The events already handled by any member of the cluster are skipped
+        verify(eventsQuery, timeout(TIMEOUT)).bindValue("dispatchedEntity",
+            NotificationInboxManager.DISPATCHED_ENTITY_ID);
+        // The statuses are never overwritten
+        verify(this.eventStatusManager, never()).saveEventStatus(any());
+    }
+
+    @Test
+    public void catchUpPagesOnTheLastHandledEvent() throws Exception
+    {
+        Date lastDispatchedDate = new Date(500L);
+        when(this.checkpointStore.getLastDispatchedDate()).thenReturn(lastDispatchedDate);
+
+        // A full page of events, then an empty one
+        Query eventsQuery = mock(Query.class);
+        QueryManager queryManager = this.mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(startsWith("where (event.date > :fromDate"), eq(Query.HQL)))
+            .thenReturn(eventsQuery);
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            DefaultEvent pageEvent = new DefaultEvent();
+            pageEvent.setId("id" + i);
+            pageEvent.setWiki(new WikiReference("xwiki"));
+            pageEvent.setDate(new Date(1000L + i));
+            events.add(pageEvent);
+        }
+        when(this.eventStream.searchEvents(eventsQuery)).thenReturn(events, Collections.emptyList());
+
+        this.mocker.getComponentUnderTest().start();
+
+        verify(eventsQuery, timeout(TIMEOUT)).bindValue("fromDate", new Date(1099L));
+        verify(eventsQuery, timeout(TIMEOUT)).bindValue("fromId", "id99");
+        verify(eventsQuery, never()).setOffset(anyInt());
+    }
+}
@@ -46,4 +46,35 @@
      * @return the identifier of the network adapter implementation to use to actually send and receive network messages
      */
     String getNetworkAdapter();
+
+    /**
+     * @return true if the remote events should be sent using the compact binary encoding provided by the
+     *         {@link org.xwiki.observation.remote.codec.RemoteEventDataCodec}s instead of plain Java serialization
+     * @since 9.10RC1
+     */
+    default boolean isCompactEncodingEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * @return the time in milliseconds to wait for other events before sending a remote event, so that the events
+     *         generated in a short period of time are sent in a single network message, 0 to send each event right
+     *         away; only used with the compact encoding
+     * @since 9.10RC1
+     */
+    default int getBatchWindow()
+    {
+        return 0;
+    }
+
+    /**
+     * @return the maximum number of remote events sent in a single network message when
+     *         {@link #getBatchWindow() batching} is enabled
+     * @since 9.10RC1
+     */
+    default int getBatchMaximumSize()
+    {
+        return Integer.MAX_VALUE;
+    }
 }
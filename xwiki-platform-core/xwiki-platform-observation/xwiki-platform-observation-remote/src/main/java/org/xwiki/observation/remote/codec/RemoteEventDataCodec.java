@@ -0,0 +1,66 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.remote.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.observation.remote.RemoteEventData;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Encode a remote event in a compact binary form to send it on the network, and decode it on the other side.
+ * <p>
+ * The codecs are used in priority order when the compact encoding of the remote events is enabled. The identifier
+ * (hint) of the codec which encoded an event is sent along with it so it should stay short and never change.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Role
+@Unstable
+public interface RemoteEventDataCodec
+{
+    /**
+     * @return the priority of the codec, the lowest is tried first
+     */
+    int getPriority();
+
+    /**
+     * Write the provided remote event in the output.
+     *
+     * @param remoteEvent the remote event to encode
+     * @param output where to write the encoded remote event
+     * @return true if the codec supports this remote event, false otherwise (what was written is then ignored)
+     * @throws IOException when failing to write the remote event
+     */
+    boolean encode(RemoteEventData remoteEvent, DataOutput output) throws IOException;
+
+    /**
+     * Read a remote event previously written by {@link #encode(RemoteEventData, DataOutput)}.
+     *
+     * @param input where to read the encoded remote event
+     * @return the remote event
+     * @throws IOException when failing to read the remote event
+     */
+    RemoteEventData decode(DataInput input) throws IOException;
+}
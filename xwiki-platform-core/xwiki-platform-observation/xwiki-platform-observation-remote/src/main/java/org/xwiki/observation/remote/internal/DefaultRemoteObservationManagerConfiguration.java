@@ -40,6 +40,8 @@
 @Singleton
 public class DefaultRemoteObservationManagerConfiguration implements RemoteObservationManagerConfiguration
 {
+    private static final int DEFAULT_BATCH_MAXIMUM_SIZE = 100;
+
     /**
      * USed to access configuration storage.
      */
@@ -69,4 +71,22 @@ public String getNetworkAdapter()
     {
         return this.configurationSource.getProperty("observation.remote.networkadapter", "jgroups");
     }
+
+    @Override
+    public boolean isCompactEncodingEnabled()
+    {
+        return this.configurationSource.getProperty("observation.remote.compactEncoding", false);
+    }
+
+    @Override
+    public int getBatchWindow()
+    {
+        return this.configurationSource.getProperty("observation.remote.batchWindow", 0);
+    }
+
+    @Override
+    public int getBatchMaximumSize()
+    {
+        return this.configurationSource.getProperty("observation.remote.batchMaximumSize", DEFAULT_BATCH_MAXIMUM_SIZE);
+    }
 }
@@ -0,0 +1,302 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.remote.internal.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.observation.remote.RemoteEventData;
+import org.xwiki.observation.remote.codec.RemoteEventDataCodec;
+
+/**
+ * Pack several remote events in a single compact binary message using the available {@link RemoteEventDataCodec}s,
+ * and keep statistics about the sent and received events.
+ * <p>
+ * A message starts with the version of the format and the number of events, followed for each event by the
+ * identifier of the codec and the size of the encoded event, so that the events which cannot be decoded (e.g. because
+ * the codec is not installed on this member) can be skipped.
+ * <p>
+ * The statistics are registered against the JMX server under the {@value #OBJECT_NAME} name.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = RemoteEventDataPacker.class)
+@Singleton
+public class RemoteEventDataPacker implements RemoteEventStatisticsMXBean, Initializable, Disposable
+{
+    /**
+     * The name under which the statistics are registered against the JMX server.
+     */
+    public static final String OBJECT_NAME = "org.xwiki.observation.remote:type=RemoteEventStatistics";
+
+    private static final byte FORMAT_VERSION = 1;
+
+    /**
+     * Statistics about a type of event.
+     *
+     * @version $Id$
+     */
+    public static final class EventTypeStatistics
+    {
+        private final LongAdder sentCount = new LongAdder();
+
+        private final LongAdder sentBytes = new LongAdder();
+
+        private final LongAdder receivedCount = new LongAdder();
+
+        private final LongAdder receivedBytes = new LongAdder();
+
+        /**
+         * @return the number of sent events
+         */
+        public long getSentCount()
+        {
+            return this.sentCount.sum();
+        }
+
+        /**
+         * @return the total size of the sent events, in bytes
+         */
+        public long getSentBytes()
+        {
+            return this.sentBytes.sum();
+        }
+
+        /**
+         * @return the number of received events
+         */
+        public long getReceivedCount()
+        {
+            return this.receivedCount.sum();
+        }
+
+        /**
+         * @return the total size of the received events, in bytes
+         */
+        public long getReceivedBytes()
+        {
+            return this.receivedBytes.sum();
+        }
+    }
+
+    @Inject
+    private Map<String, RemoteEventDataCodec> codecs;
+
+    @Inject
+    private Logger logger;
+
+    private List<Map.Entry<String, RemoteEventDataCodec>> sortedCodecs;
+
+    private final Map<String, EventTypeStatistics> statistics = new ConcurrentHashMap<>();
+
+    private final LongAdder sentMessages = new LongAdder();
+
+    private final LongAdder receivedMessages = new LongAdder();
+
+    private ObjectName objectName;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.sortedCodecs = new ArrayList<>(this.codecs.entrySet());
+        Collections.sort(this.sortedCodecs,
+            (codec1, codec2) -> codec1.getValue().getPriority() - codec2.getValue().getPriority());
+
+        // Register the statistics against the JMX Server
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            mbs.registerMBean(this, name);
+            this.objectName = name;
+        } catch (Exception e) {
+            this.logger.warn("Failed to register the remote event statistics against the JMX Server: {}",
+                e.getMessage());
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        // Unregister the statistics from the JMX Server
+        if (this.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            } catch (Exception e) {
+                this.logger.warn("Failed to unregister the remote event statistics from the JMX Server: {}",
+                    e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param remoteEvents the remote events to pack
+     * @return the message containing the encoded remote events
+     * @throws IOException when failing to write the message
+     */
+    public byte[] pack(List<RemoteEventData> remoteEvents) throws IOException
+    {
+        List<Map.Entry<String, byte[]>> encodedEvents = new ArrayList<>(remoteEvents.size());
+        for (RemoteEventData remoteEvent : remoteEvents) {
+            Map.Entry<String, byte[]> encodedEvent = encode(remoteEvent);
+            if (encodedEvent != null) {
+                encodedEvents.add(encodedEvent);
+                EventTypeStatistics eventTypeStatistics = getStatistics(remoteEvent);
+                eventTypeStatistics.sentCount.increment();
+                eventTypeStatistics.sentBytes.add(encodedEvent.getValue().length);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(FORMAT_VERSION);
+        output.writeInt(encodedEvents.size());
+        for (Map.Entry<String, byte[]> encodedEvent : encodedEvents) {
+            output.writeUTF(encodedEvent.getKey());
+            output.writeInt(encodedEvent.getValue().length);
+            output.write(encodedEvent.getValue());
+        }
+        output.flush();
+
+        this.sentMessages.increment();
+
+        return bytes.toByteArray();
+    }
+
+    private Map.Entry<String, byte[]> encode(RemoteEventData remoteEvent)
+    {
+        for (Map.Entry<String, RemoteEventDataCodec> codec : this.sortedCodecs) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream output = new DataOutputStream(bytes)) {
+                if (codec.getValue().encode(remoteEvent, output)) {
+                    output.flush();
+
+                    return new AbstractMap.SimpleImmutableEntry<>(codec.getKey(), bytes.toByteArray());
+                }
+            } catch (IOException e) {
+                this.logger.warn("Failed to encode remote event [{}] with codec [{}]: {}", remoteEvent,
+                    codec.getKey(), e.getMessage());
+            }
+        }
+
+        this.logger.error("No codec could encode the remote event [{}], it won't be sent", remoteEvent);
+
+        return null;
+    }
+
+    /**
+     * @param message the message containing encoded remote events
+     * @return the decoded remote events
+     * @throws IOException when failing to read the message
+     */
+    public List<RemoteEventData> unpack(byte[] message) throws IOException
+    {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(message));
+
+        byte version = input.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported remote events message format version [" + version + "]");
+        }
+
+        this.receivedMessages.increment();
+
+        int size = input.readInt();
+        List<RemoteEventData> remoteEvents = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            String hint = input.readUTF();
+            byte[] encodedEvent = new byte[input.readInt()];
+            input.readFully(encodedEvent);
+
+            RemoteEventData remoteEvent = decode(hint, encodedEvent);
+            if (remoteEvent != null) {
+                remoteEvents.add(remoteEvent);
+                EventTypeStatistics eventTypeStatistics = getStatistics(remoteEvent);
+                eventTypeStatistics.receivedCount.increment();
+                eventTypeStatistics.receivedBytes.add(encodedEvent.length);
+            }
+        }
+
+        return remoteEvents;
+    }
+
+    private RemoteEventData decode(String hint, byte[] encodedEvent)
+    {
+        RemoteEventDataCodec codec = this.codecs.get(hint);
+        if (codec == null) {
+            this.logger.warn("Skipping a remote event encoded with unknown codec [{}]", hint);
+
+            return null;
+        }
+
+        try {
+            return codec.decode(new DataInputStream(new ByteArrayInputStream(encodedEvent)));
+        } catch (IOException e) {
+            this.logger.error("Failed to decode a remote event with codec [{}]", hint, e);
+
+            return null;
+        }
+    }
+
+    private EventTypeStatistics getStatistics(RemoteEventData remoteEvent)
+    {
+        return this.statistics.computeIfAbsent(remoteEvent.getEvent().getClass().getName(),
+            eventType -> new EventTypeStatistics());
+    }
+
+    @Override
+    public Map<String, EventTypeStatistics> getStatistics()
+    {
+        return Collections.unmodifiableMap(this.statistics);
+    }
+
+    @Override
+    public long getSentMessageCount()
+    {
+        return this.sentMessages.sum();
+    }
+
+    @Override
+    public long getReceivedMessageCount()
+    {
+        return this.receivedMessages.sum();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.remote.internal.codec;
+
+import java.util.Map;
+
+import org.xwiki.observation.remote.internal.codec.RemoteEventDataPacker.EventTypeStatistics;
+
+/**
+ * Expose the statistics of the remote events sent and received with the compact encoding through JMX, so that they can
+ * be followed from any monitoring tool. The rates can be derived from these counters.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public interface RemoteEventStatisticsMXBean
+{
+    /**
+     * @return the statistics of the sent and received events, indexed by event class name
+     */
+    Map<String, EventTypeStatistics> getStatistics();
+
+    /**
+     * @return the number of sent messages (each one containing one or several events)
+     */
+    long getSentMessageCount();
+
+    /**
+     * @return the number of received messages (each one containing one or several events)
+     */
+    long getReceivedMessageCount();
+}
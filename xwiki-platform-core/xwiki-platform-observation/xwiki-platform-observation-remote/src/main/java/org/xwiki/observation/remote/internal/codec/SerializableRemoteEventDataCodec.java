@@ -0,0 +1,90 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.remote.internal.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jgroups.util.Util;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.remote.RemoteEventData;
+import org.xwiki.observation.remote.codec.RemoteEventDataCodec;
+
+/**
+ * Fallback {@link RemoteEventDataCodec} relying on Java serialization, the same way JGroups serialize the objects
+ * sent without compact encoding. Support any remote event.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component
+@Named(SerializableRemoteEventDataCodec.HINT)
+@Singleton
+public class SerializableRemoteEventDataCodec implements RemoteEventDataCodec
+{
+    /**
+     * The identifier of the codec.
+     */
+    public static final String HINT = "serializable";
+
+    @Override
+    public int getPriority()
+    {
+        // Used only if no other codec support the event
+        return 2000;
+    }
+
+    @Override
+    public boolean encode(RemoteEventData remoteEvent, DataOutput output) throws IOException
+    {
+        byte[] bytes;
+        try {
+            bytes = Util.objectToByteBuffer(remoteEvent);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to serialize the remote event", e);
+        }
+
+        output.writeInt(bytes.length);
+        output.write(bytes);
+
+        return true;
+    }
+
+    @Override
+    public RemoteEventData decode(DataInput input) throws IOException
+    {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+
+        try {
+            return (RemoteEventData) Util.objectFromByteBuffer(bytes);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to unserialize the remote event", e);
+        }
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.xwiki.observation.remote.internal.jgroups;
 
+import java.io.IOException;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -30,6 +32,7 @@
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.observation.remote.RemoteEventData;
 import org.xwiki.observation.remote.RemoteObservationManager;
+import org.xwiki.observation.remote.internal.codec.RemoteEventDataPacker;
 import org.xwiki.observation.remote.jgroups.JGroupsReceiver;
 
 /**
@@ -60,6 +63,12 @@ public class DefaultJGroupsReceiver extends ReceiverAdapter implements JGroupsRe
     @Inject
     private Logger logger;
 
+    /**
+     * Used to decode the events sent with the compact encoding.
+     */
+    @Inject
+    private RemoteEventDataPacker packer;
+
     /**
      * @return the RemoteObservationManager
      */
@@ -79,8 +88,24 @@ public RemoteObservationManager getRemoteObservationManager()
     @Override
     public void receive(Message msg)
     {
-        RemoteEventData remoteEvent = (RemoteEventData) msg.getObject();
+        Object content = msg.getObject();
 
+        if (content instanceof byte[]) {
+            // Events sent with the compact encoding
+            try {
+                for (RemoteEventData remoteEvent : this.packer.unpack((byte[]) content)) {
+                    receive(remoteEvent);
+                }
+            } catch (IOException e) {
+                this.logger.error("Failed to decode the remote events received from [{}]", msg.getSrc(), e);
+            }
+        } else {
+            receive((RemoteEventData) content);
+        }
+    }
+
+    private void receive(RemoteEventData remoteEvent)
+    {
         this.logger.debug("Received JGroups remote event [{}]", remoteEvent);
 
         getRemoteObservationManager().notify(remoteEvent);
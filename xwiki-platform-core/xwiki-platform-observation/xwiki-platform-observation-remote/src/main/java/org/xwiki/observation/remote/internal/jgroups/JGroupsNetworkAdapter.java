@@ -23,8 +23,14 @@
 import java.io.InputStream;
 import java.lang.management.ManagementFactory;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -38,6 +44,7 @@
 import org.jgroups.conf.ProtocolStackConfigurator;
 import org.jgroups.conf.XmlConfigurator;
 import org.jgroups.jmx.JmxConfigurator;
+import org.jgroups.util.Util;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
@@ -46,6 +53,8 @@
 import org.xwiki.observation.remote.NetworkAdapter;
 import org.xwiki.observation.remote.RemoteEventData;
 import org.xwiki.observation.remote.RemoteEventException;
+import org.xwiki.observation.remote.RemoteObservationManagerConfiguration;
+import org.xwiki.observation.remote.internal.codec.RemoteEventDataPacker;
 import org.xwiki.observation.remote.jgroups.JGroupsReceiver;
 
 /**
@@ -76,30 +85,119 @@ public class JGroupsNetworkAdapter implements NetworkAdapter
     @Inject
     private Logger logger;
 
+    /**
+     * Used to know how to send the events.
+     */
+    @Inject
+    private RemoteObservationManagerConfiguration configuration;
+
+    /**
+     * Used to encode the events in a compact way.
+     */
+    @Inject
+    private RemoteEventDataPacker packer;
+
     /**
      * The network channels.
      */
     private Map<String, JChannel> channels = new ConcurrentHashMap<String, JChannel>();
 
+    /**
+     * The events waiting to be sent in the same message.
+     */
+    private final List<RemoteEventData> pendingEvents = new ArrayList<>();
+
+    /**
+     * Make sure the batches of events are sent in the right order.
+     */
+    private final Object sendLock = new Object();
+
+    /**
+     * Send the batches of events at the end of the batch window.
+     */
+    private ScheduledExecutorService batchExecutor;
+
     @Override
     public void send(RemoteEventData remoteEvent)
     {
         this.logger.debug("Send JGroups remote event [" + remoteEvent + "]");
 
-        // Send the message to the whole group
-        Message message = new Message(null, remoteEvent);
+        if (!this.configuration.isCompactEncodingEnabled()) {
+            // Send the message to the whole group
+            send(new Message(null, remoteEvent), remoteEvent);
+        } else if (this.configuration.getBatchWindow() > 0) {
+            addToBatch(remoteEvent);
+        } else {
+            // Like the serialized events, the events sent without batch are not ordered between threads
+            sendPacked(Collections.singletonList(remoteEvent));
+        }
+    }
 
+    private void send(Message message, Object content)
+    {
         // Send message to JGroups channels
         for (Map.Entry<String, JChannel> entry : this.channels.entrySet()) {
             try {
                 entry.getValue().send(message);
             } catch (Exception e) {
-                this.logger
-                    .error("Failed to send message [" + remoteEvent + "] to the channel [" + entry.getKey() + "]", e);
+                this.logger.error("Failed to send message [" + content + "] to the channel [" + entry.getKey() + "]",
+                    e);
             }
         }
     }
 
+    private void sendPacked(List<RemoteEventData> remoteEvents)
+    {
+        try {
+            // Wrapped so that the receiver can tell it apart from a serialized RemoteEventData
+            send(new Message(null, Util.objectToByteBuffer(this.packer.pack(remoteEvents))), remoteEvents);
+        } catch (Exception e) {
+            this.logger.error("Failed to encode the remote events [{}]", remoteEvents, e);
+        }
+    }
+
+    private void addToBatch(RemoteEventData remoteEvent)
+    {
+        synchronized (this.pendingEvents) {
+            if (this.batchExecutor == null) {
+                this.batchExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "XWiki remote events batch sender");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+
+            this.pendingEvents.add(remoteEvent);
+
+            if (this.pendingEvents.size() >= this.configuration.getBatchMaximumSize()) {
+                this.batchExecutor.execute(this::flush);
+            } else if (this.pendingEvents.size() == 1) {
+                // First event of the batch
+                this.batchExecutor.schedule(this::flush, this.configuration.getBatchWindow(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Send the events waiting in the current batch.
+     */
+    private void flush()
+    {
+        synchronized (this.sendLock) {
+            List<RemoteEventData> batch;
+            synchronized (this.pendingEvents) {
+                if (this.pendingEvents.isEmpty()) {
+                    return;
+                }
+
+                batch = new ArrayList<>(this.pendingEvents);
+                this.pendingEvents.clear();
+            }
+
+            sendPacked(batch);
+        }
+    }
+
     @Override
     public void startChannel(String channelId) throws RemoteEventException
     {
@@ -137,6 +235,9 @@ public void stopChannel(String channelId) throws RemoteEventException
             throw new RemoteEventException(MessageFormat.format("Channel [{0}] is not started", channelId));
         }
 
+        // Don't lose the events waiting to be sent
+        flush();
+
         channel.close();
 
         this.channels.remove(channelId);
@@ -218,6 +319,16 @@ private ProtocolStackConfigurator loadChannelConfiguration(String channelId) thr
     @Override
     public void stopAllChannels() throws RemoteEventException
     {
+        // Don't lose the events waiting to be sent
+        flush();
+
+        synchronized (this.pendingEvents) {
+            if (this.batchExecutor != null) {
+                this.batchExecutor.shutdown();
+                this.batchExecutor = null;
+            }
+        }
+
         for (Map.Entry<String, JChannel> channelEntry : this.channels.entrySet()) {
             channelEntry.getValue().close();
         }
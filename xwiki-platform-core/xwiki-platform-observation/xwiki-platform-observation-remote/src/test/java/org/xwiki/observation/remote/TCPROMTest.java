@@ -19,17 +19,24 @@
  */
 package org.xwiki.observation.remote;
 
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 
+import javax.management.ObjectName;
+
 import org.jmock.Expectations;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.xwiki.logging.event.LogEvent;
 import org.xwiki.observation.EventListener;
+import org.xwiki.observation.remote.internal.codec.RemoteEventDataPacker;
 import org.xwiki.observation.remote.test.AbstractROMTestCase;
 import org.xwiki.observation.remote.test.TestEvent;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 public class TCPROMTest extends AbstractROMTestCase
 {
     static class Unserializable { }
@@ -91,4 +98,51 @@ public void testSerializableEvent() throws InterruptedException
         // Make sure JGroups has enough time to send the message
         Thread.sleep(1000);
     }
-}
\ No newline at end of file
+
+    /**
+     * Validate sharing several events in a single compact message between two instances of
+     * {@link RemoteObservationManager}.
+     */
+    @Test
+    public void testCompactEncodingWithBatch() throws Exception
+    {
+        getConfigurationSource1().setProperty("observation.remote.compactEncoding", Boolean.TRUE);
+        getConfigurationSource1().setProperty("observation.remote.batchWindow", 100);
+
+        final EventListener remoteListener = this.mockery.mock(EventListener.class, "remote");
+
+        final TestEvent event = new TestEvent();
+
+        this.mockery.checking(new Expectations()
+        {{
+                allowing(remoteListener).getName();
+                will(returnValue("mylistener"));
+                allowing(remoteListener).getEvents();
+                will(returnValue(Arrays.asList(event)));
+                oneOf(remoteListener).onEvent(with(equal(event)), with(equal("source1")), with(equal("data1")));
+                oneOf(remoteListener).onEvent(with(equal(event)), with(equal("source2")), with(equal("data2")));
+            }});
+
+        getObservationManager2().addListener(remoteListener);
+
+        getObservationManager1().notify(event, "source1", "data1");
+        getObservationManager1().notify(event, "source2", "data2");
+
+        // Make sure JGroups has enough time to send the message
+        Thread.sleep(1000);
+
+        // Both events have been sent in the same message
+        RemoteEventDataPacker packer1 = getComponentManager1().getInstance(RemoteEventDataPacker.class);
+        assertEquals(1, packer1.getSentMessageCount());
+        assertEquals(2, packer1.getStatistics().get(TestEvent.class.getName()).getSentCount());
+        assertTrue(packer1.getStatistics().get(TestEvent.class.getName()).getSentBytes() > 0);
+
+        RemoteEventDataPacker packer2 = getComponentManager2().getInstance(RemoteEventDataPacker.class);
+        assertEquals(1, packer2.getReceivedMessageCount());
+        assertEquals(2, packer2.getStatistics().get(TestEvent.class.getName()).getReceivedCount());
+
+        // The statistics can be read from JMX
+        assertTrue(ManagementFactory.getPlatformMBeanServer()
+            .isRegistered(new ObjectName(RemoteEventDataPacker.OBJECT_NAME)));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.doc;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.xpn.xwiki.XWikiException;
+
+/**
+ * Data of a document (objects, attachments) which has not been loaded with the document. The data is loaded only once
+ * in a separate document, shared by the document and its clones, and then copied in each of them when accessed.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+class LazyData
+{
+    private final XWikiDocumentLazyLoader loader;
+
+    private final XWikiDocument document;
+
+    /**
+     * The current load of the data, replaced when it fails so that the next access tries again.
+     */
+    private FutureTask<XWikiDocument> future;
+
+    /**
+     * The thread running the current load.
+     */
+    private volatile Thread loadingThread;
+
+    /**
+     * @param loader the loader of the data
+     * @param document the document for which the data has not been loaded
+     */
+    LazyData(XWikiDocumentLazyLoader loader, XWikiDocument document)
+    {
+        this.loader = loader;
+        this.document = document;
+    }
+
+    /**
+     * Load the data if it's not already loaded, or wait for another thread currently loading it.
+     *
+     * @return the document holding the loaded data, or {@code null} if the data is currently being loaded by the
+     *         current thread
+     * @throws XWikiException when failing to load the data
+     */
+    XWikiDocument load() throws XWikiException
+    {
+        // The loader is accessing the document it's loading
+        if (this.loadingThread == Thread.currentThread()) {
+            return null;
+        }
+
+        FutureTask<XWikiDocument> currentFuture;
+        boolean run = false;
+        synchronized (this) {
+            if (this.future == null) {
+                this.future = new FutureTask<>(this::loadDocument);
+                run = true;
+            }
+            currentFuture = this.future;
+        }
+
+        if (run) {
+            this.loadingThread = Thread.currentThread();
+            try {
+                currentFuture.run();
+            } finally {
+                this.loadingThread = null;
+            }
+        }
+
+        try {
+            return currentFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new XWikiException(XWikiException.MODULE_XWIKI_DOC, XWikiException.ERROR_XWIKI_UNKNOWN,
+                "Interrupted while waiting for the data of document [" + this.document.getDocumentReference() + "]",
+                e);
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                // Try again next time
+                if (this.future == currentFuture) {
+                    this.future = null;
+                }
+            }
+
+            if (e.getCause() instanceof XWikiException) {
+                throw (XWikiException) e.getCause();
+            }
+
+            throw new XWikiException(XWikiException.MODULE_XWIKI_DOC, XWikiException.ERROR_XWIKI_UNKNOWN,
+                "Failed to load the data of document [" + this.document.getDocumentReference() + "]", e.getCause());
+        }
+    }
+
+    private XWikiDocument loadDocument() throws XWikiException
+    {
+        // Load the data of the same version of the document in a separate document
+        XWikiDocument loadedDocument =
+            new XWikiDocument(this.document.getDocumentReference(), this.document.getLocale());
+        loadedDocument.setVersion(this.document.getVersion());
+        loadedDocument.setXClass(this.document.getXClass().clone());
+
+        this.loader.load(loadedDocument);
+
+        return loadedDocument;
+    }
+}
@@ -154,6 +154,18 @@ public Map<DocumentReference, List<BaseObject>> getXObjects()
         return getDocument().getXObjects();
     }
 
+    @Override
+    public List<XWikiAttachment> getAttachmentList()
+    {
+        return getDocument().getAttachmentList();
+    }
+
+    @Override
+    public XWikiAttachment getAttachment(String filename)
+    {
+        return getDocument().getAttachment(filename);
+    }
+
     @Override
     public BaseClass getXClass()
     {
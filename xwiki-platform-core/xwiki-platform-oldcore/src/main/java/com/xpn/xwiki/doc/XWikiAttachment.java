@@ -23,6 +23,7 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Date;
@@ -831,6 +832,38 @@ public byte[] getContent(XWikiContext context) throws XWikiException
      * @since 2.3M2
      */
     public InputStream getContentInputStream(XWikiContext context) throws XWikiException
+    {
+        loadVersionContent(context);
+
+        return this.content.getContentInputStream();
+    }
+
+    /**
+     * Retrieve the content of this attachment as a file channel, when it's stored in a file. This allows reading the
+     * content at any position and transferring it without copying it in memory.
+     *
+     * @param context current XWikiContext
+     * @return a channel to read the content of this attachment (to be closed by the caller), or {@code null} if the
+     *         content is not stored in a file, in which case {@link #getContentInputStream(XWikiContext)} should be
+     *         used
+     * @throws XWikiException when an error occurs during wiki operation
+     * @throws IOException when failing to open the file holding the content
+     * @since 9.10RC1
+     */
+    public FileChannel getContentFileChannel(XWikiContext context) throws XWikiException, IOException
+    {
+        loadVersionContent(context);
+
+        return this.content.getContentFileChannel();
+    }
+
+    /**
+     * Make sure the content corresponding to the version of this attachment is loaded.
+     *
+     * @param context current XWikiContext
+     * @throws XWikiException when an error occurs during wiki operation
+     */
+    private void loadVersionContent(XWikiContext context) throws XWikiException
     {
         if (this.content == null && context != null) {
             if (Objects.equals(getVersion(), getLatestStoredVersion(context))) {
@@ -840,7 +873,7 @@ public InputStream getContentInputStream(XWikiContext context) throws XWikiExcep
                 // Load the attachment content from the xwikiattachment_archive table.
                 // We don't use #getAttachmentRevision() because it checks if the requested version equals the version
                 // of the target attachment (XWIKI-1938).
-                XWikiAttachment archivedVersion = loadArchive(context).getRevision(this, getVersion(), context);
+                XWikiAttachment archivedVersion = loadArchivedRevision(getVersion(), context);
                 XWikiAttachmentContent archivedContent =
                     archivedVersion != null ? archivedVersion.getAttachment_content() : null;
                 if (archivedContent != null) {
@@ -851,8 +884,6 @@ public InputStream getContentInputStream(XWikiContext context) throws XWikiExcep
                 }
             }
         }
-
-        return this.content.getContentInputStream();
     }
 
     /**
@@ -1165,7 +1196,45 @@ public XWikiAttachment getAttachmentRevision(String rev, XWikiContext context) t
             return this;
         }
 
-        return loadArchive(context).getRevision(this, rev, context);
+        return loadArchivedRevision(rev, context);
+    }
+
+    /**
+     * Get a revision of this attachment from its archive. When the archive is not already loaded, the versioning store
+     * is asked for that revision only so that stores keeping each revision separately don't have to load the others.
+     *
+     * @param rev the version of the revision to load
+     * @param xcontext the XWiki context
+     * @return the revision, or {@code null} if it cannot be found
+     * @throws XWikiException when failing to get the revision from the archive
+     */
+    private XWikiAttachment loadArchivedRevision(String rev, XWikiContext xcontext) throws XWikiException
+    {
+        if (this.attachment_archive != null) {
+            return this.attachment_archive.getRevision(this, rev, xcontext);
+        }
+
+        WikiReference currentWiki = xcontext.getWikiReference();
+
+        try {
+            // Make sure we work on the attachment's wiki
+            WikiReference attachmentWiki = getReference().getDocumentReference().getWikiReference();
+            if (attachmentWiki != null) {
+                xcontext.setWikiReference(attachmentWiki);
+            }
+
+            return getAttachmentVersioningStore(xcontext).loadArchiveRevision(this, rev, xcontext);
+        } catch (ComponentLookupException e) {
+            LOGGER.warn("Failed to get the archive store of attachment [{}@{}]: {}",
+                this.doc != null ? this.doc.getDocumentReference() : "<unknown>", getFilename(),
+                ExceptionUtils.getRootCauseMessage(e));
+
+            return null;
+        } finally {
+            if (currentWiki != null) {
+                xcontext.setWikiReference(currentWiki);
+            }
+        }
     }
 
     /**
@@ -24,6 +24,8 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.disk.DiskFileItem;
@@ -246,6 +248,29 @@ public InputStream getContentInputStream()
         }
     }
 
+    /**
+     * Give direct access to the file holding the content, when there is one, so that it can be read at any position or
+     * transferred without going through the heap (see {@link FileChannel#transferTo(long, long,
+     * java.nio.channels.WritableByteChannel)}).
+     *
+     * @return a channel to read the binary content of this attachment, or {@code null} if the content is not stored in
+     *         a file (in which case {@link #getContentInputStream()} should be used); the caller is responsible for
+     *         closing it
+     * @throws IOException when failing to open the file
+     * @since 9.10RC1
+     */
+    public FileChannel getContentFileChannel() throws IOException
+    {
+        if (this.file instanceof DiskFileItem && !this.file.isInMemory()) {
+            File storeLocation = ((DiskFileItem) this.file).getStoreLocation();
+            if (storeLocation != null && storeLocation.exists()) {
+                return FileChannel.open(storeLocation.toPath(), StandardOpenOption.READ);
+            }
+        }
+
+        return null;
+    }
+
     /**
      * Set the content of the attachment by writing to a provided OutputStream. Content is *not* appended, this method
      * clears the content and creates new content. If you want to append content, you can call
@@ -509,6 +509,22 @@ protected void added(XWikiAttachment element)
             }
         };
 
+    /**
+     * The objects of the document which have not been loaded with it, null when they are already loaded.
+     */
+    private volatile LazyData xObjectsLazyData;
+
+    /**
+     * The attachments of the document which have not been loaded with it, null when they are already loaded.
+     */
+    private volatile LazyData attachmentsLazyData;
+
+    /**
+     * The thread currently copying the lazily loaded data in the document, allowed to access the document without
+     * copying it again.
+     */
+    private Thread lazyDataThread;
+
     // Caching
     private boolean fromCache = false;
 
@@ -2148,20 +2164,12 @@ public Version[] getRevisions(XWikiContext context) throws XWikiException
     public String[] getRecentRevisions(int nb, XWikiContext context) throws XWikiException
     {
         try {
-            Version[] revisions = getVersioningStore(context).getXWikiDocVersions(this, context);
-            int length = nb;
-            // 0 means all revisions
-            if (nb == 0) {
-                length = revisions.length;
-            }
+            // Only load the requested part of the history (0 means all revisions)
+            List<XWikiRCSNodeInfo> nodes = getVersioningStore(context).loadRCSNodeInfos(this, 0, nb, context);
 
-            if (revisions.length < length) {
-                length = revisions.length;
-            }
-
-            String[] recentrevs = new String[length];
-            for (int i = 1; i <= length; i++) {
-                recentrevs[i - 1] = revisions[revisions.length - i].toString();
+            String[] recentrevs = new String[nodes.size()];
+            for (int i = 0; i < recentrevs.length; i++) {
+                recentrevs[i] = nodes.get(i).getVersion().toString();
             }
             return recentrevs;
         } catch (Exception e) {
@@ -2272,6 +2280,10 @@ public void setXClass(BaseClass xwikiClass)
      */
     public Map<DocumentReference, List<BaseObject>> getXObjects()
     {
+        if (this.xObjectsLazyData != null) {
+            applyLazyData(true);
+        }
+
         return this.xObjects;
     }
 
@@ -2300,6 +2312,7 @@ public void setXObjects(Map<DocumentReference, List<BaseObject>> objects)
         }
 
         // Replace the current objects with the provided ones.
+        this.xObjectsLazyData = null;
         this.xObjects = objects;
     }
 
@@ -2364,10 +2377,10 @@ public int createXObject(EntityReference classReference, XWikiContext context) t
         BaseObject object = BaseClass.newCustomClassInstance(absoluteClassReference, context);
         object.setOwnerDocument(this);
         object.setXClassReference(classReference);
-        List<BaseObject> objects = this.xObjects.get(absoluteClassReference);
+        List<BaseObject> objects = getXObjects().get(absoluteClassReference);
         if (objects == null) {
             objects = new ArrayList<BaseObject>();
-            this.xObjects.put(absoluteClassReference, objects);
+            getXObjects().put(absoluteClassReference, objects);
         }
         objects.add(object);
         int nb = objects.size() - 1;
@@ -2451,7 +2464,7 @@ public List<BaseObject> getXObjects(EntityReference reference)
     @Deprecated
     public Vector<BaseObject> getObjects(String className)
     {
-        List<BaseObject> result = this.xObjects.get(resolveClassReference(className));
+        List<BaseObject> result = getXObjects().get(resolveClassReference(className));
         return result == null ? null : new Vector<BaseObject>(result);
     }
 
@@ -2461,7 +2474,7 @@ public Vector<BaseObject> getObjects(String className)
     public void setXObjects(DocumentReference classReference, List<BaseObject> objects)
     {
         // Remove existing objects
-        List<BaseObject> existingbjects = this.xObjects.get(classReference);
+        List<BaseObject> existingbjects = getXObjects().get(classReference);
         if (existingbjects != null) {
             existingbjects.clear();
         }
@@ -2475,7 +2488,7 @@ public void setXObjects(DocumentReference classReference, List<BaseObject> objec
             // Pretty wrong but can't remove that for retro compatibility reasons...
             // Note that it means that someone can put an unmodifiable list here make impossible to add any object of
             // this class.
-            this.xObjects.put(classReference, objects);
+            getXObjects().put(classReference, objects);
         } else {
             for (BaseObject baseObject : objects) {
                 addXObject(classReference, baseObject);
@@ -2726,7 +2739,7 @@ public BaseObject getObject(String className, String key, String value, boolean
     @Deprecated
     public void addXObject(DocumentReference classReference, BaseObject object)
     {
-        List<BaseObject> vobj = this.xObjects.get(classReference);
+        List<BaseObject> vobj = getXObjects().get(classReference);
         if (vobj == null) {
             setXObject(classReference, 0, object);
         } else {
@@ -2746,7 +2759,7 @@ public void addXObject(BaseObject object)
     {
         object.setOwnerDocument(this);
 
-        List<BaseObject> vobj = this.xObjects.get(object.getXClassReference());
+        List<BaseObject> vobj = getXObjects().get(object.getXClassReference());
         if (vobj == null) {
             setXObject(0, object);
         } else {
@@ -2775,10 +2788,10 @@ public void setXObject(DocumentReference classReference, int nb, BaseObject obje
             object.setNumber(nb);
         }
 
-        List<BaseObject> objects = this.xObjects.get(classReference);
+        List<BaseObject> objects = getXObjects().get(classReference);
         if (objects == null) {
             objects = new ArrayList<BaseObject>();
-            this.xObjects.put(classReference, objects);
+            getXObjects().put(classReference, objects);
         }
         while (nb >= objects.size()) {
             objects.add(null);
@@ -2801,10 +2814,10 @@ public void setXObject(int nb, BaseObject object)
         object.setOwnerDocument(this);
         object.setNumber(nb);
 
-        List<BaseObject> objects = this.xObjects.get(object.getXClassReference());
+        List<BaseObject> objects = getXObjects().get(object.getXClassReference());
         if (objects == null) {
             objects = new ArrayList<BaseObject>();
-            this.xObjects.put(object.getXClassReference(), objects);
+            getXObjects().put(object.getXClassReference(), objects);
         }
         while (nb >= objects.size()) {
             objects.add(null);
@@ -2920,6 +2933,7 @@ public void duplicateXObjects(XWikiDocument templatedoc)
     private void cloneXObjects(XWikiDocument templatedoc, boolean keepsIdentity)
     {
         // clean map
+        this.xObjectsLazyData = null;
         this.xObjects.clear();
 
         // fill map
@@ -4005,8 +4019,21 @@ private XWikiDocument cloneInternal(DocumentReference newDocumentReference, bool
 
             if (keepsIdentity) {
                 doc.setXClassXML(getXClassXML());
-                doc.cloneXObjects(this);
-                doc.cloneAttachments(this);
+
+                // Don't load the objects and attachments just to clone them: the clone shares the data to load, which
+                // is loaded only once and then copied in each document accessing it
+                LazyData lazyData = this.xObjectsLazyData;
+                if (lazyData != null) {
+                    doc.xObjectsLazyData = lazyData;
+                } else {
+                    doc.cloneXObjects(this);
+                }
+                lazyData = this.attachmentsLazyData;
+                if (lazyData != null) {
+                    doc.attachmentsLazyData = lazyData;
+                } else {
+                    doc.cloneAttachments(this);
+                }
             } else {
                 doc.getXClass().setCustomMapping(null);
                 doc.duplicateXObjects(this);
@@ -4701,6 +4728,8 @@ public static boolean containsXMLWikiDocument(Document domdoc)
 
     public void setAttachmentList(List<XWikiAttachment> list)
     {
+        this.attachmentsLazyData = null;
+
         // For backwards compatibility reasons (and in general), we need to allow callers to do something like
         // setAttachmentList(getAttachmentList())
         if (this.attachmentList != list) {
@@ -4711,9 +4740,174 @@ public void setAttachmentList(List<XWikiAttachment> list)
 
     public List<XWikiAttachment> getAttachmentList()
     {
+        if (this.attachmentsLazyData != null) {
+            applyLazyData(false);
+        }
+
         return this.attachmentList;
     }
 
+    /**
+     * Indicate that the objects of the document have not been loaded with it and should be loaded the first time
+     * they are accessed. The loader receives an empty document with the same reference, locale, version and class as
+     * this document, to fill with the objects of this version of the document. The loaded objects are then copied in
+     * this document and in its clones.
+     *
+     * @param loader the loader of the objects, null if they are already loaded
+     * @since 9.10RC1
+     */
+    public void setXObjectsLoader(XWikiDocumentLazyLoader loader)
+    {
+        this.xObjectsLazyData = loader != null ? new LazyData(loader, this) : null;
+    }
+
+    /**
+     * Indicate that the attachments of the document have not been loaded with it and should be loaded the first time
+     * they are accessed. The loader receives an empty document with the same reference, locale, version and class as
+     * this document, to fill with the attachments of this version of the document. The loaded attachments are then
+     * copied in this document and in its clones.
+     *
+     * @param loader the loader of the attachments, null if they are already loaded
+     * @since 9.10RC1
+     */
+    public void setAttachmentsLoader(XWikiDocumentLazyLoader loader)
+    {
+        this.attachmentsLazyData = loader != null ? new LazyData(loader, this) : null;
+    }
+
+    /**
+     * @return false if the objects of the document have not been loaded yet and will be loaded the first time they are
+     *         accessed
+     * @since 9.10RC1
+     */
+    public boolean isXObjectsLoaded()
+    {
+        return this.xObjectsLazyData == null;
+    }
+
+    /**
+     * @return false if the attachments of the document have not been loaded yet and will be loaded the first time they
+     *         are accessed
+     * @since 9.10RC1
+     */
+    public boolean isAttachmentListLoaded()
+    {
+        return this.attachmentsLazyData == null;
+    }
+
+    /**
+     * Load the objects and attachments which have not been loaded with the document yet, if any. Unlike the getters,
+     * which log the error and return the data loaded so far, this method fails when the data cannot be loaded.
+     *
+     * @throws XWikiException when failing to load the data
+     * @since 9.10RC1
+     */
+    public void loadLazyData() throws XWikiException
+    {
+        if (this.xObjectsLazyData != null) {
+            copyLazyData(true);
+        }
+        if (this.attachmentsLazyData != null) {
+            copyLazyData(false);
+        }
+    }
+
+    /**
+     * @param xobjects true to load the objects, false to load the attachments
+     */
+    private void applyLazyData(boolean xobjects)
+    {
+        try {
+            copyLazyData(xobjects);
+        } catch (XWikiException e) {
+            // The data will be loaded again the next time it's accessed
+            LOGGER.error("Failed to load the {} of document [{}]", xobjects ? "objects" : "attachments",
+                getDocumentReferenceWithLocale(), e);
+        }
+    }
+
+    /**
+     * @param xobjects true to load the objects, false to load the attachments
+     * @throws XWikiException when failing to load the data
+     */
+    private void copyLazyData(boolean xobjects) throws XWikiException
+    {
+        LazyData lazyData = xobjects ? this.xObjectsLazyData : this.attachmentsLazyData;
+
+        // Already copied, or currently being loaded or copied by this thread
+        if (lazyData == null || this.lazyDataThread == Thread.currentThread()) {
+            return;
+        }
+
+        // Don't hold the lock of the document while the data is loaded: the other threads only wait for the data
+        // they need
+        XWikiDocument loadedDocument = lazyData.load();
+        if (loadedDocument == null) {
+            return;
+        }
+
+        synchronized (this) {
+            // Copied by another thread meanwhile
+            if (lazyData != (xobjects ? this.xObjectsLazyData : this.attachmentsLazyData)) {
+                return;
+            }
+
+            // Loading the missing data does not modify the document
+            boolean contentDirty = isContentDirty();
+            boolean metaDataDirty = isMetaDataDirty();
+
+            this.lazyDataThread = Thread.currentThread();
+            try {
+                if (xobjects) {
+                    copyLazyXObjects(loadedDocument);
+                    this.xObjectsLazyData = null;
+                } else {
+                    copyLazyAttachments(loadedDocument);
+                    this.attachmentsLazyData = null;
+                }
+            } finally {
+                this.lazyDataThread = null;
+
+                setContentDirty(contentDirty);
+                setMetaDataDirty(metaDataDirty);
+            }
+        }
+    }
+
+    /**
+     * Copy the loaded objects which are not already in the document (added while the loading was failing).
+     *
+     * @param loadedDocument the document holding the loaded objects
+     */
+    private void copyLazyXObjects(XWikiDocument loadedDocument)
+    {
+        for (Map.Entry<DocumentReference, List<BaseObject>> entry : loadedDocument.getXObjects().entrySet()) {
+            for (BaseObject object : entry.getValue()) {
+                if (object != null) {
+                    List<BaseObject> objects = this.xObjects.get(entry.getKey());
+                    if (objects == null || object.getNumber() >= objects.size()
+                        || objects.get(object.getNumber()) == null) {
+                        setXObject(entry.getKey(), object.getNumber(), object.clone());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the loaded attachments which are not already in the document (added while the loading was failing).
+     *
+     * @param loadedDocument the document holding the loaded attachments
+     */
+    private void copyLazyAttachments(XWikiDocument loadedDocument)
+    {
+        for (XWikiAttachment attachment : loadedDocument.getAttachmentList()) {
+            if (getAttachment(attachment.getFilename()) == null) {
+                setAttachment(attachment.clone());
+            }
+        }
+    }
+
     /**
      * @deprecated should not be used, save the document instead
      */
@@ -4730,7 +4924,7 @@ public void saveAllAttachments(XWikiContext context) throws XWikiException
     public void saveAllAttachments(boolean updateParent, boolean transaction, XWikiContext context)
         throws XWikiException
     {
-        for (XWikiAttachment attachment : this.attachmentList) {
+        for (XWikiAttachment attachment : getAttachmentList()) {
             saveAttachmentContent(attachment, false, transaction, context);
         }
 
@@ -5180,7 +5374,7 @@ public List<String> getChildren(int nb, int start, XWikiContext context) throws
      */
     public void renameProperties(DocumentReference classReference, Map<String, String> fieldsToRename)
     {
-        List<BaseObject> objects = this.xObjects.get(classReference);
+        List<BaseObject> objects = getXObjects().get(classReference);
         if (objects == null) {
             return;
         }
@@ -7424,7 +7618,7 @@ public boolean isProgrammaticContent()
      */
     public boolean removeXObject(BaseObject object)
     {
-        List<BaseObject> objects = this.xObjects.get(object.getXClassReference());
+        List<BaseObject> objects = getXObjects().get(object.getXClassReference());
         // No objects at all, nothing to remove
         if (objects == null) {
             return false;
@@ -7481,7 +7675,7 @@ public boolean removeObject(BaseObject object)
      */
     public boolean removeXObjects(DocumentReference classReference)
     {
-        List<BaseObject> objects = this.xObjects.get(classReference);
+        List<BaseObject> objects = getXObjects().get(classReference);
         // No objects at all, nothing to remove
         if (objects == null) {
             return false;
@@ -48,6 +48,12 @@
  */
 public class XWikiDocumentArchive
 {
+    /** The configuration property holding the maximum number of consecutive diff nodes. */
+    private static final String NODES_PER_FULL_PROPERTY = "xwiki.store.rcs.nodesPerFull";
+
+    /** The default maximum number of consecutive diff nodes. */
+    private static final int DEFAULT_NODES_PER_FULL = 5;
+
     /** =docId. */
     private long id;
 
@@ -129,11 +135,10 @@ protected XWikiRCSNodeContent makePatch(XWikiRCSNodeInfo newnode, XWikiDocument
         newnode.setContent(result);
         XWikiRCSNodeInfo latestNode = getLatestNode();
         if (latestNode != null) {
-            int nodesCount = getNodes().size();
-            int nodesPerFull =
-                context.getWiki() == null ? 5 : Integer.parseInt(context.getWiki().getConfig()
-                    .getProperty("xwiki.store.rcs.nodesPerFull", "5"));
-            if (nodesPerFull <= 0 || (nodesCount % nodesPerFull) != 0) {
+            // Keep the previous latest version as a full checkpoint when turning it into a diff would make the chain
+            // of patches to apply for loading an old version longer than the configured limit
+            int nodesPerFull = getNodesPerFull(context);
+            if (nodesPerFull <= 0 || getPatchChainLength(latestNode.getVersion()) < nodesPerFull) {
                 XWikiRCSNodeContent latestContent = latestNode.getContent(context);
                 latestContent.getPatch().setDiffVersion(latestContent.getPatch().getContent(),
                     doc, context);
@@ -145,6 +150,37 @@ protected XWikiRCSNodeContent makePatch(XWikiRCSNodeInfo newnode, XWikiDocument
         return result;
     }
 
+    /**
+     * @param context used to access the configuration
+     * @return the maximum number of consecutive diff nodes before a full version is kept
+     */
+    private int getNodesPerFull(XWikiContext context)
+    {
+        if (context.getWiki() == null) {
+            return DEFAULT_NODES_PER_FULL;
+        }
+
+        return Integer.parseInt(context.getWiki().getConfig().getProperty(NODES_PER_FULL_PROPERTY,
+            String.valueOf(DEFAULT_NODES_PER_FULL)));
+    }
+
+    /**
+     * @param version a full version
+     * @return the number of nodes between the passed version (included) and the next older full version (excluded),
+     *         i.e. the length of the longest chain of patches to apply if the passed version was stored as a diff
+     */
+    private int getPatchChainLength(Version version)
+    {
+        Iterator<Version> olderFullVersions = this.fullVersions.tailSet(version).iterator();
+        // Skip the passed version
+        olderFullVersions.next();
+        if (olderFullVersions.hasNext()) {
+            return this.versionToNode.subMap(version, olderFullVersions.next()).size();
+        }
+
+        return this.versionToNode.tailMap(version).size();
+    }
+
     /** @return {@link XWikiDocument#getId()} - primary key */
     public long getId()
     {
@@ -441,8 +477,27 @@ public Version getNearestFullVersion(Version ver)
     private List<XWikiRCSNodeContent> loadRCSNodeContents(Version vfrom, Version vto, XWikiContext context)
         throws XWikiException
     {
-        List<XWikiRCSNodeContent> result = new ArrayList<XWikiRCSNodeContent>();
-        for (XWikiRCSNodeInfo nodeInfo : getNodes(vfrom, vto)) {
+        Collection<XWikiRCSNodeInfo> nodes = getNodes(vfrom, vto);
+
+        // Load all the missing contents at once instead of one by one
+        List<XWikiRCSNodeId> missingIds = new ArrayList<XWikiRCSNodeId>();
+        for (XWikiRCSNodeInfo nodeInfo : nodes) {
+            if (nodeInfo.getContent(null) == null) {
+                missingIds.add(nodeInfo.getId());
+            }
+        }
+        if (missingIds.size() > 1 && context.getWiki() != null) {
+            for (XWikiRCSNodeContent nodeContent : context.getWiki().getVersioningStore()
+                .loadRCSNodeContents(missingIds, true, context)) {
+                XWikiRCSNodeInfo nodeInfo = getNode(nodeContent.getId().getVersion());
+                if (nodeInfo != null) {
+                    nodeInfo.setContent(nodeContent);
+                }
+            }
+        }
+
+        List<XWikiRCSNodeContent> result = new ArrayList<XWikiRCSNodeContent>(nodes.size());
+        for (XWikiRCSNodeInfo nodeInfo : nodes) {
             XWikiRCSNodeContent nodeContent = nodeInfo.getContent(context);
             result.add(nodeContent);
         }
@@ -23,6 +23,7 @@
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.function.ToLongFunction;
 
 import javax.inject.Inject;
 
@@ -123,6 +124,12 @@ public void onEvent(Event event, Object source, Object data)
      */
     private Cache<Collection<String>> mappingCache;
 
+    /**
+     * Keep the estimated size of the cached values under a maximum, null when the cache is only limited by its number
+     * of entries.
+     */
+    private WeightedCacheEviction<C> eviction;
+
     /**
      * The identifier of the cache and event listener.
      */
@@ -143,12 +150,29 @@ public void create(CacheConfiguration cacheConfiguration) throws CacheException
         this.observationManager.addListener(this.listener);
     }
 
+    @Override
+    public void create(CacheConfiguration cacheConfiguration, long maxWeight, ToLongFunction<C> weigher)
+        throws CacheException
+    {
+        create(cacheConfiguration);
+
+        this.eviction = new WeightedCacheEviction<>(this.cache, maxWeight, weigher);
+    }
+
     // cache
 
     @Override
     public C get(DocumentReference documentReference, Object... extensions)
     {
-        return this.cache.get(getKey(documentReference, extensions));
+        String key = getKey(documentReference, extensions);
+
+        C data = this.cache.get(key);
+
+        if (data != null && this.eviction != null) {
+            this.eviction.accessed(key);
+        }
+
+        return data;
     }
 
     @Override
@@ -167,6 +191,10 @@ public void set(C data, DocumentReference documentReference, Object... extension
         }
 
         keys.add(key);
+
+        if (this.eviction != null) {
+            this.eviction.evict();
+        }
     }
 
     /**
@@ -225,6 +253,9 @@ public void removeAll()
         if (this.cache != null) {
             this.cache.removeAll();
         }
+        if (this.eviction != null) {
+            this.eviction.clear();
+        }
         if (this.mappingCache != null) {
             this.mappingCache.removeAll();
         }
@@ -249,6 +280,9 @@ public void removeAll(DocumentReference documentReference)
     @Override
     public void dispose()
     {
+        if (this.eviction != null) {
+            this.eviction.dispose();
+        }
         this.cache.dispose();
         this.mappingCache.dispose();
     }
@@ -19,6 +19,8 @@
  */
 package com.xpn.xwiki.internal.cache;
 
+import java.util.function.ToLongFunction;
+
 import org.xwiki.cache.CacheException;
 import org.xwiki.cache.config.CacheConfiguration;
 import org.xwiki.component.annotation.ComponentRole;
@@ -46,6 +48,23 @@
      */
     void create(CacheConfiguration cacheConfiguration) throws CacheException;
 
+    /**
+     * Initialize the cache, limiting the total estimated size of its entries in addition to their number.
+     * <p>
+     * This method should be called before anything else.
+     *
+     * @param cacheConfiguration the cache configuration
+     * @param maxWeight the maximum total weight (usually in bytes) of the cached values
+     * @param weigher estimate the weight of a cached value
+     * @throws CacheException failed to initialize the cache
+     * @since 9.10RC1
+     */
+    default void create(CacheConfiguration cacheConfiguration, long maxWeight, ToLongFunction<C> weigher)
+        throws CacheException
+    {
+        create(cacheConfiguration);
+    }
+
     /**
      * Get the value associated with the provided key.
      *
@@ -0,0 +1,310 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+
+/**
+ * Keep the total estimated weight (usually a size in bytes) of the entries of a {@link Cache} under a maximum by
+ * removing the least recently used entries. The weight of the entries is tracked through the cache events so that the
+ * entries removed or evicted by the cache itself are taken into account.
+ * <p>
+ * The cache user is expected to call {@link #accessed(String)} when getting an entry, {@link #evict()} after setting
+ * one and {@link #clear()} after removing all of them.
+ * <p>
+ * Accessing an entry does not take any lock: it only records the current value of a logical clock in the entry, so
+ * the entries accessed since the last entry was set are considered equally recent. When the maximum is exceeded, the
+ * least recently used entries are removed until the total weight is back under 90% of the maximum, so that the
+ * entries are not sorted again on each new entry.
+ *
+ * @param <T> the type of the cached values
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class WeightedCacheEviction<T> implements CacheEntryListener<T>
+{
+    /**
+     * The ratio of the maximum weight to go back to when evicting entries.
+     */
+    private static final double EVICTION_RATIO = 0.9;
+
+    private final Cache<T> cache;
+
+    private final long maxWeight;
+
+    private final ToLongFunction<T> weigher;
+
+    private final Predicate<T> weightFinal;
+
+    private final ConcurrentMap<String, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong totalWeight = new AtomicLong();
+
+    /**
+     * Incremented each time an entry is set.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final Object evictionLock = new Object();
+
+    private static final class Entry<T>
+    {
+        private final T value;
+
+        private long weight;
+
+        private volatile boolean weightFinal;
+
+        private boolean removed;
+
+        private volatile long lastAccess;
+
+        private Entry(T value, long weight, boolean weightFinal, long lastAccess)
+        {
+            this.value = value;
+            this.weight = weight;
+            this.weightFinal = weightFinal;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static final class Candidate<T>
+    {
+        private final String key;
+
+        private final Entry<T> entry;
+
+        /**
+         * The access time of the entry when the eviction started, since it can change while sorting.
+         */
+        private final long lastAccess;
+
+        private Candidate(String key, Entry<T> entry)
+        {
+            this.key = key;
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+    }
+
+    /**
+     * @param cache the cache to limit
+     * @param maxWeight the maximum total weight of the entries of the cache
+     * @param weigher estimate the weight of a cached value
+     */
+    public WeightedCacheEviction(Cache<T> cache, long maxWeight, ToLongFunction<T> weigher)
+    {
+        this(cache, maxWeight, weigher, value -> true);
+    }
+
+    /**
+     * @param cache the cache to limit
+     * @param maxWeight the maximum total weight of the entries of the cache
+     * @param weigher estimate the weight of a cached value
+     * @param weightFinal indicate if the weight of a cached value can still change (e.g. when some of its data is
+     *            loaded the first time it's accessed), in which case it's weighed again when the entry is accessed
+     */
+    public WeightedCacheEviction(Cache<T> cache, long maxWeight, ToLongFunction<T> weigher,
+        Predicate<T> weightFinal)
+    {
+        this.cache = cache;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.weightFinal = weightFinal;
+
+        this.cache.addCacheEntryListener(this);
+    }
+
+    /**
+     * Indicate that an entry has been accessed so that it's not the next one to be evicted.
+     *
+     * @param key the key of the entry
+     */
+    public void accessed(String key)
+    {
+        Entry<T> entry = this.entries.get(key);
+
+        if (entry != null) {
+            entry.lastAccess = this.clock.get();
+
+            if (!entry.weightFinal && reweigh(entry)) {
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until the total weight of the cache is under the maximum.
+     */
+    public void evict()
+    {
+        if (this.totalWeight.get() <= this.maxWeight) {
+            return;
+        }
+
+        List<String> evictedKeys = new ArrayList<>();
+
+        synchronized (this.evictionLock) {
+            List<Candidate<T>> candidates = new ArrayList<>(this.entries.size());
+            for (Map.Entry<String, Entry<T>> entry : this.entries.entrySet()) {
+                candidates.add(new Candidate<>(entry.getKey(), entry.getValue()));
+            }
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+
+            long targetWeight = (long) (this.maxWeight * EVICTION_RATIO);
+            // Always keep the most recently used entry, even if it's too big on its own
+            for (int i = 0; i < candidates.size() - 1 && this.totalWeight.get() > targetWeight; ++i) {
+                Candidate<T> candidate = candidates.get(i);
+                if (this.entries.remove(candidate.key, candidate.entry)) {
+                    removed(candidate.entry);
+                    evictedKeys.add(candidate.key);
+                }
+            }
+        }
+
+        // Remove the entries from the cache outside of the lock since it triggers removal events
+        for (String key : evictedKeys) {
+            this.cache.remove(key);
+        }
+    }
+
+    /**
+     * Forget all the entries, to be called after removing all the entries of the cache.
+     */
+    public void clear()
+    {
+        for (String key : new ArrayList<>(this.entries.keySet())) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Stop tracking the cache entries.
+     */
+    public void dispose()
+    {
+        this.cache.removeCacheEntryListener(this);
+
+        clear();
+    }
+
+    /**
+     * @return the total estimated weight of the entries of the cache
+     */
+    public long getTotalWeight()
+    {
+        return this.totalWeight.get();
+    }
+
+    /**
+     * @return the maximum total weight of the entries of the cache
+     */
+    public long getMaxWeight()
+    {
+        return this.maxWeight;
+    }
+
+    @Override
+    public void cacheEntryAdded(CacheEntryEvent<T> event)
+    {
+        put(event.getEntry().getKey(), event.getEntry().getValue());
+    }
+
+    @Override
+    public void cacheEntryRemoved(CacheEntryEvent<T> event)
+    {
+        remove(event.getEntry().getKey());
+    }
+
+    @Override
+    public void cacheEntryModified(CacheEntryEvent<T> event)
+    {
+        put(event.getEntry().getKey(), event.getEntry().getValue());
+    }
+
+    private void put(String key, T value)
+    {
+        boolean weightFinal = value == null || this.weightFinal.test(value);
+        long weight = value != null ? this.weigher.applyAsLong(value) : 0;
+
+        Entry<T> entry = new Entry<>(value, weight, weightFinal, this.clock.getAndIncrement());
+
+        Entry<T> previousEntry = this.entries.put(key, entry);
+        if (previousEntry != null) {
+            removed(previousEntry);
+        }
+
+        // The entry can be weighed again or removed before its weight is added, the result is the same
+        this.totalWeight.addAndGet(weight);
+    }
+
+    private void remove(String key)
+    {
+        Entry<T> entry = this.entries.remove(key);
+        if (entry != null) {
+            removed(entry);
+        }
+    }
+
+    private void removed(Entry<T> entry)
+    {
+        synchronized (entry) {
+            entry.removed = true;
+            this.totalWeight.addAndGet(-entry.weight);
+        }
+    }
+
+    /**
+     * @param entry the entry to weigh again
+     * @return true if the total weight has increased
+     */
+    private boolean reweigh(Entry<T> entry)
+    {
+        if (!this.weightFinal.test(entry.value)) {
+            return false;
+        }
+
+        synchronized (entry) {
+            if (entry.removed || entry.weightFinal) {
+                return false;
+            }
+
+            long weight = this.weigher.applyAsLong(entry.value);
+            long delta = weight - entry.weight;
+            entry.weight = weight;
+            entry.weightFinal = true;
+            this.totalWeight.addAndGet(delta);
+
+            return delta > 0;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+
+/**
+ * Estimate the memory retained by a document, in bytes. It's a rough estimation based on the size of the content, the
+ * number and size of the objects properties and the attachments metadata, which is enough to compare documents with
+ * each other.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class XWikiDocumentWeigher implements ToLongFunction<XWikiDocument>
+{
+    /**
+     * The estimated size of the fields of an empty document.
+     */
+    private static final long DOCUMENT_SIZE = 2048;
+
+    /**
+     * The estimated size of the fields of an object without its properties.
+     */
+    private static final long OBJECT_SIZE = 256;
+
+    /**
+     * The estimated size of a property without its value.
+     */
+    private static final long PROPERTY_SIZE = 128;
+
+    /**
+     * The estimated size of a non text property value.
+     */
+    private static final long VALUE_SIZE = 16;
+
+    /**
+     * The estimated size of a String without its characters.
+     */
+    private static final long STRING_SIZE = 40;
+
+    /**
+     * The estimated size of the metadata of an attachment.
+     */
+    private static final long ATTACHMENT_SIZE = 512;
+
+    @Override
+    public long applyAsLong(XWikiDocument document)
+    {
+        long weight = weighDocument(document);
+
+        // The original document is usually a clone of the document
+        XWikiDocument originalDocument = document.getOriginalDocument();
+        if (originalDocument != null && originalDocument != document) {
+            weight += weighDocument(originalDocument);
+        }
+
+        return weight;
+    }
+
+    /**
+     * @param document the document to weigh
+     * @return false if some data of the document or of its original document (objects, attachments) has not been
+     *         loaded yet, and thus is not weighed
+     */
+    public boolean isWeightFinal(XWikiDocument document)
+    {
+        if (!isLoaded(document)) {
+            return false;
+        }
+
+        XWikiDocument originalDocument = document.getOriginalDocument();
+        return originalDocument == null || originalDocument == document || isLoaded(originalDocument);
+    }
+
+    private boolean isLoaded(XWikiDocument document)
+    {
+        return document.isXObjectsLoaded() && document.isAttachmentListLoaded();
+    }
+
+    private long weighDocument(XWikiDocument document)
+    {
+        long weight = DOCUMENT_SIZE + weighString(document.getContent()) + weighString(document.getXClassXML());
+
+        // Don't trigger the loading of the data which has not been loaded yet
+        if (document.isXObjectsLoaded()) {
+            for (List<BaseObject> objects : document.getXObjects().values()) {
+                for (BaseObject object : objects) {
+                    if (object != null) {
+                        weight += weighObject(object);
+                    }
+                }
+            }
+        }
+
+        if (document.isAttachmentListLoaded()) {
+            for (XWikiAttachment attachment : document.getAttachmentList()) {
+                weight += ATTACHMENT_SIZE + weighString(attachment.getFilename());
+
+                // The content of the attachment is usually not loaded
+                if (attachment.getAttachment_content() != null) {
+                    weight += attachment.getLongSize();
+                }
+            }
+        }
+
+        return weight;
+    }
+
+    private long weighObject(BaseObject object)
+    {
+        long weight = OBJECT_SIZE;
+
+        for (Object field : object.getFieldList()) {
+            weight += PROPERTY_SIZE;
+
+            Object value = ((BaseProperty) field).getValue();
+            if (value instanceof String) {
+                weight += weighString((String) value);
+            } else if (value instanceof Collection) {
+                for (Object item : (Collection<?>) value) {
+                    weight += item instanceof String ? weighString((String) item) : VALUE_SIZE;
+                }
+            } else if (value != null) {
+                weight += VALUE_SIZE;
+            }
+        }
+
+        return weight;
+    }
+
+    private long weighString(String str)
+    {
+        // Java strings use 2 bytes per character
+        return str != null ? STRING_SIZE + str.length() * 2L : 0;
+    }
+}
@@ -31,6 +31,11 @@
  */
 public class CachedItem
 {
+    /**
+     * The estimated size of a cached item without its content.
+     */
+    private static final long ITEM_SIZE = 1024;
+
     /**
      * Rendered content.
      */
@@ -42,6 +47,30 @@
     public Map<RenderingCacheAware, UsedExtension> extensions = new HashMap<RenderingCacheAware,
         CachedItem.UsedExtension>();
 
+    /**
+     * @return the estimated memory retained by the cached item, in bytes
+     * @since 9.10RC1
+     */
+    public long getEstimatedSize()
+    {
+        long size = ITEM_SIZE;
+
+        // Java strings use 2 bytes per character
+        if (this.rendered != null) {
+            size += this.rendered.length() * 2L;
+        }
+
+        for (UsedExtension extension : this.extensions.values()) {
+            if (extension.resources != null) {
+                for (String resource : extension.resources) {
+                    size += resource.length() * 2L;
+                }
+            }
+        }
+
+        return size;
+    }
+
     /**
      * Extension used in cached item.
      *
@@ -105,7 +105,12 @@ public void initialize() throws InitializationException
             cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
 
             try {
-                this.cache.create(cacheConfiguration);
+                long maxBytes = this.configuration.getMaxBytes();
+                if (maxBytes > 0) {
+                    this.cache.create(cacheConfiguration, maxBytes, CachedItem::getEstimatedSize);
+                } else {
+                    this.cache.create(cacheConfiguration);
+                }
             } catch (CacheException e) {
                 throw new InitializationException("Failed to initialize core rendering cache", e);
             }
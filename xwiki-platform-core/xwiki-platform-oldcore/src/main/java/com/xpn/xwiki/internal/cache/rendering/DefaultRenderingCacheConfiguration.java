@@ -78,6 +78,11 @@ public class DefaultRenderingCacheConfiguration implements RenderingCacheConfigu
      */
     private static final int PROPVALUE_SIZE = 100;
 
+    /**
+     * Name of the property indicating the maximum estimated size in bytes of the cache.
+     */
+    private static final String PROPNAME_MAXBYTES = PREFIX + "maxBytes";
+
     /**
      * xwiki.properties file configurations.
      */
@@ -150,6 +155,12 @@ public int getSize()
         return this.farmConfiguration.getProperty(PROPNAME_SIZE, PROPVALUE_SIZE);
     }
 
+    @Override
+    public long getMaxBytes()
+    {
+        return this.farmConfiguration.getProperty(PROPNAME_MAXBYTES, 0L);
+    }
+
     @Override
     public boolean isCached(DocumentReference documentReference)
     {
@@ -46,6 +46,12 @@
      */
     int getSize();
 
+    /**
+     * @return the maximum estimated size in bytes of the cached rendering results, 0 for no limit
+     * @since 9.10RC1
+     */
+    long getMaxBytes();
+
     /**
      * Indicate if the provided document's rendering result should be cached.
      *
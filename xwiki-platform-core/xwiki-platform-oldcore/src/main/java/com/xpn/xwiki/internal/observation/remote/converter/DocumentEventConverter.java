@@ -24,6 +24,7 @@
 import java.util.Map;
 import java.util.Set;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
@@ -31,6 +32,7 @@
 import org.xwiki.bridge.event.DocumentDeletedEvent;
 import org.xwiki.bridge.event.DocumentUpdatedEvent;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.observation.event.Event;
 import org.xwiki.observation.remote.LocalEventData;
@@ -39,6 +41,7 @@
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.LazyXWikiDocument;
 import com.xpn.xwiki.doc.XWikiDeletedDocument;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.store.XWikiRecycleBinStoreInterface;
@@ -68,6 +71,13 @@ public class DocumentEventConverter extends AbstractXWikiEventConverter
         }
     };
 
+    /**
+     * Used to know if the documents should be loaded before notifying the listeners.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
     @Override
     public boolean toRemote(LocalEventData localEvent, RemoteEventData remoteEvent)
     {
@@ -97,6 +107,8 @@ public boolean fromRemote(RemoteEventData remoteEvent, LocalEventData localEvent
 
                     if (remoteEvent.getEvent() instanceof DocumentDeletedEvent) {
                         localEvent.setSource(unserializeDeletdDocument(remoteEvent.getSource(), xcontext));
+                    } else if (isLazy()) {
+                        localEvent.setSource(unserializeLazyDocument(remoteEvent.getSource()));
                     } else {
                         localEvent.setSource(unserializeDocument(remoteEvent.getSource()));
                     }
@@ -111,6 +123,11 @@ public boolean fromRemote(RemoteEventData remoteEvent, LocalEventData localEvent
         return false;
     }
 
+    private boolean isLazy()
+    {
+        return this.configuration.getProperty("observation.remote.lazyDocumentEvents", false);
+    }
+
     private XWikiDocument unserializeDeletdDocument(Serializable remoteData, XWikiContext xcontext)
         throws XWikiException
     {
@@ -135,4 +152,37 @@ private XWikiDocument unserializeDeletdDocument(Serializable remoteData, XWikiCo
 
         return doc;
     }
+
+    /**
+     * Create the source of the event without loading anything: the documents are loaded (in the context of the
+     * listener) the first time a listener asks for their content. The deleted documents are not concerned since they
+     * can only be restored from the recycle bin.
+     */
+    private XWikiDocument unserializeLazyDocument(Serializable remoteData)
+    {
+        Map<String, Serializable> remoteDataMap = (Map<String, Serializable>) remoteData;
+
+        DocumentReference docReference = (DocumentReference) remoteDataMap.get(DOC_NAME);
+
+        XWikiDocument doc = createLazyDocument(docReference, (String) remoteDataMap.get(DOC_LANGUAGE),
+            (String) remoteDataMap.get(DOC_VERSION));
+        doc.setOriginalDocument(createLazyDocument(docReference, (String) remoteDataMap.get(ORIGDOC_LANGUAGE),
+            (String) remoteDataMap.get(ORIGDOC_VERSION)));
+
+        return doc;
+    }
+
+    private XWikiDocument createLazyDocument(DocumentReference docReference, String language, String version)
+    {
+        if (version == null) {
+            return new XWikiDocument(docReference);
+        }
+
+        XWikiDocument document = new LazyXWikiDocument(docReference);
+        document.setLanguage(language);
+        document.setVersion(version);
+        document.setNew(false);
+
+        return document;
+    }
 }
@@ -0,0 +1,278 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.observation.remote.converter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.AbstractActionExecutionEvent;
+import org.xwiki.bridge.event.ActionExecutedEvent;
+import org.xwiki.bridge.event.ActionExecutingEvent;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.WikiCreatedEvent;
+import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.localization.LocaleUtils;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.observation.event.AbstractFilterableEvent;
+import org.xwiki.observation.event.CancelableEvent;
+import org.xwiki.observation.event.Event;
+import org.xwiki.observation.event.filter.AlwaysMatchingEventFilter;
+import org.xwiki.observation.event.filter.EventFilter;
+import org.xwiki.observation.event.filter.FixedNameEventFilter;
+import org.xwiki.observation.remote.RemoteEventData;
+import org.xwiki.observation.remote.codec.RemoteEventDataCodec;
+
+/**
+ * Compact encoding of the remote events produced by {@link DocumentEventConverter}, {@link WikiEventConverter} and
+ * {@link ActionExecutionEventConverter}.
+ * <p>
+ * The event is written as its index in a fixed list of supported types followed by its filter (or action name), the
+ * source and the data as a few nullable strings, instead of the Java serialization of the event object and of the
+ * maps containing the document and context information.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component
+@Singleton
+@Named("xwiki")
+public class XWikiEventCodec implements RemoteEventDataCodec
+{
+    /**
+     * The supported events. The index of an event type is sent on the network so new types must be added at the end.
+     */
+    private static final List<Class<? extends Event>> EVENT_TYPES = Arrays.asList(DocumentCreatedEvent.class,
+        DocumentUpdatedEvent.class, DocumentDeletedEvent.class, WikiCreatedEvent.class, WikiDeletedEvent.class,
+        ActionExecutedEvent.class, ActionExecutingEvent.class);
+
+    /**
+     * Create the events from their filter or action name, in the same order as {@link #EVENT_TYPES}.
+     */
+    private static final List<Function<String, Event>> EVENT_FACTORIES = Arrays.asList(
+        name -> new DocumentCreatedEvent(toEventFilter(name)), name -> new DocumentUpdatedEvent(toEventFilter(name)),
+        name -> new DocumentDeletedEvent(toEventFilter(name)), name -> new WikiCreatedEvent(toEventFilter(name)),
+        name -> new WikiDeletedEvent(toEventFilter(name)), ActionExecutedEvent::new, ActionExecutingEvent::new);
+
+    private static final List<String> DOCUMENT_KEYS = Arrays.asList(AbstractXWikiEventConverter.DOC_NAME,
+        AbstractXWikiEventConverter.DOC_VERSION, AbstractXWikiEventConverter.DOC_LANGUAGE,
+        AbstractXWikiEventConverter.ORIGDOC_VERSION, AbstractXWikiEventConverter.ORIGDOC_LANGUAGE);
+
+    private static final List<String> DOCUMENT_STRING_KEYS = DOCUMENT_KEYS.subList(1, DOCUMENT_KEYS.size());
+
+    private static final List<String> CONTEXT_KEYS =
+        Arrays.asList(AbstractXWikiEventConverter.CONTEXT_WIKI, AbstractXWikiEventConverter.CONTEXT_USER);
+
+    private static final byte SOURCE_NULL = 0;
+
+    private static final byte SOURCE_STRING = 1;
+
+    private static final byte SOURCE_DOCUMENT = 2;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private DocumentReferenceResolver<String> resolver;
+
+    @Override
+    public int getPriority()
+    {
+        return 1000;
+    }
+
+    @Override
+    public boolean encode(RemoteEventData remoteEvent, DataOutput output) throws IOException
+    {
+        int eventType = EVENT_TYPES.indexOf(remoteEvent.getEvent().getClass());
+        if (eventType < 0 || !isSupported(remoteEvent)) {
+            return false;
+        }
+
+        output.writeByte(eventType);
+        writeString(getEventName((Event) remoteEvent.getEvent()), output);
+
+        if (remoteEvent.getSource() instanceof Map) {
+            output.writeByte(SOURCE_DOCUMENT);
+            writeDocument((Map<String, Serializable>) remoteEvent.getSource(), output);
+        } else if (remoteEvent.getSource() != null) {
+            output.writeByte(SOURCE_STRING);
+            output.writeUTF((String) remoteEvent.getSource());
+        } else {
+            output.writeByte(SOURCE_NULL);
+        }
+
+        Map<String, Serializable> context = (Map<String, Serializable>) remoteEvent.getData();
+        for (String key : CONTEXT_KEYS) {
+            writeString((String) context.get(key), output);
+        }
+
+        return true;
+    }
+
+    private boolean isSupported(RemoteEventData remoteEvent)
+    {
+        Event event = (Event) remoteEvent.getEvent();
+
+        // The filters which are not a fixed name are very unlikely and canceled events are not supposed to be sent
+        if (event instanceof AbstractFilterableEvent) {
+            EventFilter filter = ((AbstractFilterableEvent) event).getEventFilter();
+            if (!(filter instanceof FixedNameEventFilter || filter instanceof AlwaysMatchingEventFilter)) {
+                return false;
+            }
+        }
+        if (event instanceof CancelableEvent && ((CancelableEvent) event).isCanceled()) {
+            return false;
+        }
+
+        return isSupportedSource(remoteEvent.getSource())
+            && isSupportedMap(remoteEvent.getData(), CONTEXT_KEYS, CONTEXT_KEYS);
+    }
+
+    private boolean isSupportedSource(Serializable source)
+    {
+        if (source instanceof Map) {
+            return isSupportedMap(source, DOCUMENT_KEYS, DOCUMENT_STRING_KEYS)
+                && ((Map<?, ?>) source).get(AbstractXWikiEventConverter.DOC_NAME) instanceof DocumentReference;
+        }
+
+        return source == null || source instanceof String;
+    }
+
+    private boolean isSupportedMap(Serializable value, List<String> keys, List<String> stringKeys)
+    {
+        if (!(value instanceof Map)) {
+            return false;
+        }
+
+        Map<?, ?> map = (Map<?, ?>) value;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!keys.contains(entry.getKey()) || (stringKeys.contains(entry.getKey()) && entry.getValue() != null
+                && !(entry.getValue() instanceof String))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String getEventName(Event event)
+    {
+        if (event instanceof AbstractActionExecutionEvent) {
+            return ((AbstractActionExecutionEvent) event).getActionName();
+        }
+
+        EventFilter filter = ((AbstractFilterableEvent) event).getEventFilter();
+
+        return filter instanceof FixedNameEventFilter ? filter.getFilter() : null;
+    }
+
+    private static EventFilter toEventFilter(String name)
+    {
+        return name != null ? new FixedNameEventFilter(name) : new AlwaysMatchingEventFilter();
+    }
+
+    private void writeDocument(Map<String, Serializable> document, DataOutput output) throws IOException
+    {
+        DocumentReference reference = (DocumentReference) document.get(AbstractXWikiEventConverter.DOC_NAME);
+        output.writeUTF(this.serializer.serialize(reference));
+        writeString(reference.getLocale() != null ? reference.getLocale().toString() : null, output);
+
+        for (String key : DOCUMENT_STRING_KEYS) {
+            writeString((String) document.get(key), output);
+        }
+    }
+
+    private void writeString(String value, DataOutput output) throws IOException
+    {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    @Override
+    public RemoteEventData decode(DataInput input) throws IOException
+    {
+        int eventType = input.readByte();
+        if (eventType < 0 || eventType >= EVENT_FACTORIES.size()) {
+            throw new IOException("Unknown event type [" + eventType + "]");
+        }
+
+        RemoteEventData remoteEvent = new RemoteEventData();
+        remoteEvent.setEvent((Serializable) EVENT_FACTORIES.get(eventType).apply(readString(input)));
+
+        byte sourceType = input.readByte();
+        if (sourceType == SOURCE_DOCUMENT) {
+            remoteEvent.setSource(readDocument(input));
+        } else if (sourceType == SOURCE_STRING) {
+            remoteEvent.setSource(input.readUTF());
+        }
+
+        HashMap<String, Serializable> context = new HashMap<>();
+        for (String key : CONTEXT_KEYS) {
+            context.put(key, readString(input));
+        }
+        remoteEvent.setData(context);
+
+        return remoteEvent;
+    }
+
+    private HashMap<String, Serializable> readDocument(DataInput input) throws IOException
+    {
+        DocumentReference reference = this.resolver.resolve(input.readUTF());
+        String locale = readString(input);
+        if (locale != null) {
+            reference = new DocumentReference(reference, LocaleUtils.toLocale(locale, Locale.ROOT));
+        }
+
+        HashMap<String, Serializable> document = new HashMap<>();
+        document.put(AbstractXWikiEventConverter.DOC_NAME, reference);
+        for (String key : DOCUMENT_STRING_KEYS) {
+            String value = readString(input);
+            if (value != null) {
+                document.put(key, value);
+            }
+        }
+
+        return document;
+    }
+
+    private String readString(DataInput input) throws IOException
+    {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+}
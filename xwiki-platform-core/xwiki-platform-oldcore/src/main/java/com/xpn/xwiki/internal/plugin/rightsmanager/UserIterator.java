@@ -20,14 +20,15 @@
 package com.xpn.xwiki.internal.plugin.rightsmanager;
 
 import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.xwiki.context.Execution;
@@ -76,9 +77,9 @@
 
     private List<DocumentReference> userAndGroupReferences;
 
-    private List<DocumentReference> excludedUserAndGroupReferences;
+    private Set<DocumentReference> excludedUserAndGroupReferences;
 
-    private List<DocumentReference> processedGroups = new ArrayList<>();
+    private Set<DocumentReference> processedGroups = new HashSet<>();
 
     private Deque<Iterator<DocumentReference>> userAndGroupIteratorStack = new ArrayDeque<>();
 
@@ -173,9 +174,10 @@ private void initialize(List<DocumentReference> userAndGroupReferences,
         DocumentReferenceResolver<String> explicitDocumentReferenceResolver)
     {
         this.userAndGroupReferences = userAndGroupReferences;
-        this.excludedUserAndGroupReferences = excludedUserAndGroupReferences;
         if (excludedUserAndGroupReferences == null) {
-            this.excludedUserAndGroupReferences = Collections.emptyList();
+            this.excludedUserAndGroupReferences = Collections.emptySet();
+        } else {
+            this.excludedUserAndGroupReferences = new HashSet<>(excludedUserAndGroupReferences);
         }
         this.explicitDocumentReferenceResolver = explicitDocumentReferenceResolver;
         this.userDataExtractor = userDataExtractor;
@@ -297,9 +299,7 @@ private T handleUserOrGroupReference(DocumentReference currentReference, XWikiDo
         // If we have a group reference then stack the group members
         if (isGroupReference) {
             // Ensure groups are visited only once to prevent potential infinite loops
-            if (!processedGroups.contains(currentReference)) {
-                processedGroups.add(currentReference);
-
+            if (processedGroups.add(currentReference)) {
                 // Extract the references and push them on the stack as an iterator
                 Collection<DocumentReference> groupMemberReferences =
                     convertToDocumentReferences(members, currentReference);
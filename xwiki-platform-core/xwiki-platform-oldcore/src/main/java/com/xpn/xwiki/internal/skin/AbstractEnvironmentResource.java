@@ -19,8 +19,11 @@
  */
 package com.xpn.xwiki.internal.skin;
 
+import java.io.File;
 import java.io.InputStream;
+import java.net.URL;
 
+import org.apache.commons.io.FileUtils;
 import org.xwiki.environment.Environment;
 import org.xwiki.filter.input.DefaultInputStreamInputSource;
 import org.xwiki.filter.input.InputSource;
@@ -52,4 +55,22 @@ public InputSource getInputSource()
 
         return null;
     }
+
+    /**
+     * @return the time the resource was last modified when it's a file located on the filesystem, 0 otherwise (e.g.
+     *         when it's packaged in an archive)
+     * @since 9.10RC1
+     */
+    public long getLastModified()
+    {
+        URL url = this.environment.getResource(getPath());
+        if (url != null) {
+            File file = FileUtils.toFile(url);
+            if (file != null) {
+                return file.lastModified();
+            }
+        }
+
+        return 0;
+    }
 }
@@ -0,0 +1,406 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+
+/**
+ * Probabilistic filter telling if a document definitely does not exist in a wiki, used to avoid querying the database
+ * for documents which don't exist (e.g. wanted links).
+ * <p>
+ * The filter of a wiki is built in the background from the document table the first time the wiki is accessed and is
+ * updated each time a document is created, including while it's being built. Until it's fully built the filter
+ * answers that any document might exist. When the filter of a wiki cannot be built (e.g. the wiki database is not
+ * reachable) it keeps answering that any document might exist and is built again later, waiting longer after each
+ * failure. A filter cannot forget a document, so deleted documents are still reported as possibly existing until the
+ * wiki itself is deleted.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class DocumentExistenceFilter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(DocumentExistenceFilter.class);
+
+    /**
+     * The number of documents to load at once when building a filter.
+     */
+    private static final int BATCH_SIZE = 10000;
+
+    /**
+     * The minimum number of entries a filter is created for, to leave room for new documents in small wikis.
+     */
+    private static final int MIN_CAPACITY = 10000;
+
+    /**
+     * Separates the full name and the locale in a filter entry.
+     */
+    private static final char LOCALE_SEPARATOR = '\0';
+
+    private static final String LAST_ID = "lastId";
+
+    /**
+     * The time to wait before building again a filter which failed to be built the first time, in milliseconds.
+     */
+    private static final long MIN_RETRY_DELAY = 60000;
+
+    /**
+     * The maximum time to wait before building again a filter which failed to be built, in milliseconds.
+     */
+    private static final long MAX_RETRY_DELAY = 3600000;
+
+    /**
+     * The filter of a wiki.
+     *
+     * @version $Id$
+     */
+    private static class WikiFilter
+    {
+        /**
+         * The filter is only modified while holding the write lock, so that the lookups can be done concurrently.
+         */
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private BloomFilter<String> filter;
+
+        /**
+         * The documents created before the filter is created.
+         */
+        private List<String[]> pendingDocuments = new ArrayList<>();
+
+        private int capacity;
+
+        private int size;
+
+        private volatile boolean ready;
+
+        /**
+         * The number of times in a row the filter failed to be built.
+         */
+        private final int failures;
+
+        /**
+         * The time after which the filter should be built again, 0 if it did not fail to be built.
+         */
+        private volatile long retryTime;
+
+        private final AtomicBoolean retrying = new AtomicBoolean();
+
+        WikiFilter(int failures)
+        {
+            this.failures = failures;
+        }
+
+        void create(int capacity, double falsePositiveProbability)
+        {
+            this.lock.writeLock().lock();
+            try {
+                this.capacity = capacity;
+                this.filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), capacity,
+                    falsePositiveProbability);
+
+                for (String[] document : this.pendingDocuments) {
+                    put(document[0], document[1]);
+                }
+                this.pendingDocuments = null;
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+
+        void put(String fullName, String locale)
+        {
+            this.lock.writeLock().lock();
+            try {
+                if (this.filter != null) {
+                    // Checking a document without locale must match any of its translations, like the store does
+                    this.filter.put(fullName);
+                    if (StringUtils.isNotEmpty(locale)) {
+                        this.filter.put(fullName + LOCALE_SEPARATOR + locale);
+                    }
+                    this.size++;
+                } else {
+                    // Don't rely on the transaction which created the document being visible to the builder
+                    this.pendingDocuments.add(new String[] {fullName, locale});
+                }
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+
+        boolean mightContain(String key)
+        {
+            this.lock.readLock().lock();
+            try {
+                return this.filter.mightContain(key);
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+
+        double getExpectedFalsePositiveProbability()
+        {
+            this.lock.readLock().lock();
+            try {
+                return this.filter != null ? this.filter.expectedFpp() : 0;
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+
+        void failed()
+        {
+            // Wait a bit longer after each failure
+            long delay = Math.min(MIN_RETRY_DELAY * (this.failures + 1), MAX_RETRY_DELAY);
+            this.retryTime = System.currentTimeMillis() + delay;
+        }
+
+        /**
+         * @return true if the filter failed to be built and the current thread should build it again
+         */
+        boolean shouldRetry()
+        {
+            long time = this.retryTime;
+
+            return time > 0 && System.currentTimeMillis() >= time && this.retrying.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * Fill the filter of a wiki with the documents of the database.
+     *
+     * @version $Id$
+     */
+    private class WikiFilterBuilder extends AbstractXWikiRunnable
+    {
+        private final String wiki;
+
+        private final WikiFilter wikiFilter;
+
+        WikiFilterBuilder(String wiki, WikiFilter wikiFilter)
+        {
+            this.wiki = wiki;
+            this.wikiFilter = wikiFilter;
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            try {
+                List<Long> count = queryManager.createQuery("select count(doc.id) from XWikiDocument doc", Query.HQL)
+                    .setWiki(this.wiki).execute();
+                int documents = count.isEmpty() ? 0 : count.get(0).intValue();
+
+                // Each document can take two entries (with and without its locale)
+                this.wikiFilter.create(Math.max(documents * 3, MIN_CAPACITY), falsePositiveProbability);
+
+                // Page on the document id rather than with an offset so that the documents created (or deleted) during
+                // the scan don't shift the following pages and make it skip existing documents
+                Query query = queryManager.createQuery(
+                    "select doc.id, doc.fullName, doc.language from XWikiDocument doc where doc.id > :lastId"
+                        + " order by doc.id",
+                    Query.HQL).setWiki(this.wiki).setLimit(BATCH_SIZE);
+                long lastId = Long.MIN_VALUE;
+                int scanned = 0;
+                List<Object[]> results;
+                do {
+                    results = query.bindValue(LAST_ID, lastId).execute();
+                    for (Object[] result : results) {
+                        this.wikiFilter.put((String) result[1], (String) result[2]);
+                    }
+                    if (!results.isEmpty()) {
+                        lastId = (Long) results.get(results.size() - 1)[0];
+                    }
+                    scanned += results.size();
+                } while (results.size() == BATCH_SIZE);
+
+                this.wikiFilter.ready = true;
+
+                LOGGER.debug("Document existence filter of wiki [{}] built with [{}] documents", this.wiki, scanned);
+            } catch (QueryException e) {
+                // Don't log the same error on each retry (e.g. for a wiki which is not reachable)
+                if (this.wikiFilter.failures == 0) {
+                    LOGGER.error("Failed to build the document existence filter of wiki [{}]", this.wiki, e);
+                } else {
+                    LOGGER.debug("Failed again to build the document existence filter of wiki [{}]", this.wiki, e);
+                }
+
+                // Keep answering that any document might exist until the filter is built again
+                this.wikiFilter.failed();
+            }
+        }
+    }
+
+    private final QueryManager queryManager;
+
+    private final double falsePositiveProbability;
+
+    private final Map<String, WikiFilter> filters = new ConcurrentHashMap<>();
+
+    private final ExecutorService builderExecutor;
+
+    private final LongAdder filteredCount = new LongAdder();
+
+    /**
+     * @param queryManager used to list the documents of a wiki
+     * @param falsePositiveProbability the desired probability of reporting that a document which does not exist might
+     *            exist
+     */
+    public DocumentExistenceFilter(QueryManager queryManager, double falsePositiveProbability)
+    {
+        this.queryManager = queryManager;
+        this.falsePositiveProbability = falsePositiveProbability;
+
+        BasicThreadFactory factory = new BasicThreadFactory.Builder()
+            .namingPattern("XWiki document existence filter builder").daemon(true).priority(Thread.MIN_PRIORITY)
+            .build();
+        this.builderExecutor = Executors.newSingleThreadExecutor(factory);
+    }
+
+    /**
+     * @param wiki the wiki of the document
+     * @param fullName the local full name of the document
+     * @param locale the locale of the document
+     * @return false if the document definitely does not exist, true if it might exist
+     */
+    public boolean mightExist(String wiki, String fullName, Locale locale)
+    {
+        WikiFilter wikiFilter = this.filters.computeIfAbsent(wiki, key -> build(key, 0));
+
+        if (!wikiFilter.ready) {
+            if (wikiFilter.shouldRetry()) {
+                WikiFilter newWikiFilter = new WikiFilter(wikiFilter.failures + 1);
+                if (this.filters.replace(wiki, wikiFilter, newWikiFilter)) {
+                    this.builderExecutor.execute(new WikiFilterBuilder(wiki, newWikiFilter));
+                }
+            }
+
+            return true;
+        }
+
+        String key =
+            Locale.ROOT.equals(locale) || locale == null ? fullName : fullName + LOCALE_SEPARATOR + locale.toString();
+        if (!wikiFilter.mightContain(key)) {
+            this.filteredCount.increment();
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Indicate that a document has been created.
+     *
+     * @param wiki the wiki of the document
+     * @param fullName the local full name of the document
+     * @param locale the locale of the document
+     */
+    public void add(String wiki, String fullName, Locale locale)
+    {
+        WikiFilter wikiFilter = this.filters.get(wiki);
+
+        if (wikiFilter != null) {
+            wikiFilter.put(fullName, locale != null ? locale.toString() : null);
+        }
+    }
+
+    /**
+     * Forget the filter of the passed wiki, to be called when the wiki is deleted. It will be built again the next time
+     * the wiki is accessed.
+     *
+     * @param wiki the wiki
+     */
+    public void remove(String wiki)
+    {
+        this.filters.remove(wiki);
+    }
+
+    /**
+     * Forget all the filters.
+     */
+    public void clear()
+    {
+        this.filters.clear();
+    }
+
+    /**
+     * @return the number of lookups for which the filter answered that the document does not exist
+     */
+    public long getFilteredCount()
+    {
+        return this.filteredCount.sum();
+    }
+
+    /**
+     * @param wiki the wiki
+     * @return the number of documents in the filter of the passed wiki, -1 if the filter is not ready
+     */
+    public int getSize(String wiki)
+    {
+        WikiFilter wikiFilter = this.filters.get(wiki);
+
+        return wikiFilter != null && wikiFilter.ready ? wikiFilter.size : -1;
+    }
+
+    /**
+     * @param wiki the wiki
+     * @return the probability that the filter of the passed wiki reports that a document which does not exist might
+     *         exist, 0 if the filter is not ready
+     */
+    public double getExpectedFalsePositiveProbability(String wiki)
+    {
+        WikiFilter wikiFilter = this.filters.get(wiki);
+
+        return wikiFilter != null && wikiFilter.ready ? wikiFilter.getExpectedFalsePositiveProbability() : 0;
+    }
+
+    private WikiFilter build(String wiki, int failures)
+    {
+        WikiFilter wikiFilter = new WikiFilter(failures);
+
+        this.builderExecutor.execute(new WikiFilterBuilder(wiki, wikiFilter));
+
+        return wikiFilter;
+    }
+}
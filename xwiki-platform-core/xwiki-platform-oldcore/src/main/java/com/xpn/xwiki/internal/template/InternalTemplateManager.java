@@ -161,10 +161,13 @@
     @Inject
     private JobProgressManager progress;
 
+    @Inject
+    private TemplateCache templateCache;
+
     @Inject
     private Logger logger;
 
-    private static abstract class AbtractTemplate<T extends TemplateContent, R extends Resource<?>> implements Template
+    private abstract class AbtractTemplate<T extends TemplateContent, R extends Resource<?>> implements Template
     {
         protected R resource;
 
@@ -191,30 +194,57 @@ public String getPath()
         public TemplateContent getContent() throws Exception
         {
             if (this.content == null) {
-                // TODO: work with streams instead of forcing String
-                String strinContent;
-
-                try (InputSource source = this.resource.getInputSource()) {
-                    if (source instanceof StringInputSource) {
-                        strinContent = source.toString();
-                    } else if (source instanceof ReaderInputSource) {
-                        strinContent = IOUtils.toString(((ReaderInputSource) source).getReader());
-                    } else if (source instanceof InputStreamInputSource) {
-                        // It's impossible to know the real attachment encoding, but let's assume that they respect the
-                        // standard and use UTF-8 (which is required for the files located on the filesystem)
-                        strinContent = IOUtils.toString(((InputStreamInputSource) source).getInputStream(),
-                            StandardCharsets.UTF_8);
-                    } else {
+                String strinContent = null;
+
+                // The wiki templates can be modified so their source (already in memory) is used to validate the
+                // cached content. The filesystem templates can be modified in place so their modification date is
+                // used instead.
+                Object version = null;
+                if (this.resource instanceof WikiResource) {
+                    strinContent = readContent();
+                    version = Arrays.asList(strinContent, ((WikiResource<?>) this.resource).getAuthorReference());
+                } else if (this.resource instanceof AbstractEnvironmentResource) {
+                    version = ((AbstractEnvironmentResource) this.resource).getLastModified();
+                }
+
+                this.content = (T) templateCache.get(this.resource, version);
+
+                if (this.content == null) {
+                    if (strinContent == null) {
+                        strinContent = readContent();
+                    }
+                    if (strinContent == null) {
                         return null;
                     }
-                }
 
-                this.content = getContentInternal(strinContent);
+                    this.content = getContentInternal(strinContent);
+
+                    templateCache.set(this.resource, version, this.content);
+                }
             }
 
             return this.content;
         }
 
+        private String readContent() throws Exception
+        {
+            // TODO: work with streams instead of forcing String
+            try (InputSource source = this.resource.getInputSource()) {
+                if (source instanceof StringInputSource) {
+                    return source.toString();
+                } else if (source instanceof ReaderInputSource) {
+                    return IOUtils.toString(((ReaderInputSource) source).getReader());
+                } else if (source instanceof InputStreamInputSource) {
+                    // It's impossible to know the real attachment encoding, but let's assume that they respect the
+                    // standard and use UTF-8 (which is required for the files located on the filesystem)
+                    return IOUtils.toString(((InputStreamInputSource) source).getInputStream(),
+                        StandardCharsets.UTF_8);
+                } else {
+                    return null;
+                }
+            }
+        }
+
         protected abstract T getContentInternal(String content) throws Exception;
 
         @Override
@@ -284,6 +314,12 @@ private class DefaultTemplateContent implements RawProperties, TemplateContent
 
         protected Map<String, Object> properties = new HashMap<>();
 
+        /**
+         * The result of the parsing of the content when it's in a wiki syntax, shared by all the renderings of the
+         * template (it must be cloned before being transformed).
+         */
+        protected volatile XDOM xdom;
+
         DefaultTemplateContent(String content)
         {
             this.content = content;
@@ -565,7 +601,7 @@ private XDOM getXDOM(Template template, TemplateContent content) throws Exceptio
         XDOM xdom;
 
         if (content.getSourceSyntax() != null) {
-            xdom = this.parser.parse(content.getContent(), content.getSourceSyntax());
+            xdom = parse(content);
         } else {
             String result = evaluateContent(template, content);
             xdom = new XDOM(Arrays.asList(new RawBlock(result,
@@ -575,6 +611,28 @@ private XDOM getXDOM(Template template, TemplateContent content) throws Exceptio
         return xdom;
     }
 
+    private XDOM parse(TemplateContent content) throws Exception
+    {
+        if (content instanceof DefaultTemplateContent) {
+            DefaultTemplateContent defaultContent = (DefaultTemplateContent) content;
+
+            XDOM xdom = defaultContent.xdom;
+            if (xdom == null) {
+                this.templateCache.xdomMiss();
+
+                xdom = this.parser.parse(content.getContent(), content.getSourceSyntax());
+                defaultContent.xdom = xdom;
+            } else {
+                this.templateCache.xdomHit();
+            }
+
+            // The XDOM is modified by the transformations
+            return xdom.clone();
+        }
+
+        return this.parser.parse(content.getContent(), content.getSourceSyntax());
+    }
+
     public XDOM getXDOM(String templateName) throws Exception
     {
         Template template = getTemplate(templateName);
@@ -0,0 +1,236 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.template;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+import org.xwiki.skin.Resource;
+import org.xwiki.template.TemplateContent;
+import org.xwiki.template.event.TemplateDeletedEvent;
+import org.xwiki.template.event.TemplateEvent;
+import org.xwiki.template.event.TemplateUpdatedEvent;
+
+import com.xpn.xwiki.internal.skin.AbstractEnvironmentResource;
+import com.xpn.xwiki.internal.skin.WikiResource;
+
+/**
+ * Keep the parsed content of the templates, so that the templates rendered on each request (like {@code view.vm}) are
+ * not read and parsed again each time.
+ * <p>
+ * The classloader templates are not supposed to change while XWiki is running. The filesystem templates can be
+ * modified in place so their modification date is compared with the cached one. The content of the wiki templates is
+ * already in memory with their document so it's compared with the cached one to make sure it's still valid; the
+ * entries of the wiki templates are also removed when a {@link TemplateUpdatedEvent} or a
+ * {@link TemplateDeletedEvent} is received.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = TemplateCache.class)
+@Singleton
+public class TemplateCache implements Initializable
+{
+    private static final List<Event> EVENTS =
+        Arrays.<Event>asList(new TemplateUpdatedEvent(), new TemplateDeletedEvent());
+
+    private static final class Entry
+    {
+        private final Object version;
+
+        private final TemplateContent content;
+
+        Entry(Object version, TemplateContent content)
+        {
+            this.version = version;
+            this.content = content;
+        }
+    }
+
+    @Inject
+    private ObservationManager observation;
+
+    @Inject
+    @Named("all")
+    private ConfigurationSource configuration;
+
+    private boolean enabled;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder contentHits = new LongAdder();
+
+    private final LongAdder contentMisses = new LongAdder();
+
+    private final LongAdder xdomHits = new LongAdder();
+
+    private final LongAdder xdomMisses = new LongAdder();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.enabled = this.configuration.getProperty("template.cache.enabled", true);
+
+        this.observation.addListener(new EventListener()
+        {
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                String id = ((TemplateEvent) event).getId();
+                if (id != null) {
+                    TemplateCache.this.entries.remove(id);
+                } else {
+                    TemplateCache.this.entries.clear();
+                }
+            }
+
+            @Override
+            public String getName()
+            {
+                return TemplateCache.class.getName();
+            }
+
+            @Override
+            public List<Event> getEvents()
+            {
+                return EVENTS;
+            }
+        });
+    }
+
+    /**
+     * @param resource the resource holding the template
+     * @return true if the content of the template can be cached
+     */
+    public boolean isCacheable(Resource<?> resource)
+    {
+        // String templates are created with a content which is not supposed to be shared
+        return this.enabled && resource.getId() != null && (resource instanceof AbstractEnvironmentResource
+            || resource instanceof ClassloaderResource || resource instanceof WikiResource);
+    }
+
+    /**
+     * @param resource the resource holding the template
+     * @param version identify the state of the resource when it can change (e.g. the source of a wiki template or the
+     *            modification date of a filesystem template), null otherwise
+     * @return the cached content, or null if it's not in the cache
+     */
+    public TemplateContent get(Resource<?> resource, Object version)
+    {
+        if (!isCacheable(resource)) {
+            return null;
+        }
+
+        Entry entry = this.entries.get(resource.getId());
+        if (entry != null && Objects.equals(entry.version, version)) {
+            this.contentHits.increment();
+
+            return entry.content;
+        }
+
+        this.contentMisses.increment();
+
+        return null;
+    }
+
+    /**
+     * @param resource the resource holding the template
+     * @param version identify the state of the resource when it can change (e.g. the source of a wiki template or the
+     *            modification date of a filesystem template), null otherwise
+     * @param content the parsed content of the template
+     */
+    public void set(Resource<?> resource, Object version, TemplateContent content)
+    {
+        if (isCacheable(resource)) {
+            this.entries.put(resource.getId(), new Entry(version, content));
+        }
+    }
+
+    /**
+     * Count a parsed XDOM reused from a cached template content.
+     */
+    void xdomHit()
+    {
+        this.xdomHits.increment();
+    }
+
+    /**
+     * Count a template content parsed into an XDOM.
+     */
+    void xdomMiss()
+    {
+        this.xdomMisses.increment();
+    }
+
+    /**
+     * @return the number of templates in the cache
+     */
+    public int getSize()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the number of template contents found in the cache
+     */
+    public long getContentHitCount()
+    {
+        return this.contentHits.sum();
+    }
+
+    /**
+     * @return the number of template contents which had to be read and parsed
+     */
+    public long getContentMissCount()
+    {
+        return this.contentMisses.sum();
+    }
+
+    /**
+     * @return the number of wiki syntax templates which did not have to be parsed again
+     */
+    public long getXDOMHitCount()
+    {
+        return this.xdomHits.sum();
+    }
+
+    /**
+     * @return the number of wiki syntax templates which had to be parsed
+     */
+    public long getXDOMMissCount()
+    {
+        return this.xdomMisses.sum();
+    }
+}
@@ -50,9 +50,14 @@ public class DocumentStatsStoreItem extends AbstractStatsStoreItem
     private String action;
 
     /**
-     * Is this part of a user visit.
+     * The number of hits aggregated in this item.
      */
-    private boolean isVisit;
+    private int hits = 1;
+
+    /**
+     * The number of visits aggregated in this item.
+     */
+    private int visits;
 
     /**
      * Create new instance of {@link DocumentStatsStoreItem}.
@@ -75,7 +80,7 @@ public DocumentStatsStoreItem(String name, Date periodDate, PeriodType periodTyp
         super(name, periodDate, periodType, context);
 
         this.action = action;
-        this.isVisit = isVisit;
+        this.visits = isVisit ? 1 : 0;
     }
 
     @Override
@@ -84,6 +89,17 @@ public String getId()
         return String.format("%s %s %s %s", getClass(), this.name, this.action, this.period);
     }
 
+    @Override
+    public boolean aggregate(XWikiStatsStoreItem item)
+    {
+        DocumentStatsStoreItem docStat = (DocumentStatsStoreItem) item;
+
+        this.hits += docStat.hits;
+        this.visits += docStat.visits;
+
+        return true;
+    }
+
     @Override
     public void storeInternal(List<XWikiStatsStoreItem> stats)
     {
@@ -108,14 +124,16 @@ public void storeInternal(List<XWikiStatsStoreItem> stats)
         }
 
         // Increment counters
-        documentStat.setIntValue("pageViews", documentStat.getPageViews() + stats.size());
+        int pageViews = 0;
+        int newVisits = 0;
         for (XWikiStatsStoreItem statItem : stats) {
             DocumentStatsStoreItem docStat = (DocumentStatsStoreItem) statItem;
 
-            if (docStat.isVisit) {
-                documentStat.incVisits();
-            }
+            pageViews += docStat.hits;
+            newVisits += docStat.visits;
         }
+        documentStat.setIntValue("pageViews", documentStat.getPageViews() + pageViews);
+        documentStat.setVisits(documentStat.getVisits() + newVisits);
 
         // Re-save statistics object
         try {
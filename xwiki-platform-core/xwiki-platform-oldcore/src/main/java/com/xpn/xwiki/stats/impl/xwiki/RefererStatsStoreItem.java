@@ -49,6 +49,11 @@ public class RefererStatsStoreItem extends AbstractStatsStoreItem
      */
     private String referer;
 
+    /**
+     * The number of hits aggregated in this item.
+     */
+    private int hits = 1;
+
     /**
      * Create new instance of {@link RefererStatsStoreItem}.
      *
@@ -72,6 +77,14 @@ public String getId()
         return String.format("%s %s %s %s", getClass(), this.name, this.referer, this.period);
     }
 
+    @Override
+    public boolean aggregate(XWikiStatsStoreItem item)
+    {
+        this.hits += ((RefererStatsStoreItem) item).hits;
+
+        return true;
+    }
+
     @Override
     public void storeInternal(List<XWikiStatsStoreItem> stats)
     {
@@ -96,7 +109,11 @@ public void storeInternal(List<XWikiStatsStoreItem> stats)
         }
 
         // Increment counters
-        refererStat.setIntValue("pageViews", refererStat.getPageViews() + stats.size());
+        int pageViews = 0;
+        for (XWikiStatsStoreItem statItem : stats) {
+            pageViews += ((RefererStatsStoreItem) statItem).hits;
+        }
+        refererStat.setIntValue("pageViews", refererStat.getPageViews() + pageViews);
 
         // Re-save statistics object
         try {
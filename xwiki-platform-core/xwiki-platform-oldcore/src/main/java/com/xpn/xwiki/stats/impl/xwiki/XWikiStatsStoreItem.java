@@ -41,4 +41,18 @@
      * @param statsList the list of statistics item to store.
      */
     void store(List<XWikiStatsStoreItem> statsList);
+
+    /**
+     * Aggregate a more recent statistic with the same identifier into this one, so that the statistics can be kept in
+     * memory until they are stored without having to remember each of them.
+     *
+     * @param item a more recent statistic with the same identifier
+     * @return {@code true} if the statistic has been aggregated into this one, {@code false} if it should be stored
+     *         separately (in the same list)
+     * @since 9.10RC1
+     */
+    default boolean aggregate(XWikiStatsStoreItem item)
+    {
+        return false;
+    }
 }
@@ -20,27 +20,47 @@
 package com.xpn.xwiki.stats.impl.xwiki;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
 
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.stats.impl.StatsUtil;
 import com.xpn.xwiki.stats.impl.VisitStats;
+import com.xpn.xwiki.store.XWikiHibernateStore;
 import com.xpn.xwiki.util.AbstractXWikiRunnable;
 import com.xpn.xwiki.web.DownloadAction;
 import com.xpn.xwiki.web.SaveAction;
+import com.xpn.xwiki.web.Utils;
 import com.xpn.xwiki.web.ViewAction;
 
 /**
  * Back-end statistics storing service.
+ * <p>
+ * The statistics are not stored as soon as they are added: the statistics with the same identifier are aggregated in
+ * memory (see {@link XWikiStatsStoreItem#aggregate(XWikiStatsStoreItem)}) and periodically flushed to the database
+ * by the storing thread, in one transaction per wiki. The statistics are stored in the order they were first added
+ * since some of them replace previously stored ones (see {@link VisitStatsStoreItem}), and when the transaction of a
+ * wiki fails its statistics are stored again one by one so that a single failing statistic does not discard the
+ * others.
+ * <p>
+ * At most {@code stats.queue.size} distinct statistics wait to be stored: when the database is too slow to keep up,
+ * the new statistics are dropped while the hits of the waiting ones are still aggregated.
  *
  * @version $Id$
  * @since 1.4M2
@@ -53,9 +73,50 @@ public class XWikiStatsStoreService extends AbstractXWikiRunnable
     private static final Logger LOGGER = LoggerFactory.getLogger(XWikiStatsStoreService.class);
 
     /**
-     * The queue containing the statistics to store.
+     * The default number of seconds between two flushes of the statistics.
      */
-    private ArrayBlockingQueue<XWikiStatsStoreItem> queue;
+    private static final long DEFAULT_FLUSH_INTERVAL = 10;
+
+    /**
+     * The default maximum number of distinct statistics waiting to be stored.
+     */
+    private static final long DEFAULT_QUEUE_SIZE = 10000;
+
+    /**
+     * The statistics waiting to be stored, indexed by identifier. The map only locks the statistic being updated so
+     * that the request threads adding different statistics don't wait for each other.
+     */
+    private final Map<String, PendingStats> pendingStats = new ConcurrentHashMap<>();
+
+    /**
+     * The number of entries in {@link #pendingStats}.
+     */
+    private final AtomicInteger pendingStatsCount = new AtomicInteger();
+
+    /**
+     * Used to remember the order in which the statistics have been first added.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The number of statistics dropped since the last flush because too many statistics were waiting to be stored.
+     */
+    private final AtomicLong droppedStats = new AtomicLong();
+
+    /**
+     * The maximum number of distinct statistics waiting to be stored.
+     */
+    private final long maxPendingStats;
+
+    /**
+     * Released to ask the storing thread to store the remaining statistics and stop.
+     */
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
+
+    /**
+     * The time between two flushes of the statistics, in milliseconds.
+     */
+    private final long flushInterval;
 
     /**
      * The thread on which the storing service is running.
@@ -75,8 +136,9 @@ public class XWikiStatsStoreService extends AbstractXWikiRunnable
     public XWikiStatsStoreService(XWikiContext context)
     {
         this.xwikiContext = context.clone();
-        long queueSize = context.getWiki().ParamAsLong("stats.queue.size", 200);
-        this.queue = new ArrayBlockingQueue<XWikiStatsStoreItem>((int) queueSize);
+        this.flushInterval = TimeUnit.SECONDS
+            .toMillis(context.getWiki().ParamAsLong("xwiki.stats.flushinterval", DEFAULT_FLUSH_INTERVAL));
+        this.maxPendingStats = context.getWiki().ParamAsLong("stats.queue.size", DEFAULT_QUEUE_SIZE);
     }
 
     @Override
@@ -100,13 +162,12 @@ public void start()
     }
 
     /**
-     * Stop storing thread.
+     * Stop storing thread, after storing the pending statistics.
      */
     public void stop()
     {
-        this.queue.clear();
+        this.stopLatch.countDown();
         try {
-            this.queue.put(new StopStatsRegisterObject());
             this.thread.join();
             this.thread = null;
         } catch (InterruptedException e) {
@@ -119,57 +180,125 @@ public void stop()
     @Override
     public void runInternal()
     {
-        try {
-            while (true) {
-                register();
-            }
-        } catch (InterruptedException e) {
-            if (LOGGER.isWarnEnabled()) {
-                LOGGER.warn("Statistics storing thread has been interrupted.", e);
-            }
-        } catch (StopStatsStoreException e) {
-            if (LOGGER.isInfoEnabled()) {
-                LOGGER.warn("Statistics storing thread received stop order.", e);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                stop = this.stopLatch.await(this.flushInterval, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                if (LOGGER.isWarnEnabled()) {
+                    LOGGER.warn("Statistics storing thread has been interrupted.", e);
+                }
+
+                stop = true;
             }
+
+            flush();
         }
+
+        LOGGER.info("Statistics storing thread received stop order.");
     }
 
     /**
-     * Store the statistics in the queue.
-     *
-     * @throws InterruptedException thread has been interrupted.
-     * @throws StopStatsStoreException service received stop order.
+     * Store the pending statistics.
      */
-    private void register() throws InterruptedException, StopStatsStoreException
+    void flush()
     {
-        XWikiStatsStoreItem stat = this.queue.take();
+        List<PendingStats> pending = new ArrayList<>(this.pendingStats.size());
+        for (String id : this.pendingStats.keySet()) {
+            PendingStats stat = this.pendingStats.remove(id);
+            if (stat != null) {
+                this.pendingStatsCount.decrementAndGet();
+                pending.add(stat);
+            }
+        }
+
+        long dropped = this.droppedStats.getAndSet(0);
+        if (dropped > 0) {
+            LOGGER.warn("[{}] statistics have been dropped because more than [{}] statistics were waiting to be stored."
+                + " You may want to increase stats.queue.size or to decrease xwiki.stats.flushinterval.", dropped,
+                this.maxPendingStats);
+        }
+
+        if (pending.isEmpty()) {
+            return;
+        }
 
-        List<List<XWikiStatsStoreItem>> statsList = new ArrayList<List<XWikiStatsStoreItem>>();
-        Map<String, List<XWikiStatsStoreItem>> statsMap = new HashMap<String, List<XWikiStatsStoreItem>>();
+        pending.sort(Comparator.comparingLong(stat -> stat.sequence));
+        List<List<XWikiStatsStoreItem>> stats = new ArrayList<>(pending.size());
+        for (PendingStats stat : pending) {
+            stats.add(stat.items);
+        }
+
+        // Group the statistics by wiki so that the statistics of each wiki are stored in a single transaction
+        Map<String, List<List<XWikiStatsStoreItem>>> statsByWiki = new LinkedHashMap<>();
+        for (List<XWikiStatsStoreItem> stat : stats) {
+            XWikiStatsStoreItem item = stat.get(0);
+            String wiki =
+                item instanceof AbstractStatsStoreItem ? ((AbstractStatsStoreItem) item).context.getWikiId() : null;
+            statsByWiki.computeIfAbsent(wiki, key -> new ArrayList<>()).add(stat);
+        }
 
-        do {
-            if (stat instanceof StopStatsRegisterObject) {
-                throw new StopStatsStoreException();
+        for (Map.Entry<String, List<List<XWikiStatsStoreItem>>> entry : statsByWiki.entrySet()) {
+            String wiki = entry.getKey();
+            if (!store(wiki, entry.getValue()) && entry.getValue().size() > 1) {
+                // Isolate the statistics which cannot be stored
+                LOGGER.warn("Failed to store the statistics of wiki [{}] at once, storing them one by one", wiki);
+                for (List<XWikiStatsStoreItem> stat : entry.getValue()) {
+                    store(wiki, Collections.singletonList(stat));
+                }
             }
+        }
+    }
 
-            String statId = stat.getId();
+    /**
+     * Store the statistics of a wiki in a single transaction.
+     *
+     * @param wiki the wiki where to store the statistics, {@code null} if unknown
+     * @param statsList the statistics to store, grouped by identifier
+     * @return {@code false} if the transaction failed and has been rolled back, {@code true} otherwise
+     */
+    private boolean store(String wiki, List<List<XWikiStatsStoreItem>> statsList)
+    {
+        ExecutionContext econtext = Utils.getComponent(Execution.class).getContext();
+        XWikiContext context = (XWikiContext) econtext.getProperty(XWikiContext.EXECUTIONCONTEXT_KEY);
+        XWikiHibernateStore store = wiki != null ? context.getWiki().getHibernateStore() : null;
 
-            List<XWikiStatsStoreItem> stats = statsMap.get(statId);
+        String currentWiki = context.getWikiId();
+        boolean bTransaction = false;
+        try {
+            if (store != null) {
+                context.setWikiId(wiki);
+                bTransaction = store.beginTransaction(context);
+            }
+        } catch (XWikiException e) {
+            LOGGER.warn("Failed to start a transaction to store the statistics of wiki [{}]", wiki, e);
+        }
 
-            if (stats == null) {
-                stats = new ArrayList<XWikiStatsStoreItem>();
+        try {
+            for (List<XWikiStatsStoreItem> stats : statsList) {
+                stats.get(0).store(stats);
+            }
 
-                statsMap.put(statId, stats);
-                statsList.add(stats);
+            if (bTransaction) {
+                bTransaction = false;
+                store.endTransaction(context, true);
             }
 
-            stats.add(stat);
+            return true;
+        } catch (Exception e) {
+            LOGGER.error("Failed to store the statistics of wiki [{}]", wiki, e);
 
-            stat = this.queue.poll();
-        } while (stat != null);
+            if (bTransaction) {
+                try {
+                    store.endTransaction(context, false);
+                } catch (Exception rollbackException) {
+                    LOGGER.error("Failed to rollback the statistics of wiki [{}]", wiki, rollbackException);
+                }
+            }
 
-        for (List<XWikiStatsStoreItem> stats : statsList) {
-            stats.get(0).store(stats);
+            return false;
+        } finally {
+            context.setWikiId(currentWiki);
         }
     }
 
@@ -184,11 +313,27 @@ private void register() throws InterruptedException, StopStatsStoreException
      */
     public void add(XWikiStatsStoreItem statsRegisterItem)
     {
-        try {
-            this.queue.put(statsRegisterItem);
-        } catch (InterruptedException e) {
-            LOGGER.error("Statistics storage thread has been interrupted", e);
-        }
+        this.pendingStats.compute(statsRegisterItem.getId(), (id, stat) -> {
+            if (stat == null) {
+                if (this.pendingStatsCount.incrementAndGet() > this.maxPendingStats) {
+                    this.pendingStatsCount.decrementAndGet();
+                    this.droppedStats.incrementAndGet();
+
+                    return null;
+                }
+
+                PendingStats newStat = new PendingStats(this.sequence.getAndIncrement());
+                newStat.items.add(statsRegisterItem);
+
+                return newStat;
+            }
+
+            if (!stat.items.get(stat.items.size() - 1).aggregate(statsRegisterItem)) {
+                stat.items.add(statsRegisterItem);
+            }
+
+            return stat;
+        });
     }
 
     /**
@@ -278,33 +423,25 @@ private void addRefererStats(XWikiDocument doc, XWikiContext context)
             add(new RefererStatsStoreItem(doc.getFullName(), new Date(), StatsUtil.PeriodType.MONTH, referer, context));
         }
     }
-}
-
-/**
- * Item used to stop the statistics storing.
- *
- * @version $Id$
- */
-class StopStatsRegisterObject implements XWikiStatsStoreItem
-{
-    @Override
-    public String getId()
-    {
-        return null;
-    }
 
-    @Override
-    public void store(List<XWikiStatsStoreItem> register)
+    /**
+     * A statistic waiting to be stored.
+     */
+    private static final class PendingStats
     {
+        /**
+         * The position of the statistic in the order the statistics have been first added.
+         */
+        private final long sequence;
+
+        /**
+         * The items of the statistic, usually a single one in which the others have been aggregated.
+         */
+        private final List<XWikiStatsStoreItem> items = new ArrayList<>(1);
+
+        PendingStats(long sequence)
+        {
+            this.sequence = sequence;
+        }
     }
 }
-
-/**
- * Used to order stopping storing thread.
- *
- * @version $Id$
- */
-class StopStatsStoreException extends Exception
-{
-
-}
@@ -53,6 +53,25 @@
     XWikiAttachmentArchive loadArchive(XWikiAttachment attachment, XWikiContext context, boolean bTransaction)
         throws XWikiException;
 
+    /**
+     * Load a single revision of an attachment from the store. Stores keeping each revision separately should override
+     * it so that the other revisions (and in particular their content) are not loaded.
+     *
+     * @param attachment the attachment
+     * @param version the version of the revision to load
+     * @param context the current context
+     * @return the revision, or {@code null} if it cannot be found
+     * @throws XWikiException if an error occurs
+     * @since 9.10RC1
+     */
+    default XWikiAttachment loadArchiveRevision(XWikiAttachment attachment, String version, XWikiContext context)
+        throws XWikiException
+    {
+        XWikiAttachmentArchive archive = attachment.loadArchive(context);
+
+        return archive != null ? archive.getRevision(attachment, version, context) : null;
+    }
+
     /**
      * Save or update attachment archive.
      *
@@ -19,8 +19,21 @@
  */
 package com.xpn.xwiki.store;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +58,9 @@
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.doc.XWikiLink;
 import com.xpn.xwiki.doc.XWikiLock;
+import com.xpn.xwiki.internal.cache.WeightedCacheEviction;
+import com.xpn.xwiki.internal.cache.XWikiDocumentWeigher;
+import com.xpn.xwiki.internal.store.DocumentExistenceFilter;
 import com.xpn.xwiki.objects.classes.BaseClass;
 import com.xpn.xwiki.web.Utils;
 
@@ -58,12 +74,47 @@ public class XWikiCacheStore implements XWikiCacheStoreInterface, EventListener
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(XWikiCacheStore.class);
 
+    /**
+     * The maximum time in seconds to wait for a document being loaded by another thread before loading it directly.
+     */
+    private static final long LOAD_WAIT_TIMEOUT = 10;
+
     private XWikiStoreInterface store;
 
     private Cache<XWikiDocument> cache;
 
     private Cache<Boolean> pageExistCache;
 
+    /**
+     * Keep the estimated size of the cached documents under the configured maximum, null when disabled.
+     */
+    private WeightedCacheEviction<XWikiDocument> cacheEviction;
+
+    private long cacheMaxBytes;
+
+    /**
+     * The documents currently being loaded from the underlying store, indexed by cache key. Used to make sure only one
+     * thread at a time loads a given document from the store while the other ones wait for its result.
+     */
+    private final ConcurrentMap<String, CompletableFuture<XWikiDocument>> loadsInProgress = new ConcurrentHashMap<>();
+
+    /**
+     * Indicate if the current thread is loading a document for the other threads. Loading a document can load other
+     * documents (e.g. the class of an object) so a thread which is loading a document never waits for another thread:
+     * two threads loading documents depending on each other would wait for each other forever.
+     */
+    private final ThreadLocal<Boolean> loading = new ThreadLocal<>();
+
+    /**
+     * The number of loads which have been served by waiting for a load already in progress for the same document.
+     */
+    private final LongAdder coalescedLoads = new LongAdder();
+
+    /**
+     * Used to know that a document does not exist without asking the underlying store, null when disabled.
+     */
+    private DocumentExistenceFilter existenceFilter;
+
     /**
      * Used to know if a received event is a local or remote one.
      */
@@ -110,10 +161,22 @@ public void initCache(XWikiContext context) throws XWikiException
             this.cache =
                 cacheManager.createNewCache(new LRUCacheConfiguration("xwiki.store.pagecache", pageCacheCapacity));
 
+            this.cacheMaxBytes = context.getWiki().ParamAsLong("xwiki.store.cache.maxbytes", 0);
+            if (this.cacheMaxBytes > 0) {
+                this.cacheEviction = createCacheEviction(this.cache);
+            }
+
             int pageExistCacheCapacity =
                 (int) context.getWiki().ParamAsLong("xwiki.store.cache.pageexistcapacity", 10000);
             this.pageExistCache = cacheManager
                 .createNewCache(new LRUCacheConfiguration("xwiki.store.pageexistcache", pageExistCacheCapacity));
+
+            if (context.getWiki().ParamAsLong("xwiki.store.cache.existfilter", 0) == 1) {
+                double falsePositiveProbability =
+                    Double.parseDouble(context.getWiki().Param("xwiki.store.cache.existfilter.fpp", "0.01"));
+                this.existenceFilter =
+                    new DocumentExistenceFilter(Utils.getComponent(QueryManager.class), falsePositiveProbability);
+            }
         } catch (CacheException e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_CACHE, XWikiException.ERROR_CACHE_INITIALIZING,
                 "Failed to initialize cache", e);
@@ -155,9 +218,14 @@ public void saveXWikiDoc(XWikiDocument doc, XWikiContext context, boolean bTrans
         // We need to flush so that caches
         // on the cluster are informed about the change
         String key = getKey(doc, context);
+        this.loadsInProgress.remove(key);
         getCache().remove(key);
         getPageExistCache().remove(key);
 
+        if (this.existenceFilter != null) {
+            this.existenceFilter.add(context.getWikiId(), doc.getFullName(), doc.getLocale());
+        }
+
         /*
          * We do not want to save the document in the cache at this time. If we did, this would introduce the
          * possibility for cache incoherence if the document is not saved in the database properly. In addition, the
@@ -170,12 +238,24 @@ public void saveXWikiDoc(XWikiDocument doc, XWikiContext context, boolean bTrans
     public void flushCache()
     {
         getCache().removeAll();
+        if (this.cacheEviction != null) {
+            this.cacheEviction.clear();
+        }
         getPageExistCache().removeAll();
+
+        if (this.existenceFilter != null) {
+            this.existenceFilter.clear();
+        }
     }
 
     @Override
     public void onEvent(Event event, Object source, Object data)
     {
+        // The filter of a deleted wiki would keep answering that its documents might exist
+        if (this.existenceFilter != null && event instanceof WikiDeletedEvent) {
+            this.existenceFilter.remove(((WikiDeletedEvent) event).getWikiId());
+        }
+
         // only react to remote events since local actions are already taken into account
         if (this.remoteObservationManagerContext.isRemoteState()) {
             if (event instanceof WikiDeletedEvent) {
@@ -185,12 +265,18 @@ public void onEvent(Event event, Object source, Object data)
 
                 String key = doc.getKey();
 
+                this.loadsInProgress.remove(key);
+
                 if (getCache() != null) {
                     getCache().remove(key);
                 }
                 if (getPageExistCache() != null) {
                     getPageExistCache().remove(key);
                 }
+                if (this.existenceFilter != null && event instanceof DocumentCreatedEvent) {
+                    this.existenceFilter.add(doc.getDocumentReference().getWikiReference().getName(),
+                        doc.getFullName(), doc.getLocale());
+                }
             }
         }
     }
@@ -251,7 +337,7 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
 
         XWikiDocument cachedoc;
         try {
-            cachedoc = getCache().get(key);
+            cachedoc = getCachedDocument(key);
         } catch (Exception e) {
             LOGGER.error("Failed to get document from the cache", e);
 
@@ -265,40 +351,408 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
         } else {
             Boolean result = getPageExistCache().get(key);
 
-            if (result == Boolean.FALSE) {
+            if (result == Boolean.FALSE || (result == null && !mightExist(doc, context))) {
                 LOGGER.debug("Cache: The document {} does not exist, return an empty one", key);
 
-                cachedoc = doc;
-                cachedoc.setNew(true);
+                cachedoc = setNotFound(doc);
+            } else {
+                cachedoc = loadXWikiDocFromStore(key, doc, context);
+            }
+
+            cachedoc.setStore(this.store);
+        }
+
+        LOGGER.debug("Cache: end for doc {} in cache", key);
+
+        return cachedoc;
+    }
+
+    @Override
+    public List<XWikiDocument> loadXWikiDocs(Collection<DocumentReference> references, XWikiContext context)
+        throws XWikiException
+    {
+        List<XWikiDocument> documents = new ArrayList<>(references.size());
+
+        // The documents to get from the underlying store or from a load in progress, indexed by cache key
+        Map<Integer, String> missingDocuments = new LinkedHashMap<>();
+        Map<String, DocumentReference> documentsToLoad = new LinkedHashMap<>();
+        Map<String, CompletableFuture<XWikiDocument>> loads = new HashMap<>();
+        Map<String, CompletableFuture<XWikiDocument>> otherLoads = new HashMap<>();
 
-                // Make sure to always return a document with an original version, even for one that does not exist.
-                // Allow writing more generic code.
-                cachedoc.setOriginalDocument(new XWikiDocument(cachedoc.getDocumentReference(), cachedoc.getLocale()));
+        // Don't wait for the other threads when already loading a document (see #loading)
+        boolean reentrant = isLoading();
+
+        String currentWiki = context.getWikiId();
+        try {
+            for (DocumentReference reference : references) {
+                // The cache key is based on the current wiki
+                context.setWikiId(reference.getWikiReference().getName());
+
+                XWikiDocument doc = new XWikiDocument(reference, reference.getLocale());
+                String key = getKey(doc, context);
+
+                XWikiDocument cachedoc = getCachedDocument(key);
+                if (cachedoc != null) {
+                    cachedoc.setFromCache(true);
+                    documents.add(cachedoc);
+                } else if (getPageExistCache().get(key) == Boolean.FALSE || !mightExist(doc, context)) {
+                    doc.setStore(this.store);
+                    documents.add(setNotFound(doc));
+                } else {
+                    missingDocuments.put(documents.size(), key);
+                    documents.add(doc);
+
+                    if (!loads.containsKey(key) && !otherLoads.containsKey(key)) {
+                        CompletableFuture<XWikiDocument> load = new CompletableFuture<>();
+                        CompletableFuture<XWikiDocument> currentLoad = this.loadsInProgress.putIfAbsent(key, load);
+                        if (currentLoad == null) {
+                            loads.put(key, load);
+                            documentsToLoad.put(key, reference);
+                        } else {
+                            otherLoads.put(key, currentLoad);
+                            if (reentrant) {
+                                // Load it directly instead of waiting for the other thread
+                                documentsToLoad.put(key, reference);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // Release the threads already waiting for these loads
+            loads.forEach((key, load) -> {
+                load.completeExceptionally(e);
+                this.loadsInProgress.remove(key, load);
+            });
+
+            throw e;
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+
+        Map<String, XWikiDocument> loadedDocuments = documentsToLoad.isEmpty() ? Collections.emptyMap()
+            : loadXWikiDocsFromStore(documentsToLoad, loads, otherLoads, reentrant, context);
+
+        for (Map.Entry<Integer, String> entry : missingDocuments.entrySet()) {
+            String key = entry.getValue();
+            XWikiDocument doc = documents.get(entry.getKey());
+
+            XWikiDocument loadedDocument;
+            if (loadedDocuments.containsKey(key)) {
+                loadedDocument = loadedDocuments.get(key);
             } else {
-                LOGGER.debug("Cache: Trying to get doc {} from persistent storage", key);
+                this.coalescedLoads.increment();
 
-                cachedoc = this.store.loadXWikiDoc(doc, context);
+                loadedDocument = waitForLoad(key, otherLoads.get(key));
 
-                LOGGER.debug("Cache: Got doc {} from storage", key);
+                if (loadedDocument == null) {
+                    // Taking too long, don't depend on the other thread anymore
+                    this.coalescedLoads.decrement();
+                    loadedDocument = loadXWikiDocDirectly(doc, context);
+                    updateCaches(key, otherLoads.get(key), loadedDocument);
+                }
+            }
 
-                if (cachedoc.isNew()) {
-                    getPageExistCache().set(key, Boolean.FALSE);
+            if (loadedDocument.isNew()) {
+                // Don't share the new document instances
+                loadedDocument = setNotFound(doc);
+            }
+            loadedDocument.setStore(this.store);
+
+            documents.set(entry.getKey(), loadedDocument);
+        }
+
+        return documents;
+    }
+
+    private Map<String, XWikiDocument> loadXWikiDocsFromStore(Map<String, DocumentReference> documentsToLoad,
+        Map<String, CompletableFuture<XWikiDocument>> loads, Map<String, CompletableFuture<XWikiDocument>> otherLoads,
+        boolean reentrant, XWikiContext context) throws XWikiException
+    {
+        this.loading.set(Boolean.TRUE);
+        try {
+            LOGGER.debug("Cache: Trying to get docs {} from persistent storage", documentsToLoad.keySet());
+
+            List<XWikiDocument> loadedDocuments = this.store.loadXWikiDocs(documentsToLoad.values(), context);
+
+            Map<String, XWikiDocument> result = new HashMap<>();
+            int index = 0;
+            for (String key : documentsToLoad.keySet()) {
+                XWikiDocument loadedDocument = loadedDocuments.get(index++);
+                result.put(key, loadedDocument);
+
+                CompletableFuture<XWikiDocument> load = loads.get(key);
+                if (load != null) {
+                    completeLoad(key, load, loadedDocument);
                 } else {
-                    getCache().set(key, cachedoc);
+                    // Loaded without waiting for the thread in charge of it (see #loading)
+                    updateCaches(key, otherLoads.get(key), loadedDocument);
+                }
+            }
+
+            return result;
+        } catch (XWikiException | RuntimeException e) {
+            for (CompletableFuture<XWikiDocument> load : loads.values()) {
+                load.completeExceptionally(e);
+            }
+
+            throw e;
+        } finally {
+            if (!reentrant) {
+                this.loading.remove();
+            }
+            loads.forEach(this.loadsInProgress::remove);
+        }
+    }
+
+    private void completeLoad(String key, CompletableFuture<XWikiDocument> load, XWikiDocument loadedDocument)
+    {
+        updateCaches(key, load, loadedDocument);
+
+        load.complete(loadedDocument);
+    }
+
+    /**
+     * @param key the cache key of the document
+     * @param load the load in progress for this document
+     * @param loadedDocument the loaded document
+     */
+    private void updateCaches(String key, CompletableFuture<XWikiDocument> load, XWikiDocument loadedDocument)
+    {
+        // Don't update the caches if the document has been modified or deleted during the load
+        if (this.loadsInProgress.get(key) == load) {
+            if (loadedDocument.isNew()) {
+                getPageExistCache().set(key, Boolean.FALSE);
+            } else {
+                setCachedDocument(key, loadedDocument);
+
+                // Also update exist cache
+                getPageExistCache().set(key, Boolean.TRUE);
+            }
+
+            LOGGER.debug("Cache: put doc {} in cache", key);
+        }
+    }
+
+    private XWikiDocument getCachedDocument(String key)
+    {
+        XWikiDocument document = getCache().get(key);
 
-                    // Also update exist cache
-                    getPageExistCache().set(key, Boolean.TRUE);
+        if (document != null && this.cacheEviction != null) {
+            this.cacheEviction.accessed(key);
+        }
+
+        return document;
+    }
+
+    private void setCachedDocument(String key, XWikiDocument document)
+    {
+        getCache().set(key, document);
+
+        if (this.cacheEviction != null) {
+            this.cacheEviction.evict();
+        }
+    }
+
+    /**
+     * @return the estimated size in bytes of the cached documents, -1 if the cache is not limited by size (see
+     *         {@code xwiki.store.cache.maxbytes} in xwiki.cfg)
+     * @since 9.10RC1
+     */
+    public long getCacheBytes()
+    {
+        return this.cacheEviction != null ? this.cacheEviction.getTotalWeight() : -1;
+    }
+
+    private XWikiDocument setNotFound(XWikiDocument doc)
+    {
+        doc.setNew(true);
+
+        // Make sure to always return a document with an original version, even for one that does not exist.
+        // Allow writing more generic code.
+        doc.setOriginalDocument(new XWikiDocument(doc.getDocumentReference(), doc.getLocale()));
+
+        return doc;
+    }
+
+    /**
+     * @param doc the document
+     * @param context the XWiki context
+     * @return false if the document is known to not exist without asking the underlying store
+     */
+    private boolean mightExist(XWikiDocument doc, XWikiContext context)
+    {
+        return this.existenceFilter == null
+            || this.existenceFilter.mightExist(context.getWikiId(), doc.getFullName(), doc.getLocale());
+    }
+
+    /**
+     * Load the document from the underlying store, making sure that concurrent loads of the same document are coalesced
+     * into a single store access.
+     *
+     * @param key the cache key of the document
+     * @param doc the document to load
+     * @param context the XWiki context
+     * @return the loaded document
+     * @throws XWikiException when failing to load the document
+     */
+    private XWikiDocument loadXWikiDocFromStore(String key, XWikiDocument doc, XWikiContext context)
+        throws XWikiException
+    {
+        CompletableFuture<XWikiDocument> load = new CompletableFuture<>();
+        CompletableFuture<XWikiDocument> currentLoad = this.loadsInProgress.putIfAbsent(key, load);
+
+        if (currentLoad == null) {
+            return loadXWikiDocFromStore(key, doc, load, true, context);
+        }
+
+        // A thread loading a document (e.g. the class of its objects) must not wait for another thread, which might be
+        // waiting for it
+        if (isLoading()) {
+            LOGGER.debug("Cache: Loading doc {} from persistent storage while loading another document", key);
+        } else {
+            LOGGER.debug("Cache: Waiting for the document {} to be loaded by another thread", key);
+
+            this.coalescedLoads.increment();
+
+            XWikiDocument loadedDocument = waitForLoad(key, currentLoad);
+
+            if (loadedDocument != null) {
+                if (loadedDocument.isNew()) {
+                    // Don't share the new document instance of another thread
+                    return setNotFound(doc);
                 }
 
-                LOGGER.debug("Cache: put doc {} in cache", key);
+                return loadedDocument;
             }
 
-            cachedoc.setStore(this.store);
+            // Taking too long, don't depend on the other thread anymore
+            this.coalescedLoads.decrement();
         }
 
-        LOGGER.debug("Cache: end for doc {} in cache", key);
+        return loadXWikiDocFromStore(key, doc, currentLoad, false, context);
+    }
 
-        return cachedoc;
+    /**
+     * Load the document from the underlying store and update the caches, unless the document is modified or deleted
+     * during the load.
+     *
+     * @param key the cache key of the document
+     * @param doc the document to load
+     * @param load the load in progress for this document
+     * @param owner true if the current thread is in charge of the load in progress, false if it's loading the document
+     *            without waiting for the thread in charge of it
+     * @param context the XWiki context
+     * @return the loaded document
+     * @throws XWikiException when failing to load the document
+     */
+    private XWikiDocument loadXWikiDocFromStore(String key, XWikiDocument doc, CompletableFuture<XWikiDocument> load,
+        boolean owner, XWikiContext context) throws XWikiException
+    {
+        boolean nested = isLoading();
+
+        this.loading.set(Boolean.TRUE);
+        try {
+            LOGGER.debug("Cache: Trying to get doc {} from persistent storage", key);
+
+            XWikiDocument loadedDocument = this.store.loadXWikiDoc(doc, context);
+
+            LOGGER.debug("Cache: Got doc {} from storage", key);
+
+            updateCaches(key, load, loadedDocument);
+
+            if (owner) {
+                load.complete(loadedDocument);
+            }
+
+            return loadedDocument;
+        } catch (XWikiException | RuntimeException e) {
+            if (owner) {
+                load.completeExceptionally(e);
+            }
+
+            throw e;
+        } finally {
+            if (!nested) {
+                this.loading.remove();
+            }
+            if (owner) {
+                this.loadsInProgress.remove(key, load);
+            }
+        }
+    }
+
+    private XWikiDocument loadXWikiDocDirectly(XWikiDocument doc, XWikiContext context) throws XWikiException
+    {
+        String currentWiki = context.getWikiId();
+        try {
+            context.setWikiId(doc.getDocumentReference().getWikiReference().getName());
+
+            return this.store.loadXWikiDoc(doc, context);
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+    }
+
+    /**
+     * @return true if the current thread is loading a document for the other threads
+     */
+    private boolean isLoading()
+    {
+        return this.loading.get() == Boolean.TRUE;
+    }
+
+    /**
+     * @param key the cache key of the document
+     * @param load the load in progress
+     * @return the loaded document, or null if it took too long
+     * @throws XWikiException when the load failed
+     */
+    private XWikiDocument waitForLoad(String key, CompletableFuture<XWikiDocument> load) throws XWikiException
+    {
+        try {
+            return load.get(LOAD_WAIT_TIMEOUT, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Cache: Gave up waiting for the document {} to be loaded by another thread", key);
+
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                "Interrupted while waiting for document [" + key + "] to be loaded", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof XWikiException) {
+                throw (XWikiException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                "Failed to load document [" + key + "]", e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of document loads which have been served by waiting for the same document to be loaded by
+     *         another thread instead of accessing the underlying store
+     * @since 9.10RC1
+     */
+    public long getCoalescedLoadCount()
+    {
+        return this.coalescedLoads.sum();
+    }
+
+    /**
+     * @return the filter used to know that a document does not exist without asking the underlying store, null when
+     *         disabled (see {@code xwiki.store.cache.existfilter} in xwiki.cfg)
+     * @since 9.10RC1
+     */
+    public DocumentExistenceFilter getExistenceFilter()
+    {
+        return this.existenceFilter;
     }
 
     @Override
@@ -309,6 +763,7 @@ public void deleteXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWiki
 
         this.store.deleteXWikiDoc(doc, context);
 
+        this.loadsInProgress.remove(key);
         getCache().remove(key);
         getPageExistCache().remove(key);
         getPageExistCache().set(key, Boolean.FALSE);
@@ -627,6 +1082,10 @@ public boolean exists(XWikiDocument doc, XWikiContext context) throws XWikiExcep
         } catch (Exception e) {
         }
 
+        if (!mightExist(doc, context)) {
+            return false;
+        }
+
         boolean result = this.store.exists(doc, context);
         getPageExistCache().set(key, Boolean.valueOf(result));
 
@@ -640,9 +1099,23 @@ public Cache<XWikiDocument> getCache()
 
     public void setCache(Cache<XWikiDocument> cache)
     {
+        if (this.cacheEviction != null) {
+            this.cacheEviction.dispose();
+            this.cacheEviction = createCacheEviction(cache);
+        }
+
         this.cache = cache;
     }
 
+    private WeightedCacheEviction<XWikiDocument> createCacheEviction(Cache<XWikiDocument> cache)
+    {
+        XWikiDocumentWeigher weigher = new XWikiDocumentWeigher();
+
+        // The objects and attachments loaded after the document (see xwiki.store.hibernate.lazyloading) are weighed
+        // the next time the document is taken from the cache
+        return new WeightedCacheEviction<>(cache, this.cacheMaxBytes, weigher, weigher::isWeightFinal);
+    }
+
     public Cache<Boolean> getPageExistCache()
     {
         return this.pageExistCache;
@@ -31,12 +31,14 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -45,6 +47,7 @@
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.hibernate.EntityMode;
 import org.hibernate.FlushMode;
 import org.hibernate.ObjectNotFoundException;
@@ -116,6 +119,22 @@
 @Singleton
 public class XWikiHibernateStore extends XWikiHibernateBaseStore implements XWikiStoreInterface
 {
+    /**
+     * The maximum number of documents (or objects) loaded with a single query when loading several documents at once.
+     * Some databases limit the number of values in an IN clause (1000 for Oracle).
+     */
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    /**
+     * The number of documents loaded without their objects or attachments.
+     */
+    private final LongAdder lazyLoadsDeferred = new LongAdder();
+
+    /**
+     * The number of times the objects or attachments of a document have been loaded after the document.
+     */
+    private final LongAdder lazyLoads = new LongAdder();
+
     @Inject
     private Logger logger;
 
@@ -516,6 +535,8 @@ public void saveXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext, boolean
             // Make sure the database name is stored
             doc.setDatabase(context.getWikiId());
 
+            loadLazyData(doc);
+
             // If the comment is larger than the max size supported by the Storage, then abbreviate it
             String comment = doc.getComment();
             if (comment != null && comment.length() > 1023) {
@@ -883,130 +904,191 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext)
 
             try {
                 session.load(doc, Long.valueOf(doc.getId()));
-                doc.setNew(false);
-                doc.setMostRecent(true);
-                // Fix for XWIKI-1651
-                doc.setDate(new Date(doc.getDate().getTime()));
-                doc.setCreationDate(new Date(doc.getCreationDate().getTime()));
-                doc.setContentUpdateDate(new Date(doc.getContentUpdateDate().getTime()));
             } catch (ObjectNotFoundException e) { // No document
-                doc.setNew(true);
-
-                // Make sure to always return a document with an original version, even for one that does not exist.
-                // Allow writing more generic code.
-                doc.setOriginalDocument(new XWikiDocument(doc.getDocumentReference(), doc.getLocale()));
+                setNotFound(doc);
 
                 return doc;
             }
 
-            // Loading the attachment list
-            if (doc.hasElement(XWikiDocument.HAS_ATTACHMENTS)) {
-                loadAttachmentList(doc, context, false);
+            BaseClass bclass = loadDocumentMetadata(doc, context);
+
+            if (doc.hasElement(XWikiDocument.HAS_OBJECTS)) {
+                if (isLazyLoading(context)) {
+                    String wiki = context.getWikiId();
+                    doc.setXObjectsLoader(document -> loadLazyXObjects(document, wiki));
+                    this.lazyLoadsDeferred.increment();
+                } else {
+                    loadXObjects(doc, bclass, session, context);
+                }
             }
 
-            // TODO: handle the case where there are no xWikiClass and xWikiObject in the Database
-            BaseClass bclass = new BaseClass();
-            String cxml = doc.getXClassXML();
-            if (cxml != null) {
-                bclass.fromXML(cxml);
-                doc.setXClass(bclass);
-                bclass.setDirty(false);
+            setLoaded(doc);
+
+            if (bTransaction) {
+                endTransaction(context, false);
+            }
+        } catch (Exception e) {
+            Object[] args = { doc.getDocumentReference() };
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC, "Exception while reading document [{0}]", e,
+                args);
+        } finally {
+            try {
+                if (bTransaction) {
+                    endTransaction(context, false);
+                }
+            } catch (Exception e) {
+            }
+
+            // End monitoring timer
+            if (monitor != null) {
+                monitor.endTimer(HINT);
             }
+        }
 
-            // Store this XWikiClass in the context so that we can use it in case of recursive usage
-            // of classes
-            context.addBaseClass(bclass);
+        this.logger.debug("Loaded XWikiDocument: [{}]", doc.getDocumentReference());
 
-            if (doc.hasElement(XWikiDocument.HAS_OBJECTS)) {
-                Query query = session
-                    .createQuery("from BaseObject as bobject where bobject.name = :name order by bobject.number");
-                query.setText("name", doc.getFullName());
-                @SuppressWarnings("unchecked")
-                Iterator<BaseObject> it = query.list().iterator();
-
-                EntityReference localGroupEntityReference = new EntityReference("XWikiGroups", EntityType.DOCUMENT,
-                    new EntityReference("XWiki", EntityType.SPACE));
-                DocumentReference groupsDocumentReference = new DocumentReference(context.getWikiId(),
-                    localGroupEntityReference.getParent().getName(), localGroupEntityReference.getName());
-
-                boolean hasGroups = false;
-                while (it.hasNext()) {
-                    BaseObject object = it.next();
-                    DocumentReference classReference = object.getXClassReference();
+        return doc;
+    }
 
-                    if (classReference == null) {
-                        continue;
-                    }
+    @Override
+    public List<XWikiDocument> loadXWikiDocs(Collection<DocumentReference> references, XWikiContext inputxcontext)
+        throws XWikiException
+    {
+        XWikiContext context = getXWikiContext(inputxcontext);
 
-                    // It seems to search before is case insensitive. And this would break the loading if we get an
-                    // object which doesn't really belong to this document
-                    if (!object.getDocumentReference().equals(doc.getDocumentReference())) {
-                        continue;
-                    }
+        // A Hibernate session is bound to a wiki database so the documents are loaded wiki by wiki
+        Map<String, Map<DocumentReference, XWikiDocument>> documentsByWiki = new LinkedHashMap<>();
+        for (DocumentReference reference : references) {
+            documentsByWiki.computeIfAbsent(reference.getWikiReference().getName(), k -> new LinkedHashMap<>())
+                .computeIfAbsent(reference, k -> new XWikiDocument(reference, reference.getLocale()));
+        }
 
-                    BaseObject newobject;
-                    if (classReference.equals(doc.getDocumentReference())) {
-                        newobject = bclass.newCustomClassInstance(context);
-                    } else {
-                        newobject = BaseClass.newCustomClassInstance(classReference, context);
-                    }
-                    if (newobject != null) {
-                        newobject.setId(object.getId());
-                        newobject.setXClassReference(object.getRelativeXClassReference());
-                        newobject.setDocumentReference(object.getDocumentReference());
-                        newobject.setNumber(object.getNumber());
-                        newobject.setGuid(object.getGuid());
-                        object = newobject;
-                    }
+        String currentWiki = context.getWikiId();
+        try {
+            for (Map.Entry<String, Map<DocumentReference, XWikiDocument>> entry : documentsByWiki.entrySet()) {
+                context.setWikiId(entry.getKey());
 
-                    if (classReference.equals(groupsDocumentReference)) {
-                        // Groups objects are handled differently.
-                        hasGroups = true;
-                    } else {
-                        loadXWikiCollectionInternal(object, doc, context, false, true);
-                    }
-                    doc.setXObject(object.getNumber(), object);
-                }
-
-                // AFAICT this was added as an emergency patch because loading of objects has proven
-                // too slow and the objects which cause the most overhead are the XWikiGroups objects
-                // as each group object (each group member) would otherwise cost 2 database queries.
-                // This will do every group member in a single query.
-                if (hasGroups) {
-                    Query query2 = session.createQuery("select bobject.number, prop.value from StringProperty as prop,"
-                        + "BaseObject as bobject where bobject.name = :name and bobject.className='XWiki.XWikiGroups' "
-                        + "and bobject.id=prop.id.id and prop.id.name='member' order by bobject.number");
-                    query2.setText("name", doc.getFullName());
-                    @SuppressWarnings("unchecked")
-                    Iterator<Object[]> it2 = query2.list().iterator();
-                    while (it2.hasNext()) {
-                        Object[] result = it2.next();
-                        Integer number = (Integer) result[0];
-                        String member = (String) result[1];
-                        BaseObject obj = BaseClass.newCustomClassInstance(groupsDocumentReference, context);
-                        obj.setDocumentReference(doc.getDocumentReference());
-                        obj.setXClassReference(localGroupEntityReference);
-                        obj.setNumber(number.intValue());
-                        obj.setStringValue("member", member);
-                        doc.setXObject(obj.getNumber(), obj);
+                List<DocumentReference> wikiReferences = new ArrayList<>(entry.getValue().keySet());
+                for (int i = 0; i < wikiReferences.size(); i += LOAD_BATCH_SIZE) {
+                    loadXWikiDocBatch(wikiReferences.subList(i, Math.min(i + LOAD_BATCH_SIZE, wikiReferences.size())),
+                        entry.getValue(), context);
+                }
+            }
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+
+        List<XWikiDocument> documents = new ArrayList<>(references.size());
+        for (DocumentReference reference : references) {
+            documents.add(documentsByWiki.get(reference.getWikiReference().getName()).get(reference));
+        }
+
+        return documents;
+    }
+
+    /**
+     * Load a batch of documents of the current wiki, falling back on loading them one by one when the batch can't be
+     * loaded so that a single document the batch queries fail on doesn't prevent loading the others.
+     *
+     * @param references the references of the documents to load
+     * @param documents the documents of the current wiki, indexed by reference, updated when they are loaded one by
+     *            one
+     * @param context the XWiki context
+     * @throws XWikiException when failing to load one of the documents
+     */
+    private void loadXWikiDocBatch(List<DocumentReference> references,
+        Map<DocumentReference, XWikiDocument> documents, XWikiContext context) throws XWikiException
+    {
+        List<XWikiDocument> docs = new ArrayList<>(references.size());
+        for (DocumentReference reference : references) {
+            docs.add(documents.get(reference));
+        }
+
+        try {
+            loadXWikiDocBatch(docs, context);
+        } catch (XWikiException e) {
+            this.logger.warn("Failed to load the [{}] documents starting with [{}] at once, loading them one by one."
+                + " Root cause: [{}]", docs.size(), references.get(0), ExceptionUtils.getRootCauseMessage(e));
+
+            // The documents of the failed batch may be partially loaded
+            for (DocumentReference reference : references) {
+                documents.put(reference, loadXWikiDoc(new XWikiDocument(reference, reference.getLocale()), context));
+            }
+        }
+    }
+
+    /**
+     * Load several documents of the current wiki in a single transaction, loading the objects and the list of
+     * properties of all the documents with the same queries.
+     *
+     * @param docs the documents to load
+     * @param context the XWiki context
+     * @throws XWikiException when failing to load the documents
+     */
+    private void loadXWikiDocBatch(List<XWikiDocument> docs, XWikiContext context) throws XWikiException
+    {
+        boolean bTransaction = true;
+        MonitorPlugin monitor = Util.getMonitorPlugin(context);
+        try {
+            // Start monitoring timer
+            if (monitor != null) {
+                monitor.startTimer(HINT);
+            }
+            checkHibernate(context);
+
+            SessionFactory sfactory = getSessionFactory();
+            for (XWikiDocument doc : docs) {
+                doc.setStore(this);
+                sfactory = injectCustomMappingsInSessionFactory(doc, context);
+            }
+            bTransaction = bTransaction && beginTransaction(sfactory, context);
+            Session session = getSession(context);
+            session.setFlushMode(FlushMode.MANUAL);
+
+            // Find the existing documents with a single query instead of trying to load each of them
+            List<Long> ids = new ArrayList<>(docs.size());
+            for (XWikiDocument doc : docs) {
+                ids.add(doc.getId());
+            }
+            Query existQuery = session.createQuery("select doc.id from XWikiDocument as doc where doc.id in (:ids)");
+            existQuery.setParameterList("ids", ids);
+            @SuppressWarnings("unchecked")
+            Set<Long> existingIds = new HashSet<>(existQuery.list());
+
+            Map<String, List<XWikiDocument>> documentsWithObjects = new LinkedHashMap<>();
+            Map<XWikiDocument, BaseClass> classes = new HashMap<>();
+            for (XWikiDocument doc : docs) {
+                if (existingIds.contains(doc.getId())) {
+                    session.load(doc, Long.valueOf(doc.getId()));
+                    classes.put(doc, loadDocumentMetadata(doc, context));
+
+                    if (doc.hasElement(XWikiDocument.HAS_OBJECTS)) {
+                        documentsWithObjects.computeIfAbsent(doc.getFullName(), k -> new ArrayList<>()).add(doc);
                     }
+                } else {
+                    setNotFound(doc);
                 }
             }
 
-            doc.setContentDirty(false);
-            doc.setMetaDataDirty(false);
+            if (!documentsWithObjects.isEmpty()) {
+                loadBatchXObjects(documentsWithObjects, classes, session, context);
+            }
 
-            // We need to ensure that the loaded document becomes the original document
-            doc.setOriginalDocument(doc.clone());
+            for (XWikiDocument doc : docs) {
+                if (!doc.isNew()) {
+                    setLoaded(doc);
+                }
+            }
 
             if (bTransaction) {
                 endTransaction(context, false);
             }
         } catch (Exception e) {
-            Object[] args = { doc.getDocumentReference() };
+            Object[] args = { docs.size(), docs.get(0).getDocumentReference() };
             throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
-                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC, "Exception while reading document [{0}]", e,
-                args);
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                "Exception while reading the [{0}] documents starting with [{1}]", e, args);
         } finally {
             try {
                 if (bTransaction) {
@@ -1021,9 +1103,404 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext)
             }
         }
 
-        this.logger.debug("Loaded XWikiDocument: [{}]", doc.getDocumentReference());
+        this.logger.debug("Loaded [{}] XWikiDocuments", docs.size());
+    }
 
-        return doc;
+    private void loadXObjects(XWikiDocument doc, BaseClass bclass, Session session, XWikiContext context)
+        throws XWikiException
+    {
+        Query query =
+            session.createQuery("from BaseObject as bobject where bobject.name = :name order by bobject.number");
+        query.setText("name", doc.getFullName());
+        @SuppressWarnings("unchecked")
+        Iterator<BaseObject> it = query.list().iterator();
+
+        boolean hasGroups = false;
+        while (it.hasNext()) {
+            BaseObject object = it.next();
+            DocumentReference classReference = object.getXClassReference();
+
+            if (classReference == null) {
+                continue;
+            }
+
+            // It seems to search before is case insensitive. And this would break the loading if we get an
+            // object which doesn't really belong to this document
+            if (!object.getDocumentReference().equals(doc.getDocumentReference())) {
+                continue;
+            }
+
+            object = newXObject(object, doc, bclass, context);
+
+            if (isGroupsObject(classReference, context)) {
+                // Groups objects are handled differently.
+                hasGroups = true;
+            } else {
+                loadXWikiCollectionInternal(object, doc, context, false, true);
+            }
+            doc.setXObject(object.getNumber(), object);
+        }
+
+        // AFAICT this was added as an emergency patch because loading of objects has proven
+        // too slow and the objects which cause the most overhead are the XWikiGroups objects
+        // as each group object (each group member) would otherwise cost 2 database queries.
+        // This will do every group member in a single query.
+        if (hasGroups) {
+            Query query2 = session.createQuery("select bobject.number, prop.value from StringProperty as prop,"
+                + "BaseObject as bobject where bobject.name = :name and bobject.className='XWiki.XWikiGroups' "
+                + "and bobject.id=prop.id.id and prop.id.name='member' order by bobject.number");
+            query2.setText("name", doc.getFullName());
+            @SuppressWarnings("unchecked")
+            Iterator<Object[]> it2 = query2.list().iterator();
+            while (it2.hasNext()) {
+                Object[] result = it2.next();
+                setGroupMember(doc, (Integer) result[0], (String) result[1], context);
+            }
+        }
+    }
+
+    private void loadBatchXObjects(Map<String, List<XWikiDocument>> documents, Map<XWikiDocument, BaseClass> classes,
+        Session session, XWikiContext context) throws XWikiException
+    {
+        Query query = session.createQuery(
+            "from BaseObject as bobject where bobject.name in (:names) order by bobject.name, bobject.number");
+        query.setParameterList("names", documents.keySet());
+        @SuppressWarnings("unchecked")
+        List<BaseObject> objects = query.list();
+
+        // Get the properties of all the objects at once (the groups members are loaded separately)
+        List<Long> objectIds = new ArrayList<>(objects.size());
+        for (BaseObject object : objects) {
+            DocumentReference classReference = object.getXClassReference();
+            if (classReference != null && !isGroupsObject(classReference, context)) {
+                objectIds.add(object.getId());
+            }
+        }
+        Map<Long, List<Object[]>> properties = new HashMap<>();
+        for (int i = 0; i < objectIds.size(); i += LOAD_BATCH_SIZE) {
+            Query propertiesQuery = session.createQuery("select prop.id.id, prop.name, prop.classType"
+                + " from BaseProperty as prop where prop.id.id in (:ids)");
+            propertiesQuery.setParameterList("ids",
+                objectIds.subList(i, Math.min(i + LOAD_BATCH_SIZE, objectIds.size())));
+            @SuppressWarnings("unchecked")
+            List<Object[]> results = propertiesQuery.list();
+            for (Object[] result : results) {
+                properties.computeIfAbsent((Long) result[0], k -> new ArrayList<>())
+                    .add(new Object[] { result[1], result[2] });
+            }
+        }
+
+        Set<String> documentsWithGroups = new HashSet<>();
+        for (BaseObject loadedObject : objects) {
+            DocumentReference classReference = loadedObject.getXClassReference();
+
+            // The search is case insensitive on some databases
+            List<XWikiDocument> objectDocuments = documents.get(loadedObject.getName());
+            if (classReference == null || objectDocuments == null) {
+                continue;
+            }
+
+            for (XWikiDocument doc : objectDocuments) {
+                if (!loadedObject.getDocumentReference().equals(doc.getDocumentReference())) {
+                    continue;
+                }
+
+                BaseObject object = newXObject(loadedObject, doc, classes.get(doc), context);
+
+                if (isGroupsObject(classReference, context)) {
+                    documentsWithGroups.add(doc.getFullName());
+                } else {
+                    loadXWikiCollectionInternal(object, doc, context, false, true,
+                        properties.getOrDefault(object.getId(), Collections.emptyList()));
+                }
+                doc.setXObject(object.getNumber(), object);
+            }
+        }
+
+        if (!documentsWithGroups.isEmpty()) {
+            Query groupsQuery = session.createQuery("select bobject.name, bobject.number, prop.value"
+                + " from StringProperty as prop, BaseObject as bobject where bobject.name in (:names)"
+                + " and bobject.className='XWiki.XWikiGroups' and bobject.id=prop.id.id and prop.id.name='member'"
+                + " order by bobject.number");
+            groupsQuery.setParameterList("names", documentsWithGroups);
+            @SuppressWarnings("unchecked")
+            List<Object[]> results = groupsQuery.list();
+            for (Object[] result : results) {
+                for (XWikiDocument doc : documents.get((String) result[0])) {
+                    setGroupMember(doc, (Integer) result[1], (String) result[2], context);
+                }
+            }
+        }
+    }
+
+    private void setNotFound(XWikiDocument doc)
+    {
+        doc.setNew(true);
+
+        // Make sure to always return a document with an original version, even for one that does not exist.
+        // Allow writing more generic code.
+        doc.setOriginalDocument(new XWikiDocument(doc.getDocumentReference(), doc.getLocale()));
+    }
+
+    /**
+     * Finish loading the document fields and load its attachments and class.
+     *
+     * @return the class of the document
+     */
+    private BaseClass loadDocumentMetadata(XWikiDocument doc, XWikiContext context) throws XWikiException
+    {
+        doc.setNew(false);
+        doc.setMostRecent(true);
+        // Fix for XWIKI-1651
+        doc.setDate(new Date(doc.getDate().getTime()));
+        doc.setCreationDate(new Date(doc.getCreationDate().getTime()));
+        doc.setContentUpdateDate(new Date(doc.getContentUpdateDate().getTime()));
+
+        // Loading the attachment list
+        if (doc.hasElement(XWikiDocument.HAS_ATTACHMENTS)) {
+            if (isLazyLoading(context)) {
+                String wiki = context.getWikiId();
+                doc.setAttachmentsLoader(document -> loadLazyAttachments(document, wiki));
+                this.lazyLoadsDeferred.increment();
+            } else {
+                loadAttachmentList(doc, context, false);
+            }
+        }
+
+        // TODO: handle the case where there are no xWikiClass and xWikiObject in the Database
+        BaseClass bclass = new BaseClass();
+        String cxml = doc.getXClassXML();
+        if (cxml != null) {
+            bclass.fromXML(cxml);
+            doc.setXClass(bclass);
+            bclass.setDirty(false);
+        }
+
+        // Store this XWikiClass in the context so that we can use it in case of recursive usage
+        // of classes
+        context.addBaseClass(bclass);
+
+        return bclass;
+    }
+
+    /**
+     * Make sure the objects and attachments of the passed document which have not been loaded yet are loaded before
+     * starting the transaction, they would conflict with the saved ones in the session otherwise. The original
+     * document shares the data to load with the document so it's loaded too, before the database is modified: it must
+     * keep the state the event listeners compare the saved or deleted document with.
+     *
+     * @param doc the document about to be saved or deleted
+     * @throws XWikiException when failing to load the data
+     */
+    private void loadLazyData(XWikiDocument doc) throws XWikiException
+    {
+        doc.loadLazyData();
+
+        XWikiDocument originalDocument = doc.getOriginalDocument();
+        if (originalDocument != null && originalDocument != doc) {
+            originalDocument.loadLazyData();
+        }
+    }
+
+    private boolean isLazyLoading(XWikiContext context)
+    {
+        return context.getWiki().ParamAsLong("xwiki.store.hibernate.lazyloading", 0) == 1;
+    }
+
+    private void loadLazyXObjects(XWikiDocument doc, String wiki) throws XWikiException
+    {
+        loadLazyData(doc, wiki, true);
+
+        this.logger.debug("Lazily loaded the objects of XWikiDocument: [{}]", doc.getDocumentReference());
+    }
+
+    private void loadLazyAttachments(XWikiDocument doc, String wiki) throws XWikiException
+    {
+        loadLazyData(doc, wiki, false);
+
+        this.logger.debug("Lazily loaded the attachments of XWikiDocument: [{}]", doc.getDocumentReference());
+    }
+
+    /**
+     * Load the objects or the attachments of the version of the passed document. They are loaded from the current
+     * document in the database when it's still at this version, and from the document archive when it has been saved
+     * since the document was loaded.
+     *
+     * @param doc the empty document to fill, with the reference, locale and version of the loaded document
+     * @param wiki the wiki of the document
+     * @param xobjects true to load the objects, false to load the attachments
+     * @throws XWikiException when failing to load the data
+     */
+    private void loadLazyData(XWikiDocument doc, String wiki, boolean xobjects) throws XWikiException
+    {
+        XWikiContext context = getXWikiContext(null);
+
+        String currentWiki = context.getWikiId();
+        boolean bTransaction = true;
+        boolean loaded;
+        try {
+            context.setWikiId(wiki);
+
+            checkHibernate(context);
+            bTransaction = beginTransaction(false, context);
+            Session session = getSession(context);
+
+            // Make sure the loaded data and the document have the same version, whatever is saved meanwhile
+            loaded = isCurrentVersion(doc, session);
+            if (loaded) {
+                if (xobjects) {
+                    loadXObjects(doc, doc.getXClass(), session, context);
+                } else {
+                    loadAttachmentList(doc, context, false);
+                }
+                loaded = isCurrentVersion(doc, session);
+            }
+        } finally {
+            try {
+                if (bTransaction) {
+                    endTransaction(context, false, false);
+                }
+            } catch (Exception e) {
+            }
+
+            context.setWikiId(currentWiki);
+        }
+
+        try {
+            context.setWikiId(wiki);
+
+            if (!loaded) {
+                loadArchivedLazyData(doc, xobjects, context);
+            }
+
+            this.lazyLoads.increment();
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+    }
+
+    private boolean isCurrentVersion(XWikiDocument doc, Session session)
+    {
+        Query query =
+            session.createQuery("select xwikidoc.version from XWikiDocument as xwikidoc where xwikidoc.id = :id");
+        query.setLong("id", doc.getId());
+
+        return doc.getVersion().equals(query.uniqueResult());
+    }
+
+    /**
+     * Replace the objects or attachments of the passed document with the ones of its version in the document archive.
+     */
+    private void loadArchivedLazyData(XWikiDocument doc, boolean xobjects, XWikiContext context)
+        throws XWikiException
+    {
+        this.logger.debug("XWikiDocument [{}] has been modified since version [{}] was loaded, loading its {} from the"
+            + " archive", doc.getDocumentReferenceWithLocale(), doc.getVersion(), xobjects ? "objects" : "attachments");
+
+        XWikiDocument archivedDocument;
+        try {
+            archivedDocument = context.getWiki().getVersioningStore().loadXWikiDoc(doc, doc.getVersion(), context);
+        } catch (XWikiException e) {
+            Object[] args = { doc.getDocumentReferenceWithLocale(), doc.getVersion() };
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                "Document {0} has been modified since version {1} was loaded and this version can't be read", e,
+                args);
+        }
+
+        if (xobjects) {
+            // Forget what has been loaded before the version changed
+            doc.getXObjects().clear();
+            for (List<BaseObject> objects : archivedDocument.getXObjects().values()) {
+                for (BaseObject object : objects) {
+                    if (object != null) {
+                        doc.setXObject(object.getNumber(), object.clone());
+                    }
+                }
+            }
+        } else {
+            doc.getAttachmentList().clear();
+            for (XWikiAttachment attachment : archivedDocument.getAttachmentList()) {
+                doc.setAttachment(attachment.clone());
+            }
+        }
+    }
+
+    /**
+     * @return the number of documents loaded without their objects or attachments (see
+     *         {@code xwiki.store.hibernate.lazyloading} in xwiki.cfg)
+     * @since 9.10RC1
+     */
+    public long getLazyLoadDeferredCount()
+    {
+        return this.lazyLoadsDeferred.sum();
+    }
+
+    /**
+     * @return the number of times the objects or attachments of a document have actually been accessed and loaded
+     *         after the document
+     * @since 9.10RC1
+     */
+    public long getLazyLoadCount()
+    {
+        return this.lazyLoads.sum();
+    }
+
+    private void setLoaded(XWikiDocument doc)
+    {
+        doc.setContentDirty(false);
+        doc.setMetaDataDirty(false);
+
+        // We need to ensure that the loaded document becomes the original document
+        doc.setOriginalDocument(doc.clone());
+    }
+
+    private boolean isGroupsObject(DocumentReference classReference, XWikiContext context)
+    {
+        return classReference.equals(new DocumentReference(context.getWikiId(), "XWiki", "XWikiGroups"));
+    }
+
+    /**
+     * Create an object of the right type for the class of the passed loaded object.
+     */
+    private BaseObject newXObject(BaseObject object, XWikiDocument doc, BaseClass bclass, XWikiContext context)
+        throws XWikiException
+    {
+        DocumentReference classReference = object.getXClassReference();
+
+        BaseObject newobject;
+        if (classReference.equals(doc.getDocumentReference())) {
+            newobject = bclass.newCustomClassInstance(context);
+        } else {
+            newobject = BaseClass.newCustomClassInstance(classReference, context);
+        }
+        if (newobject != null) {
+            newobject.setId(object.getId());
+            newobject.setXClassReference(object.getRelativeXClassReference());
+            newobject.setDocumentReference(object.getDocumentReference());
+            newobject.setNumber(object.getNumber());
+            newobject.setGuid(object.getGuid());
+
+            return newobject;
+        }
+
+        return object;
+    }
+
+    private void setGroupMember(XWikiDocument doc, Integer number, String member, XWikiContext context)
+        throws XWikiException
+    {
+        EntityReference localGroupEntityReference =
+            new EntityReference("XWikiGroups", EntityType.DOCUMENT, new EntityReference("XWiki", EntityType.SPACE));
+        DocumentReference groupsDocumentReference = new DocumentReference(context.getWikiId(),
+            localGroupEntityReference.getParent().getName(), localGroupEntityReference.getName());
+
+        BaseObject obj = BaseClass.newCustomClassInstance(groupsDocumentReference, context);
+        obj.setDocumentReference(doc.getDocumentReference());
+        obj.setXClassReference(localGroupEntityReference);
+        obj.setNumber(number.intValue());
+        obj.setStringValue("member", member);
+        doc.setXObject(obj.getNumber(), obj);
     }
 
     @Override
@@ -1038,6 +1515,8 @@ public void deleteXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext) throws
             if (monitor != null) {
                 monitor.startTimer(HINT);
             }
+            loadLazyData(doc);
+
             checkHibernate(context);
             SessionFactory sfactory = injectCustomMappingsInSessionFactory(doc, context);
             bTransaction = bTransaction && beginTransaction(sfactory, context);
@@ -1303,6 +1782,15 @@ private void loadXWikiCollectionInternal(BaseCollection object, XWikiContext con
 
     private void loadXWikiCollectionInternal(BaseCollection object1, XWikiDocument doc, XWikiContext inputxcontext,
         boolean bTransaction, boolean alreadyLoaded) throws XWikiException
+    {
+        loadXWikiCollectionInternal(object1, doc, inputxcontext, bTransaction, alreadyLoaded, null);
+    }
+
+    /**
+     * @param properties the name and type of the properties of the object when already known, null to query them
+     */
+    private void loadXWikiCollectionInternal(BaseCollection object1, XWikiDocument doc, XWikiContext inputxcontext,
+        boolean bTransaction, boolean alreadyLoaded, List<Object[]> properties) throws XWikiException
     {
         XWikiContext context = getXWikiContext(inputxcontext);
 
@@ -1360,10 +1848,14 @@ private void loadXWikiCollectionInternal(BaseCollection object1, XWikiDocument d
 
                 // Load strings, integers, dates all at once
 
-                Query query = session
-                    .createQuery("select prop.name, prop.classType from BaseProperty as prop where prop.id.id = :id");
-                query.setLong("id", object.getId());
-                for (Object[] result : (List<Object[]>) query.list()) {
+                List<Object[]> propertyNames = properties;
+                if (propertyNames == null) {
+                    Query query = session.createQuery(
+                        "select prop.name, prop.classType from BaseProperty as prop where prop.id.id = :id");
+                    query.setLong("id", object.getId());
+                    propertyNames = (List<Object[]>) query.list();
+                }
+                for (Object[] result : propertyNames) {
                     String name = (String) result[0];
                     // No need to load fields already loaded from
                     // custom mapping
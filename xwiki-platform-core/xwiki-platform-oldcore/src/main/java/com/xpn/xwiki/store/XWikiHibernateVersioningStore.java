@@ -19,16 +19,21 @@
  */
 package com.xpn.xwiki.store;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.hibernate.Criteria;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +62,9 @@ public class XWikiHibernateVersioningStore extends XWikiHibernateBaseStore imple
     /** Logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(XWikiHibernateVersioningStore.class);
 
+    /** The name of the document id property of the nodes. */
+    private static final String DOCID = "id.docId";
+
     /**
      * This allows to initialize our storage engine. The hibernate config file path is taken from xwiki.cfg or directly
      * in the WEB-INF directory.
@@ -278,7 +286,7 @@ public List<XWikiRCSNodeInfo> doInHibernate(Session session) throws HibernateExc
             {
                 try {
                     return session.createCriteria(XWikiRCSNodeInfo.class)
-                        .add(Restrictions.eq("id.docId", Long.valueOf(id))).add(Restrictions.isNotNull("diff")).list();
+                        .add(Restrictions.eq(DOCID, Long.valueOf(id))).add(Restrictions.isNotNull("diff")).list();
                 } catch (IllegalArgumentException ex) {
                     // This happens when the database has wrong values...
                     LOGGER.warn("Invalid history for document " + id);
@@ -304,6 +312,94 @@ public XWikiRCSNodeContent doInHibernate(Session session) throws HibernateExcept
         });
     }
 
+    @Override
+    public List<XWikiRCSNodeContent> loadRCSNodeContents(final List<XWikiRCSNodeId> ids, boolean bTransaction,
+        XWikiContext context) throws XWikiException
+    {
+        if (ids.size() <= 1) {
+            return XWikiVersioningStoreInterface.super.loadRCSNodeContents(ids, bTransaction, context);
+        }
+
+        final SortedSet<Version> versions = new TreeSet<>();
+        for (XWikiRCSNodeId id : ids) {
+            versions.add(id.getVersion());
+        }
+
+        return executeRead(context, bTransaction, new HibernateCallback<List<XWikiRCSNodeContent>>()
+        {
+            @SuppressWarnings("unchecked")
+            @Override
+            public List<XWikiRCSNodeContent> doInHibernate(Session session) throws HibernateException
+            {
+                // Versions are sorted from the most recent to the oldest one
+                int[] newest = versions.first().getNumbers();
+                int[] oldest = versions.last().getNumbers();
+
+                // Load the whole range with a single query instead of one query per node
+                List<XWikiRCSNodeContent> contents = session
+                    .createQuery("from " + XWikiRCSNodeContent.class.getName()
+                        + " as c where c.id.docId = :docId"
+                        + " and (c.id.version1 > :oldest1 or (c.id.version1 = :oldest1 and c.id.version2 >= :oldest2))"
+                        + " and (c.id.version1 < :newest1 or (c.id.version1 = :newest1 and c.id.version2 <= :newest2))")
+                    .setLong("docId", ids.get(0).getDocId()).setInteger("oldest1", oldest[0])
+                    .setInteger("oldest2", oldest[1]).setInteger("newest1", newest[0])
+                    .setInteger("newest2", newest[1]).list();
+
+                // The range can contain nodes which are not needed (or already deleted from the archive)
+                List<XWikiRCSNodeContent> result = new ArrayList<>(versions.size());
+                for (XWikiRCSNodeContent content : contents) {
+                    if (versions.contains(content.getId().getVersion())) {
+                        result.add(content);
+                    }
+                }
+
+                return result;
+            }
+        });
+    }
+
+    @Override
+    public List<XWikiRCSNodeInfo> loadRCSNodeInfos(XWikiDocument doc, final int offset, final int limit,
+        XWikiContext inputxcontext) throws XWikiException
+    {
+        // No need to go to the database when the whole history is already loaded
+        if (doc.getDocumentArchive() != null) {
+            return XWikiVersioningStoreInterface.super.loadRCSNodeInfos(doc, offset, limit, inputxcontext);
+        }
+
+        XWikiContext context = getXWikiContext(inputxcontext);
+
+        String db = context.getWikiId();
+        try {
+            if (doc.getDatabase() != null) {
+                context.setWikiId(doc.getDatabase());
+            }
+
+            final long docId = doc.getId();
+            return executeRead(context, true, new HibernateCallback<List<XWikiRCSNodeInfo>>()
+            {
+                @SuppressWarnings("unchecked")
+                @Override
+                public List<XWikiRCSNodeInfo> doInHibernate(Session session) throws HibernateException
+                {
+                    Criteria criteria = session.createCriteria(XWikiRCSNodeInfo.class)
+                        .add(Restrictions.eq(DOCID, Long.valueOf(docId))).add(Restrictions.isNotNull("diff"))
+                        .addOrder(Order.desc("id.version1")).addOrder(Order.desc("id.version2"));
+                    if (offset > 0) {
+                        criteria.setFirstResult(offset);
+                    }
+                    if (limit > 0) {
+                        criteria.setMaxResults(limit);
+                    }
+
+                    return criteria.list();
+                }
+            });
+        } finally {
+            context.setWikiId(db);
+        }
+    }
+
     @Override
     public void deleteArchive(final XWikiDocument doc, boolean bTransaction, XWikiContext context) throws XWikiException
     {
@@ -19,6 +19,8 @@
  */
 package com.xpn.xwiki.store;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
@@ -41,6 +43,37 @@
 
     XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWikiException;
 
+    /**
+     * Load several documents at once. Stores are encouraged to override the default implementation, which loads the
+     * documents one by one, to reduce the number of round trips to the storage.
+     *
+     * @param references the references of the documents to load, including the locale of the translations to load
+     * @param context the XWiki context
+     * @return the loaded documents, in the same order as the passed references. A document which does not exist is
+     *         returned as a new document (see {@link XWikiDocument#isNew()})
+     * @throws XWikiException when failing to load the documents
+     * @since 9.10RC1
+     */
+    default List<XWikiDocument> loadXWikiDocs(Collection<DocumentReference> references, XWikiContext context)
+        throws XWikiException
+    {
+        List<XWikiDocument> documents = new ArrayList<>(references.size());
+
+        String currentWiki = context.getWikiId();
+        try {
+            for (DocumentReference reference : references) {
+                // Stores load documents from the current wiki
+                context.setWikiId(reference.getWikiReference().getName());
+
+                documents.add(loadXWikiDoc(new XWikiDocument(reference, reference.getLocale()), context));
+            }
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+
+        return documents;
+    }
+
     void deleteXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWikiException;
 
     List<String> getClassList(XWikiContext context) throws XWikiException;
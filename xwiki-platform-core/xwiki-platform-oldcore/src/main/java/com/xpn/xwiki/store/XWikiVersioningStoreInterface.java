@@ -19,6 +19,9 @@
  */
 package com.xpn.xwiki.store;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.suigeneris.jrcs.rcs.Version;
 import org.xwiki.component.annotation.Role;
 
@@ -28,6 +31,7 @@
 import com.xpn.xwiki.doc.XWikiDocumentArchive;
 import com.xpn.xwiki.doc.rcs.XWikiRCSNodeContent;
 import com.xpn.xwiki.doc.rcs.XWikiRCSNodeId;
+import com.xpn.xwiki.doc.rcs.XWikiRCSNodeInfo;
 
 /**
  * Interface for manipulate document history.
@@ -69,4 +73,47 @@ void saveXWikiDocArchive(XWikiDocumentArchive archivedoc, boolean bTransaction,
      */
     XWikiRCSNodeContent loadRCSNodeContent(XWikiRCSNodeId id, boolean bTransaction, XWikiContext context)
         throws XWikiException;
+
+    /**
+     * Load several {@link XWikiRCSNodeContent} at once, typically the chain of patches needed to rebuild a version.
+     *
+     * @param ids the ids of the nodes to load, all belonging to the same document
+     * @param bTransaction should store to use old transaction(false) or create new (true)
+     * @param context the XWiki context
+     * @return the loaded RCS node contents, in no particular order
+     * @throws XWikiException if any error
+     * @since 9.10RC1
+     */
+    default List<XWikiRCSNodeContent> loadRCSNodeContents(List<XWikiRCSNodeId> ids, boolean bTransaction,
+        XWikiContext context) throws XWikiException
+    {
+        List<XWikiRCSNodeContent> contents = new ArrayList<>(ids.size());
+        for (XWikiRCSNodeId id : ids) {
+            contents.add(loadRCSNodeContent(id, bTransaction, context));
+        }
+
+        return contents;
+    }
+
+    /**
+     * Load a page of the history of a document, from the most recent version to the oldest one. Implementations
+     * should avoid loading the whole document archive when it's not already loaded.
+     *
+     * @param doc the document for which to load the history
+     * @param offset the number of most recent versions to skip
+     * @param limit the maximum number of versions to return, 0 or less means no limit
+     * @param context the XWiki context
+     * @return the history nodes, order by version desc
+     * @throws XWikiException if any error
+     * @since 9.10RC1
+     */
+    default List<XWikiRCSNodeInfo> loadRCSNodeInfos(XWikiDocument doc, int offset, int limit, XWikiContext context)
+        throws XWikiException
+    {
+        List<XWikiRCSNodeInfo> nodes = new ArrayList<>(getXWikiDocumentArchive(doc, context).getNodes());
+        int fromIndex = Math.min(Math.max(offset, 0), nodes.size());
+        int toIndex = limit > 0 ? Math.min(fromIndex + limit, nodes.size()) : nodes.size();
+
+        return nodes.subList(fromIndex, toIndex);
+    }
 }
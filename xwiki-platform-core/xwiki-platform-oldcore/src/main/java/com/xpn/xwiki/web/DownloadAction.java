@@ -21,7 +21,12 @@
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -34,7 +39,7 @@
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -90,8 +95,35 @@ public class DownloadAction extends XWikiAction
     /** The name of the HTTP Header that signals a byte-range request. */
     private static final String RANGE_HEADER_NAME = "Range";
 
-    /** The format of a valid range header. */
-    private static final Pattern RANGE_HEADER_PATTERN = Pattern.compile("bytes=([0-9]+)?-([0-9]+)?");
+    /** The prefix of a valid range header. */
+    private static final String RANGE_HEADER_PREFIX = "bytes=";
+
+    /** The format of each of the byte ranges of a valid range header. */
+    private static final Pattern RANGE_PATTERN = Pattern.compile("([0-9]+)?-([0-9]+)?");
+
+    /** The name of the HTTP Header indicating which part of the content is sent. */
+    private static final String CONTENT_RANGE_HEADER_NAME = "Content-Range";
+
+    /** The unit of the byte ranges. */
+    private static final String BYTES = "bytes ";
+
+    /** The separator between the first and the last byte of a range. */
+    private static final String RANGE_SEPARATOR = "-";
+
+    /** The separator of the lines of the multipart response headers. */
+    private static final String CRLF = "\r\n";
+
+    /** The separator of the boundaries of the multipart response. */
+    private static final String BOUNDARY_SEPARATOR = "--";
+
+    /** The length of the boundary separating the parts of a multiple ranges response. */
+    private static final int BOUNDARY_LENGTH = 32;
+
+    /**
+     * The maximum number of byte ranges accepted in a range request, the full content is sent for requests with more
+     * ranges.
+     */
+    private static final int MAX_RANGES = 16;
 
     /**
      * Default constructor.
@@ -199,9 +231,11 @@ private void throwNotFoundException(String filename) throws XWikiException
 
     /**
      * Respond to a range request, either with the requested bytes, or with a {@code 416 REQUESTED RANGE NOT
-     * SATISFIABLE} response if the requested byte range falls outside the length of the attachment. If the range
+     * SATISFIABLE} response if the requested byte ranges fall outside the length of the attachment. If the range
      * request header is syntactically invalid, nothing is written, and instead {@code false} is returned, letting the
-     * action handler ignore the Range header and treat this as a normal (full) download request.
+     * action handler ignore the Range header and treat this as a normal (full) download request. The same is done
+     * when too many byte ranges are requested. Overlapping or adjacent byte ranges are merged and several byte ranges
+     * are sent as a {@code multipart/byteranges} response.
      *
      * @param attachment the attachment to get content from
      * @param request the current client request
@@ -219,64 +253,154 @@ private boolean sendPartialContent(final XWikiAttachment attachment,
         throws XWikiException, IOException
     {
         String range = request.getHeader(RANGE_HEADER_NAME);
-        Matcher m = RANGE_HEADER_PATTERN.matcher(range);
-        if (m.matches()) {
-            String startStr = m.group(1);
-            String endStr = m.group(2);
-            Long start = NumberUtils.createLong(startStr);
-            Long end = NumberUtils.createLong(endStr);
+        if (!range.startsWith(RANGE_HEADER_PREFIX)) {
+            return false;
+        }
+
+        String[] rangeSpecs = StringUtils.split(range.substring(RANGE_HEADER_PREFIX.length()), ',');
+        if (rangeSpecs.length == 0 || rangeSpecs.length > MAX_RANGES) {
+            return false;
+        }
+
+        long size = attachment.getContentLongSize(context);
+
+        List<long[]> ranges = new ArrayList<>(rangeSpecs.length);
+        for (String rangeSpec : rangeSpecs) {
+            Matcher m = RANGE_PATTERN.matcher(rangeSpec.trim());
+            if (!m.matches()) {
+                return false;
+            }
+            Long start = NumberUtils.createLong(m.group(1));
+            Long end = NumberUtils.createLong(m.group(2));
             if (start == null && end != null && end > 0) {
                 // Tail request, output the last <end> bytes
-                start = Math.max(attachment.getContentSize(context) - end, 0L);
-                end = attachment.getContentSize(context) - 1L;
+                start = Math.max(size - end, 0L);
+                end = size - 1L;
             }
             if (!isValidRange(start, end)) {
                 return false;
             }
             if (end == null) {
-                end = attachment.getContentSize(context) - 1L;
+                end = size - 1L;
+            }
+            end = Math.min(end, size - 1L);
+            // Ignore the ranges falling outside the file limits
+            if (start >= 0 && start < size) {
+                ranges.add(new long[] { start, end });
             }
-            end = Math.min(end, attachment.getContentSize(context) - 1L);
-            writeByteRange(attachment, start, end, request, response, context);
-            return true;
         }
-        return false;
+
+        ranges = mergeRanges(ranges);
+
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(CONTENT_RANGE_HEADER_NAME, BYTES + "*" + SEPARATOR + size);
+        } else if (ranges.size() == 1) {
+            writeByteRange(attachment, ranges.get(0)[0], ranges.get(0)[1], size, request, response, context);
+        } else {
+            writeByteRanges(attachment, ranges, size, request, response, context);
+        }
+
+        return true;
+    }
+
+    /**
+     * Merge the overlapping or adjacent byte ranges so that the same bytes are not sent several times.
+     *
+     * @param ranges the first and last bytes of each requested range
+     * @return the merged ranges, sorted by first byte
+     */
+    private List<long[]> mergeRanges(List<long[]> ranges)
+    {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+
+        List<long[]> sortedRanges = new ArrayList<>(ranges);
+        sortedRanges.sort((range1, range2) -> Long.compare(range1[0], range2[0]));
+
+        List<long[]> mergedRanges = new ArrayList<>(sortedRanges.size());
+        long[] currentRange = sortedRanges.get(0);
+        for (long[] range : sortedRanges.subList(1, sortedRanges.size())) {
+            if (range[0] <= currentRange[1] + 1L) {
+                currentRange = new long[] { currentRange[0], Math.max(currentRange[1], range[1]) };
+            } else {
+                mergedRanges.add(currentRange);
+                currentRange = range;
+            }
+        }
+        mergedRanges.add(currentRange);
+
+        return mergedRanges;
     }
 
     /**
-     * Write a byte range from the attachment to the response, if the requested range is valid and falls within the file
-     * limits.
+     * Write a byte range from the attachment to the response.
      *
      * @param attachment the attachment to get content from
      * @param start the first byte to write
      * @param end the last byte to write
+     * @param size the size of the attachment content
      * @param request the current client request
      * @param response the response to write to.
      * @param context the current request context
      * @throws XWikiException if the attachment content cannot be retrieved
      * @throws IOException if the response cannot be written
      */
-    private void writeByteRange(final XWikiAttachment attachment, Long start, Long end,
+    private void writeByteRange(final XWikiAttachment attachment, long start, long end, long size,
         final XWikiRequest request,
         final XWikiResponse response,
         final XWikiContext context)
         throws XWikiException, IOException
     {
-        if (start >= 0 && start < attachment.getContentSize(context)) {
-            InputStream data = attachment.getContentInputStream(context);
-            data = new BoundedInputStream(data, end + 1);
-            data.skip(start);
-            setCommonHeaders(attachment, request, response, context);
-            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-            if ((end - start + 1L) < Integer.MAX_VALUE) {
-                response.setContentLength((int) (end - start + 1));
-            }
-            response.setHeader("Content-Range", "bytes " + start + "-" + end + SEPARATOR
-                + attachment.getContentSize(context));
-            IOUtils.copyLarge(data, response.getOutputStream());
-        } else {
-            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        setCommonHeaders(attachment, request, response, context);
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if ((end - start + 1L) < Integer.MAX_VALUE) {
+            response.setContentLength((int) (end - start + 1));
         }
+        response.setHeader(CONTENT_RANGE_HEADER_NAME, BYTES + start + RANGE_SEPARATOR + end + SEPARATOR + size);
+        writeContent(attachment, start, end - start + 1, response.getOutputStream(), context);
+    }
+
+    /**
+     * Write several byte ranges from the attachment to the response, as a {@code multipart/byteranges} content.
+     *
+     * @param attachment the attachment to get content from
+     * @param ranges the first and last bytes of each range to write
+     * @param size the size of the attachment content
+     * @param request the current client request
+     * @param response the response to write to.
+     * @param context the current request context
+     * @throws XWikiException if the attachment content cannot be retrieved
+     * @throws IOException if the response cannot be written
+     */
+    private void writeByteRanges(final XWikiAttachment attachment, List<long[]> ranges, long size,
+        final XWikiRequest request,
+        final XWikiResponse response,
+        final XWikiContext context)
+        throws XWikiException, IOException
+    {
+        String boundary = RandomStringUtils.randomAlphanumeric(BOUNDARY_LENGTH);
+
+        setCommonHeaders(attachment, request, response, context);
+        String mimetype = attachment.getMimeType(context);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+        OutputStream out = response.getOutputStream();
+        for (long[] range : ranges) {
+            write(out, CRLF + BOUNDARY_SEPARATOR + boundary + CRLF + "Content-Type: " + mimetype + CRLF
+                + CONTENT_RANGE_HEADER_NAME + ": " + BYTES + range[0] + RANGE_SEPARATOR + range[1] + SEPARATOR + size
+                + CRLF + CRLF);
+            writeContent(attachment, range[0], range[1] - range[0] + 1, out, context);
+        }
+        write(out, CRLF + BOUNDARY_SEPARATOR + boundary + BOUNDARY_SEPARATOR + CRLF);
+    }
+
+    private void write(OutputStream out, String str) throws IOException
+    {
+        byte[] bytes = str.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes, 0, bytes.length);
     }
 
     /**
@@ -296,21 +420,58 @@ private void sendContent(final XWikiAttachment attachment,
         final XWikiContext context)
         throws XWikiException
     {
-        InputStream stream = null;
         try {
             setCommonHeaders(attachment, request, response, context);
-            response.setContentLength(attachment.getContentSize(context));
-            stream = attachment.getContentInputStream(context);
-            IOUtils.copy(stream, response.getOutputStream());
+            long size = attachment.getContentLongSize(context);
+            if (size < Integer.MAX_VALUE) {
+                response.setContentLength((int) size);
+            }
+            writeContent(attachment, 0, size, response.getOutputStream(), context);
         } catch (IOException e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_APP,
                 XWikiException.ERROR_XWIKI_APP_SEND_RESPONSE_EXCEPTION,
                 "Exception while sending response", e);
-        } finally {
-            if (stream != null) {
-                IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Write a part of the attachment content to the passed stream. When the content is stored in a file it's
+     * transferred directly from the file channel, starting at the requested position, instead of being copied through
+     * an input stream.
+     *
+     * @param attachment the attachment to get content from
+     * @param start the position of the first byte to write
+     * @param length the number of bytes to write
+     * @param out the stream to write to
+     * @param context the current request context
+     * @throws XWikiException if the attachment content cannot be retrieved
+     * @throws IOException if the content cannot be written
+     */
+    private void writeContent(XWikiAttachment attachment, long start, long length, OutputStream out,
+        XWikiContext context) throws XWikiException, IOException
+    {
+        try (FileChannel channel = attachment.getContentFileChannel(context)) {
+            if (channel != null) {
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = start;
+                long remaining = length;
+                while (remaining > 0) {
+                    long transferred = channel.transferTo(position, remaining, target);
+                    if (transferred <= 0) {
+                        // The file is shorter than expected
+                        break;
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+
+                return;
             }
         }
+
+        try (InputStream stream = attachment.getContentInputStream(context)) {
+            IOUtils.copyLarge(stream, out, start, length);
+        }
     }
 
     /**
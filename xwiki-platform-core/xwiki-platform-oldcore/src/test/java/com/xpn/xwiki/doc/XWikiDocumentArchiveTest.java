@@ -326,6 +326,41 @@ public void testVerifyDiffAndFullRevisionAlgorithm() throws Exception
         assertFalse(archive.getNode(new Version(6, 1)).isDiff());
     }
 
+    public void testFullRevisionsAfterRemovingVersions() throws Exception
+    {
+        XWikiDocument doc = new XWikiDocument(new DocumentReference("Test", "Test", "Test"));
+        XWikiDocumentArchive archive = new XWikiDocumentArchive(doc.getId());
+        doc.setDocumentArchive(archive);
+        String author = "XWiki.some author";
+
+        for (int i = 1; i <= 6; i++) {
+            addRevisionToHistory(archive, doc, "content " + i + ".1", author, i + ".1");
+        }
+        assertFalse(archive.getNode(new Version(5, 1)).isDiff());
+        assertFalse(archive.getNode(new Version(6, 1)).isDiff());
+
+        archive.removeVersions(new Version(1, 1), new Version(1, 1), this.context);
+
+        // The 6th revision is only one patch away from the 5th full revision so it doesn't need to be kept full
+        addRevisionToHistory(archive, doc, "content 7.1", author, "7.1");
+        assertFalse(archive.getNode(new Version(5, 1)).isDiff());
+        assertTrue(archive.getNode(new Version(6, 1)).isDiff());
+        assertFalse(archive.getNode(new Version(7, 1)).isDiff());
+
+        // Every 5 revisions after the previous full revision we keep a full revision
+        for (int i = 8; i <= 11; i++) {
+            addRevisionToHistory(archive, doc, "content " + i + ".1", author, i + ".1");
+        }
+        for (int i = 6; i <= 9; i++) {
+            assertTrue(archive.getNode(new Version(i, 1)).isDiff());
+        }
+        assertFalse(archive.getNode(new Version(10, 1)).isDiff());
+        assertFalse(archive.getNode(new Version(11, 1)).isDiff());
+
+        assertEquals("content 6.1", archive.loadDocument(new Version(6, 1), this.context).getContent());
+        assertEquals("content 2.1", archive.loadDocument(new Version(2, 1), this.context).getContent());
+    }
+
     private void addRevisionToHistory(XWikiDocumentArchive archive, XWikiDocument document, String content,
         String author, String comment) throws XWikiException
     {
@@ -26,6 +26,9 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -72,6 +75,7 @@
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -1397,4 +1401,107 @@ public void tofromXMLDocument() throws XWikiException
 
         assertEquals(this.document, newDocument);
     }
+
+    @Test
+    public void lazyLoadXObjects() throws XWikiException
+    {
+        XWikiDocument lazyDocument = new XWikiDocument(DOCUMENT_REFERENCE);
+        lazyDocument.setVersion("2.1");
+        lazyDocument.setMetaDataDirty(false);
+
+        List<XWikiDocument> loadedDocuments = new ArrayList<>();
+        lazyDocument.setXObjectsLoader(document -> {
+            loadedDocuments.add(document);
+            document.setXObject(0, this.baseObject.clone());
+        });
+
+        // Cloning the document does not load its objects
+        XWikiDocument clonedDocument = lazyDocument.clone();
+        assertTrue(loadedDocuments.isEmpty());
+
+        assertEquals(1, lazyDocument.getXObjects(CLASS_REFERENCE).size());
+        assertEquals(1, lazyDocument.getXObjects(CLASS_REFERENCE).size());
+        assertSame(lazyDocument, lazyDocument.getXObject(CLASS_REFERENCE).getOwnerDocument());
+        assertFalse(lazyDocument.isMetaDataDirty());
+
+        // The objects are loaded in a separate document with the same version
+        assertEquals(1, loadedDocuments.size());
+        assertNotSame(lazyDocument, loadedDocuments.get(0));
+        assertEquals(DOCUMENT_REFERENCE, loadedDocuments.get(0).getDocumentReference());
+        assertEquals("2.1", loadedDocuments.get(0).getVersion());
+
+        // The clone gets its own copy of the objects without loading them again
+        assertEquals(1, clonedDocument.getXObjects(CLASS_REFERENCE).size());
+        assertSame(clonedDocument, clonedDocument.getXObject(CLASS_REFERENCE).getOwnerDocument());
+        assertNotSame(lazyDocument.getXObject(CLASS_REFERENCE), clonedDocument.getXObject(CLASS_REFERENCE));
+        assertEquals(1, loadedDocuments.size());
+    }
+
+    @Test
+    public void lazyLoadXObjectsWhileAnotherThreadIsLoadingThem() throws Exception
+    {
+        XWikiDocument lazyDocument = new XWikiDocument(DOCUMENT_REFERENCE);
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        lazyDocument.setXObjectsLoader(document -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            document.setXObject(0, this.baseObject.clone());
+        });
+
+        Thread loadingThread = new Thread(() -> lazyDocument.getXObjects());
+        loadingThread.start();
+        loading.await();
+
+        // The document is not locked while its objects are loaded
+        synchronized (lazyDocument) {
+            assertFalse(lazyDocument.isXObjectsLoaded());
+        }
+
+        FutureTask<Integer> waitingReader = new FutureTask<>(() -> lazyDocument.getXObjects(CLASS_REFERENCE).size());
+        new Thread(waitingReader).start();
+
+        release.countDown();
+        loadingThread.join();
+
+        assertEquals(1, waitingReader.get().intValue());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void lazyLoadAttachmentsFailure() throws XWikiException
+    {
+        XWikiDocument lazyDocument = new XWikiDocument(DOCUMENT_REFERENCE);
+        boolean[] failing = new boolean[] {true};
+        lazyDocument.setAttachmentsLoader(document -> {
+            if (failing[0]) {
+                throw new XWikiException();
+            }
+            document.setAttachment(new XWikiAttachment(document, "file"));
+        });
+
+        // The getter does not fail
+        assertTrue(lazyDocument.getAttachmentList().isEmpty());
+        assertFalse(lazyDocument.isAttachmentListLoaded());
+
+        try {
+            lazyDocument.loadLazyData();
+            Assert.fail("Should have failed to load the attachments");
+        } catch (XWikiException expected) {
+            // expected
+        }
+
+        // Nothing has been loaded so the attachments are loaded again
+        failing[0] = false;
+        assertEquals(1, lazyDocument.getAttachmentList().size());
+        assertSame(lazyDocument, lazyDocument.getAttachment("file").getDoc());
+        assertTrue(lazyDocument.isAttachmentListLoaded());
+    }
 }
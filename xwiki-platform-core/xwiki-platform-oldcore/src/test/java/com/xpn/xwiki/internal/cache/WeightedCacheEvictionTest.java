@@ -0,0 +1,179 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheEntry;
+import org.xwiki.cache.event.CacheEntryEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link WeightedCacheEviction}.
+ *
+ * @version $Id$
+ */
+public class WeightedCacheEvictionTest
+{
+    private Cache<String> cache;
+
+    private WeightedCacheEviction<String> eviction;
+
+    @Before
+    public void before()
+    {
+        this.cache = mock(Cache.class);
+        this.eviction = new WeightedCacheEviction<>(this.cache, 10, String::length);
+
+        verify(this.cache).addCacheEntryListener(this.eviction);
+    }
+
+    private CacheEntryEvent<String> event(String key, String value)
+    {
+        CacheEntry<String> entry = mock(CacheEntry.class);
+        when(entry.getKey()).thenReturn(key);
+        when(entry.getValue()).thenReturn(value);
+        CacheEntryEvent<String> event = mock(CacheEntryEvent.class);
+        when(event.getEntry()).thenReturn(entry);
+
+        return event;
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed()
+    {
+        this.eviction.cacheEntryAdded(event("a", "aaaa"));
+        this.eviction.cacheEntryAdded(event("b", "bbbb"));
+        this.eviction.evict();
+
+        assertEquals(8, this.eviction.getTotalWeight());
+        verify(this.cache, never()).remove(any());
+
+        this.eviction.accessed("a");
+        this.eviction.cacheEntryAdded(event("c", "cccc"));
+        this.eviction.evict();
+
+        verify(this.cache).remove("b");
+        verify(this.cache, never()).remove("a");
+        assertEquals(8, this.eviction.getTotalWeight());
+    }
+
+    @Test
+    public void trackRemovedAndModifiedEntries()
+    {
+        this.eviction.cacheEntryAdded(event("a", "aaaa"));
+        this.eviction.cacheEntryModified(event("a", "aa"));
+
+        assertEquals(2, this.eviction.getTotalWeight());
+
+        this.eviction.cacheEntryRemoved(event("a", "aa"));
+
+        assertEquals(0, this.eviction.getTotalWeight());
+
+        this.eviction.cacheEntryAdded(event("b", "bbbb"));
+        this.eviction.clear();
+
+        assertEquals(0, this.eviction.getTotalWeight());
+    }
+
+    @Test
+    public void keepMostRecentEntryEvenWhenTooBig()
+    {
+        this.eviction.cacheEntryAdded(event("a", "aaaa"));
+        this.eviction.cacheEntryAdded(event("b", "bbbbbbbbbbbbbbb"));
+        this.eviction.evict();
+
+        verify(this.cache).remove("a");
+        verify(this.cache, never()).remove("b");
+        assertEquals(15, this.eviction.getTotalWeight());
+    }
+
+    @Test
+    public void weighAgainWhenAccessedAfterTheDataIsLoaded()
+    {
+        Cache<List<String>> listCache = mock(Cache.class);
+        WeightedCacheEviction<List<String>> listEviction =
+            new WeightedCacheEviction<>(listCache, 10, List::size, list -> !list.isEmpty());
+
+        // The data of the value is loaded later
+        List<String> value = new ArrayList<>();
+        CacheEntry<List<String>> entry = mock(CacheEntry.class);
+        when(entry.getKey()).thenReturn("a");
+        when(entry.getValue()).thenReturn(value);
+        CacheEntryEvent<List<String>> event = mock(CacheEntryEvent.class);
+        when(event.getEntry()).thenReturn(entry);
+        listEviction.cacheEntryAdded(event);
+
+        assertEquals(0, listEviction.getTotalWeight());
+
+        value.addAll(Arrays.asList("1", "2", "3"));
+        listEviction.accessed("a");
+
+        assertEquals(3, listEviction.getTotalWeight());
+
+        // The weight is final now
+        value.add("4");
+        listEviction.accessed("a");
+
+        assertEquals(3, listEviction.getTotalWeight());
+    }
+
+    @Test
+    public void accessConcurrently() throws Exception
+    {
+        for (int i = 0; i < 10; ++i) {
+            this.eviction.cacheEntryAdded(event("key" + i, "v"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; ++i) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10000; ++j) {
+                        this.eviction.accessed("key" + (j % 10));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(10, this.eviction.getTotalWeight());
+        verify(this.cache, never()).remove(any());
+    }
+}
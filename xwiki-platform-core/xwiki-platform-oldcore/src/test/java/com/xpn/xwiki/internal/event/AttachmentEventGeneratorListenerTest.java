@@ -0,0 +1,140 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.event;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.doc.LazyXWikiDocument;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.test.MockitoOldcoreRule;
+import com.xpn.xwiki.test.reference.ReferenceComponentList;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link AttachmentEventGeneratorListener}.
+ *
+ * @version $Id$
+ */
+@ReferenceComponentList
+public class AttachmentEventGeneratorListenerTest
+{
+    public MockitoComponentMockingRule<AttachmentEventGeneratorListener> mocker =
+        new MockitoComponentMockingRule<AttachmentEventGeneratorListener>(AttachmentEventGeneratorListener.class);
+
+    @Rule
+    public MockitoOldcoreRule oldcore = new MockitoOldcoreRule(mocker);
+
+    private ObservationManager mockObservation;
+
+    private DocumentReference documentReference = new DocumentReference("wiki", "space", "page");
+
+    @Before
+    public void before() throws Exception
+    {
+        this.mockObservation = this.mocker.registerMockComponent(ObservationManager.class);
+    }
+
+    private Set<String> getNotifiedEvents(int count)
+    {
+        ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+        verify(this.mockObservation, times(count)).notify(eventCaptor.capture(), any(),
+            same(this.oldcore.getXWikiContext()));
+
+        Set<String> events = new HashSet<>();
+        for (Event event : eventCaptor.getAllValues()) {
+            events.add(event.getClass().getSimpleName() + ':' + ((AbstractAttachmentEvent) event).getName());
+        }
+
+        return events;
+    }
+
+    @Test
+    public void updateDocument() throws Exception
+    {
+        XWikiDocument document = new XWikiDocument(this.documentReference);
+        document.setAttachment(new XWikiAttachment(document, "added.txt"));
+        XWikiDocument originalDocument = new XWikiDocument(this.documentReference);
+        originalDocument.setAttachment(new XWikiAttachment(originalDocument, "deleted.txt"));
+        document.setOriginalDocument(originalDocument);
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(this.documentReference), document,
+            this.oldcore.getXWikiContext());
+
+        assertEquals(new HashSet<>(Arrays.asList("AttachmentAddedEvent:added.txt",
+            "AttachmentDeletedEvent:deleted.txt")), getNotifiedEvents(2));
+    }
+
+    /**
+     * The documents of the remote events are loaded lazily, including their attachments.
+     */
+    @Test
+    public void updateLazyDocument() throws Exception
+    {
+        // The current version of the document, in the database
+        XWikiDocument storedDocument = new XWikiDocument(this.documentReference);
+        storedDocument.setVersion("2.1");
+        storedDocument.setNew(false);
+        storedDocument.setAttachment(new XWikiAttachment(storedDocument, "added.txt"));
+        when(this.oldcore.getMockStore().loadXWikiDoc(any(XWikiDocument.class), any())).thenReturn(storedDocument);
+
+        // The previous version of the document, in the archive
+        XWikiDocument archivedDocument = new XWikiDocument(this.documentReference);
+        archivedDocument.setVersion("1.1");
+        archivedDocument.setNew(false);
+        archivedDocument.setAttachment(new XWikiAttachment(archivedDocument, "deleted.txt"));
+        when(this.oldcore.getMockVersioningStore().loadXWikiDoc(any(XWikiDocument.class), eq("1.1"), any()))
+            .thenReturn(archivedDocument);
+
+        // The documents of the remote event
+        XWikiDocument document = new LazyXWikiDocument(this.documentReference);
+        document.setVersion("2.1");
+        document.setNew(false);
+        XWikiDocument originalDocument = new LazyXWikiDocument(this.documentReference);
+        originalDocument.setVersion("1.1");
+        originalDocument.setNew(false);
+        document.setOriginalDocument(originalDocument);
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(this.documentReference), document,
+            this.oldcore.getXWikiContext());
+
+        assertEquals(new HashSet<>(Arrays.asList("AttachmentAddedEvent:added.txt",
+            "AttachmentDeletedEvent:deleted.txt")), getNotifiedEvents(2));
+    }
+}
@@ -33,6 +33,7 @@
 import org.xwiki.observation.remote.converter.EventConverterManager;
 
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.LazyXWikiDocument;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.test.AbstractBridgedComponentTestCase;
 
@@ -79,4 +80,39 @@ public void testConvertWithOriginalDocNull() throws Exception
         Assert.assertEquals("page", ((XWikiDocument) localEvent2.getSource()).getPageName());
         Assert.assertTrue(((XWikiDocument) localEvent2.getSource()).getOriginalDocument().isNew());
     }
+
+    @Test
+    public void testConvertLazily() throws Exception
+    {
+        getConfigurationSource().setProperty("observation.remote.lazyDocumentEvents", true);
+
+        EventConverterManager eventConverterManager = getComponentManager().getInstance(EventConverterManager.class);
+
+        XWikiDocument document = new XWikiDocument(new DocumentReference("wiki", "space", "page"));
+        document.setVersion("2.1");
+        document.setNew(false);
+        XWikiDocument originalDocument = new XWikiDocument(new DocumentReference("wiki", "space", "page"));
+        originalDocument.setVersion("1.1");
+        originalDocument.setNew(false);
+        document.setOriginalDocument(originalDocument);
+
+        LocalEventData localEvent = new LocalEventData();
+        localEvent.setEvent(new DocumentUpdatedEvent(document.getDocumentReference()));
+        localEvent.setSource(document);
+        localEvent.setData(getContext());
+
+        RemoteEventData remoteEvent = eventConverterManager.createRemoteEventData(localEvent);
+
+        // Nothing is loaded (the context does not even have a XWiki instance)
+        LocalEventData localEvent2 = eventConverterManager.createLocalEventData(remoteEvent);
+
+        XWikiDocument source = (XWikiDocument) localEvent2.getSource();
+        Assert.assertTrue(source instanceof LazyXWikiDocument);
+        Assert.assertEquals(document.getDocumentReference(), source.getDocumentReference());
+        Assert.assertEquals("2.1", source.getVersion());
+        Assert.assertFalse(source.isNew());
+        Assert.assertEquals(document.getKey(), source.getKey());
+        Assert.assertTrue(source.getOriginalDocument() instanceof LazyXWikiDocument);
+        Assert.assertEquals("1.1", source.getOriginalDocument().getVersion());
+    }
 }
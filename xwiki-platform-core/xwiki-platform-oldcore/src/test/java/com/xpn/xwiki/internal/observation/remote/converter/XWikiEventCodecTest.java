@@ -0,0 +1,110 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.observation.remote.converter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.bridge.event.ActionExecutingEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.event.Event;
+import org.xwiki.observation.remote.LocalEventData;
+import org.xwiki.observation.remote.RemoteEventData;
+import org.xwiki.observation.remote.codec.RemoteEventDataCodec;
+import org.xwiki.observation.remote.converter.EventConverterManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.test.AbstractBridgedComponentTestCase;
+
+/**
+ * Validate {@link XWikiEventCodec}.
+ * 
+ * @version $Id$
+ */
+public class XWikiEventCodecTest extends AbstractBridgedComponentTestCase
+{
+    private RemoteEventData encodeDecode(Event event, Object source) throws Exception
+    {
+        EventConverterManager eventConverterManager = getComponentManager().getInstance(EventConverterManager.class);
+        RemoteEventDataCodec codec = getComponentManager().getInstance(RemoteEventDataCodec.class, "xwiki");
+
+        LocalEventData localEvent = new LocalEventData();
+        localEvent.setEvent(event);
+        localEvent.setSource(source);
+        localEvent.setData(getContext());
+
+        RemoteEventData remoteEvent = eventConverterManager.createRemoteEventData(localEvent);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Assert.assertTrue(codec.encode(remoteEvent, new DataOutputStream(bytes)));
+
+        RemoteEventData decodedEvent = codec.decode(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        Assert.assertEquals(remoteEvent.getSource(), decodedEvent.getSource());
+        Assert.assertEquals(remoteEvent.getData(), decodedEvent.getData());
+
+        return decodedEvent;
+    }
+
+    @Test
+    public void documentEvent() throws Exception
+    {
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        DocumentUpdatedEvent event = new DocumentUpdatedEvent(reference);
+
+        RemoteEventData remoteEvent = encodeDecode(event, new XWikiDocument(reference));
+
+        Assert.assertTrue(remoteEvent.getEvent() instanceof DocumentUpdatedEvent);
+        Assert.assertTrue(event.matches(remoteEvent.getEvent()));
+        Assert.assertFalse(new DocumentUpdatedEvent(new DocumentReference("wiki", "space", "other"))
+            .matches(remoteEvent.getEvent()));
+
+        LocalEventData localEvent =
+            getComponentManager().<EventConverterManager>getInstance(EventConverterManager.class)
+                .createLocalEventData(remoteEvent);
+        Assert.assertEquals(reference, ((XWikiDocument) localEvent.getSource()).getDocumentReference());
+        Assert.assertTrue(localEvent.getData() instanceof XWikiContext);
+    }
+
+    @Test
+    public void wikiEvent() throws Exception
+    {
+        RemoteEventData remoteEvent = encodeDecode(new WikiDeletedEvent("wiki"), "wiki");
+
+        Assert.assertEquals("wiki", ((WikiDeletedEvent) remoteEvent.getEvent()).getWikiId());
+    }
+
+    @Test
+    public void actionEvent() throws Exception
+    {
+        RemoteEventData remoteEvent =
+            encodeDecode(new ActionExecutingEvent("upload"), new XWikiDocument(new DocumentReference("wiki", "space",
+                "page")));
+
+        Assert.assertEquals("upload", ((ActionExecutingEvent) remoteEvent.getEvent()).getActionName());
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link DocumentExistenceFilter}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class DocumentExistenceFilterTest
+{
+    private static final String WIKI = "wiki";
+
+    private QueryManager queryManager;
+
+    private Query countQuery;
+
+    private Query documentsQuery;
+
+    /**
+     * The documents of the database, sorted by id: id, full name, locale.
+     */
+    private List<Object[]> documents = new ArrayList<>();
+
+    private DocumentExistenceFilter filter;
+
+    @Before
+    public void configure() throws Exception
+    {
+        this.queryManager = mock(QueryManager.class);
+
+        this.countQuery = mock(Query.class, Answers.RETURNS_SELF);
+        when(this.countQuery.execute()).then(invocation -> Arrays.asList((long) this.documents.size()));
+        when(this.queryManager.createQuery(startsWith("select count"), eq(Query.HQL))).thenReturn(this.countQuery);
+
+        long[] lastId = new long[1];
+        this.documentsQuery = mock(Query.class, Answers.RETURNS_SELF);
+        when(this.documentsQuery.bindValue(eq("lastId"), anyLong())).then(invocation -> {
+            lastId[0] = invocation.getArgument(1);
+            return this.documentsQuery;
+        });
+        when(this.documentsQuery.execute()).then(invocation -> getPage(lastId[0]));
+        when(this.queryManager.createQuery(startsWith("select doc.id"), eq(Query.HQL)))
+            .thenReturn(this.documentsQuery);
+
+        this.filter = new DocumentExistenceFilter(this.queryManager, 0.01);
+    }
+
+    private List<Object[]> getPage(long lastId)
+    {
+        List<Object[]> page = new ArrayList<>();
+        for (Object[] document : this.documents) {
+            if ((Long) document[0] > lastId && page.size() < 10000) {
+                page.add(document);
+            }
+        }
+
+        return page;
+    }
+
+    private void waitUntilBuilt() throws InterruptedException
+    {
+        // Trigger the build
+        this.filter.mightExist(WIKI, "Space.Any", null);
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (this.filter.getSize(WIKI) < 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void mightExist() throws Exception
+    {
+        this.documents.add(new Object[] {1L, "Space.Page", ""});
+        this.documents.add(new Object[] {2L, "Space.Page", "fr"});
+
+        waitUntilBuilt();
+
+        assertEquals(2, this.filter.getSize(WIKI));
+        assertTrue(this.filter.mightExist(WIKI, "Space.Page", null));
+        assertTrue(this.filter.mightExist(WIKI, "Space.Page", Locale.ROOT));
+        assertTrue(this.filter.mightExist(WIKI, "Space.Page", Locale.FRENCH));
+        assertFalse(this.filter.mightExist(WIKI, "Space.Missing", null));
+        assertEquals(1, this.filter.getFilteredCount());
+    }
+
+    @Test
+    public void mightExistBeforeTheFilterIsBuilt() throws Exception
+    {
+        CountDownLatch countLatch = new CountDownLatch(1);
+        when(this.countQuery.execute()).then(invocation -> {
+            countLatch.await(10, TimeUnit.SECONDS);
+            return Collections.singletonList(0L);
+        });
+
+        assertTrue(this.filter.mightExist(WIKI, "Space.Missing", null));
+        assertEquals(-1, this.filter.getSize(WIKI));
+
+        countLatch.countDown();
+        waitUntilBuilt();
+
+        assertFalse(this.filter.mightExist(WIKI, "Space.Missing", null));
+    }
+
+    @Test
+    public void buildWithSeveralPages() throws Exception
+    {
+        for (long i = 0; i < 10001; i++) {
+            this.documents.add(new Object[] {i * 2, "Space.Page" + i, ""});
+        }
+
+        waitUntilBuilt();
+
+        // The second page starts after the id of the last document of the first page
+        verify(this.documentsQuery).bindValue("lastId", Long.MIN_VALUE);
+        verify(this.documentsQuery).bindValue("lastId", 19998L);
+        assertTrue(this.filter.mightExist(WIKI, "Space.Page10000", null));
+    }
+
+    @Test
+    public void addWhileBuilding() throws Exception
+    {
+        CountDownLatch countLatch = new CountDownLatch(1);
+        when(this.countQuery.execute()).then(invocation -> {
+            countLatch.await(10, TimeUnit.SECONDS);
+            return Collections.singletonList(0L);
+        });
+
+        this.filter.mightExist(WIKI, "Space.Created", null);
+
+        // The document is created before the filter is created and is not returned by the scan
+        this.filter.add(WIKI, "Space.Created", null);
+
+        countLatch.countDown();
+        waitUntilBuilt();
+
+        assertTrue(this.filter.mightExist(WIKI, "Space.Created", null));
+        assertFalse(this.filter.mightExist(WIKI, "Space.Missing", null));
+    }
+
+    @Test
+    public void remove() throws Exception
+    {
+        waitUntilBuilt();
+        assertFalse(this.filter.mightExist(WIKI, "Space.Page", null));
+
+        // The wiki is deleted and created again
+        this.filter.remove(WIKI);
+        this.documents.add(new Object[] {1L, "Space.Page", ""});
+
+        waitUntilBuilt();
+
+        verify(this.queryManager, times(2)).createQuery(startsWith("select count"), anyString());
+        assertTrue(this.filter.mightExist(WIKI, "Space.Page", null));
+    }
+
+    @Test
+    public void buildFailure() throws Exception
+    {
+        when(this.countQuery.execute()).thenThrow(new QueryException("unreachable", this.countQuery, null));
+
+        assertTrue(this.filter.mightExist(WIKI, "Space.Missing", null));
+        verify(this.countQuery, timeout(10000)).execute();
+
+        // The failure is remembered: the filter is not built again on each lookup
+        for (int i = 0; i < 10; i++) {
+            assertTrue(this.filter.mightExist(WIKI, "Space.Missing", null));
+        }
+        Thread.sleep(100);
+
+        verify(this.countQuery, times(1)).execute();
+        assertEquals(-1, this.filter.getSize(WIKI));
+    }
+}
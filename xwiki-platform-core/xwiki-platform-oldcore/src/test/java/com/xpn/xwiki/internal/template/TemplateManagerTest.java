@@ -20,6 +20,7 @@
 package com.xpn.xwiki.internal.template;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.net.MalformedURLException;
@@ -29,15 +30,18 @@
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.configuration.internal.MemoryConfigurationSource;
 import org.xwiki.environment.Environment;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.rendering.transformation.TransformationManager;
 import org.xwiki.security.authorization.ContextualAuthorizationManager;
 import org.xwiki.template.TemplateManager;
+import org.xwiki.template.event.TemplateUpdatedEvent;
 import org.xwiki.test.annotation.AfterComponent;
 import org.xwiki.test.annotation.AllComponents;
 import org.xwiki.test.internal.MockConfigurationSource;
@@ -49,6 +53,8 @@
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -63,6 +69,9 @@
     public final MockitoComponentMockingRule<TemplateManager> mocker =
         new MockitoComponentMockingRule<TemplateManager>(DefaultTemplateManager.class);
 
+    @Rule
+    public TemporaryFolder tmpDirRule = new TemporaryFolder();
+
     private Environment environmentMock;
 
     private VelocityManager velocityManagerMock;
@@ -138,4 +147,55 @@ public void testRenderClassloaderTemplate() throws ComponentLookupException, Exc
 
         assertEquals("OK", this.mocker.getComponentUnderTest().render("classloader_template.vm"));
     }
+
+    @Test
+    public void testRenderWikiFromCache() throws Exception
+    {
+        setTemplateContent("##!source.syntax=xwiki/2.1\nfirst line\\\\second line");
+
+        assertEquals("<p>first line<br/>second line</p>", mocker.getComponentUnderTest().render("template"));
+        assertEquals("<p>first line<br/>second line</p>", mocker.getComponentUnderTest().render("template"));
+
+        // The template is read and parsed only once
+        verify(this.environmentMock, times(1)).getResourceAsStream("/templates/template");
+        TemplateCache templateCache = this.mocker.getInstance(TemplateCache.class);
+        assertEquals(1, templateCache.getContentHitCount());
+        assertEquals(1, templateCache.getXDOMMissCount());
+        assertEquals(1, templateCache.getXDOMHitCount());
+    }
+
+    @Test
+    public void testRenderAfterTemplateUpdated() throws Exception
+    {
+        setTemplateContent("##!source.syntax=xwiki/2.1\nfirst content");
+        assertEquals("<p>first content</p>", mocker.getComponentUnderTest().render("template"));
+
+        setTemplateContent("##!source.syntax=xwiki/2.1\nsecond content");
+        this.mocker.<ObservationManager>getInstance(ObservationManager.class)
+            .notify(new TemplateUpdatedEvent("/templates/template"), null);
+
+        assertEquals("<p>second content</p>", mocker.getComponentUnderTest().render("template"));
+    }
+
+    @Test
+    public void testRenderAfterFilesystemTemplateModified() throws Exception
+    {
+        File file = this.tmpDirRule.newFile("template");
+        file.setLastModified(1000000L);
+
+        setTemplateContent("##!source.syntax=xwiki/2.1\nfirst content");
+        when(this.environmentMock.getResource("/templates/template")).thenReturn(file.toURI().toURL());
+
+        assertEquals("<p>first content</p>", mocker.getComponentUnderTest().render("template"));
+        assertEquals("<p>first content</p>", mocker.getComponentUnderTest().render("template"));
+
+        // The template is modified in place
+        setTemplateContent("##!source.syntax=xwiki/2.1\nsecond content");
+        when(this.environmentMock.getResource("/templates/template")).thenReturn(file.toURI().toURL());
+        file.setLastModified(2000000L);
+
+        assertEquals("<p>second content</p>", mocker.getComponentUnderTest().render("template"));
+
+        verify(this.environmentMock, times(2)).getResourceAsStream("/templates/template");
+    }
 }
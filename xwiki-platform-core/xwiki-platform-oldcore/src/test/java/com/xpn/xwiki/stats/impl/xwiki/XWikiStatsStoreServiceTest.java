@@ -0,0 +1,229 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.stats.impl.xwiki;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.stats.impl.DocumentStats;
+import com.xpn.xwiki.stats.impl.StatsUtil.PeriodType;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.test.MockitoOldcoreRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link XWikiStatsStoreService}.
+ *
+ * @version $Id$
+ */
+public class XWikiStatsStoreServiceTest
+{
+    @Rule
+    public MockitoOldcoreRule oldcore = new MockitoOldcoreRule();
+
+    /**
+     * The statistics stored by the test items, in the order they were stored.
+     */
+    private List<String> stored = new ArrayList<>();
+
+    /**
+     * The wikis in which a transaction has been started, in the order they were started.
+     */
+    private List<String> transactions = new ArrayList<>();
+
+    private XWikiHibernateStore store;
+
+    /**
+     * A statistic which only remembers that it has been stored.
+     */
+    private class TestStatsStoreItem extends AbstractStatsStoreItem
+    {
+        private int hits = 1;
+
+        private boolean fail;
+
+        TestStatsStoreItem(String name, XWikiContext context)
+        {
+            super(name, new Date(), PeriodType.DAY, context);
+        }
+
+        @Override
+        public String getId()
+        {
+            return this.name;
+        }
+
+        @Override
+        public boolean aggregate(XWikiStatsStoreItem item)
+        {
+            this.hits += ((TestStatsStoreItem) item).hits;
+
+            return true;
+        }
+
+        @Override
+        protected void storeInternal(List<XWikiStatsStoreItem> statsList)
+        {
+            if (this.fail) {
+                throw new RuntimeException("Failed to store " + this.name);
+            }
+
+            stored.add(this.context.getWikiId() + ':' + this.name + '=' + this.hits);
+        }
+    }
+
+    @Before
+    public void configure() throws Exception
+    {
+        this.store = this.oldcore.getSpyXWiki().getHibernateStore();
+        when(this.store.beginTransaction(any(XWikiContext.class))).then(invocation -> {
+            this.transactions.add(((XWikiContext) invocation.getArgument(0)).getWikiId());
+            return true;
+        });
+    }
+
+    private TestStatsStoreItem item(String wiki, String name)
+    {
+        XWikiContext context = this.oldcore.getXWikiContext();
+        String currentWiki = context.getWikiId();
+        try {
+            context.setWikiId(wiki);
+            return new TestStatsStoreItem(name, context);
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+    }
+
+    @Test
+    public void aggregateStatistics() throws Exception
+    {
+        XWikiStatsStoreService service = new XWikiStatsStoreService(this.oldcore.getXWikiContext());
+
+        service.add(item("wiki", "A"));
+        service.add(item("wiki", "B"));
+        service.add(item("wiki", "A"));
+        service.add(item("wiki", "A"));
+
+        service.flush();
+
+        assertEquals(Arrays.asList("wiki:A=3", "wiki:B=1"), this.stored);
+
+        // Nothing is stored twice
+        service.flush();
+
+        assertEquals(2, this.stored.size());
+    }
+
+    @Test
+    public void aggregateDocumentStatistics() throws Exception
+    {
+        XWikiStatsStoreService service = new XWikiStatsStoreService(this.oldcore.getXWikiContext());
+
+        Date date = new Date();
+        XWikiContext context = this.oldcore.getXWikiContext();
+        service.add(new DocumentStatsStoreItem("Space.Page", date, PeriodType.DAY, "view", true, context));
+        service.add(new DocumentStatsStoreItem("Space.Page", date, PeriodType.DAY, "view", false, context));
+        service.add(new DocumentStatsStoreItem("Space.Page", date, PeriodType.DAY, "view", true, context));
+
+        service.flush();
+
+        // A single load and save for all the hits
+        ArgumentCaptor<DocumentStats> statsCaptor = ArgumentCaptor.forClass(DocumentStats.class);
+        verify(this.store).saveXWikiCollection(statsCaptor.capture(), any(XWikiContext.class), eq(true));
+        assertEquals(3, statsCaptor.getValue().getPageViews());
+        assertEquals(2, statsCaptor.getValue().getVisits());
+    }
+
+    @Test
+    public void flushPerWiki() throws Exception
+    {
+        XWikiStatsStoreService service = new XWikiStatsStoreService(this.oldcore.getXWikiContext());
+
+        service.add(item("wiki1", "A"));
+        service.add(item("wiki2", "B"));
+        service.add(item("wiki1", "C"));
+        service.add(item("wiki2", "D"));
+
+        service.flush();
+
+        // One transaction per wiki, the statistics being stored in the order they were added
+        assertEquals(Arrays.asList("wiki1", "wiki2"), this.transactions);
+        assertEquals(Arrays.asList("wiki1:A=1", "wiki1:C=1", "wiki2:B=1", "wiki2:D=1"), this.stored);
+        verify(this.store, times(2)).endTransaction(any(XWikiContext.class), eq(true));
+    }
+
+    @Test
+    public void storeOneByOneWhenTransactionFails() throws Exception
+    {
+        XWikiStatsStoreService service = new XWikiStatsStoreService(this.oldcore.getXWikiContext());
+
+        TestStatsStoreItem failing = item("wiki", "B");
+        failing.fail = true;
+        service.add(item("wiki", "A"));
+        service.add(failing);
+        service.add(item("wiki", "C"));
+
+        service.flush();
+
+        // The whole transaction is rolled back, then each statistic is stored in its own transaction
+        assertEquals(Arrays.asList("wiki", "wiki", "wiki", "wiki"), this.transactions);
+        verify(this.store, times(2)).endTransaction(any(XWikiContext.class), eq(false));
+        verify(this.store, times(2)).endTransaction(any(XWikiContext.class), eq(true));
+        assertEquals(Arrays.asList("wiki:A=1", "wiki:A=1", "wiki:C=1"), this.stored);
+    }
+
+    @Test
+    public void dropStatisticsWhenTooManyAreWaiting() throws Exception
+    {
+        this.oldcore.getMockXWikiCfg().setProperty("stats.queue.size", 2L);
+        XWikiStatsStoreService service = new XWikiStatsStoreService(this.oldcore.getXWikiContext());
+
+        service.add(item("wiki", "A"));
+        service.add(item("wiki", "B"));
+        service.add(item("wiki", "C"));
+        // The waiting statistics are still updated
+        service.add(item("wiki", "A"));
+
+        service.flush();
+
+        assertEquals(Arrays.asList("wiki:A=2", "wiki:B=1"), this.stored);
+
+        // There's room again once the statistics are stored
+        service.add(item("wiki", "C"));
+
+        service.flush();
+
+        assertEquals(Arrays.asList("wiki:A=2", "wiki:B=1", "wiki:C=1"), this.stored);
+    }
+}
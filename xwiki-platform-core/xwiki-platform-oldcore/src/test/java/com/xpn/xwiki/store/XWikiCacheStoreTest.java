@@ -19,6 +19,14 @@
  */
 package com.xpn.xwiki.store;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -34,11 +42,14 @@
 import com.xpn.xwiki.test.MockitoOldcoreRule;
 
 import static com.xpn.xwiki.test.mockito.OldcoreMatchers.isCacheConfiguration;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -115,4 +126,208 @@ public void testLoadXWikiDoc() throws Exception
         verifyNoMoreInteractions(this.cache);
         verifyNoMoreInteractions(this.existCache);
     }
+
+    @Test(timeout = 10000)
+    public void loadXWikiDocCoalescesConcurrentLoads() throws Exception
+    {
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        XWikiDocument storedDocument = new XWikiDocument(reference);
+        storedDocument.setNew(false);
+
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch loadAllowed = new CountDownLatch(1);
+        XWikiStoreInterface storeInterface = mock(XWikiStoreInterface.class);
+        when(storeInterface.loadXWikiDoc(any(XWikiDocument.class), any())).then(invocation -> {
+            loadStarted.countDown();
+            loadAllowed.await();
+
+            return storedDocument;
+        });
+
+        XWikiCacheStore store = new XWikiCacheStore(storeInterface, this.oldcore.getXWikiContext());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<XWikiDocument> first = executor
+                .submit(() -> store.loadXWikiDoc(new XWikiDocument(reference), this.oldcore.getXWikiContext()));
+            loadStarted.await();
+            Future<XWikiDocument> second = executor
+                .submit(() -> store.loadXWikiDoc(new XWikiDocument(reference), this.oldcore.getXWikiContext()));
+
+            while (store.getCoalescedLoadCount() == 0) {
+                Thread.sleep(10);
+            }
+            loadAllowed.countDown();
+
+            assertSame(storedDocument, first.get());
+            assertSame(storedDocument, second.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(storeInterface, times(1)).loadXWikiDoc(any(XWikiDocument.class), any());
+        assertEquals(1, store.getCoalescedLoadCount());
+    }
+
+    @Test(timeout = 10000)
+    public void loadXWikiDocWithCrossDependentLoads() throws Exception
+    {
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+
+        DocumentReference reference1 = new DocumentReference("wiki", "space", "page1");
+        DocumentReference reference2 = new DocumentReference("wiki", "space", "page2");
+        XWikiDocument storedDocument1 = new XWikiDocument(reference1);
+        storedDocument1.setNew(false);
+        XWikiDocument storedDocument2 = new XWikiDocument(reference2);
+        storedDocument2.setNew(false);
+
+        CountDownLatch load1Started = new CountDownLatch(1);
+        CountDownLatch load2Started = new CountDownLatch(1);
+        AtomicInteger loads1 = new AtomicInteger();
+        AtomicInteger loads2 = new AtomicInteger();
+        XWikiStoreInterface storeInterface = mock(XWikiStoreInterface.class);
+        XWikiCacheStore store = new XWikiCacheStore(storeInterface, this.oldcore.getXWikiContext());
+
+        // Loading each document loads the other one (like a document containing an object of a class defined in the
+        // other document)
+        when(storeInterface.loadXWikiDoc(any(XWikiDocument.class), any())).then(invocation -> {
+            XWikiDocument document = invocation.getArgument(0);
+            if (document.getDocumentReference().equals(reference1)) {
+                if (loads1.incrementAndGet() == 1) {
+                    load1Started.countDown();
+                    load2Started.await();
+                    store.loadXWikiDoc(new XWikiDocument(reference2), this.oldcore.getXWikiContext());
+                }
+
+                return storedDocument1;
+            } else {
+                if (loads2.incrementAndGet() == 1) {
+                    load2Started.countDown();
+                    load1Started.await();
+                    store.loadXWikiDoc(new XWikiDocument(reference1), this.oldcore.getXWikiContext());
+                }
+
+                return storedDocument2;
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<XWikiDocument> first = executor
+                .submit(() -> store.loadXWikiDoc(new XWikiDocument(reference1), this.oldcore.getXWikiContext()));
+            Future<XWikiDocument> second = executor
+                .submit(() -> store.loadXWikiDoc(new XWikiDocument(reference2), this.oldcore.getXWikiContext()));
+
+            assertSame(storedDocument1, first.get());
+            assertSame(storedDocument2, second.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void loadXWikiDocs() throws Exception
+    {
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+
+        DocumentReference cachedReference = new DocumentReference("wiki", "space", "cached");
+        DocumentReference existingReference = new DocumentReference("wiki", "space", "existing");
+        DocumentReference missingReference = new DocumentReference("otherwiki", "space", "missing");
+
+        XWikiDocument cachedDocument = new XWikiDocument(cachedReference);
+        when(this.cache.get("4:wiki5:space6:cached")).thenReturn(cachedDocument);
+
+        XWikiDocument existingDocument = new XWikiDocument(existingReference);
+        existingDocument.setNew(false);
+        XWikiStoreInterface storeInterface = mock(XWikiStoreInterface.class);
+        when(storeInterface.loadXWikiDocs(any(), any()))
+            .thenReturn(Arrays.asList(existingDocument, new XWikiDocument(missingReference)));
+
+        XWikiCacheStore store = new XWikiCacheStore(storeInterface, this.oldcore.getXWikiContext());
+
+        List<XWikiDocument> documents = store.loadXWikiDocs(
+            Arrays.asList(cachedReference, existingReference, missingReference), this.oldcore.getXWikiContext());
+
+        assertEquals(3, documents.size());
+        assertSame(cachedDocument, documents.get(0));
+        assertTrue(cachedDocument.isFromCache());
+        assertSame(existingDocument, documents.get(1));
+        assertTrue(documents.get(2).isNew());
+        assertEquals(missingReference, documents.get(2).getDocumentReference());
+        assertEquals("wiki", this.oldcore.getXWikiContext().getWikiId());
+
+        verify(storeInterface).loadXWikiDocs(any(), any());
+        verify(storeInterface, never()).loadXWikiDoc(any(), any());
+        verify(this.cache).set("4:wiki5:space8:existing", existingDocument);
+        verify(this.existCache).set("4:wiki5:space8:existing", Boolean.TRUE);
+        verify(this.existCache).set("9:otherwiki5:space7:missing", Boolean.FALSE);
+    }
+
+    @Test(timeout = 5000)
+    public void loadXWikiDocsWhileLoadingTheSameDocument() throws Exception
+    {
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        XWikiDocument storedDocument = new XWikiDocument(reference);
+        storedDocument.setNew(false);
+
+        XWikiStoreInterface storeInterface = mock(XWikiStoreInterface.class);
+        XWikiCacheStore store = new XWikiCacheStore(storeInterface, this.oldcore.getXWikiContext());
+
+        // The document is needed to load itself (e.g. an object of a class defined in the same document)
+        AtomicInteger loads = new AtomicInteger();
+        when(storeInterface.loadXWikiDocs(any(), any())).then(invocation -> {
+            if (loads.incrementAndGet() == 1) {
+                store.loadXWikiDocs(Arrays.asList(reference), this.oldcore.getXWikiContext());
+            }
+
+            return Arrays.asList(storedDocument);
+        });
+
+        List<XWikiDocument> documents =
+            store.loadXWikiDocs(Arrays.asList(reference), this.oldcore.getXWikiContext());
+
+        assertSame(storedDocument, documents.get(0));
+        assertEquals(2, loads.get());
+        // The nested load does not wait for the top level one but still updates the cache
+        verify(this.cache, times(2)).set("4:wiki5:space4:page", storedDocument);
+    }
+
+    @Test
+    public void loadXWikiDocWhileLoadingAnotherDocument() throws Exception
+    {
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        DocumentReference classReference = new DocumentReference("wiki", "space", "class");
+        XWikiDocument storedDocument = new XWikiDocument(reference);
+        storedDocument.setNew(false);
+        XWikiDocument storedClassDocument = new XWikiDocument(classReference);
+        storedClassDocument.setNew(false);
+
+        XWikiStoreInterface storeInterface = mock(XWikiStoreInterface.class);
+        XWikiCacheStore store = new XWikiCacheStore(storeInterface, this.oldcore.getXWikiContext());
+
+        // Loading the document loads the class of its objects
+        when(storeInterface.loadXWikiDoc(any(XWikiDocument.class), any())).then(invocation -> {
+            XWikiDocument document = invocation.getArgument(0);
+            if (document.getDocumentReference().equals(reference)) {
+                store.loadXWikiDoc(new XWikiDocument(classReference), this.oldcore.getXWikiContext());
+
+                return storedDocument;
+            }
+
+            return storedClassDocument;
+        });
+
+        assertSame(storedDocument, store.loadXWikiDoc(new XWikiDocument(reference), this.oldcore.getXWikiContext()));
+
+        // The nested load fills the caches too
+        verify(this.cache).set("4:wiki5:space5:class", storedClassDocument);
+        verify(this.existCache).set("4:wiki5:space5:class", Boolean.TRUE);
+        verify(this.cache).set("4:wiki5:space4:page", storedDocument);
+    }
 }
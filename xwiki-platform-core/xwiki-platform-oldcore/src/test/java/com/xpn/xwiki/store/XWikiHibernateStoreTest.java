@@ -19,16 +19,20 @@
  */
 package com.xpn.xwiki.store;
 
+import java.io.Serializable;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
 import org.hibernate.FlushMode;
+import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.SQLQuery;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.hibernate.dialect.Dialect;
 import org.hibernate.engine.SessionFactoryImplementor;
 import org.hibernate.id.SequenceGenerator;
@@ -44,7 +48,10 @@
 import org.xwiki.query.QueryManager;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.doc.XWikiDocumentLazyLoader;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.BaseProperty;
 import com.xpn.xwiki.objects.LargeStringProperty;
@@ -52,10 +59,13 @@
 import com.xpn.xwiki.store.migration.DataMigrationManager;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -330,4 +340,145 @@ public void getTranslationList() throws Exception
         verify(query).bindValue("space", "Path.To");
         verify(query).bindValue("name", documentReference.getName());
     }
+
+    /**
+     * The original document shares the lazy loaders of the saved document and must keep the state it had before the
+     * save so that the object and attachment events can be generated.
+     */
+    @Test
+    public void saveLazilyLoadedDocumentKeepsTheOriginalState() throws Exception
+    {
+        DocumentReference documentReference = new DocumentReference("wiki", "Space", "Page");
+        DocumentReference classReference = new DocumentReference("wiki", "Space", "Class");
+
+        // The state stored in the database
+        String[] stored = new String[] {"before", "1.1"};
+        XWikiDocumentLazyLoader objectsLoader = document -> {
+            BaseObject object = new BaseObject();
+            object.setGuid(stored[0]);
+            document.getXObjects().put(classReference, new ArrayList<>(Arrays.asList(object)));
+        };
+        XWikiDocumentLazyLoader attachmentsLoader = document -> {
+            XWikiAttachment attachment = new XWikiAttachment(document, "file.txt");
+            attachment.setVersion(stored[1]);
+            document.getAttachmentList().add(attachment);
+        };
+
+        XWikiDocument original = new XWikiDocument(documentReference);
+        original.setXObjectsLoader(objectsLoader);
+        original.setAttachmentsLoader(attachmentsLoader);
+        XWikiDocument doc = new XWikiDocument(documentReference);
+        doc.setXObjectsLoader(objectsLoader);
+        doc.setAttachmentsLoader(attachmentsLoader);
+        doc.setOriginalDocument(original);
+
+        // Modify the saved document
+        doc.getXObjects().get(classReference).get(0).setGuid("after");
+        doc.getAttachmentList().get(0).setVersion("1.2");
+
+        // The database is modified once the transaction is started
+        when(this.hibernateStore.beginTransaction(any(SessionFactory.class))).then(invocation -> {
+            stored[0] = "after";
+            stored[1] = "1.2";
+            throw new XWikiException();
+        });
+
+        try {
+            this.store.saveXWikiDoc(doc, this.xcontext);
+            fail();
+        } catch (XWikiException expected) {
+            // The rest of the save is not tested here
+        }
+
+        assertEquals("1.2", stored[1]);
+        assertEquals("before", original.getXObjects().get(classReference).get(0).getGuid());
+        assertEquals("1.1", original.getAttachmentList().get(0).getVersion());
+    }
+
+    @Test
+    public void loadXWikiDocs() throws Exception
+    {
+        DocumentReference pageReference = new DocumentReference("wiki", "Space", "Page");
+        DocumentReference otherReference = new DocumentReference("wiki", "Space", "Other");
+        DocumentReference missingReference = new DocumentReference("wiki", "Space", "Missing");
+
+        // The existing documents are found with a single query
+        Query existQuery = mock(Query.class);
+        when(session.createQuery("select doc.id from XWikiDocument as doc where doc.id in (:ids)"))
+            .thenReturn(existQuery);
+        when(existQuery.list()).thenReturn(
+            Arrays.asList(new XWikiDocument(pageReference).getId(), new XWikiDocument(otherReference).getId()));
+
+        // Only the first document has objects
+        doAnswer(invocation -> {
+            XWikiDocument document = invocation.getArgument(0);
+            document.setElements(pageReference.equals(document.getDocumentReference()) ? XWikiDocument.HAS_OBJECTS : 0);
+            return null;
+        }).when(session).load(any(XWikiDocument.class), any(Serializable.class));
+
+        Query objectsQuery = mock(Query.class);
+        when(session.createQuery(
+            "from BaseObject as bobject where bobject.name in (:names) order by bobject.name, bobject.number"))
+                .thenReturn(objectsQuery);
+
+        List<XWikiDocument> documents =
+            store.loadXWikiDocs(Arrays.asList(pageReference, missingReference, otherReference), xcontext);
+
+        assertEquals(3, documents.size());
+        assertEquals(pageReference, documents.get(0).getDocumentReference());
+        assertFalse(documents.get(0).isNew());
+        assertEquals(missingReference, documents.get(1).getDocumentReference());
+        assertTrue(documents.get(1).isNew());
+        assertEquals(otherReference, documents.get(2).getDocumentReference());
+        assertFalse(documents.get(2).isNew());
+
+        verify(existQuery).list();
+        verify(objectsQuery).list();
+        verify(session, never())
+            .createQuery("from BaseObject as bobject where bobject.name = :name order by bobject.number");
+    }
+
+    @Test
+    public void loadXWikiDocsOneByOneWhenTheBatchFails() throws Exception
+    {
+        DocumentReference pageReference = new DocumentReference("wiki", "Space", "Page");
+        DocumentReference otherReference = new DocumentReference("wiki", "Space", "Other");
+
+        Query existQuery = mock(Query.class);
+        when(session.createQuery("select doc.id from XWikiDocument as doc where doc.id in (:ids)"))
+            .thenReturn(existQuery);
+        when(existQuery.list()).thenReturn(
+            Arrays.asList(new XWikiDocument(pageReference).getId(), new XWikiDocument(otherReference).getId()));
+
+        doAnswer(invocation -> {
+            XWikiDocument document = invocation.getArgument(0);
+            document.setElements(XWikiDocument.HAS_OBJECTS);
+            return null;
+        }).when(session).load(any(XWikiDocument.class), any(Serializable.class));
+
+        // Loading the objects of all the documents at once fails
+        Query objectsQuery = mock(Query.class);
+        when(session.createQuery(
+            "from BaseObject as bobject where bobject.name in (:names) order by bobject.name, bobject.number"))
+                .thenReturn(objectsQuery);
+        when(objectsQuery.list()).thenThrow(new HibernateException("too many parameters"));
+
+        Query documentObjectsQuery = mock(Query.class);
+        when(session.createQuery("from BaseObject as bobject where bobject.name = :name order by bobject.number"))
+            .thenReturn(documentObjectsQuery);
+
+        List<XWikiDocument> documents = store.loadXWikiDocs(Arrays.asList(pageReference, otherReference), xcontext);
+
+        assertEquals(2, documents.size());
+        assertEquals(pageReference, documents.get(0).getDocumentReference());
+        assertFalse(documents.get(0).isNew());
+        assertEquals(otherReference, documents.get(1).getDocumentReference());
+        assertFalse(documents.get(1).isNew());
+
+        verify(documentObjectsQuery, times(2)).list();
+        verify(this.mocker.getMockedLogger()).warn(
+            "Failed to load the [{}] documents starting with [{}] at once, loading them one by one."
+                + " Root cause: [{}]",
+            2, pageReference, "HibernateException: too many parameters");
+    }
 }
@@ -20,13 +20,16 @@
 package com.xpn.xwiki.web;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Date;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -46,14 +49,19 @@
 import com.xpn.xwiki.plugin.XWikiPluginManager;
 import com.xpn.xwiki.test.MockitoOldcoreRule;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -590,6 +598,87 @@ public void downloadWhenEmptyRange() throws XWikiException, IOException
         verifyResponseExpectations(d.getTime(), this.fileContent.length);
     }
 
+    @Test
+    public void downloadWhenMultipleRanges() throws XWikiException, IOException
+    {
+        Date d = new Date();
+        createAttachment(d, DEFAULT_FILE_NAME);
+        setRequestExpectations(DEFAULT_URI, null, null, "bytes=0-1, 4-5", -1L, DEFAULT_FILE_NAME);
+        ByteArrayOutputStream output = captureOutput();
+
+        assertNull(this.action.render(this.oldcore.getXWikiContext()));
+
+        verify(this.response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(this.response).setContentType(argThat(type -> type.startsWith("multipart/byteranges; boundary=")));
+        String content = output.toString(XWiki.DEFAULT_ENCODING);
+        assertTrue(content.contains("Content-Type: text/plain\r\nContent-Range: bytes 0-1/14\r\n\r\nab\r\n--"));
+        assertTrue(content.contains("Content-Type: text/plain\r\nContent-Range: bytes 4-5/14\r\n\r\nef\r\n--"));
+        assertTrue(content.endsWith("--\r\n"));
+    }
+
+    @Test
+    public void downloadWhenOverlappingRanges() throws XWikiException, IOException
+    {
+        Date d = new Date();
+        createAttachment(d, DEFAULT_FILE_NAME);
+        // Overlapping and adjacent ranges are merged into a single range
+        setRequestExpectations(DEFAULT_URI, null, null, "bytes=4-5, 0-2, 1-3", -1L, DEFAULT_FILE_NAME);
+
+        assertNull(this.action.render(this.oldcore.getXWikiContext()));
+
+        verify(this.response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(this.response).setHeader("Content-Range", "bytes 0-5/" + this.fileContent.length);
+        verifyResponseExpectations(d.getTime(), 6);
+        verifyOutputExpectations(0, 6);
+    }
+
+    @Test
+    public void downloadWhenTooManyRanges() throws XWikiException, IOException
+    {
+        Date d = new Date();
+        createAttachment(d, DEFAULT_FILE_NAME);
+        setRequestExpectations(DEFAULT_URI, null, null, "bytes=0-0" + StringUtils.repeat(", 0-0", 16), -1L,
+            DEFAULT_FILE_NAME);
+
+        assertNull(this.action.render(this.oldcore.getXWikiContext()));
+
+        verify(this.response, never()).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verifyResponseExpectations(d.getTime(), this.fileContent.length);
+        verifyOutputExpectations(0, this.fileContent.length);
+    }
+
+    @Test
+    public void downloadRangeWhenContentStoredInFile() throws XWikiException, IOException
+    {
+        // Big enough to be stored in a temporary file and transferred from the file channel
+        this.fileContent = new byte[20000];
+        for (int i = 0; i < this.fileContent.length; ++i) {
+            this.fileContent[i] = (byte) i;
+        }
+        Date d = new Date();
+        createAttachment(d, DEFAULT_FILE_NAME);
+        setRequestExpectations(DEFAULT_URI, null, null, "bytes=15000-15009", -1L, DEFAULT_FILE_NAME);
+        ByteArrayOutputStream output = captureOutput();
+
+        assertNull(this.action.render(this.oldcore.getXWikiContext()));
+
+        verify(this.response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(this.response).setHeader("Content-Range", "bytes 15000-15009/20000");
+        verifyResponseExpectations(d.getTime(), 10);
+        assertArrayEquals(Arrays.copyOfRange(this.fileContent, 15000, 15010), output.toByteArray());
+    }
+
+    private ByteArrayOutputStream captureOutput() throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        doAnswer(invocation -> {
+            output.write(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(this.out).write(any(byte[].class), anyInt(), anyInt());
+
+        return output;
+    }
+
     private void createAttachment(Date d, String name) throws IOException
     {
         XWikiAttachment filetxt = new XWikiAttachment(this.document, name);
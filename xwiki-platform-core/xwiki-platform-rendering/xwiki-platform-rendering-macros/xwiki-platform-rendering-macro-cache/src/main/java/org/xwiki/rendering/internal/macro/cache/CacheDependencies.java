@@ -0,0 +1,226 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Keep track of the documents the cached content entries depend on so that the entries can be discarded when one of
+ * these documents is modified or deleted.
+ * <p>
+ * The dependencies of an entry are registered before its content is rendered so that a modification happening during
+ * the rendering is not missed, and they are forgotten when the entry is removed from the cache (expired, evicted or
+ * invalidated). It's shared by the {@link CacheMacro}, which registers the dependencies, and the
+ * {@link CacheMacroDependencyListener}, which invalidates the entries.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = CacheDependencies.class)
+@Singleton
+public class CacheDependencies
+{
+    /**
+     * A cached content entry with the documents it depends on.
+     *
+     * @version $Id$
+     */
+    public static final class DependentEntry
+    {
+        private final Cache<List<Block>> cache;
+
+        private final String key;
+
+        private final Collection<DocumentReference> dependencies;
+
+        /**
+         * {@code true} when one of the dependencies has been modified since the entry has been registered.
+         */
+        private volatile boolean invalidated;
+
+        private DependentEntry(Cache<List<Block>> cache, String key, Collection<DocumentReference> dependencies)
+        {
+            this.cache = cache;
+            this.key = key;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * Forget the dependencies of the entries removed from a content cache.
+     *
+     * @version $Id$
+     */
+    private final class RemovedEntryListener implements CacheEntryListener<List<Block>>
+    {
+        private final Map<String, DependentEntry> cachedEntries;
+
+        RemovedEntryListener(Map<String, DependentEntry> cachedEntries)
+        {
+            this.cachedEntries = cachedEntries;
+        }
+
+        @Override
+        public void cacheEntryAdded(CacheEntryEvent<List<Block>> event)
+        {
+            // Dependencies are registered explicitly.
+        }
+
+        @Override
+        public void cacheEntryRemoved(CacheEntryEvent<List<Block>> event)
+        {
+            DependentEntry entry = this.cachedEntries.remove(event.getEntry().getKey());
+            if (entry != null) {
+                unregister(entry);
+            }
+        }
+
+        @Override
+        public void cacheEntryModified(CacheEntryEvent<List<Block>> event)
+        {
+            // The previous dependencies are forgotten when the new ones are cached.
+        }
+    }
+
+    /**
+     * The cached content entries to discard when a given document is modified or deleted.
+     */
+    private final Map<DocumentReference, Set<DependentEntry>> dependentEntries = new ConcurrentHashMap<>();
+
+    /**
+     * The entries with dependencies that are currently cached, per content cache and key.
+     */
+    private final Map<Cache<List<Block>>, Map<String, DependentEntry>> cachedEntries = new ConcurrentHashMap<>();
+
+    /**
+     * Start tracking the removal of the entries of the passed content cache.
+     *
+     * @param cache the content cache
+     */
+    public void listen(Cache<List<Block>> cache)
+    {
+        Map<String, DependentEntry> entries = new ConcurrentHashMap<>();
+        this.cachedEntries.put(cache, entries);
+        cache.addCacheEntryListener(new RemovedEntryListener(entries));
+    }
+
+    /**
+     * Register the dependencies of an entry that is about to be rendered.
+     *
+     * @param cache the cache that will contain the entry
+     * @param key the key of the entry in the cache
+     * @param dependencies the references of the documents the entry depends on
+     * @return the registered entry, {@code null} if there are no dependencies
+     */
+    public DependentEntry register(Cache<List<Block>> cache, String key, Collection<DocumentReference> dependencies)
+    {
+        if (dependencies.isEmpty()) {
+            return null;
+        }
+
+        DependentEntry entry = new DependentEntry(cache, key, dependencies);
+        for (DocumentReference dependency : dependencies) {
+            // Add the entry atomically so that it's not added to a set being discarded
+            this.dependentEntries.compute(getDependencyKey(dependency), (reference, entries) -> {
+                Set<DependentEntry> result =
+                    entries != null ? entries : Collections.newSetFromMap(new ConcurrentHashMap<>());
+                result.add(entry);
+                return result;
+            });
+        }
+
+        return entry;
+    }
+
+    /**
+     * Indicate that the content of a registered entry has been put in the cache. The entry is removed from the cache
+     * if one of its dependencies has been modified while its content was rendered.
+     *
+     * @param entry the registered entry
+     */
+    public void cached(DependentEntry entry)
+    {
+        Map<String, DependentEntry> entries = this.cachedEntries.get(entry.cache);
+        if (entries != null) {
+            DependentEntry previousEntry = entries.put(entry.key, entry);
+            if (previousEntry != null && previousEntry != entry) {
+                unregister(previousEntry);
+            }
+        }
+
+        if (entry.invalidated) {
+            entry.cache.remove(entry.key);
+        }
+    }
+
+    /**
+     * Forget the dependencies of the passed entry.
+     *
+     * @param entry the registered entry
+     */
+    public void unregister(DependentEntry entry)
+    {
+        for (DocumentReference dependency : entry.dependencies) {
+            this.dependentEntries.computeIfPresent(getDependencyKey(dependency), (reference, entries) -> {
+                entries.remove(entry);
+                return entries.isEmpty() ? null : entries;
+            });
+        }
+    }
+
+    /**
+     * Discard the cached entries depending on the passed document.
+     *
+     * @param documentReference the reference of the document which has been modified or deleted
+     */
+    public void invalidate(DocumentReference documentReference)
+    {
+        Set<DependentEntry> entries = this.dependentEntries.remove(getDependencyKey(documentReference));
+        if (entries != null) {
+            for (DependentEntry entry : entries) {
+                entry.invalidated = true;
+                // Triggers the removal of the other dependencies of the entry
+                entry.cache.remove(entry.key);
+            }
+        }
+    }
+
+    private DocumentReference getDependencyKey(DocumentReference documentReference)
+    {
+        // Ignore the locale of the modified document
+        return documentReference.getLocale() != null ? new DocumentReference(documentReference, (Locale) null)
+            : documentReference;
+    }
+}
@@ -19,20 +19,26 @@
  */
 package org.xwiki.rendering.internal.macro.cache;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheException;
 import org.xwiki.cache.CacheManager;
 import org.xwiki.cache.config.LRUCacheConfiguration;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.internal.macro.cache.CacheDependencies.DependentEntry;
 import org.xwiki.rendering.macro.AbstractMacro;
 import org.xwiki.rendering.macro.MacroContentParser;
 import org.xwiki.rendering.macro.MacroExecutionException;
@@ -89,6 +95,19 @@ public class CacheMacro extends AbstractMacro<CacheMacroParameters>
      */
     private Map<CacheKey, Cache<List<Block>>> contentCacheMap = new ConcurrentHashMap<>();
 
+    /**
+     * Used to resolve the references of the documents the cached content depends on.
+     */
+    @Inject
+    @Named("current")
+    private Provider<DocumentReferenceResolver<String>> documentReferenceResolverProvider;
+
+    /**
+     * The documents the cached content entries depend on.
+     */
+    @Inject
+    private CacheDependencies dependencies;
+
     /**
      * Create and initialize the descriptor of the macro.
      */
@@ -125,16 +144,54 @@ public List<Block> execute(CacheMacroParameters parameters, String content, Macr
         Cache<List<Block>> contentCache = getContentCache(parameters.getTimeToLive(), parameters.getMaxEntries());
         List<Block> result = contentCache.get(cacheKey);
         if (result == null) {
-            // Run the parser for the syntax on the content
-            // We run the current transformation on the cache macro content. We need to do this since we want to cache
-            // the XDOM resulting from the execution of Macros because that's where lengthy processing happens.
-            result = this.contentParser.parse(content, context, true, context.isInline()).getChildren();
+            // Register the dependencies before rendering the content so that a modification of one of them during the
+            // rendering discards the rendered content.
+            DependentEntry dependentEntry = this.dependencies.register(contentCache, cacheKey,
+                resolveDependencies(parameters.getDependencies()));
+
+            try {
+                // Run the parser for the syntax on the content
+                // We run the current transformation on the cache macro content. We need to do this since we want to
+                // cache the XDOM resulting from the execution of Macros because that's where lengthy processing
+                // happens.
+                result = this.contentParser.parse(content, context, true, context.isInline()).getChildren();
+            } catch (MacroExecutionException | RuntimeException e) {
+                if (dependentEntry != null) {
+                    this.dependencies.unregister(dependentEntry);
+                }
+                throw e;
+            }
+
             contentCache.set(cacheKey, result);
+
+            if (dependentEntry != null) {
+                this.dependencies.cached(dependentEntry);
+            }
         }
 
         return result;
     }
 
+    /**
+     * @param dependencies the comma separated list of references of the documents the cached entry depends on
+     * @return the resolved references of the documents the cached entry depends on
+     */
+    private List<DocumentReference> resolveDependencies(String dependencies)
+    {
+        List<DocumentReference> references = new ArrayList<>();
+
+        if (StringUtils.isNotBlank(dependencies)) {
+            DocumentReferenceResolver<String> resolver = this.documentReferenceResolverProvider.get();
+            for (String dependency : StringUtils.split(dependencies, ',')) {
+                if (StringUtils.isNotBlank(dependency)) {
+                    references.add(resolver.resolve(dependency.trim()));
+                }
+            }
+        }
+
+        return references;
+    }
+
     /**
      * Get a cache matching the passed time to live and max entries.
      * <p>
@@ -164,6 +221,7 @@ Cache<List<Block>> getContentCache(int lifespan, int maxEntries) throws MacroExe
                 throw new MacroExecutionException("Failed to create content cache", e);
             }
 
+            this.dependencies.listen(contentCache);
             this.contentCacheMap.put(cacheKey, contentCache);
         }
 
@@ -44,6 +44,11 @@
      */
     private int maxEntries = 1000;
 
+    /**
+     * @see #getDependencies()
+     */
+    private String dependencies;
+
     /**
      * @return the optional unique id to use to cache the content. If not defined then use the content itself as the id
      *         but this doesn't guarantee unicity since the same content could be located on several pages with
@@ -97,4 +102,25 @@ public void setMaxEntries(int maxEntries)
     {
         this.maxEntries = maxEntries;
     }
+
+    /**
+     * @return the comma separated list of references of the documents on which the cached content depends: the cached
+     *         content is discarded as soon as one of these documents is modified or deleted
+     * @since 9.10RC1
+     */
+    public String getDependencies()
+    {
+        return this.dependencies;
+    }
+
+    /**
+     * @param dependencies refer to {@link #getDependencies()}
+     * @since 9.10RC1
+     */
+    @PropertyDescription("the comma separated list of references of the documents whose modification or deletion "
+        + "discards the cached content")
+    public void setDependencies(String dependencies)
+    {
+        this.dependencies = dependencies;
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheEntry;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.internal.macro.cache.CacheDependencies.DependentEntry;
+
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link CacheDependencies}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class CacheDependenciesTest
+{
+    private CacheDependencies dependencies = new CacheDependencies();
+
+    private Cache<List<Block>> cache;
+
+    private CacheEntryListener<List<Block>> listener;
+
+    private DocumentReference firstReference = new DocumentReference("wiki", "Space", "First");
+
+    private DocumentReference secondReference = new DocumentReference("wiki", "Space", "Second");
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void configure()
+    {
+        this.cache = mock(Cache.class);
+
+        this.dependencies.listen(this.cache);
+
+        ArgumentCaptor<CacheEntryListener<List<Block>>> listenerCaptor =
+            ArgumentCaptor.forClass(CacheEntryListener.class);
+        verify(this.cache).addCacheEntryListener(listenerCaptor.capture());
+        this.listener = listenerCaptor.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void removed(String key)
+    {
+        CacheEntry<List<Block>> entry = mock(CacheEntry.class);
+        when(entry.getKey()).thenReturn(key);
+        CacheEntryEvent<List<Block>> event = mock(CacheEntryEvent.class);
+        when(event.getEntry()).thenReturn(entry);
+
+        this.listener.cacheEntryRemoved(event);
+    }
+
+    @Test
+    public void registerWithoutDependencies()
+    {
+        assertNull(this.dependencies.register(this.cache, "key", Collections.emptyList()));
+    }
+
+    @Test
+    public void invalidate()
+    {
+        DependentEntry entry = this.dependencies.register(this.cache, "key", Arrays.asList(this.firstReference));
+        this.dependencies.cached(entry);
+
+        this.dependencies.invalidate(new DocumentReference("wiki", "Space", "Other"));
+        verify(this.cache, never()).remove("key");
+
+        this.dependencies.invalidate(this.firstReference);
+        verify(this.cache).remove("key");
+    }
+
+    @Test
+    public void invalidateWhileRendering()
+    {
+        DependentEntry entry = this.dependencies.register(this.cache, "key", Arrays.asList(this.firstReference));
+
+        // The dependency is modified before the rendered content is cached
+        this.dependencies.invalidate(this.firstReference);
+        this.dependencies.cached(entry);
+
+        // Once by the invalidation and once after the rendered content has been cached
+        verify(this.cache, times(2)).remove("key");
+    }
+
+    @Test
+    public void forgetDependenciesOfRemovedEntries()
+    {
+        DependentEntry entry = this.dependencies.register(this.cache, "key",
+            Arrays.asList(this.firstReference, this.secondReference));
+        this.dependencies.cached(entry);
+
+        // The entry expires or is evicted
+        removed("key");
+
+        this.dependencies.invalidate(this.firstReference);
+        this.dependencies.invalidate(this.secondReference);
+        verify(this.cache, never()).remove("key");
+    }
+
+    @Test
+    public void forgetOtherDependenciesOfInvalidatedEntries()
+    {
+        DependentEntry entry = this.dependencies.register(this.cache, "key",
+            Arrays.asList(this.firstReference, this.secondReference));
+        this.dependencies.cached(entry);
+
+        this.dependencies.invalidate(this.firstReference);
+        verify(this.cache).remove("key");
+        removed("key");
+
+        this.dependencies.invalidate(this.secondReference);
+        verify(this.cache).remove("key");
+    }
+
+    @Test
+    public void forgetDependenciesOfReplacedEntries()
+    {
+        DependentEntry entry = this.dependencies.register(this.cache, "key", Arrays.asList(this.firstReference));
+        this.dependencies.cached(entry);
+
+        DependentEntry newEntry = this.dependencies.register(this.cache, "key", Arrays.asList(this.secondReference));
+        this.dependencies.cached(newEntry);
+
+        this.dependencies.invalidate(this.firstReference);
+        verify(this.cache, never()).remove("key");
+    }
+
+    @Test
+    public void unregisterWhenRenderingFails()
+    {
+        DependentEntry entry = this.dependencies.register(this.cache, "key", Arrays.asList(this.firstReference));
+        this.dependencies.unregister(entry);
+
+        this.dependencies.invalidate(this.firstReference);
+        verify(this.cache, never()).remove("key");
+    }
+}
@@ -21,8 +21,15 @@
 
 import java.io.StringWriter;
 import java.util.List;
+import java.util.Locale;
 
+import org.jmock.Expectations;
 import org.junit.Test;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.internal.transformation.macro.MacroTransformation;
 import org.xwiki.rendering.macro.Macro;
@@ -215,6 +222,47 @@ public void executeWithDifferentMaxEntries() throws Exception
         assertFalse(result2.equals(result1));
     }
 
+    @Test
+    public void executeWithDependencies() throws Exception
+    {
+        final DocumentReference reference = new DocumentReference("wiki", "Space", "Page");
+        final DocumentReferenceResolver<String> resolver =
+            registerMockComponent(DocumentReferenceResolver.TYPE_STRING, "current");
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(resolver).resolve("Space.Page");
+                will(returnValue(reference));
+            }
+        });
+
+        CacheMacroParameters params = new CacheMacroParameters();
+        MacroTransformationContext context = createMacroTransformationContext();
+
+        params.setId("dependentid");
+        params.setDependencies("Space.Page");
+        List<Block> result1 = this.cacheMacro.execute(params, "content1", context);
+
+        // Execute a second time with different content to ensure the returned result is the cached one.
+        List<Block> result2 = this.cacheMacro.execute(params, "content2", context);
+        assertEquals(result1, result2);
+
+        // Save a translation of the document the content depends on and make sure the cached content is discarded.
+        final DocumentModelBridge document = getMockery().mock(DocumentModelBridge.class);
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(document).getDocumentReference();
+                will(returnValue(new DocumentReference(reference, Locale.FRENCH)));
+            }
+        });
+        ObservationManager observationManager = getComponentManager().getInstance(ObservationManager.class);
+        observationManager.notify(new DocumentUpdatedEvent(document.getDocumentReference()), document, null);
+
+        List<Block> result3 = this.cacheMacro.execute(params, "content2", context);
+        assertFalse(result3.equals(result1));
+    }
+
     private MacroTransformationContext createMacroTransformationContext() throws Exception
     {
         MacroTransformation macroTransformation = getComponentManager().getInstance(Transformation.class, "macro");
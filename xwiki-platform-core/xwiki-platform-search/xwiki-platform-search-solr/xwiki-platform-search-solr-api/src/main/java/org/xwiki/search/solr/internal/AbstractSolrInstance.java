@@ -61,6 +61,14 @@ public void add(SolrInputDocument solrDocument) throws SolrServerException, IOEx
         this.server.add(solrDocument);
     }
 
+    @Override
+    public void add(SolrInputDocument solrDocument, int commitWithin) throws SolrServerException, IOException
+    {
+        this.logger.debug("Add Solr document [{}] to index (commit within [{}] ms)", solrDocument, commitWithin);
+
+        this.server.add(solrDocument, commitWithin);
+    }
+
     @Override
     public void add(List<SolrInputDocument> solrDocuments) throws SolrServerException, IOException
     {
@@ -77,6 +85,14 @@ public void delete(String id) throws SolrServerException, IOException
         this.server.deleteById(id);
     }
 
+    @Override
+    public void delete(String id, int commitWithin) throws SolrServerException, IOException
+    {
+        this.logger.debug("Delete Solr document [{}] from index (commit within [{}] ms)", id, commitWithin);
+
+        this.server.deleteById(id, commitWithin);
+    }
+
     @Override
     public void delete(List<String> ids) throws SolrServerException, IOException
     {
@@ -93,6 +109,15 @@ public void deleteByQuery(String query) throws SolrServerException, IOException
         this.server.deleteByQuery(query);
     }
 
+    @Override
+    public void deleteByQuery(String query, int commitWithin) throws SolrServerException, IOException
+    {
+        this.logger.debug("Delete Solr documents from index based on query [{}] (commit within [{}] ms)", query,
+            commitWithin);
+
+        this.server.deleteByQuery(query, commitWithin);
+    }
+
     @Override
     public void commit() throws SolrServerException, IOException
     {
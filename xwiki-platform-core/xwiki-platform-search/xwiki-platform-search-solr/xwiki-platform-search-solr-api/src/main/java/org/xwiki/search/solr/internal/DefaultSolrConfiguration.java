@@ -104,6 +104,36 @@ public class DefaultSolrConfiguration implements SolrConfiguration
      */
     public static final int SOLR_INDEXER_QUEUE_CAPACITY_DEFAULT = 100000;
 
+    /**
+     * The name of the configuration property containing the number of metadata extraction threads.
+     */
+    public static final String SOLR_INDEXER_THREADS_PROPERTY = "solr.indexer.threads";
+
+    /**
+     * The default number of metadata extraction threads.
+     */
+    public static final int SOLR_INDEXER_THREADS_DEFAULT = 1;
+
+    /**
+     * The name of the configuration property containing the maximum time before an index change becomes visible.
+     */
+    public static final String SOLR_INDEXER_COMMITWITHIN_PROPERTY = "solr.indexer.commitWithin";
+
+    /**
+     * The default maximum time before an index change becomes visible (each batch is hard committed).
+     */
+    public static final int SOLR_INDEXER_COMMITWITHIN_DEFAULT = 0;
+
+    /**
+     * The name of the configuration property containing the time between two hard commits.
+     */
+    public static final String SOLR_INDEXER_HARDCOMMIT_INTERVAL_PROPERTY = "solr.indexer.hardCommitInterval";
+
+    /**
+     * The default time between two hard commits.
+     */
+    public static final int SOLR_INDEXER_HARDCOMMIT_INTERVAL_DEFAULT = 60000;
+
     /**
      * The name of the configuration property indicating if a synchronization should be run at startup.
      */
@@ -160,6 +190,25 @@ public int getIndexerQueueCapacity()
             .getProperty(SOLR_INDEXER_QUEUE_CAPACITY_PROPERTY, SOLR_INDEXER_QUEUE_CAPACITY_DEFAULT);
     }
 
+    @Override
+    public int getIndexerThreads()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_THREADS_PROPERTY, SOLR_INDEXER_THREADS_DEFAULT);
+    }
+
+    @Override
+    public int getIndexerCommitWithin()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_COMMITWITHIN_PROPERTY, SOLR_INDEXER_COMMITWITHIN_DEFAULT);
+    }
+
+    @Override
+    public int getIndexerHardCommitInterval()
+    {
+        return this.configuration
+            .getProperty(SOLR_INDEXER_HARDCOMMIT_INTERVAL_PROPERTY, SOLR_INDEXER_HARDCOMMIT_INTERVAL_DEFAULT);
+    }
+
     @Override
     public boolean synchronizeAtStartup()
     {
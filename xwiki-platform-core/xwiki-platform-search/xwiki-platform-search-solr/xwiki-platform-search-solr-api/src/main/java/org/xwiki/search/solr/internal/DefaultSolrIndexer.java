@@ -19,14 +19,27 @@
  */
 package org.xwiki.search.solr.internal;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrInputDocument;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
@@ -62,7 +75,14 @@
  * <p>
  * This implementation does not directly process the given leaf-references, but adds them to a processing queue, in the
  * order they were received. The {@link Runnable} part of this implementation is the one that sequentially reads and
- * processes the queue.
+ * processes the queue. The extraction of the metadata to index can be distributed on several threads (see
+ * {@link SolrConfiguration#getIndexerThreads()}) but the operations are always sent to the Solr server in the order in
+ * which they were queued so that an update never overtakes a following delete of the same entity.
+ * <p>
+ * By default each batch of operations is hard committed so that it becomes visible to searches. When
+ * {@link SolrConfiguration#getIndexerCommitWithin()} is set the operations are instead sent with a "commitWithin" delay
+ * so that the Solr server makes them visible using cheap soft commits, and the changes are only hard committed every
+ * {@link SolrConfiguration#getIndexerHardCommitInterval()} milliseconds.
  * 
  * @version $Id$
  * @since 5.1M2
@@ -93,10 +113,15 @@ public class DefaultSolrIndexer implements SolrIndexer, Initializable, Disposabl
         public String deleteQuery;
 
         /**
-         * The indexing operation to perform.
+         * The indexing operation to perform, {@code null} if there's nothing to send for the request.
          */
         public IndexOperation operation;
 
+        /**
+         * {@code true} if this is the last entry resolved from an index or delete request.
+         */
+        public boolean last;
+
         /**
          * @param indexReference the reference of the entity to index.
          * @param operation the indexing operation to perform.
@@ -120,6 +145,10 @@ public IndexQueueEntry(String deleteQuery, IndexOperation operation)
         @Override
         public String toString()
         {
+            if (operation == null) {
+                return "";
+            }
+
             String str;
 
             switch (operation) {
@@ -141,6 +170,34 @@ public String toString()
         }
     }
 
+    /**
+     * An index queue entry for which the metadata extraction has been started.
+     * 
+     * @version $Id$
+     */
+    private static class PendingIndexEntry
+    {
+        /**
+         * The index queue entry.
+         */
+        public final IndexQueueEntry entry;
+
+        /**
+         * The Solr document being extracted, {@code null} if the operation does not require any extraction.
+         */
+        public final Future<LengthSolrInputDocument> solrDocument;
+
+        /**
+         * @param entry the index queue entry
+         * @param solrDocument the Solr document being extracted
+         */
+        PendingIndexEntry(IndexQueueEntry entry, Future<LengthSolrInputDocument> solrDocument)
+        {
+            this.entry = entry;
+            this.solrDocument = solrDocument;
+        }
+    }
+
     /**
      * Resolve queue entry.
      * 
@@ -205,33 +262,65 @@ public void runInternal()
                 }
 
                 try {
-                    if (queueEntry.operation == IndexOperation.INDEX) {
-                        Iterable<EntityReference> references;
-                        if (queueEntry.recurse) {
-                            references = solrRefereceResolver.getReferences(queueEntry.reference);
-                        } else {
-                            references = Arrays.asList(queueEntry.reference);
-                        }
-
-                        for (EntityReference reference : references) {
-                            indexQueue.put(new IndexQueueEntry(reference, queueEntry.operation));
-                        }
-                    } else {
-                        if (queueEntry.recurse) {
-                            indexQueue.put(new IndexQueueEntry(solrRefereceResolver.getQuery(queueEntry.reference),
-                                queueEntry.operation));
-                        } else if (queueEntry.reference != null) {
-                            indexQueue.put(new IndexQueueEntry(queueEntry.reference, queueEntry.operation));
-                        }
+                    IndexQueueEntry lastEntry = resolve(queueEntry);
+                    if (lastEntry == null) {
+                        // Nothing to send but the request must be processed after the previous ones, so that it's
+                        // not counted as committed before them
+                        lastEntry = new IndexQueueEntry((EntityReference) null, null);
                     }
+                    // The request is processed when its last entry is sent
+                    lastEntry.last = true;
+                    indexQueue.put(lastEntry);
                 } catch (Throwable e) {
                     logger.warn("Failed to apply operation [{}] on root reference [{}]", queueEntry.operation,
                         queueEntry.reference, e);
+
+                    // The rest of the request won't reach the index thread
+                    processedRequestCount.incrementAndGet();
                 }
             }
 
             logger.debug("Stop SOLR resolver thread");
         }
+
+        /**
+         * Add the entries resolved from the passed request to the index queue, except the last one.
+         * 
+         * @param queueEntry the request to resolve
+         * @return the last entry resolved from the request, {@code null} if there's none
+         * @throws SolrIndexerException when failing to resolve the request
+         * @throws InterruptedException if the thread is interrupted while waiting for space in the index queue
+         */
+        private IndexQueueEntry resolve(ResolveQueueEntry queueEntry)
+            throws SolrIndexerException, InterruptedException
+        {
+            IndexQueueEntry lastEntry = null;
+
+            if (queueEntry.operation == IndexOperation.INDEX) {
+                Iterable<EntityReference> references;
+                if (queueEntry.recurse) {
+                    references = solrRefereceResolver.getReferences(queueEntry.reference);
+                } else {
+                    references = Arrays.asList(queueEntry.reference);
+                }
+
+                for (EntityReference reference : references) {
+                    if (lastEntry != null) {
+                        indexQueue.put(lastEntry);
+                    }
+                    lastEntry = new IndexQueueEntry(reference, queueEntry.operation);
+                }
+            } else {
+                if (queueEntry.recurse) {
+                    lastEntry =
+                        new IndexQueueEntry(solrRefereceResolver.getQuery(queueEntry.reference), queueEntry.operation);
+                } else if (queueEntry.reference != null) {
+                    lastEntry = new IndexQueueEntry(queueEntry.reference, queueEntry.operation);
+                }
+            }
+
+            return lastEntry;
+        }
     }
 
     /**
@@ -305,6 +394,59 @@ public void runInternal()
      */
     private Thread resolveThread;
 
+    /**
+     * The threads in which the metadata of the entities to index is extracted, {@code null} if the extraction is done
+     * directly by the index thread.
+     */
+    private ExecutorService extractExecutor;
+
+    /**
+     * The maximum number of index queue entries being extracted at the same time.
+     */
+    private int maxPendingEntries;
+
+    /**
+     * The number of entities for which the metadata has been extracted.
+     */
+    private final LongAdder extractedCount = new LongAdder();
+
+    /**
+     * The total time spent extracting metadata, in nanoseconds.
+     */
+    private final LongAdder extractTime = new LongAdder();
+
+    /**
+     * The number of operations sent to the Solr server.
+     */
+    private final LongAdder sentCount = new LongAdder();
+
+    /**
+     * The total time spent committing, in nanoseconds.
+     */
+    private final LongAdder commitTime = new LongAdder();
+
+    /**
+     * The number of index and delete requests added to the queue.
+     */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * The number of index and delete requests that have been processed.
+     */
+    private final AtomicLong processedRequestCount = new AtomicLong();
+
+    /**
+     * The value of {@link #processedRequestCount} when the changes were last hard committed (or when nothing was left
+     * to commit).
+     */
+    private volatile long committedRequestCount;
+
+    /**
+     * {@code true} if the last commit failed and the changes have been rolled back, in which case the processed
+     * requests are not committed until the next successful commit.
+     */
+    private boolean commitFailed;
+
     /**
      * Indicate of the component has been disposed.
      */
@@ -315,6 +457,27 @@ public void runInternal()
      */
     private volatile int batchSize;
 
+    /**
+     * The number of entries taken from the index queue but not yet sent.
+     */
+    private volatile int pendingSize;
+
+    /**
+     * The maximum time (in milliseconds) before a sent operation becomes visible to searches, 0 if each batch is hard
+     * committed.
+     */
+    private int commitWithin;
+
+    /**
+     * The time (in nanoseconds) between two hard commits when {@link #commitWithin} is enabled.
+     */
+    private long hardCommitInterval;
+
+    /**
+     * The time of the last hard commit, as returned by {@link System#nanoTime()}.
+     */
+    private long lastCommit;
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -322,6 +485,24 @@ public void initialize() throws InitializationException
         this.resolveQueue = new LinkedBlockingQueue<>();
         this.indexQueue = new LinkedBlockingQueue<>(this.configuration.getIndexerQueueCapacity());
 
+        // Initialize the commit strategy
+        this.commitWithin = this.configuration.getIndexerCommitWithin();
+        this.hardCommitInterval = TimeUnit.MILLISECONDS.toNanos(this.configuration.getIndexerHardCommitInterval());
+        this.lastCommit = System.nanoTime();
+
+        // Initialize the extraction threads
+        int extractThreads = this.configuration.getIndexerThreads();
+        if (extractThreads > 1) {
+            BasicThreadFactory factory = new BasicThreadFactory.Builder().namingPattern("XWiki Solr extract thread %d")
+                .daemon(true).priority(Thread.NORM_PRIORITY - 1).build();
+            this.extractExecutor = Executors.newFixedThreadPool(extractThreads, factory);
+            // Make sure the extraction threads always have something to do while the index thread is sending the
+            // results to the Solr server
+            this.maxPendingEntries = extractThreads * 2;
+        } else {
+            this.maxPendingEntries = 1;
+        }
+
         // Launch the resolve thread
         this.resolveThread = new Thread(new Resolver());
         this.resolveThread.setName("XWiki Solr resolve thread");
@@ -365,7 +546,7 @@ public void run()
             // Block until there is at least one entry in the queue
             IndexQueueEntry queueEntry = null;
             try {
-                queueEntry = this.indexQueue.take();
+                queueEntry = takeQueueEntry();
             } catch (InterruptedException e) {
                 this.logger.warn("The SOLR index thread has been interrupted", e);
 
@@ -379,12 +560,40 @@ public void run()
             }
         }
 
+        // Stop the extraction threads
+        if (this.extractExecutor != null) {
+            this.extractExecutor.shutdownNow();
+        }
+
         this.logger.debug("Stop SOLR indexer thread");
     }
 
+    /**
+     * Wait for the next entry of the index queue. When the sent operations are made visible by the Solr server, the
+     * uncommitted changes are hard committed if no entry is queued before the end of the hard commit interval.
+     * 
+     * @return the next entry of the index queue
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private IndexQueueEntry takeQueueEntry() throws InterruptedException
+    {
+        if (this.commitWithin > 0 && this.batchSize > 0) {
+            long timeout = this.hardCommitInterval - (System.nanoTime() - this.lastCommit);
+            IndexQueueEntry queueEntry = timeout > 0 ? this.indexQueue.poll(timeout, TimeUnit.NANOSECONDS) : null;
+            if (queueEntry != null) {
+                return queueEntry;
+            }
+
+            commit();
+        }
+
+        return this.indexQueue.take();
+    }
+
     /**
      * Process a batch of operations that were just read from the index operations queue. This method also commits the
-     * batch when it finishes to process it.
+     * batch when it finishes to process it (unless the operations are made visible by the Solr server, in which case
+     * the changes are hard committed periodically).
      * 
      * @param queueEntry the batch to process
      * @return {@code true} to wait for another batch, {@code false} to stop the indexing thread
@@ -395,38 +604,37 @@ private boolean processBatch(IndexQueueEntry queueEntry)
 
         int length = 0;
 
-        for (IndexQueueEntry batchEntry = queueEntry; batchEntry != null; batchEntry = this.indexQueue.poll()) {
-            if (batchEntry == INDEX_QUEUE_ENTRY_STOP) {
-                // Discard the current batch and stop the indexing thread.
-                return false;
-            }
+        // The entries for which the extraction has been started, in the order they were queued
+        Deque<PendingIndexEntry> pendingEntries = new ArrayDeque<>(this.maxPendingEntries);
 
-            IndexOperation operation = batchEntry.operation;
+        IndexQueueEntry batchEntry = queueEntry;
+        do {
+            // Start the extraction of as many entries as allowed
+            while (batchEntry != null) {
+                if (batchEntry == INDEX_QUEUE_ENTRY_STOP) {
+                    // Discard the current batch and stop the indexing thread.
+                    cancel(pendingEntries);
 
-            // For the current contiguous operations queue, group the changes
-            try {
-                this.ecim.initialize(new ExecutionContext());
+                    return false;
+                }
 
-                if (IndexOperation.INDEX.equals(operation)) {
-                    LengthSolrInputDocument solrDocument = getSolrDocument(batchEntry.reference);
-                    if (solrDocument != null) {
-                        solrInstance.add(solrDocument);
-                        length += solrDocument.getLength();
-                        ++this.batchSize;
-                    }
-                } else if (IndexOperation.DELETE.equals(operation)) {
-                    if (batchEntry.reference == null) {
-                        solrInstance.deleteByQuery(batchEntry.deleteQuery);
-                    } else {
-                        solrInstance.delete(this.solrRefereceResolver.getId(batchEntry.reference));
-                    }
+                pendingEntries.add(new PendingIndexEntry(batchEntry, extract(batchEntry)));
+                this.pendingSize = pendingEntries.size();
 
-                    ++this.batchSize;
+                batchEntry = pendingEntries.size() < this.maxPendingEntries ? this.indexQueue.poll() : null;
+            }
+
+            // Send the oldest entry to the Solr server
+            PendingIndexEntry pendingEntry = pendingEntries.remove();
+            length += send(pendingEntry, solrInstance);
+            this.pendingSize = pendingEntries.size();
+            if (pendingEntry.entry.last) {
+                long processed = this.processedRequestCount.incrementAndGet();
+
+                // Nothing is waiting for a commit: the request is committed as soon as it's processed
+                if (this.batchSize == 0 && !this.commitFailed) {
+                    this.committedRequestCount = processed;
                 }
-            } catch (Throwable e) {
-                this.logger.error("Failed to process entry [{}]", batchEntry, e);
-            } finally {
-                this.execution.removeContext();
             }
 
             // Commit the index changes so that they become available to queries. This is a costly operation and that is
@@ -435,16 +643,150 @@ private boolean processBatch(IndexQueueEntry queueEntry)
                 commit();
                 length = 0;
             }
-        }
+
+            batchEntry = this.indexQueue.poll();
+        } while (batchEntry != null || !pendingEntries.isEmpty());
 
         // Commit what's left
-        if (this.batchSize > 0) {
+        if (this.batchSize > 0 && (this.commitWithin <= 0 || isHardCommitDue())) {
             commit();
         }
 
         return true;
     }
 
+    /**
+     * Start extracting the metadata of the passed entry, in an extraction thread if any.
+     * 
+     * @param queueEntry the entry to extract
+     * @return the Solr document being extracted, {@code null} if the entry does not require any extraction
+     */
+    private Future<LengthSolrInputDocument> extract(IndexQueueEntry queueEntry)
+    {
+        if (!IndexOperation.INDEX.equals(queueEntry.operation)) {
+            return null;
+        }
+
+        FutureTask<LengthSolrInputDocument> task = new FutureTask<>(() -> {
+            long start = System.nanoTime();
+
+            this.ecim.initialize(new ExecutionContext());
+
+            try {
+                return getSolrDocument(queueEntry.reference);
+            } finally {
+                this.execution.removeContext();
+
+                this.extractedCount.increment();
+                this.extractTime.add(System.nanoTime() - start);
+            }
+        });
+
+        if (this.extractExecutor != null) {
+            this.extractExecutor.execute(task);
+        } else {
+            task.run();
+        }
+
+        return task;
+    }
+
+    /**
+     * Send the operation to the Solr server.
+     * 
+     * @param pendingEntry the entry to send
+     * @param solrInstance the Solr instance
+     * @return the length of the data sent
+     */
+    private int send(PendingIndexEntry pendingEntry, SolrInstance solrInstance)
+    {
+        IndexQueueEntry batchEntry = pendingEntry.entry;
+        IndexOperation operation = batchEntry.operation;
+
+        int length = 0;
+
+        // For the current contiguous operations queue, group the changes
+        try {
+            this.ecim.initialize(new ExecutionContext());
+
+            if (IndexOperation.INDEX.equals(operation)) {
+                LengthSolrInputDocument solrDocument = pendingEntry.solrDocument.get();
+                if (solrDocument != null) {
+                    if (this.commitWithin > 0) {
+                        solrInstance.add(solrDocument, this.commitWithin);
+                    } else {
+                        solrInstance.add(solrDocument);
+                    }
+                    length = solrDocument.getLength();
+                    ++this.batchSize;
+                    this.sentCount.increment();
+                }
+            } else if (IndexOperation.DELETE.equals(operation)) {
+                delete(batchEntry, solrInstance);
+
+                ++this.batchSize;
+                this.sentCount.increment();
+            }
+        } catch (InterruptedException e) {
+            this.logger.warn("The SOLR index thread has been interrupted while processing entry [{}]", batchEntry);
+
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            this.logger.error("Failed to process entry [{}]", batchEntry, e.getCause());
+        } catch (Throwable e) {
+            this.logger.error("Failed to process entry [{}]", batchEntry, e);
+        } finally {
+            this.execution.removeContext();
+        }
+
+        return length;
+    }
+
+    /**
+     * Send the delete operation to the Solr server.
+     * 
+     * @param batchEntry the delete entry
+     * @param solrInstance the Solr instance
+     * @throws SolrIndexerException when failing to resolve the identifier of the entity to delete
+     * @throws SolrServerException when failing to send the operation
+     * @throws IOException when failing to send the operation
+     */
+    private void delete(IndexQueueEntry batchEntry, SolrInstance solrInstance)
+        throws SolrIndexerException, SolrServerException, IOException
+    {
+        if (batchEntry.reference == null) {
+            if (this.commitWithin > 0) {
+                solrInstance.deleteByQuery(batchEntry.deleteQuery, this.commitWithin);
+            } else {
+                solrInstance.deleteByQuery(batchEntry.deleteQuery);
+            }
+        } else {
+            String id = this.solrRefereceResolver.getId(batchEntry.reference);
+            if (this.commitWithin > 0) {
+                solrInstance.delete(id, this.commitWithin);
+            } else {
+                solrInstance.delete(id);
+            }
+        }
+    }
+
+    /**
+     * Cancel the extraction of the passed entries.
+     * 
+     * @param pendingEntries the entries to cancel
+     */
+    private void cancel(Deque<PendingIndexEntry> pendingEntries)
+    {
+        for (PendingIndexEntry pendingEntry : pendingEntries) {
+            if (pendingEntry.solrDocument != null) {
+                pendingEntry.solrDocument.cancel(false);
+            }
+        }
+
+        pendingEntries.clear();
+        this.pendingSize = 0;
+    }
+
     /**
      * Commit.
      */
@@ -452,11 +794,22 @@ private void commit()
     {
         SolrInstance solrInstance = this.solrInstanceProvider.get();
 
+        long start = System.nanoTime();
+
+        // All the operations of these requests have been sent before the commit
+        long processed = this.processedRequestCount.get();
+
         try {
             solrInstance.commit();
+
+            this.committedRequestCount = processed;
+            this.commitFailed = false;
         } catch (Exception e) {
             this.logger.error("Failed to commit index changes to the Solr server. Rolling back.", e);
 
+            // The rolled back requests must not be reported as committed
+            this.commitFailed = true;
+
             try {
                 solrInstance.rollback();
             } catch (Exception ex) {
@@ -465,7 +818,24 @@ private void commit()
             }
         }
 
+        this.commitTime.add(System.nanoTime() - start);
+
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug("Committed [{}] operations. Extracted entities: [{}] in [{}] ms, sent operations: [{}],"
+                + " commit time: [{}] ms", this.batchSize, getExtractedCount(), getExtractTime(), getSentCount(),
+                getCommitTime());
+        }
+
         this.batchSize = 0;
+        this.lastCommit = System.nanoTime();
+    }
+
+    /**
+     * @return true if the time elapsed since the last hard commit exceeds the configured hard commit interval
+     */
+    private boolean isHardCommitDue()
+    {
+        return System.nanoTime() - this.lastCommit >= this.hardCommitInterval;
     }
 
     /**
@@ -477,6 +847,11 @@ private void commit()
      */
     private boolean shouldCommit(int length, int size)
     {
+        // If the changes are made visible by the Solr server, only hard commit periodically
+        if (this.commitWithin > 0) {
+            return isHardCommitDue();
+        }
+
         // If the length is above the configured maximum
         if (length >= this.configuration.getIndexerBatchMaxLengh()) {
             return true;
@@ -548,6 +923,7 @@ private void addToQueue(EntityReference reference, boolean recurse, IndexOperati
             // Don't block because the capacity of the resolver queue is not limited.
             try {
                 this.resolveQueue.put(new ResolveQueueEntry(reference, recurse, operation));
+                this.requestCount.incrementAndGet();
             } catch (InterruptedException e) {
                 this.logger.error("Failed to add reference [{}] to Solr indexing queue", reference, e);
             }
@@ -557,7 +933,46 @@ private void addToQueue(EntityReference reference, boolean recurse, IndexOperati
     @Override
     public int getQueueSize()
     {
-        return this.indexQueue.size() + this.resolveQueue.size() + this.batchSize;
+        // When the Solr server makes the sent operations visible by itself, the operations waiting for the next hard
+        // commit are not considered as still being in the queue
+        return this.indexQueue.size() + this.resolveQueue.size() + this.pendingSize
+            + (this.commitWithin > 0 ? 0 : this.batchSize);
+    }
+
+    @Override
+    public long getRequestCount()
+    {
+        return this.requestCount.get();
+    }
+
+    @Override
+    public long getCommittedRequestCount()
+    {
+        return this.committedRequestCount;
+    }
+
+    @Override
+    public long getExtractedCount()
+    {
+        return this.extractedCount.sum();
+    }
+
+    @Override
+    public long getExtractTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(this.extractTime.sum());
+    }
+
+    @Override
+    public long getSentCount()
+    {
+        return this.sentCount.sum();
+    }
+
+    @Override
+    public long getCommitTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(this.commitTime.sum());
     }
 
     @Override
@@ -73,6 +73,27 @@
      */
     int getIndexerQueueCapacity();
 
+    /**
+     * @return the number of threads used to extract the metadata of the entities to index, 1 meaning that the
+     *         extraction is done by the indexer thread itself
+     * @since 9.10RC1
+     */
+    int getIndexerThreads();
+
+    /**
+     * @return the maximum time (in milliseconds) before an index change becomes visible to searches, 0 meaning that
+     *         the changes are made visible by hard committing each batch of operations
+     * @since 9.10RC1
+     */
+    int getIndexerCommitWithin();
+
+    /**
+     * @return the time (in milliseconds) between two hard commits of the index changes, when the changes are made
+     *         visible using {@link #getIndexerCommitWithin()}
+     * @since 9.10RC1
+     */
+    int getIndexerHardCommitInterval();
+
     /**
      * @return true if a full synchronization job between the database and SOLR index should be run when XWiki starts
      * @since 6.1M2
@@ -56,10 +56,56 @@
     void delete(EntityReference reference, boolean recurse);
 
     /**
+     * The operations that have been sent to the Solr server but not yet committed are counted in the queue, unless the
+     * Solr server makes them visible by itself (see {@link SolrConfiguration#getIndexerCommitWithin()}). Use
+     * {@link #getCommittedRequestCount()} to know when the index changes survive a restart of the Solr server.
+     *
      * @return the number of element in the index/delete queue
      */
     int getQueueSize();
 
+    /**
+     * @return the number of index and delete requests added to the queue since the indexer was started
+     * @since 9.10RC1
+     */
+    long getRequestCount();
+
+    /**
+     * The requests are processed in the order they are queued so when this count reaches the value returned by
+     * {@link #getRequestCount()} at some point, all the requests queued before that point have been processed and the
+     * corresponding index changes have been hard committed, i.e. they survive a restart of the Solr server.
+     * 
+     * @return the number of index and delete requests that have been processed and committed since the indexer was
+     *         started
+     * @since 9.10RC1
+     */
+    long getCommittedRequestCount();
+
+    /**
+     * @return the number of entities for which the metadata has been extracted since the indexer was started
+     * @since 9.10RC1
+     */
+    long getExtractedCount();
+
+    /**
+     * @return the total time spent extracting the metadata of the entities to index, in milliseconds (summed over all
+     *         the extraction threads)
+     * @since 9.10RC1
+     */
+    long getExtractTime();
+
+    /**
+     * @return the number of index and delete operations sent to the Solr server since the indexer was started
+     * @since 9.10RC1
+     */
+    long getSentCount();
+
+    /**
+     * @return the total time spent committing the index changes, in milliseconds
+     * @since 9.10RC1
+     */
+    long getCommitTime();
+
     /**
      * Start an indexing with specific criteria.
      * 
@@ -65,6 +65,18 @@ public interface SolrInstance extends Initializable
      */
     void add(List<SolrInputDocument> solrDocuments) throws SolrServerException, IOException;
 
+    /**
+     * Add a {@link SolrInputDocument} to the Solr index and ask the Solr server to make it visible to searches within
+     * the given delay (which is generally done with a soft commit, i.e. without flushing the index to the storage).
+     * 
+     * @param solrDocument the document.
+     * @param commitWithin the maximum time (in milliseconds) before the change becomes visible to searches
+     * @throws SolrServerException if problems occur.
+     * @throws IOException if problems occur.
+     * @since 9.10RC1
+     */
+    void add(SolrInputDocument solrDocument, int commitWithin) throws SolrServerException, IOException;
+
     /**
      * Delete a single entry from the Solr index.
      * <p>
@@ -76,6 +88,18 @@ public interface SolrInstance extends Initializable
      */
     void delete(String id) throws SolrServerException, IOException;
 
+    /**
+     * Delete a single entry from the Solr index and ask the Solr server to make the deletion visible to searches within
+     * the given delay.
+     * 
+     * @param id the ID of the entry.
+     * @param commitWithin the maximum time (in milliseconds) before the change becomes visible to searches
+     * @throws SolrServerException if problems occur.
+     * @throws IOException if problems occur.
+     * @since 9.10RC1
+     */
+    void delete(String id, int commitWithin) throws SolrServerException, IOException;
+
     /**
      * Delete a list of entries from the Solr index. This is a batch operation.
      * <p>
@@ -98,6 +122,18 @@ public interface SolrInstance extends Initializable
      */
     void deleteByQuery(String query) throws SolrServerException, IOException;
 
+    /**
+     * Delete entries from the index based on the result of the given query and ask the Solr server to make the deletion
+     * visible to searches within the given delay.
+     * 
+     * @param query the Solr query.
+     * @param commitWithin the maximum time (in milliseconds) before the change becomes visible to searches
+     * @throws SolrServerException if problems occur.
+     * @throws IOException if problems occur.
+     * @since 9.10RC1
+     */
+    void deleteByQuery(String query, int commitWithin) throws SolrServerException, IOException;
+
     /**
      * Commit the recent (uncommitted) changes to the Solr server.
      * 
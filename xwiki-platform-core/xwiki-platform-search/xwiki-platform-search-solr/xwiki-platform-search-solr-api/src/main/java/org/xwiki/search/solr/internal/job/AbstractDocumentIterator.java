@@ -19,6 +19,8 @@
  */
 package org.xwiki.search.solr.internal.job;
 
+import java.util.Date;
+
 import javax.inject.Inject;
 
 import org.slf4j.Logger;
@@ -49,6 +51,12 @@
      */
     protected EntityReference rootReference;
 
+    /**
+     * Specifies the date after which the iterated documents have been modified. If {@code null} then the documents are
+     * iterated whatever their modification date.
+     */
+    protected Date modifiedSince;
+
     @Override
     public void remove()
     {
@@ -60,4 +68,10 @@ public void setRootReference(EntityReference rootReference)
     {
         this.rootReference = rootReference;
     }
+
+    @Override
+    public void setModifiedSince(Date modifiedSince)
+    {
+        this.modifiedSince = modifiedSince;
+    }
 }
@@ -0,0 +1,233 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.job;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.lang3.LocaleUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.InstantiationStrategy;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+import org.xwiki.wiki.manager.WikiManagerException;
+
+/**
+ * Iterates the documents deleted from the XWiki database since the date passed to
+ * {@link #setModifiedSince(java.util.Date)}, as recorded by the recycle bin. The same document can be returned several
+ * times if it has been deleted several times. No data is associated with the returned documents.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component
+@InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
+@Named("deleted")
+public class DeletedDocumentIterator extends AbstractDocumentIterator<String>
+{
+    private static final String SELECT = "select ddoc.fullName, ddoc.language from XWikiDeletedDocument ddoc";
+
+    private static final String COUNT = "select count(ddoc) from XWikiDeletedDocument ddoc";
+
+    private static final String WHERE = " where ddoc.date >= :modifiedSince";
+
+    private static final String MODIFIED_SINCE = "modifiedSince";
+
+    /**
+     * The current index in the list of {@link #results}.
+     */
+    private int index;
+
+    /**
+     * A 'page' of results taken from the database.
+     */
+    private List<Object[]> results = Collections.emptyList();
+
+    /**
+     * Iterates over the available wikis.
+     */
+    private Iterator<String> wikisIterator;
+
+    /**
+     * The wiki that is currently being iterated.
+     */
+    private String wiki;
+
+    /**
+     * The offset in the current wiki.
+     */
+    private int offset;
+
+    /**
+     * The next document to return, {@code null} if it has not been looked for yet.
+     */
+    private DocumentReference nextDocument;
+
+    @Inject
+    private WikiDescriptorManager wikiDescriptorManager;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    @Named("explicit")
+    private EntityReferenceResolver<String> explicitEntityReferenceResolver;
+
+    @Override
+    public boolean hasNext()
+    {
+        return getNextDocument() != null;
+    }
+
+    @Override
+    public Pair<DocumentReference, String> next()
+    {
+        DocumentReference documentReference = getNextDocument();
+        this.nextDocument = null;
+
+        return new ImmutablePair<>(documentReference, null);
+    }
+
+    @Override
+    public long size()
+    {
+        long size = 0;
+
+        if (this.modifiedSince != null) {
+            try {
+                for (String wikiName : getWikis()) {
+                    Query countQuery = this.queryManager.createQuery(COUNT + WHERE, Query.HQL);
+                    countQuery.bindValue(MODIFIED_SINCE, this.modifiedSince);
+                    size += (long) countQuery.setWiki(wikiName).execute().get(0);
+                }
+            } catch (QueryException e) {
+                this.logger.error("Failed to count the deleted documents.", e);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @return the next deleted document located under the root reference, {@code null} if there's none
+     */
+    private DocumentReference getNextDocument()
+    {
+        while (this.nextDocument == null && this.modifiedSince != null) {
+            if (this.index >= this.results.size()) {
+                fetchNextResults();
+                if (this.results.isEmpty()) {
+                    break;
+                }
+            }
+
+            Object[] result = this.results.get(this.index++);
+            DocumentReference documentReference = new DocumentReference(this.explicitEntityReferenceResolver
+                .resolve((String) result[0], EntityType.DOCUMENT, new WikiReference(this.wiki)));
+            if (this.rootReference == null || documentReference.equals(this.rootReference)
+                || documentReference.hasParent(this.rootReference)) {
+                String locale = (String) result[1];
+                if (!StringUtils.isEmpty(locale)) {
+                    documentReference = new DocumentReference(documentReference, LocaleUtils.toLocale(locale));
+                }
+                this.nextDocument = documentReference;
+            }
+        }
+
+        return this.nextDocument;
+    }
+
+    /**
+     * Fetches the next 'page' of results from the database, moving to the next wiki when the current one is done.
+     */
+    private void fetchNextResults()
+    {
+        this.index = 0;
+        this.results = Collections.emptyList();
+
+        if (this.wiki == null) {
+            this.wiki = getNextWiki();
+        }
+
+        while (this.wiki != null) {
+            try {
+                Query query = this.queryManager.createQuery(SELECT + WHERE + " order by ddoc.date", Query.HQL);
+                query.bindValue(MODIFIED_SINCE, this.modifiedSince);
+                this.results = query.setWiki(this.wiki).setOffset(this.offset).setLimit(LIMIT).execute();
+                this.offset += LIMIT;
+            } catch (QueryException e) {
+                this.results = Collections.emptyList();
+                this.logger.error("Failed to query the deleted documents of wiki [{}].", this.wiki, e);
+            }
+
+            if (!this.results.isEmpty()) {
+                break;
+            }
+
+            this.wiki = getNextWiki();
+            this.offset = 0;
+        }
+    }
+
+    /**
+     * @return the next wiki
+     */
+    private String getNextWiki()
+    {
+        if (this.wikisIterator == null) {
+            this.wikisIterator = getWikis().iterator();
+        }
+        return this.wikisIterator.hasNext() ? this.wikisIterator.next() : null;
+    }
+
+    /**
+     * @return the wiki of the root entity, or all the available wikis if there's no root entity
+     */
+    private List<String> getWikis()
+    {
+        if (this.rootReference == null) {
+            try {
+                return new ArrayList<>(this.wikiDescriptorManager.getAllIds());
+            } catch (WikiManagerException e) {
+                this.logger.error("Failed to get the list of available wikis.", e);
+
+                return Collections.emptyList();
+            }
+        } else {
+            return Arrays.asList(this.rootReference.extractReference(EntityType.WIKI).getName());
+        }
+    }
+}
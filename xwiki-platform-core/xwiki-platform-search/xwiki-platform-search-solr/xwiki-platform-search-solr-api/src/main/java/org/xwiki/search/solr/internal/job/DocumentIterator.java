@@ -19,6 +19,7 @@
  */
 package org.xwiki.search.solr.internal.job;
 
+import java.util.Date;
 import java.util.Iterator;
 
 import org.apache.commons.lang3.tuple.Pair;
@@ -45,6 +46,16 @@
      */
     void setRootReference(EntityReference rootReference);
 
+    /**
+     * Limit the iterator to the documents modified after the specified date, when the underlying store keeps track of
+     * the document modification date. If the passed date is {@code null} (or if you don't call this method) then the
+     * documents are iterated whatever their modification date.
+     * 
+     * @param modifiedSince the date after which the iterated documents have been modified
+     * @since 9.10RC1
+     */
+    void setModifiedSince(Date modifiedSince);
+
     /**
      * @return estimate the size of the iterated store for showing progress information
      */
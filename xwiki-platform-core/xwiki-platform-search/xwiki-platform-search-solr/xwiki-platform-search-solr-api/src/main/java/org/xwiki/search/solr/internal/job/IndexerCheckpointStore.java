@@ -0,0 +1,222 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.job;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Properties;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.LocaleUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+/**
+ * Persists the progress of the {@link IndexerJob} so that an interrupted synchronization can be resumed and so that
+ * the next synchronization can be limited to the documents modified since the last complete one.
+ * 
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = IndexerCheckpointStore.class)
+@Singleton
+public class IndexerCheckpointStore
+{
+    private static final String FILE_PATH = "solr-indexer/checkpoints.properties";
+
+    private static final String ALL_ROOT = "all";
+
+    private static final String SUFFIX_REFERENCE = ".reference";
+
+    private static final String SUFFIX_LOCALE = ".locale";
+
+    private static final String SUFFIX_START = ".start";
+
+    private static final String SUFFIX_SYNCHRONIZED = ".synchronized";
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private DocumentReferenceResolver<String> resolver;
+
+    @Inject
+    private Logger logger;
+
+    private Properties checkpoints;
+
+    /**
+     * @param rootReference the root reference of the synchronization
+     * @return the last document processed by the interrupted synchronization of the passed root reference,
+     *         {@code null} if the previous synchronization was not interrupted
+     */
+    public synchronized DocumentReference getLastProcessedDocument(EntityReference rootReference)
+    {
+        String key = getKey(rootReference);
+
+        String reference = getCheckpoints().getProperty(key + SUFFIX_REFERENCE);
+        if (reference == null) {
+            return null;
+        }
+
+        DocumentReference documentReference = this.resolver.resolve(reference);
+
+        String locale = getCheckpoints().getProperty(key + SUFFIX_LOCALE);
+        if (StringUtils.isNotEmpty(locale)) {
+            documentReference = new DocumentReference(documentReference, LocaleUtils.toLocale(locale));
+        }
+
+        return documentReference;
+    }
+
+    /**
+     * @param rootReference the root reference of the synchronization
+     * @return the date at which the currently running (or interrupted) synchronization started, {@code null} if none
+     */
+    public synchronized Date getStartDate(EntityReference rootReference)
+    {
+        return getDate(getKey(rootReference) + SUFFIX_START);
+    }
+
+    /**
+     * @param rootReference the root reference of the synchronization
+     * @return the date at which the last complete synchronization of the passed root reference started, {@code null}
+     *         if none has been completed
+     */
+    public synchronized Date getSynchronizationDate(EntityReference rootReference)
+    {
+        return getDate(getKey(rootReference) + SUFFIX_SYNCHRONIZED);
+    }
+
+    /**
+     * Remember that a synchronization started.
+     * 
+     * @param rootReference the root reference of the synchronization
+     * @param date the date at which the synchronization started
+     */
+    public synchronized void start(EntityReference rootReference, Date date)
+    {
+        getCheckpoints().setProperty(getKey(rootReference) + SUFFIX_START, String.valueOf(date.getTime()));
+
+        save();
+    }
+
+    /**
+     * Remember the last document processed by the running synchronization.
+     * 
+     * @param rootReference the root reference of the synchronization
+     * @param documentReference the last processed document
+     */
+    public synchronized void setLastProcessedDocument(EntityReference rootReference,
+        DocumentReference documentReference)
+    {
+        String key = getKey(rootReference);
+
+        getCheckpoints().setProperty(key + SUFFIX_REFERENCE, this.serializer.serialize(documentReference));
+        Locale locale = documentReference.getLocale();
+        getCheckpoints().setProperty(key + SUFFIX_LOCALE, locale != null ? locale.toString() : "");
+
+        save();
+    }
+
+    /**
+     * Remember that the synchronization which started at the passed date is complete.
+     * 
+     * @param rootReference the root reference of the synchronization
+     * @param date the date at which the complete synchronization started
+     */
+    public synchronized void setSynchronized(EntityReference rootReference, Date date)
+    {
+        String key = getKey(rootReference);
+
+        getCheckpoints().remove(key + SUFFIX_REFERENCE);
+        getCheckpoints().remove(key + SUFFIX_LOCALE);
+        getCheckpoints().remove(key + SUFFIX_START);
+        getCheckpoints().setProperty(key + SUFFIX_SYNCHRONIZED, String.valueOf(date.getTime()));
+
+        save();
+    }
+
+    private String getKey(EntityReference rootReference)
+    {
+        return rootReference != null
+            ? rootReference.getType().getLowerCase() + ':' + this.serializer.serialize(rootReference) : ALL_ROOT;
+    }
+
+    private Date getDate(String key)
+    {
+        String value = getCheckpoints().getProperty(key);
+
+        return value != null ? new Date(Long.parseLong(value)) : null;
+    }
+
+    private File getFile()
+    {
+        return new File(this.environment.getPermanentDirectory(), FILE_PATH);
+    }
+
+    private Properties getCheckpoints()
+    {
+        if (this.checkpoints == null) {
+            this.checkpoints = new Properties();
+
+            File file = getFile();
+            if (file.exists()) {
+                try (InputStream stream = new FileInputStream(file)) {
+                    this.checkpoints.load(stream);
+                } catch (IOException e) {
+                    this.logger.error("Failed to load the Solr indexer checkpoints from [{}]", file, e);
+                }
+            }
+        }
+
+        return this.checkpoints;
+    }
+
+    private void save()
+    {
+        File file = getFile();
+
+        file.getParentFile().mkdirs();
+
+        try (OutputStream stream = new FileOutputStream(file)) {
+            this.checkpoints.store(stream, null);
+        } catch (IOException e) {
+            this.logger.error("Failed to save the Solr indexer checkpoints in [{}]", file, e);
+        }
+    }
+}
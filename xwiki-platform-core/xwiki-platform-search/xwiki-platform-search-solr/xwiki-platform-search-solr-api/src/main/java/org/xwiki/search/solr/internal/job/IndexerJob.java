@@ -20,6 +20,7 @@
 package org.xwiki.search.solr.internal.job;
 
 import java.util.Arrays;
+import java.util.Date;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -28,6 +29,7 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.job.AbstractJob;
 import org.xwiki.job.DefaultJobStatus;
 import org.xwiki.job.GroupedJob;
@@ -60,6 +62,22 @@ public class IndexerJob extends AbstractJob<IndexerRequest, DefaultJobStatus<Ind
     // TODO: group indexers based on the IndexerRequest root entity
     private static final JobGroupPath GROUP = new JobGroupPath(Arrays.asList("solr", "indexer"));
 
+    /**
+     * The number of documents sent to the indexer after which the progress of the synchronization is saved.
+     */
+    private static final int CHECKPOINT_INTERVAL = 1000;
+
+    /**
+     * The time to wait between two checks of the requests committed by the indexer, in milliseconds.
+     */
+    private static final long COMMIT_CHECK_INTERVAL = 100L;
+
+    /**
+     * The maximum time to wait for the indexer to commit more requests before giving up moving the watermark forward,
+     * in milliseconds.
+     */
+    private static final long COMMIT_TIMEOUT = 300000L;
+
     /**
      * Used to send documents to index or delete to/from Solr index.
      */
@@ -74,6 +92,35 @@ public class IndexerJob extends AbstractJob<IndexerRequest, DefaultJobStatus<Ind
     @Named("solr")
     private transient DocumentIterator<String> solrIterator;
 
+    @Inject
+    @Named("deleted")
+    private transient DocumentIterator<String> deletedIterator;
+
+    @Inject
+    private transient IndexerCheckpointStore checkpointStore;
+
+    /**
+     * Used to know if the deleted documents are kept in the recycle bin.
+     */
+    @Inject
+    @Named("xwikicfg")
+    private transient ConfigurationSource xwikicfg;
+
+    /**
+     * Used to compare the processed documents with the checkpoint of an interrupted synchronization.
+     */
+    private final DocumentReferenceComparator documentReferenceComparator = new DocumentReferenceComparator();
+
+    /**
+     * The document to save as the progress of the synchronization once the indexer has processed it.
+     */
+    private transient DocumentReference checkpointCandidate;
+
+    /**
+     * The number of indexer requests that must be processed before the {@link #checkpointCandidate} can be saved.
+     */
+    private transient long checkpointRequestCount;
+
     @Override
     public String getType()
     {
@@ -107,7 +154,103 @@ protected void runInternal() throws Exception
             this.logger.info("Index documents in [{}].", rootReference);
             this.indexer.index(rootReference, true);
         } else {
-            updateSolrIndex();
+            Date modifiedSince = getRequest().getModifiedSince();
+            if (modifiedSince == null && getRequest().isIncremental()) {
+                modifiedSince = this.checkpointStore.getSynchronizationDate(getRequest().getRootReference());
+            }
+
+            if (modifiedSince != null && getRequest().isRemoveMissing() && !hasRecycleBin()) {
+                // The deleted documents can't be found without the recycle bin
+                this.logger.info("The recycle bin is disabled, compare the whole Solr index with the database to find"
+                    + " the deleted documents.");
+                modifiedSince = null;
+            }
+
+            if (modifiedSince != null) {
+                indexModifiedDocuments(modifiedSince);
+            } else {
+                updateSolrIndex();
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the deleted documents are kept in the recycle bin
+     */
+    private boolean hasRecycleBin()
+    {
+        // See XWiki#hasRecycleBin()
+        return "1".equals(this.xwikicfg.getProperty("xwiki.recyclebin", "1"));
+    }
+
+    /**
+     * Remove the documents deleted since the passed date from the index and index the documents modified since then.
+     * The deleted documents are known from the recycle bin.
+     * 
+     * @param modifiedSince the date since which the documents to index have been modified
+     */
+    private void indexModifiedDocuments(Date modifiedSince)
+    {
+        EntityReference rootReference = getRequest().getRootReference();
+        Date startDate = new Date();
+
+        this.databaseIterator.setRootReference(rootReference);
+        this.databaseIterator.setModifiedSince(modifiedSince);
+
+        boolean removeDeleted = getRequest().isRemoveMissing();
+        if (removeDeleted) {
+            this.deletedIterator.setRootReference(rootReference);
+            this.deletedIterator.setModifiedSince(modifiedSince);
+        }
+
+        this.progressManager.pushLevelProgress(2, this);
+
+        try {
+            // The deletions are queued first so that a document deleted and then created again is indexed again
+            this.progressManager.startStep(this);
+            long deleted = removeDeleted ? indexModifiedDocuments(this.deletedIterator, false) : 0;
+            this.progressManager.endStep(this);
+
+            this.progressManager.startStep(this);
+            long indexed = indexModifiedDocuments(this.databaseIterator, true);
+            this.progressManager.endStep(this);
+
+            this.logger.info("{} documents deleted and {} documents modified since [{}] have been sent to the indexer.",
+                deleted, indexed, modifiedSince);
+        } finally {
+            this.progressManager.popLevelProgress(this);
+        }
+
+        // Only move the watermark forward when it was used to select the documents
+        if (getRequest().getModifiedSince() == null && waitForCommit(this.indexer.getRequestCount())) {
+            this.checkpointStore.setSynchronized(rootReference, startDate);
+        }
+    }
+
+    private long indexModifiedDocuments(DocumentIterator<String> iterator, boolean index)
+    {
+        this.progressManager.pushLevelProgress((int) iterator.size(), this);
+
+        try {
+            long counter = 0;
+
+            while (iterator.hasNext()) {
+                this.progressManager.startStep(this);
+
+                DocumentReference documentReference = iterator.next().getKey();
+                if (index) {
+                    this.indexer.index(documentReference, true);
+                } else {
+                    this.indexer.delete(documentReference, true);
+                }
+                counter++;
+
+                this.progressManager.endStep(this);
+            }
+
+            return counter;
+        } finally {
+            this.progressManager.popLevelProgress(this);
         }
     }
 
@@ -140,30 +283,65 @@ private void updateSolrIndex()
 
     private void updateSolrIndex(int progressSize, DiffDocumentIterator<String> iterator)
     {
+        EntityReference rootReference = getRequest().getRootReference();
+
+        // Resume the previous synchronization if it has been interrupted
+        DocumentReference checkpoint = this.checkpointStore.getLastProcessedDocument(rootReference);
+        Date startDate = this.checkpointStore.getStartDate(rootReference);
+        if (startDate == null) {
+            checkpoint = null;
+            startDate = new Date();
+            this.checkpointStore.start(rootReference, startDate);
+        } else if (checkpoint != null) {
+            this.logger.info("Resume the synchronization of the Solr index started at [{}] after document [{}].",
+                startDate, checkpoint);
+        }
+
         this.progressManager.pushLevelProgress(progressSize, this);
 
         try {
             long[] counter = new long[Action.values().length];
+            int queued = 0;
 
             while (iterator.hasNext()) {
                 this.progressManager.startStep(this);
 
                 Pair<DocumentReference, Action> entry = iterator.next();
+                if (checkpoint != null) {
+                    if (this.documentReferenceComparator.compare(entry.getKey(), checkpoint) <= 0) {
+                        // Already processed by the interrupted synchronization
+                        this.progressManager.endStep(this);
+                        continue;
+                    }
+                    checkpoint = null;
+                }
+
                 if (entry.getValue() == Action.ADD || entry.getValue() == Action.UPDATE) {
                     // The database entry has not been indexed or the indexed version doesn't match the latest
                     // version
                     // from the database.
                     this.indexer.index(entry.getKey(), true);
+                    queued++;
                 } else if (entry.getValue() == Action.DELETE && getRequest().isRemoveMissing()) {
                     // The index entry doesn't exist anymore in the database.
                     this.indexer.delete(entry.getKey(), true);
+                    queued++;
                 }
 
                 counter[entry.getValue().ordinal()]++;
 
+                if (queued == CHECKPOINT_INTERVAL) {
+                    checkpoint(rootReference, entry.getKey());
+                    queued = 0;
+                }
+
                 this.progressManager.endStep(this);
             }
 
+            if (waitForCommit(this.indexer.getRequestCount())) {
+                this.checkpointStore.setSynchronized(rootReference, startDate);
+            }
+
             this.logger.info(
                 "{} documents added, {} deleted and {} updated during the synchronization of the Solr index.",
                 counter[Action.ADD.ordinal()], counter[Action.DELETE.ordinal()], counter[Action.UPDATE.ordinal()]);
@@ -171,4 +349,63 @@ private void updateSolrIndex(int progressSize, DiffDocumentIterator<String> iter
             this.progressManager.popLevelProgress(this);
         }
     }
+
+    /**
+     * Save the progress of the synchronization if the indexer has processed the previous checkpoint candidate.
+     * 
+     * @param rootReference the root reference of the synchronization
+     * @param documentReference the last document sent to the indexer
+     */
+    private void checkpoint(EntityReference rootReference, DocumentReference documentReference)
+    {
+        // The indexer processes the requests in the order they are queued. The candidate is only saved once the
+        // changes are committed, otherwise they could be lost if the Solr server stops.
+        if (this.checkpointCandidate != null
+            && this.indexer.getCommittedRequestCount() >= this.checkpointRequestCount) {
+            this.checkpointStore.setLastProcessedDocument(rootReference, this.checkpointCandidate);
+            this.checkpointCandidate = null;
+        }
+
+        // Keep the previous candidate until it's committed, otherwise a slow indexer would prevent any checkpoint
+        if (this.checkpointCandidate == null) {
+            this.checkpointCandidate = documentReference;
+            this.checkpointRequestCount = this.indexer.getRequestCount();
+        }
+    }
+
+    /**
+     * Wait for the indexer to process and commit the passed number of requests, so that the index changes which have
+     * been requested survive a restart of the Solr server.
+     * 
+     * @param requestCount the number of requests to wait for
+     * @return {@code true} if the requests have been committed, {@code false} if the indexer did not make any progress
+     *         for too long or if the thread has been interrupted
+     */
+    private boolean waitForCommit(long requestCount)
+    {
+        long committed = this.indexer.getCommittedRequestCount();
+        long lastProgress = System.currentTimeMillis();
+        while (committed < requestCount) {
+            try {
+                Thread.sleep(COMMIT_CHECK_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                return false;
+            }
+
+            long newCommitted = this.indexer.getCommittedRequestCount();
+            if (newCommitted > committed) {
+                committed = newCommitted;
+                lastProgress = System.currentTimeMillis();
+            } else if (System.currentTimeMillis() - lastProgress > COMMIT_TIMEOUT) {
+                this.logger.warn("The Solr indexer did not commit the synchronized documents in time, the"
+                    + " synchronization will start from the previous watermark next time.");
+
+                return false;
+            }
+        }
+
+        return true;
+    }
 }
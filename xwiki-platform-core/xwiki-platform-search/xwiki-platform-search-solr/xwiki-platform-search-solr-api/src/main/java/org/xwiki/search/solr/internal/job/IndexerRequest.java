@@ -19,6 +19,8 @@
  */
 package org.xwiki.search.solr.internal.job;
 
+import java.util.Date;
+
 import org.xwiki.job.AbstractRequest;
 import org.xwiki.job.Request;
 import org.xwiki.model.reference.EntityReference;
@@ -51,6 +53,16 @@ public class IndexerRequest extends AbstractRequest
      */
     private boolean removeMissing = true;
 
+    /**
+     * @see #getModifiedSince()
+     */
+    private Date modifiedSince;
+
+    /**
+     * @see #isIncremental()
+     */
+    private boolean incremental;
+
     /**
      * The default constructor.
      */
@@ -115,4 +127,46 @@ public void setRemoveMissing(boolean removeMissing)
     {
         this.removeMissing = removeMissing;
     }
+
+    /**
+     * @return if not {@code null} only the documents modified since this date are indexed (the Solr index is not
+     *         compared with the database: the documents deleted since this date are found in the recycle bin and
+     *         removed from the index, if {@link #isRemoveMissing()} is true)
+     * @since 9.10RC1
+     */
+    public Date getModifiedSince()
+    {
+        return this.modifiedSince;
+    }
+
+    /**
+     * @param modifiedSince if not {@code null} only the documents modified since this date are indexed (the Solr
+     *            index is not compared with the database: the documents deleted since this date are found in the
+     *            recycle bin and removed from the index, if {@link #isRemoveMissing()} is true)
+     * @since 9.10RC1
+     */
+    public void setModifiedSince(Date modifiedSince)
+    {
+        this.modifiedSince = modifiedSince;
+    }
+
+    /**
+     * @return if true and no modification date is explicitly provided, only the documents modified since the last
+     *         complete synchronization of the same root reference are indexed
+     * @since 9.10RC1
+     */
+    public boolean isIncremental()
+    {
+        return this.incremental;
+    }
+
+    /**
+     * @param incremental if true and no modification date is explicitly provided, only the documents modified since
+     *            the last complete synchronization of the same root reference are indexed
+     * @since 9.10RC1
+     */
+    public void setIncremental(boolean incremental)
+    {
+        this.incremental = incremental;
+    }
 }
@@ -146,6 +146,11 @@ private SolrQuery getQuery() throws SolrIndexerException
             query.setFields(FieldUtils.WIKI, FieldUtils.SPACES, FieldUtils.NAME, FieldUtils.DOCUMENT_LOCALE,
                 FieldUtils.VERSION);
             query.addFilterQuery(FieldUtils.TYPE + ':' + EntityType.DOCUMENT.name());
+            if (modifiedSince != null) {
+                // The indexed date is the content update date, which is never after the modification date used by the
+                // database iterator, so this doesn't exclude any document returned by the database iterator
+                query.addFilterQuery(FieldUtils.DATE + ":[" + modifiedSince.toInstant() + " TO *]");
+            }
             // This iterator must have the same order as the database iterator, otherwise the synchronization fails.
             // Note that we had two options:
             // (A) Sort the Solr index only by id and enable docValues on the id field to improve the speed. But then we
@@ -190,6 +190,42 @@ public int getQueueSize()
         return this.solrIndexer.getQueueSize();
     }
 
+    /**
+     * @return the number of entities for which the metadata has been extracted since the indexer was started
+     * @since 9.10RC1
+     */
+    public long getExtractedCount()
+    {
+        return this.solrIndexer.getExtractedCount();
+    }
+
+    /**
+     * @return the total time spent extracting the metadata of the entities to index, in milliseconds
+     * @since 9.10RC1
+     */
+    public long getExtractTime()
+    {
+        return this.solrIndexer.getExtractTime();
+    }
+
+    /**
+     * @return the number of index and delete operations sent to the Solr server since the indexer was started
+     * @since 9.10RC1
+     */
+    public long getSentCount()
+    {
+        return this.solrIndexer.getSentCount();
+    }
+
+    /**
+     * @return the total time spent committing the index changes, in milliseconds
+     * @since 9.10RC1
+     */
+    public long getCommitTime()
+    {
+        return this.solrIndexer.getCommitTime();
+    }
+
     /**
      * Extract a {@link DocumentReference} from the given {@link SolrDocument} (e.g. search result).
      * 
@@ -19,76 +19,290 @@
  */
 package org.xwiki.search.solr.internal;
 
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.inject.Provider;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
-import org.xwiki.model.reference.WikiReference;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
 import org.xwiki.search.solr.internal.api.SolrConfiguration;
 import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.search.solr.internal.api.SolrInstance;
+import org.xwiki.search.solr.internal.metadata.LengthSolrInputDocument;
+import org.xwiki.search.solr.internal.metadata.SolrMetadataExtractor;
+import org.xwiki.search.solr.internal.reference.SolrReferenceResolver;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
-import com.xpn.xwiki.XWiki;
-import com.xpn.xwiki.XWikiContext;
-import com.xpn.xwiki.test.reference.ReferenceComponentList;
-import com.xpn.xwiki.web.Utils;
-
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
- * TODO DOCUMENT ME!
- * 
+ * Unit tests for {@link DefaultSolrIndexer}.
+ *
  * @version $Id$
  */
-@ReferenceComponentList
 public class DefaultSolrIndexerTest
 {
     @Rule
     public final MockitoComponentMockingRule<SolrIndexer> mocker =
         new MockitoComponentMockingRule<SolrIndexer>(DefaultSolrIndexer.class);
 
-    private XWikiContext xcontext;
+    private SolrConfiguration configuration;
 
-    private XWiki xwiki;
+    private SolrInstance solrInstance;
 
-    private SolrConfiguration mockConfig;
+    private SolrMetadataExtractor extractor;
 
     @Before
     public void configure() throws Exception
     {
-        Utils.setComponentManager(mocker);
+        this.configuration = this.mocker.getInstance(SolrConfiguration.class);
+        when(this.configuration.getIndexerQueueCapacity()).thenReturn(100);
+        when(this.configuration.getIndexerBatchSize()).thenReturn(50);
+        when(this.configuration.getIndexerBatchMaxLengh()).thenReturn(10000);
+
+        this.solrInstance = mock(SolrInstance.class);
+        Provider<SolrInstance> solrInstanceProvider =
+            this.mocker.registerMockComponent(new DefaultParameterizedType(null, Provider.class, SolrInstance.class));
+        when(solrInstanceProvider.get()).thenReturn(this.solrInstance);
+
+        this.extractor = this.mocker.registerMockComponent(SolrMetadataExtractor.class, "document");
+    }
+
+    private void waitForCommit(SolrIndexer indexer) throws InterruptedException
+    {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (indexer.getCommittedRequestCount() < indexer.getRequestCount()
+            && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(indexer.getRequestCount(), indexer.getCommittedRequestCount());
+    }
+
+    @Test
+    public void indexWithSeveralExtractionThreads() throws Exception
+    {
+        when(this.configuration.getIndexerThreads()).thenReturn(4);
+
+        List<DocumentReference> references = new ArrayList<>();
+        List<SolrInputDocument> documents = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            references.add(new DocumentReference("wiki", "Space", "Page" + i));
+            documents.add(new LengthSolrInputDocument());
+        }
+
+        Set<String> extractionThreads = ConcurrentHashMap.newKeySet();
+        CountDownLatch concurrentExtractions = new CountDownLatch(2);
+        when(this.extractor.getSolrDocument(any())).thenAnswer(invocation -> {
+            extractionThreads.add(Thread.currentThread().getName());
+
+            // Only the first extraction can't complete until another one is started in parallel.
+            concurrentExtractions.countDown();
+            concurrentExtractions.await(5, TimeUnit.SECONDS);
+
+            // The first entities are the slowest to extract.
+            int index = references.indexOf(invocation.getArgument(0));
+            Thread.sleep(references.size() - index);
+
+            return documents.get(index);
+        });
+
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+        for (EntityReference reference : references) {
+            indexer.index(reference, false);
+        }
+
+        waitForCommit(indexer);
+
+        assertTrue(extractionThreads.size() > 1);
+
+        // The documents are sent in the order they were queued.
+        ArgumentCaptor<SolrInputDocument> sentDocuments = ArgumentCaptor.forClass(SolrInputDocument.class);
+        verify(this.solrInstance, times(20)).add(sentDocuments.capture());
+        assertEquals(documents, sentDocuments.getAllValues());
+        verify(this.solrInstance, atLeastOnce()).commit();
+
+        assertEquals(20, indexer.getExtractedCount());
+        assertEquals(20, indexer.getSentCount());
+    }
+
+    @Test
+    public void deleteIsNotOvertakenByIndexOfTheSameEntity() throws Exception
+    {
+        when(this.configuration.getIndexerThreads()).thenReturn(2);
+
+        DocumentReference reference = new DocumentReference("wiki", "Space", "Page");
+        LengthSolrInputDocument document = new LengthSolrInputDocument();
+        when(this.extractor.getSolrDocument(reference)).thenAnswer(invocation -> {
+            // Give the delete operation a chance to overtake the extraction.
+            Thread.sleep(100);
+
+            return document;
+        });
+
+        SolrReferenceResolver resolver = this.mocker.getInstance(SolrReferenceResolver.class);
+        when(resolver.getId(reference)).thenReturn("id");
+
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+        indexer.index(reference, false);
+        indexer.delete(reference, false);
+        indexer.index(reference, false);
+        indexer.delete(reference, false);
+
+        waitForCommit(indexer);
+
+        InOrder inOrder = inOrder(this.solrInstance);
+        inOrder.verify(this.solrInstance).add(document);
+        inOrder.verify(this.solrInstance).delete("id");
+        inOrder.verify(this.solrInstance).add(document);
+        inOrder.verify(this.solrInstance).delete("id");
+        inOrder.verify(this.solrInstance).commit();
+
+        assertEquals(2, indexer.getExtractedCount());
+        assertEquals(4, indexer.getSentCount());
+    }
+
+    @Test
+    public void indexWithCommitWithin() throws Exception
+    {
+        when(this.configuration.getIndexerThreads()).thenReturn(1);
+        when(this.configuration.getIndexerCommitWithin()).thenReturn(500);
+        when(this.configuration.getIndexerHardCommitInterval()).thenReturn(2000);
+
+        DocumentReference reference = new DocumentReference("wiki", "Space", "Page");
+        DocumentReference otherReference = new DocumentReference("wiki", "Space", "Other");
+        LengthSolrInputDocument document = new LengthSolrInputDocument();
+        when(this.extractor.getSolrDocument(reference)).thenReturn(document);
 
-        // XWiki
+        SolrReferenceResolver resolver = this.mocker.getInstance(SolrReferenceResolver.class);
+        when(resolver.getId(otherReference)).thenReturn("id");
+        when(resolver.getQuery(otherReference.getLastSpaceReference())).thenReturn("query");
 
-        this.xwiki = mock(XWiki.class);
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+        indexer.index(reference, false);
+        indexer.delete(otherReference, false);
+        indexer.delete(otherReference.getLastSpaceReference(), true);
 
-        // XWikiContext
+        // The operations are made visible by the Solr server.
+        verify(this.solrInstance, timeout(1000)).add(document, 500);
+        verify(this.solrInstance, timeout(1000)).delete("id", 500);
+        verify(this.solrInstance, timeout(1000)).deleteByQuery("query", 500);
 
-        this.xcontext = new XWikiContext();
-        this.xcontext.setWikiId("xwiki");
-        this.xcontext.setWiki(this.xwiki);
+        // The sent operations are not in the queue anymore but they are not committed yet.
+        assertEquals(0, indexer.getQueueSize());
+        assertEquals(3, indexer.getRequestCount());
+        assertTrue(indexer.getCommittedRequestCount() < 3);
+        verify(this.solrInstance, never()).commit();
 
-        // Solr configuration
+        // The changes are hard committed when the hard commit interval is over.
+        waitForCommit(indexer);
+        verify(this.solrInstance).commit();
 
-        URL url = this.getClass().getClassLoader().getResource("solrhome");
-        this.mockConfig = this.mocker.getInstance(SolrConfiguration.class);
-        when(this.mockConfig.getInstanceConfiguration(eq(EmbeddedSolrInstance.TYPE), eq("home"), any()))
-            .thenReturn(url.getPath());
+        verify(this.solrInstance, never()).add(any(SolrInputDocument.class));
+        verify(this.solrInstance, never()).delete(anyString());
+        verify(this.solrInstance, never()).deleteByQuery(anyString());
     }
 
     @Test
-    public void testIndexEmptyWiki() throws Exception
+    public void failedCommitIsNotCounted() throws Exception
     {
+        when(this.configuration.getIndexerThreads()).thenReturn(1);
+
+        DocumentReference reference = new DocumentReference("wiki", "Space", "Page");
+        DocumentReference otherReference = new DocumentReference("wiki", "Space", "Other");
+        LengthSolrInputDocument document = new LengthSolrInputDocument();
+        when(this.extractor.getSolrDocument(reference)).thenReturn(document);
+        when(this.extractor.getSolrDocument(otherReference)).thenReturn(document);
+
+        doThrow(new SolrServerException("Commit failed")).doNothing().when(this.solrInstance).commit();
+
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+        indexer.index(reference, false);
+
+        // The changes are rolled back.
+        verify(this.solrInstance, timeout(1000)).rollback();
+        assertEquals(1, indexer.getRequestCount());
+        assertEquals(0, indexer.getCommittedRequestCount());
+
+        // The failed request is only counted once the next changes are successfully committed.
+        indexer.index(otherReference, false);
+
+        waitForCommit(indexer);
+        verify(this.solrInstance, times(2)).commit();
+        assertEquals(2, indexer.getCommittedRequestCount());
+    }
+
+    @Test
+    public void dispose() throws Exception
+    {
+        when(this.configuration.getIndexerThreads()).thenReturn(2);
+
+        DocumentReference reference = new DocumentReference("wiki", "Space", "Page");
+        DocumentReference otherReference = new DocumentReference("wiki", "Space", "Other");
+
+        CountDownLatch extractionStarted = new CountDownLatch(1);
+        CountDownLatch extractionReleased = new CountDownLatch(1);
+        when(this.extractor.getSolrDocument(reference)).thenAnswer(invocation -> {
+            extractionStarted.countDown();
+            extractionReleased.await(5, TimeUnit.SECONDS);
+
+            return new LengthSolrInputDocument();
+        });
+
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+        indexer.index(reference, false);
+
+        assertTrue(extractionStarted.await(5, TimeUnit.SECONDS));
+
+        ((Disposable) indexer).dispose();
+
+        // Requests are ignored once the indexer is disposed.
+        indexer.index(otherReference, false);
+        assertEquals(1, indexer.getRequestCount());
+
+        extractionReleased.countDown();
+
+        Thread indexThread = (Thread) FieldUtils.readField(indexer, "indexThread", true);
+        indexThread.join(5000);
+        assertFalse(indexThread.isAlive());
 
-        // Mock solr wrapper
-        // Add expectations
+        Thread resolveThread = (Thread) FieldUtils.readField(indexer, "resolveThread", true);
+        resolveThread.join(5000);
+        assertFalse(resolveThread.isAlive());
 
-        WikiReference wikiReference = new WikiReference("xwiki");
+        ExecutorService extractExecutor =
+            (ExecutorService) FieldUtils.readField(indexer, "extractExecutor", true);
+        assertTrue(extractExecutor.awaitTermination(5, TimeUnit.SECONDS));
 
-        // index.index(wikiReference);
+        verify(this.extractor, never()).getSolrDocument(otherReference);
     }
 }
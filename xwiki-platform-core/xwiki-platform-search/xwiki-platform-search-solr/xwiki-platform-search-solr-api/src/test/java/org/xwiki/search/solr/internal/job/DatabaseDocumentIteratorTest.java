@@ -23,6 +23,7 @@
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -38,6 +39,7 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReferenceResolver;
 import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryFilter;
 import org.xwiki.query.QueryManager;
@@ -201,6 +203,47 @@ public void iterateOneWiki() throws Exception
         verify(countQuery).bindValue("name", "C");
     }
 
+    @Test
+    public void iterateModifiedDocuments() throws Exception
+    {
+        WikiReference rootReference = new WikiReference("gang");
+        Date modifiedSince = new Date();
+
+        Query emptyQuery = mock(Query.class);
+        when(emptyQuery.execute()).thenReturn(Collections.emptyList());
+
+        Query query = mock(Query.class);
+        when(query.setLimit(anyInt())).thenReturn(query);
+        when(query.setWiki("gang")).thenReturn(query);
+        when(query.setOffset(0)).thenReturn(query);
+        when(query.setOffset(100)).thenReturn(emptyQuery);
+        when(query.execute()).thenReturn(Collections.<Object>singletonList(new Object[] {"A.B", "C", "", "3.1"}));
+        when(query.getNamedParameters())
+            .thenReturn(Collections.<String, Object>singletonMap("modifiedSince", modifiedSince));
+
+        Query countQuery = mock(Query.class);
+        when(countQuery.addFilter(mocker.<QueryFilter> getInstance(QueryFilter.class, "count"))).thenReturn(countQuery);
+
+        QueryManager queryManager = mocker.getInstance(QueryManager.class);
+        String whereClause = " where doc.date >= :modifiedSince";
+        when(queryManager.createQuery("select doc.space, doc.name, doc.language, doc.version from XWikiDocument doc"
+            + whereClause + " order by doc.space, doc.name, doc.language", Query.HQL)).thenReturn(query);
+        when(queryManager.createQuery(whereClause, Query.HQL)).thenReturn(countQuery);
+
+        DocumentReference documentReference = createDocumentReference("gang", Arrays.asList("A", "B"), "C", null);
+
+        DocumentIterator<String> iterator = mocker.getComponentUnderTest();
+        iterator.setRootReference(rootReference);
+        iterator.setModifiedSince(modifiedSince);
+
+        assertTrue(iterator.hasNext());
+        assertEquals(new ImmutablePair<DocumentReference, String>(documentReference, "3.1"), iterator.next());
+        assertFalse(iterator.hasNext());
+
+        verify(query).bindValue("modifiedSince", modifiedSince);
+        verify(countQuery).bindValue("modifiedSince", modifiedSince);
+    }
+
     private DocumentReference createDocumentReference(String wiki, List<String> spaces, String name, Locale locale)
     {
         DocumentReference documentReference = new DocumentReference(wiki, spaces, name);
@@ -0,0 +1,119 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.job;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link DeletedDocumentIterator}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class DeletedDocumentIteratorTest
+{
+    @Rule
+    public MockitoComponentMockingRule<DocumentIterator<String>> mocker =
+        new MockitoComponentMockingRule<DocumentIterator<String>>(DeletedDocumentIterator.class);
+
+    private Query query;
+
+    private Date modifiedSince = new Date(1000);
+
+    @Before
+    public void configure() throws Exception
+    {
+        this.query = mock(Query.class);
+        when(this.query.setWiki(anyString())).thenReturn(this.query);
+        when(this.query.setOffset(anyInt())).thenReturn(this.query);
+        when(this.query.setLimit(anyInt())).thenReturn(this.query);
+
+        QueryManager queryManager = this.mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(anyString(), eq(Query.HQL))).thenReturn(this.query);
+
+        EntityReferenceResolver<String> resolver =
+            this.mocker.getInstance(EntityReferenceResolver.TYPE_STRING, "explicit");
+        when(resolver.resolve("Space.Page", EntityType.DOCUMENT, new WikiReference("wiki")))
+            .thenReturn(new DocumentReference("wiki", "Space", "Page"));
+        when(resolver.resolve("Other.Page", EntityType.DOCUMENT, new WikiReference("wiki")))
+            .thenReturn(new DocumentReference("wiki", "Other", "Page"));
+    }
+
+    @Test
+    public void iterateDeletedDocumentsOfTheRootSpace() throws Exception
+    {
+        when(this.query.execute()).thenReturn(Arrays.<Object>asList(new Object[] {"Space.Page", ""},
+            new Object[] {"Other.Page", ""}, new Object[] {"Space.Page", "fr"}), Collections.emptyList());
+
+        DocumentIterator<String> iterator = this.mocker.getComponentUnderTest();
+        iterator.setRootReference(new SpaceReference("Space", new WikiReference("wiki")));
+        iterator.setModifiedSince(this.modifiedSince);
+
+        List<DocumentReference> documents = new ArrayList<>();
+        while (iterator.hasNext()) {
+            documents.add(iterator.next().getKey());
+        }
+
+        DocumentReference page = new DocumentReference("wiki", "Space", "Page");
+        assertEquals(Arrays.asList(page, new DocumentReference(page, Locale.FRENCH)), documents);
+
+        verify(this.query).setWiki("wiki");
+        verify(this.query).bindValue("modifiedSince", this.modifiedSince);
+    }
+
+    @Test
+    public void iterateNothingWithoutModificationDate() throws Exception
+    {
+        DocumentIterator<String> iterator = this.mocker.getComponentUnderTest();
+        iterator.setRootReference(new WikiReference("wiki"));
+
+        assertFalse(iterator.hasNext());
+        assertEquals(0, iterator.size());
+
+        verify(this.query, never()).execute();
+    }
+}
@@ -24,6 +24,7 @@
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
@@ -78,6 +79,11 @@ public void setRootReference(EntityReference rootReference)
         {
         }
 
+        @Override
+        public void setModifiedSince(Date modifiedSince)
+        {
+        }
+
         @Override
         public long size()
         {
@@ -159,6 +165,21 @@ public void setRootReference()
         verify(next).setRootReference(rootReference);
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void setModifiedSince()
+    {
+        DocumentIterator<String> previous = mock(DocumentIterator.class, "previous");
+        DocumentIterator<String> next = mock(DocumentIterator.class, "next");
+        DiffDocumentIterator<String> iterator = new DiffDocumentIterator<String>(previous, next);
+
+        Date modifiedSince = new Date(1000);
+        iterator.setModifiedSince(modifiedSince);
+
+        verify(previous).setModifiedSince(modifiedSince);
+        verify(next).setModifiedSince(modifiedSince);
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void remove()
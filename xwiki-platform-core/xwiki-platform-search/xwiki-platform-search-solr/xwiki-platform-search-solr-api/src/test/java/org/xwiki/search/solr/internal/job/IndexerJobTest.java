@@ -0,0 +1,281 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.job;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.job.Job;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link IndexerJob}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class IndexerJobTest
+{
+    @Rule
+    public MockitoComponentMockingRule<Job> mocker = new MockitoComponentMockingRule<>(IndexerJob.class);
+
+    private WikiReference rootReference = new WikiReference("wiki");
+
+    private SolrIndexer indexer;
+
+    private IndexerCheckpointStore checkpointStore;
+
+    private DocumentIterator<String> databaseIterator;
+
+    private DocumentIterator<String> deletedIterator;
+
+    private DocumentIterator<String> solrIterator;
+
+    private ConfigurationSource xwikicfg;
+
+    @Before
+    public void configure() throws Exception
+    {
+        Execution execution = this.mocker.getInstance(Execution.class);
+        when(execution.getContext()).thenReturn(mock(ExecutionContext.class));
+
+        this.indexer = this.mocker.getInstance(SolrIndexer.class);
+        this.checkpointStore = this.mocker.getInstance(IndexerCheckpointStore.class);
+
+        this.databaseIterator = this.mocker
+            .getInstance(new DefaultParameterizedType(null, DocumentIterator.class, String.class), "database");
+        this.deletedIterator = this.mocker
+            .getInstance(new DefaultParameterizedType(null, DocumentIterator.class, String.class), "deleted");
+        this.solrIterator = this.mocker
+            .getInstance(new DefaultParameterizedType(null, DocumentIterator.class, String.class), "solr");
+
+        this.xwikicfg = this.mocker.getInstance(ConfigurationSource.class, "xwikicfg");
+        when(this.xwikicfg.getProperty("xwiki.recyclebin", "1")).thenReturn("1");
+    }
+
+    private List<DocumentReference> mockDatabase(int count)
+    {
+        List<DocumentReference> documents = new ArrayList<>();
+        List<Pair<DocumentReference, String>> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DocumentReference documentReference =
+                new DocumentReference("wiki", "Space", String.format("Page%04d", i));
+            documents.add(documentReference);
+            entries.add(new ImmutablePair<>(documentReference, "1.1"));
+        }
+
+        Iterator<Pair<DocumentReference, String>> iterator = entries.iterator();
+        when(this.databaseIterator.hasNext()).then(invocation -> iterator.hasNext());
+        when(this.databaseIterator.next()).then(invocation -> iterator.next());
+        when(this.databaseIterator.size()).thenReturn((long) count);
+
+        return documents;
+    }
+
+    private void run() throws Exception
+    {
+        IndexerRequest request = new IndexerRequest();
+        request.setRootReference(this.rootReference);
+
+        run(request);
+    }
+
+    private void run(IndexerRequest request) throws Exception
+    {
+        Job job = this.mocker.getComponentUnderTest();
+        job.initialize(request);
+        job.run();
+    }
+
+    @Test
+    public void checkpointWhenTheIndexerHasProcessedTheDocument() throws Exception
+    {
+        List<DocumentReference> documents = mockDatabase(3000);
+
+        // The number of requests queued when each checkpoint candidate is selected
+        when(this.indexer.getRequestCount()).thenReturn(1000L, 2000L, 3000L);
+        // The indexer has only committed the first candidate, then everything once the synchronization is done
+        when(this.indexer.getCommittedRequestCount()).thenReturn(1000L, 1000L, 3000L);
+
+        run();
+
+        verify(this.indexer, times(3000)).index(any(DocumentReference.class), eq(true));
+        verify(this.checkpointStore).start(eq(this.rootReference), any(Date.class));
+        verify(this.checkpointStore).setLastProcessedDocument(this.rootReference, documents.get(999));
+        verify(this.checkpointStore, never()).setLastProcessedDocument(this.rootReference, documents.get(1999));
+        verify(this.checkpointStore, never()).setLastProcessedDocument(this.rootReference, documents.get(2999));
+        verify(this.checkpointStore).setSynchronized(eq(this.rootReference), any(Date.class));
+    }
+
+    @Test
+    public void checkpointKeepsTheCandidateUntilItIsProcessed() throws Exception
+    {
+        List<DocumentReference> documents = mockDatabase(3000);
+
+        when(this.indexer.getRequestCount()).thenReturn(1000L, 3000L);
+        // The first candidate is not committed when the second one would be selected
+        when(this.indexer.getCommittedRequestCount()).thenReturn(900L, 1500L, 3000L);
+
+        run();
+
+        verify(this.checkpointStore).setLastProcessedDocument(this.rootReference, documents.get(999));
+        verify(this.checkpointStore, never()).setLastProcessedDocument(this.rootReference, documents.get(1999));
+    }
+
+    @Test
+    public void resumeAfterTheCheckpoint() throws Exception
+    {
+        List<DocumentReference> documents = mockDatabase(5);
+
+        Date startDate = new Date(1000);
+        when(this.checkpointStore.getStartDate(this.rootReference)).thenReturn(startDate);
+        when(this.checkpointStore.getLastProcessedDocument(this.rootReference)).thenReturn(documents.get(2));
+
+        run();
+
+        verify(this.indexer, never()).index(documents.get(0), true);
+        verify(this.indexer, never()).index(documents.get(1), true);
+        verify(this.indexer, never()).index(documents.get(2), true);
+        verify(this.indexer).index(documents.get(3), true);
+        verify(this.indexer).index(documents.get(4), true);
+
+        verify(this.checkpointStore, never()).start(any(), any());
+        // The watermark is the date when the interrupted synchronization started
+        verify(this.checkpointStore).setSynchronized(this.rootReference, startDate);
+    }
+
+    @Test
+    public void ignoreTheCheckpointWithoutStartDate() throws Exception
+    {
+        List<DocumentReference> documents = mockDatabase(2);
+
+        when(this.checkpointStore.getLastProcessedDocument(this.rootReference)).thenReturn(documents.get(1));
+
+        run();
+
+        verify(this.indexer).index(documents.get(0), true);
+        verify(this.indexer).index(documents.get(1), true);
+        verify(this.indexer, never()).delete(any(), anyBoolean());
+    }
+
+    @Test
+    public void incrementalRemovesTheDeletedDocumentsBeforeIndexingTheModifiedOnes() throws Exception
+    {
+        List<DocumentReference> documents = mockDatabase(2);
+
+        DocumentReference deletedDocument = new DocumentReference("wiki", "Space", "Deleted");
+        Iterator<Pair<DocumentReference, String>> deleted =
+            Arrays.<Pair<DocumentReference, String>>asList(new ImmutablePair<>(deletedDocument, null)).iterator();
+        when(this.deletedIterator.hasNext()).then(invocation -> deleted.hasNext());
+        when(this.deletedIterator.next()).then(invocation -> deleted.next());
+
+        Date watermark = new Date(1000);
+        when(this.checkpointStore.getSynchronizationDate(this.rootReference)).thenReturn(watermark);
+
+        when(this.indexer.getRequestCount()).thenReturn(3L);
+        // The watermark moves forward only when all the requests are committed
+        when(this.indexer.getCommittedRequestCount()).thenReturn(1L, 3L);
+
+        IndexerRequest request = new IndexerRequest();
+        request.setRootReference(this.rootReference);
+        request.setIncremental(true);
+        run(request);
+
+        verify(this.databaseIterator).setModifiedSince(watermark);
+        verify(this.deletedIterator).setModifiedSince(watermark);
+
+        InOrder inOrder = inOrder(this.indexer, this.checkpointStore);
+        inOrder.verify(this.indexer).delete(deletedDocument, true);
+        inOrder.verify(this.indexer).index(documents.get(0), true);
+        inOrder.verify(this.indexer).index(documents.get(1), true);
+        inOrder.verify(this.checkpointStore).setSynchronized(eq(this.rootReference), any(Date.class));
+
+        verify(this.indexer, times(2)).getCommittedRequestCount();
+    }
+
+    @Test
+    public void explicitModificationDateKeepsTheDeletedDocumentsWhenNotRemovingMissing() throws Exception
+    {
+        mockDatabase(1);
+
+        IndexerRequest request = new IndexerRequest();
+        request.setRootReference(this.rootReference);
+        request.setModifiedSince(new Date(1000));
+        request.setRemoveMissing(false);
+        run(request);
+
+        verify(this.deletedIterator, never()).hasNext();
+        verify(this.indexer, never()).delete(any(), anyBoolean());
+        // The watermark is not used
+        verify(this.checkpointStore, never()).setSynchronized(any(), any());
+    }
+
+    @Test
+    public void incrementalComparesTheWholeIndexWithoutRecycleBin() throws Exception
+    {
+        List<DocumentReference> documents = mockDatabase(1);
+
+        DocumentReference deletedDocument = new DocumentReference("wiki", "Space", "Deleted");
+        Iterator<Pair<DocumentReference, String>> indexed =
+            Arrays.<Pair<DocumentReference, String>>asList(new ImmutablePair<>(deletedDocument, "1.1")).iterator();
+        when(this.solrIterator.hasNext()).then(invocation -> indexed.hasNext());
+        when(this.solrIterator.next()).then(invocation -> indexed.next());
+
+        when(this.xwikicfg.getProperty("xwiki.recyclebin", "1")).thenReturn("0");
+        when(this.checkpointStore.getSynchronizationDate(this.rootReference)).thenReturn(new Date(1000));
+
+        IndexerRequest request = new IndexerRequest();
+        request.setRootReference(this.rootReference);
+        request.setIncremental(true);
+        run(request);
+
+        // The deleted documents are found by comparing the index with the database
+        verify(this.deletedIterator, never()).hasNext();
+        verify(this.databaseIterator, never()).setModifiedSince(any());
+        verify(this.indexer).delete(deletedDocument, true);
+        verify(this.indexer).index(documents.get(0), true);
+    }
+}
@@ -21,6 +21,7 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
@@ -36,6 +37,7 @@
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.xwiki.component.util.DefaultParameterizedType;
 import org.xwiki.localization.LocaleUtils;
 import org.xwiki.model.reference.DocumentReference;
@@ -152,6 +154,23 @@ public void iterate() throws Exception
         assertEquals(expectedResult, actualResult);
     }
 
+    @Test
+    public void iterateDocumentsModifiedSince() throws Exception
+    {
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(new SolrDocumentList());
+        when(solr.query(any(SolrQuery.class))).thenReturn(response);
+
+        DocumentIterator<String> iterator = mocker.getComponentUnderTest();
+        iterator.setModifiedSince(new Date(1000));
+
+        assertFalse(iterator.hasNext());
+
+        ArgumentCaptor<SolrQuery> query = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(solr).query(query.capture());
+        assertTrue(Arrays.asList(query.getValue().getFilterQueries()).contains("date:[1970-01-01T00:00:01Z TO *]"));
+    }
+
     private SolrDocument createSolrDocument(String wiki, List<String> spaces, String name, String locale, String version)
     {
         SolrDocument doc = new SolrDocument();
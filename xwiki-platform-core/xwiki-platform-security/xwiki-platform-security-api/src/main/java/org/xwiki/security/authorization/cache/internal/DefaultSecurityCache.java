@@ -25,9 +25,7 @@
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashSet;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -72,14 +70,12 @@ public class DefaultSecurityCache implements SecurityCache, Initializable
     @Inject
     private Logger logger;
 
-    /** Fair read-write lock used for fair scheduling of cache access. */
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
-
-    /** Fair read lock. */
-    private final Lock readLock = readWriteLock.readLock();
-
-    /** Fair write lock. */
-    private final Lock writeLock = readWriteLock.writeLock();
+    /**
+     * Lock used to protect the consistency of the cache entries relations. Readers first try an optimistic read which
+     * does not block (and is not blocked by) anyone, and only fall back to a real read lock when a writer has been
+     * modifying the cache in the meantime. This lock is not reentrant.
+     */
+    private final StampedLock lock = new StampedLock();
 
     /** The keys in the cache are generated from instances of {@link org.xwiki.model.reference.EntityReference}. */
     @Inject
@@ -156,7 +152,7 @@ private class SecurityCacheEntry implements DisposableCacheValue
             this.entry = entry;
             SecurityReference parentReference = entry.getReference().getParentSecurityReference();
             if (parentReference != null) {
-                SecurityCacheEntry parent = DefaultSecurityCache.this.getEntry(parentReference);
+                SecurityCacheEntry parent = DefaultSecurityCache.this.getWriteLockedEntry(parentReference);
                 if (parent == null) {
                     throw new ParentEntryEvictedException();
                 }
@@ -178,8 +174,8 @@ private class SecurityCacheEntry implements DisposableCacheValue
         SecurityCacheEntry(SecurityShadowEntry entry) throws ParentEntryEvictedException
         {
             this.entry = entry;
-            SecurityCacheEntry parent1 = DefaultSecurityCache.this.getEntry(entry.getReference());
-            SecurityCacheEntry parent2 = DefaultSecurityCache.this.getEntry(entry.getWikiReference());
+            SecurityCacheEntry parent1 = DefaultSecurityCache.this.getWriteLockedEntry(entry.getReference());
+            SecurityCacheEntry parent2 = DefaultSecurityCache.this.getWriteLockedEntry(entry.getWikiReference());
             if (parent1 == null || parent2 == null) {
                 throw new ParentEntryEvictedException();
             }
@@ -209,10 +205,10 @@ private class SecurityCacheEntry implements DisposableCacheValue
         {
             this.entry = entry;
             boolean isSelf = entry.getReference().equals(entry.getUserReference());
-            SecurityCacheEntry parent1 = DefaultSecurityCache.this.getEntry(entry.getReference());
+            SecurityCacheEntry parent1 = DefaultSecurityCache.this.getWriteLockedEntry(entry.getReference());
             SecurityCacheEntry parent2 = (isSelf) ? parent1
-                : (wiki != null) ? DefaultSecurityCache.this.getShadowEntry(entry.getUserReference(), wiki)
-                                 : DefaultSecurityCache.this.getEntry(entry.getUserReference());
+                : (wiki != null) ? DefaultSecurityCache.this.getWriteLockedShadowEntry(entry.getUserReference(), wiki)
+                                 : DefaultSecurityCache.this.getWriteLockedEntry(entry.getUserReference());
             if (parent1 == null || parent2 == null) {
                 throw new ParentEntryEvictedException();
             }
@@ -264,7 +260,7 @@ private SecurityCacheEntry(SecurityEntry entry, Collection<GroupSecurityReferenc
             if (parentSize > 0) {
                 this.parents = new ArrayList<SecurityCacheEntry>(parentSize);
                 if (parentReference != null) {
-                    SecurityCacheEntry parent = DefaultSecurityCache.this.getEntry(parentReference);
+                    SecurityCacheEntry parent = DefaultSecurityCache.this.getWriteLockedEntry(parentReference);
                     if (parent == null) {
                         throw new ParentEntryEvictedException();
                     }
@@ -294,9 +290,9 @@ private void addParentGroups(Collection<GroupSecurityReference> groups,
                     continue;
                 }
                 SecurityCacheEntry parent = (entry instanceof SecurityShadowEntry && group.isGlobal())
-                    ? DefaultSecurityCache.this.getShadowEntry(group,
+                    ? DefaultSecurityCache.this.getWriteLockedShadowEntry(group,
                         ((SecurityShadowEntry) entry).getWikiReference())
-                    : DefaultSecurityCache.this.getEntry(group);
+                    : DefaultSecurityCache.this.getWriteLockedEntry(group);
                 if (parent == null) {
                     throw new ParentEntryEvictedException();
                 }
@@ -539,12 +535,7 @@ private String getEntryKey(SecurityAccessEntry entry)
      */
     private SecurityCacheEntry getEntry(SecurityReference reference)
     {
-        readLock.lock();
-        try {
-            return cache.get(getEntryKey(reference));
-        } finally {
-            readLock.unlock();
-        }
+        return getCacheEntry(getEntryKey(reference));
     }
 
     /**
@@ -555,12 +546,7 @@ private SecurityCacheEntry getEntry(SecurityReference reference)
      */
     private SecurityCacheEntry getEntry(UserSecurityReference userReference, SecurityReference reference)
     {
-        readLock.lock();
-        try {
-            return cache.get(getEntryKey(userReference, reference));
-        } finally {
-            readLock.unlock();
-        }
+        return getCacheEntry(getEntryKey(userReference, reference));
     }
 
     /**
@@ -571,11 +557,55 @@ private SecurityCacheEntry getEntry(UserSecurityReference userReference, Securit
      */
     private SecurityCacheEntry getShadowEntry(SecurityReference userReference, SecurityReference wiki)
     {
-        readLock.lock();
+        return getCacheEntry(getShadowEntryKey(userReference, wiki));
+    }
+
+    /**
+     * Same as {@link #getEntry(SecurityReference)} but without taking the lock, must only be called by the thread
+     * holding the write lock.
+     *
+     * @param reference the reference requested.
+     * @return a security cache entry corresponding to given reference, null if none is available in the cache.
+     */
+    private SecurityCacheEntry getWriteLockedEntry(SecurityReference reference)
+    {
+        return cache.get(getEntryKey(reference));
+    }
+
+    /**
+     * Same as {@link #getShadowEntry(SecurityReference, SecurityReference)} but without taking the lock, must only be
+     * called by the thread holding the write lock.
+     *
+     * @param userReference the user reference requested.
+     * @param wiki the wiki context of the shadow reference to retrieve.
+     * @return a security cache entry corresponding to the given user and reference, null if none is available
+     *         in the cache.
+     */
+    private SecurityCacheEntry getWriteLockedShadowEntry(SecurityReference userReference, SecurityReference wiki)
+    {
+        return cache.get(getShadowEntryKey(userReference, wiki));
+    }
+
+    /**
+     * @param key the key of the cache entry
+     * @return the security cache entry corresponding to the given key, null if none is available in the cache
+     */
+    private SecurityCacheEntry getCacheEntry(String key)
+    {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            SecurityCacheEntry entry = cache.get(key);
+            if (this.lock.validate(stamp)) {
+                return entry;
+            }
+        }
+
+        // A writer has been modifying the cache during the optimistic read, do it again in a safe way
+        stamp = this.lock.readLock();
         try {
-            return cache.get(getShadowEntryKey(userReference, wiki));
+            return cache.get(key);
         } finally {
-            readLock.unlock();
+            this.lock.unlockRead(stamp);
         }
     }
 
@@ -677,7 +707,7 @@ private void add(SecurityEntry entry, Collection<GroupSecurityReference> groups)
     {
         String key = getEntryKey(entry);
 
-        writeLock.lock();
+        long stamp = this.lock.writeLock();
         try {
             if (isAlreadyInserted(key, entry, groups)) {
                 return;
@@ -686,7 +716,7 @@ private void add(SecurityEntry entry, Collection<GroupSecurityReference> groups)
 
             logger.debug("Added rule/shadow entry [{}] into the cache.", key);
         } finally {
-            writeLock.unlock();
+            this.lock.unlockWrite(stamp);
         }
     }
 
@@ -746,7 +776,7 @@ private void internalAdd(SecurityAccessEntry entry, SecurityReference wiki)
     {
         String key = getEntryKey(entry);
 
-        writeLock.lock();
+        long stamp = this.lock.writeLock();
         try {
             if (isAlreadyInserted(key, entry)) {
                 return;
@@ -756,7 +786,7 @@ private void internalAdd(SecurityAccessEntry entry, SecurityReference wiki)
             logger.debug("Added access entry [{}] into the cache.", key);
         } finally {
             newEntry = null;
-            writeLock.unlock();
+            this.lock.unlockWrite(stamp);
         }
     }
 
@@ -805,9 +835,10 @@ public SecurityRuleEntry get(SecurityReference entity)
     @Override
     public void remove(UserSecurityReference user, SecurityReference entity)
     {
-        writeLock.lock();
+        long stamp = this.lock.writeLock();
         try {
-            SecurityCacheEntry entry = getEntry(user, entity);
+            // The lock is not reentrant so access the cache directly
+            SecurityCacheEntry entry = cache.get(getEntryKey(user, entity));
             if (entry != null) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("Remove outdated access entry for [{}].", getEntryKey(user, entity));
@@ -815,16 +846,17 @@ public void remove(UserSecurityReference user, SecurityReference entity)
                 this.cache.remove(entry.getKey());
             }
         } finally {
-            writeLock.unlock();
+            this.lock.unlockWrite(stamp);
         }
     }
 
     @Override
     public void remove(SecurityReference entity)
     {
-        writeLock.lock();
+        long stamp = this.lock.writeLock();
         try {
-            SecurityCacheEntry entry = getEntry(entity);
+            // The lock is not reentrant so access the cache directly
+            SecurityCacheEntry entry = cache.get(getEntryKey(entity));
             if (entry != null) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("Remove outdated rule entry for [{}].", getEntryKey(entity));
@@ -832,7 +864,7 @@ public void remove(SecurityReference entity)
                 this.cache.remove(entry.getKey());
             }
         } finally {
-            writeLock.unlock();
+            this.lock.unlockWrite(stamp);
         }
     }
 
@@ -26,6 +26,10 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -57,9 +61,12 @@
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
@@ -809,4 +816,87 @@ public boolean keepAccess(SecurityAccessEntry entry) {
             }
         });
     }
+
+    private static void await(CountDownLatch latch)
+    {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void testOptimisticReadDuringWrite() throws Exception
+    {
+        SecurityRuleEntry entry = mockSecurityRuleEntry(xwikiRef);
+        securityCache.add(entry);
+
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch writeReleased = new CountDownLatch(1);
+        Thread writer = new Thread(() -> securityCache.remove(xwikiRef));
+        cache.setGetListener((key, value) -> {
+            if (Thread.currentThread() == writer) {
+                // Keep the write lock while the reader tries to read the entry
+                writeStarted.countDown();
+                await(writeReleased);
+            }
+        });
+        writer.start();
+        await(writeStarted);
+
+        AtomicReference<SecurityRuleEntry> result = new AtomicReference<>(entry);
+        Thread reader = new Thread(() -> result.set(securityCache.get(xwikiRef)));
+        reader.start();
+
+        // The optimistic read is not possible while the write lock is held, the reader waits for the read lock
+        reader.join(200);
+        assertTrue(reader.isAlive());
+
+        writeReleased.countDown();
+        writer.join(5000);
+        reader.join(5000);
+        assertFalse(reader.isAlive());
+
+        // The reader sees the result of the write
+        assertThat(result.get(), nullValue());
+    }
+
+    @Test
+    public void testOptimisticReadInvalidatedByWrite() throws Exception
+    {
+        SecurityRuleEntry entry = mockSecurityRuleEntry(xwikiRef);
+        securityCache.add(entry);
+
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch writeDone = new CountDownLatch(1);
+        List<Object> readValues = new CopyOnWriteArrayList<>();
+        AtomicReference<SecurityRuleEntry> result = new AtomicReference<>(entry);
+        Thread reader = new Thread(() -> result.set(securityCache.get(xwikiRef)));
+        cache.setGetListener((key, value) -> {
+            if (Thread.currentThread() == reader) {
+                readValues.add(value);
+                if (readValues.size() == 1) {
+                    // Modify the cache after the optimistic read and before its validation
+                    readStarted.countDown();
+                    await(writeDone);
+                }
+            }
+        });
+        reader.start();
+        await(readStarted);
+
+        // The optimistic read does not block the writers
+        securityCache.remove(xwikiRef);
+        writeDone.countDown();
+
+        reader.join(5000);
+        assertFalse(reader.isAlive());
+
+        // The outdated value read optimistically is not validated and the entry is read again under the read lock
+        assertThat(readValues.size(), is(2));
+        assertThat(readValues.get(0), notNullValue());
+        assertThat(readValues.get(1), nullValue());
+        assertThat(result.get(), nullValue());
+    }
 }
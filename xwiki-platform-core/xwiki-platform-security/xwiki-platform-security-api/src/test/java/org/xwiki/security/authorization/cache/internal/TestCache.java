@@ -22,6 +22,7 @@
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheEntry;
@@ -46,6 +47,7 @@
     private Map<String, T> cache = new HashMap<String, T>();
     private CacheEntryListener<T> listener;
     private String lastInsertedKey;
+    private volatile BiConsumer<String, T> getListener;
 
     class TestCacheEntry implements CacheEntry<T>
     {
@@ -117,7 +119,11 @@ public void set(String key, T value)
     @Override
     public T get(String key)
     {
-        return cache.get(key);
+        T value = cache.get(key);
+        if (getListener != null) {
+            getListener.accept(key, value);
+        }
+        return value;
     }
 
     @Override
@@ -170,4 +176,13 @@ public String getLastInsertedKey()
     {
         return lastInsertedKey;
     }
+
+    /**
+     * @param getListener called with the key and the value each time a value is read from the cache, after it has
+     *            been read, so that the tests can interleave the reads with concurrent modifications
+     */
+    public void setGetListener(BiConsumer<String, T> getListener)
+    {
+        this.getListener = getListener;
+    }
 }
@@ -21,15 +21,20 @@
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
+import org.xwiki.skinx.internal.SxContent;
+import org.xwiki.skinx.internal.SxContentCache;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.web.Utils;
 import com.xpn.xwiki.web.XWikiAction;
 import com.xpn.xwiki.web.XWikiRequest;
 import com.xpn.xwiki.web.XWikiResponse;
@@ -59,8 +64,29 @@ public abstract class AbstractSxAction extends XWikiAction
     /** What http header parameter is used to specify when the cache should expire. */
     private static final String CACHE_EXPIRES_HEADER = "Expires";
 
-    /** The response will be sent to the browser as a byte array in this character set. */
-    private static final String RESPONSE_CHARACTER_SET = "UTF-8";
+    /** What http header parameter is used to specify the entity tag of the content. */
+    private static final String ETAG_HEADER = "ETag";
+
+    /** What http header parameter is used by the browser to send the entity tags of the content it already has. */
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+    /** What http header parameter is used by the browser to send the date of the content it already has. */
+    private static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+
+    /** What http header parameter is used by the browser to list the content codings it supports. */
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+
+    /** What http header parameter is used to specify the content coding of the response. */
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+
+    /** What http header parameter is used to specify the request headers the response depends on. */
+    private static final String VARY_HEADER = "Vary";
+
+    /** The gzip content coding. */
+    private static final String GZIP_ENCODING = "gzip";
+
+    /** The prefix of the weak entity tags. */
+    private static final String WEAK_ETAG_PREFIX = "W/";
 
     /** If the user passes this parameter in the URL, we will look for the script in the jar files. */
     private static final String JAR_RESOURCE_REQUEST_PARAMETER = "resource";
@@ -86,15 +112,49 @@ public void renderExtension(SxSource sxSource, Extension sxType, XWikiContext co
         XWikiRequest request = context.getRequest();
         XWikiResponse response = context.getResponse();
 
-        String extensionContent = sxSource.getContent();
-
         response.setContentType(sxType.getContentType());
 
-        if (sxSource.getLastModifiedDate() > 0) {
-            response.setDateHeader(LAST_MODIFIED_HEADER, sxSource.getLastModifiedDate());
+        long lastModifiedDate = sxSource.getLastModifiedDate();
+        CachePolicy cachePolicy = sxSource.getCachePolicy();
+        setCacheHeaders(cachePolicy, lastModifiedDate, response);
+
+        boolean gzip = acceptsGzip(request);
+        response.setHeader(VARY_HEADER, ACCEPT_ENCODING_HEADER);
+
+        // Look for the content in the server cache, and answer the conditional requests before evaluating the
+        // extension only when the cached content is available, since the modification date of the source is not
+        // enough to know if the browser has the current content
+        String cacheKey = cachePolicy != CachePolicy.FORBID ? getCacheKey(sxSource, sxType, context) : null;
+        SxContent content = cacheKey != null ? getContentCache().get(cacheKey) : null;
+        if (content != null) {
+            if (sendNotModified(content, gzip, lastModifiedDate, request, response)) {
+                return;
+            }
+        } else {
+            String extensionContent = sxSource.getContent();
+            if (BooleanUtils.toBoolean(StringUtils.defaultIfEmpty(
+                request.get(COMPRESS_SCRIPT_REQUEST_PARAMETER), "true"))) {
+                extensionContent = sxType.getCompressor().compress(extensionContent);
+            }
+            content = new SxContent(extensionContent);
+
+            if (cacheKey != null) {
+                getContentCache().set(cacheKey, content);
+            }
+            // Only the entity tag of the evaluated content can tell if the browser has it
+            if (cachePolicy != CachePolicy.FORBID && sendNotModified(content, gzip, 0, request, response)) {
+                return;
+            }
         }
 
-        CachePolicy cachePolicy = sxSource.getCachePolicy();
+        sendContent(content, gzip, response);
+    }
+
+    private void setCacheHeaders(CachePolicy cachePolicy, long lastModifiedDate, XWikiResponse response)
+    {
+        if (lastModifiedDate > 0) {
+            response.setDateHeader(LAST_MODIFIED_HEADER, lastModifiedDate);
+        }
 
         if (cachePolicy != CachePolicy.FORBID) {
             response.setHeader(CACHE_CONTROL_HEADER, "public");
@@ -108,19 +168,116 @@ public void renderExtension(SxSource sxSource, Extension sxType, XWikiContext co
         } else if (cachePolicy == CachePolicy.FORBID) {
             response.setHeader(CACHE_CONTROL_HEADER, "no-cache, no-store, must-revalidate");
         }
+    }
+
+    /**
+     * @return true if a "304 Not Modified" response has been sent because the browser already has the content
+     */
+    private boolean sendNotModified(SxContent content, boolean gzip, long lastModifiedDate, XWikiRequest request,
+        XWikiResponse response)
+    {
+        String eTag = content.getETag(gzip);
+        response.setHeader(ETAG_HEADER, eTag);
+
+        if (isNotModified(request, eTag, lastModifiedDate)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+
+        return false;
+    }
 
-        if (BooleanUtils.toBoolean(StringUtils.defaultIfEmpty(
-            request.get(COMPRESS_SCRIPT_REQUEST_PARAMETER), "true"))) {
-            extensionContent = sxType.getCompressor().compress(extensionContent);
+    private void sendContent(SxContent content, boolean gzip, XWikiResponse response)
+    {
+        byte[] bytes = content.getContent();
+        if (gzip && content.getGzippedContent() != null) {
+            response.setHeader(CONTENT_ENCODING_HEADER, GZIP_ENCODING);
+            bytes = content.getGzippedContent();
         }
 
         try {
-            response.setContentLength(extensionContent.getBytes(RESPONSE_CHARACTER_SET).length);
-            response.getOutputStream().write(extensionContent.getBytes(RESPONSE_CHARACTER_SET));
+            response.setContentLength(bytes.length);
+            response.getOutputStream().write(bytes);
         } catch (IOException ex) {
             getLogger().warn("Failed to send SX content: [{}]", ex.getMessage());
         }
+    }
+
+    /**
+     * @return the key of the content in the server cache, or {@code null} if the content cannot be cached
+     */
+    private String getCacheKey(SxSource sxSource, Extension sxType, XWikiContext context)
+    {
+        String sourceKey = sxSource.getCacheKey();
+        if (sourceKey == null) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(sxType.getClassName());
+        key.append(':').append(sourceKey).append(':').append(context.getLocale());
+
+        // The parameters can change the content (e.g. the language or the minification)
+        Map<String, String[]> parameters = new TreeMap<>(context.getRequest().getParameterMap());
+        for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+            key.append('&').append(parameter.getKey()).append('=');
+            key.append(StringUtils.join(parameter.getValue(), ','));
+        }
+
+        return key.toString();
+    }
 
+    /**
+     * @return true if the browser already has the current content, according to the conditional request headers
+     */
+    private boolean isNotModified(XWikiRequest request, String eTag, long lastModifiedDate)
+    {
+        String ifNoneMatch = request.getHeader(IF_NONE_MATCH_HEADER);
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since
+            if (eTag == null) {
+                return false;
+            }
+            for (String candidate : StringUtils.split(ifNoneMatch, ',')) {
+                String candidateETag = StringUtils.removeStart(candidate.trim(), WEAK_ETAG_PREFIX);
+                if ("*".equals(candidateETag) || eTag.equals(candidateETag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (lastModifiedDate > 0) {
+            try {
+                long ifModifiedSince = request.getDateHeader(IF_MODIFIED_SINCE_HEADER);
+                // The HTTP dates have a precision of one second
+                return ifModifiedSince >= 0 && lastModifiedDate / 1000 <= ifModifiedSince / 1000;
+            } catch (IllegalArgumentException e) {
+                // Invalid date
+            }
+        }
+
+        return false;
+    }
+
+    private boolean acceptsGzip(XWikiRequest request)
+    {
+        String acceptEncoding = request.getHeader(ACCEPT_ENCODING_HEADER);
+        if (acceptEncoding != null) {
+            for (String encoding : StringUtils.split(acceptEncoding, ',')) {
+                String[] parts = StringUtils.split(encoding, ';');
+                if (parts.length > 0 && GZIP_ENCODING.equalsIgnoreCase(parts[0].trim())) {
+                    // Make sure gzip is not explicitly refused
+                    return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private SxContentCache getContentCache()
+    {
+        return Utils.getComponent(SxContentCache.class);
     }
 
     @Override
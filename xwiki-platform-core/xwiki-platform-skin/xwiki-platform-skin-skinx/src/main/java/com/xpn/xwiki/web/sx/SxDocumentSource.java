@@ -64,6 +64,9 @@ public class SxDocumentSource implements SxSource
     /** The name of the property in the script extension object which contains the name of the object. */
     private static final String NAME_PROPERTY_NAME = "name";
 
+    /** The content type of the extensions which are compiled with LESS. */
+    private static final String LESS_CONTENT_TYPE = "LESS";
+
     /** Logging helper. */
     private static final Logger LOGGER = LoggerFactory.getLogger(SxDocumentSource.class);
 
@@ -129,7 +132,7 @@ public String getContent()
                 }
                 String sxContent = sxObj.getLargeStringValue(CONTENT_PROPERTY_NAME);
                 int parse = sxObj.getIntValue(PARSE_CONTENT_PROPERTY_NAME);
-                if ("LESS".equals(sxObj.getStringValue(CONTENT_TYPE_PROPERTY_NAME))) {
+                if (LESS_CONTENT_TYPE.equals(sxObj.getStringValue(CONTENT_TYPE_PROPERTY_NAME))) {
                     LESSCompiler lessCompiler = Utils.getComponent(LESSCompiler.class);
                     LESSResourceReferenceFactory lessResourceReferenceFactory =
                         Utils.getComponent(LESSResourceReferenceFactory.class);
@@ -172,4 +175,29 @@ public long getLastModifiedDate()
         return this.document.getDate().getTime();
     }
 
+    @Override
+    public String getCacheKey()
+    {
+        StringBuilder key = new StringBuilder(this.document.getPrefixedFullName());
+        key.append('/').append(this.document.getRealLocale()).append('/').append(this.document.getVersion());
+
+        List<BaseObject> objects = this.document.getObjects(this.extension.getClassName());
+        if (objects != null) {
+            for (BaseObject sxObj : objects) {
+                if (sxObj == null) {
+                    continue;
+                }
+                // The content evaluated with Velocity can depend on anything (the current user, the color theme, the
+                // preferences, etc.) and the LESS compiler has its own cache, which knows when the skins and color
+                // themes change
+                if (sxObj.getIntValue(PARSE_CONTENT_PROPERTY_NAME) == 1
+                    || LESS_CONTENT_TYPE.equals(sxObj.getStringValue(CONTENT_TYPE_PROPERTY_NAME))) {
+                    return null;
+                }
+            }
+        }
+
+        return key.toString();
+    }
+
 }
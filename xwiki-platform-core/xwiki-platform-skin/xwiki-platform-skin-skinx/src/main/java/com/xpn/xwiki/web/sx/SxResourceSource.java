@@ -21,6 +21,7 @@
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 
 import org.apache.commons.io.IOUtils;
 
@@ -75,4 +76,13 @@ public long getLastModifiedDate()
         return 0;
     }
 
+    @Override
+    public String getCacheKey()
+    {
+        // The location of the resource identifies the extension (and its version) providing it, whatever the
+        // namespace it's installed in
+        URL url = Thread.currentThread().getContextClassLoader().getResource(this.resourceName);
+
+        return url != null ? url.toExternalForm() : null;
+    }
 }
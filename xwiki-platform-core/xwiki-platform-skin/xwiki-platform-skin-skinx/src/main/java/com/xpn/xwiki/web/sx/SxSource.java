@@ -68,4 +68,15 @@
      * @return the cache policy associated with this extension source.
      */
     CachePolicy getCachePolicy();
+
+    /**
+     * @return a key identifying the content of the extension source (e.g. the reference and the version of the
+     *         document holding the extension), used to keep the content in the server cache, or {@code null} if the
+     *         content cannot be cached on the server side
+     * @since 9.10RC1
+     */
+    default String getCacheKey()
+    {
+        return null;
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.skinx.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * The content of a skin extension, as sent to the browsers: the (compressed) content, its gzipped variant and the
+ * strong entity tags identifying them.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class SxContent
+{
+    private static final String GZIP_SUFFIX = "-gzip";
+
+    private final byte[] content;
+
+    private final byte[] gzippedContent;
+
+    private final String hash;
+
+    /**
+     * @param content the content to send
+     */
+    public SxContent(String content)
+    {
+        this.content = content.getBytes(StandardCharsets.UTF_8);
+        this.hash = DigestUtils.sha256Hex(this.content);
+        this.gzippedContent = gzip(this.content);
+    }
+
+    private static byte[] gzip(byte[] content)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 2);
+        try (GZIPOutputStream gzipOutput = new GZIPOutputStream(output)) {
+            gzipOutput.write(content);
+        } catch (IOException e) {
+            // Cannot happen when writing in memory, and the plain content can still be sent
+            return null;
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * @return the content, encoded in UTF-8
+     */
+    public byte[] getContent()
+    {
+        return this.content;
+    }
+
+    /**
+     * @return the gzipped content, or {@code null} if it's not available
+     */
+    public byte[] getGzippedContent()
+    {
+        return this.gzippedContent;
+    }
+
+    /**
+     * @param gzipped true for the entity tag of the gzipped content
+     * @return the strong entity tag of the content, ready to be used as {@code ETag} header
+     */
+    public String getETag(boolean gzipped)
+    {
+        // A strong entity tag has to be different for each content coding
+        return '"' + this.hash + (gzipped ? GZIP_SUFFIX : "") + '"';
+    }
+}
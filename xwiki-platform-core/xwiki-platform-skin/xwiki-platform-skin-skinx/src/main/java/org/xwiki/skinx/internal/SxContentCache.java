@@ -0,0 +1,101 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.skinx.internal;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+
+/**
+ * Keep in memory the content of the skin extensions sent to the browsers, so that the extensions are not evaluated and
+ * compressed again for each request. The keys are expected to contain everything the content depends on (e.g. the
+ * version of the document holding the extension and the request parameters).
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+@Component(roles = SxContentCache.class)
+@Singleton
+public class SxContentCache implements Initializable, Disposable
+{
+    private static final int CAPACITY = 500;
+
+    /**
+     * The content of some extensions depends on other documents (e.g. when it's evaluated with Velocity), so it's not
+     * kept more than one day.
+     */
+    private static final int LIFESPAN = 24 * 3600;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    private Cache<SxContent> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        CacheConfiguration configuration = new CacheConfiguration();
+        configuration.setConfigurationId("skinx.content");
+        LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+        lru.setMaxEntries(CAPACITY);
+        lru.setLifespan(LIFESPAN);
+        configuration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+        try {
+            this.cache = this.cacheManager.createNewLocalCache(configuration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to initialize the skin extensions content cache", e);
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.cache.dispose();
+    }
+
+    /**
+     * @param key the key identifying the content
+     * @return the cached content, or {@code null} if it's not in the cache
+     */
+    public SxContent get(String key)
+    {
+        return this.cache.get(key);
+    }
+
+    /**
+     * @param key the key identifying the content
+     * @param content the content to cache
+     */
+    public void set(String key, SxContent content)
+    {
+        this.cache.set(key, content);
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.web.sx;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.xwiki.skinx.internal.SxContent;
+import org.xwiki.skinx.internal.SxContentCache;
+import org.xwiki.test.mockito.MockitoComponentManagerRule;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.web.Utils;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xpn.xwiki.web.XWikiResponse;
+import com.xpn.xwiki.web.sx.SxSource.CachePolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the conditional requests handling of {@link AbstractSxAction}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class AbstractSxActionTest
+{
+    private static final String CONTENT = "content";
+
+    private static final long LAST_MODIFIED_DATE = 1500000000000L;
+
+    private static final String IF_NONE_MATCH = "If-None-Match";
+
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    @Rule
+    public MockitoComponentManagerRule componentManager = new MockitoComponentManagerRule();
+
+    private AbstractSxAction action = new AbstractSxAction()
+    {
+        @Override
+        protected Logger getLogger()
+        {
+            return mock(Logger.class);
+        }
+
+        @Override
+        public Extension getExtensionType()
+        {
+            return AbstractSxActionTest.this.extension;
+        }
+    };
+
+    private Map<String, SxContent> cachedContents = new HashMap<>();
+
+    private Extension extension;
+
+    private SxSource source;
+
+    private XWikiContext context;
+
+    private XWikiRequest request;
+
+    private XWikiResponse response;
+
+    @Before
+    public void configure() throws Exception
+    {
+        Utils.setComponentManager(this.componentManager);
+
+        SxContentCache contentCache = this.componentManager.registerMockComponent(SxContentCache.class);
+        when(contentCache.get(anyString())).then(invocation -> this.cachedContents.get(invocation.getArgument(0)));
+        doAnswer(invocation -> this.cachedContents.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(contentCache).set(anyString(), any(SxContent.class));
+
+        this.extension = mock(Extension.class);
+        when(this.extension.getClassName()).thenReturn("XWiki.JavaScriptExtension");
+        when(this.extension.getContentType()).thenReturn("text/javascript");
+
+        this.source = mock(SxSource.class);
+        when(this.source.getContent()).thenReturn(CONTENT);
+        when(this.source.getCachePolicy()).thenReturn(CachePolicy.DEFAULT);
+        when(this.source.getLastModifiedDate()).thenReturn(LAST_MODIFIED_DATE);
+        when(this.source.getCacheKey()).thenReturn("Space.Page/1.1");
+
+        this.request = mock(XWikiRequest.class);
+        // Send the content as is
+        when(this.request.get("minify")).thenReturn("false");
+        when(this.request.getDateHeader(IF_MODIFIED_SINCE)).thenReturn(-1L);
+
+        this.context = mock(XWikiContext.class);
+        when(this.context.getRequest()).thenReturn(this.request);
+        newResponse();
+    }
+
+    /**
+     * Use a new response, as for a new request of the browser.
+     */
+    private void newResponse() throws Exception
+    {
+        this.response = mock(XWikiResponse.class);
+        when(this.response.getOutputStream()).thenReturn(mock(ServletOutputStream.class));
+        when(this.context.getResponse()).thenReturn(this.response);
+    }
+
+    private String getETag()
+    {
+        return new SxContent(CONTENT).getETag(false);
+    }
+
+    private void assertContentSent() throws Exception
+    {
+        verify(this.response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(this.response.getOutputStream()).write(new SxContent(CONTENT).getContent());
+    }
+
+    private void assertNotModifiedSent() throws Exception
+    {
+        verify(this.response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(this.response.getOutputStream(), never()).write(any(byte[].class));
+    }
+
+    @Test
+    public void renderAndCache() throws Exception
+    {
+        this.action.renderExtension(this.source, this.extension, this.context);
+
+        assertContentSent();
+        verify(this.response).setHeader("ETag", getETag());
+        verify(this.response).setDateHeader("Last-Modified", LAST_MODIFIED_DATE);
+        assertEquals(1, this.cachedContents.size());
+    }
+
+    @Test
+    public void notModifiedSinceWhenTheContentIsNotCached() throws Exception
+    {
+        // The browser has a content as recent as the source, but the server cache is empty (e.g. after a restart) so
+        // the extension has to be evaluated before answering
+        when(this.request.getDateHeader(IF_MODIFIED_SINCE)).thenReturn(LAST_MODIFIED_DATE);
+
+        this.action.renderExtension(this.source, this.extension, this.context);
+
+        verify(this.source).getContent();
+        // The modification date of the source is not enough to know if the evaluated content changed
+        assertContentSent();
+        assertEquals(1, this.cachedContents.size());
+    }
+
+    @Test
+    public void notModifiedSinceWhenTheContentIsCached() throws Exception
+    {
+        this.action.renderExtension(this.source, this.extension, this.context);
+        verify(this.source).getContent();
+
+        when(this.request.getDateHeader(IF_MODIFIED_SINCE)).thenReturn(LAST_MODIFIED_DATE);
+        newResponse();
+
+        this.action.renderExtension(this.source, this.extension, this.context);
+
+        // Not evaluated again
+        verify(this.source).getContent();
+        assertNotModifiedSent();
+    }
+
+    @Test
+    public void noneMatchWhenTheContentIsNotCached() throws Exception
+    {
+        when(this.request.getHeader(IF_NONE_MATCH)).thenReturn(getETag());
+
+        this.action.renderExtension(this.source, this.extension, this.context);
+
+        // Evaluated and cached before answering
+        verify(this.source).getContent();
+        assertEquals(1, this.cachedContents.size());
+        assertNotModifiedSent();
+    }
+
+    @Test
+    public void noneMatchWhenTheContentIsCached() throws Exception
+    {
+        this.action.renderExtension(this.source, this.extension, this.context);
+
+        when(this.request.getHeader(IF_NONE_MATCH)).thenReturn("\"other\", W/" + getETag());
+        newResponse();
+
+        this.action.renderExtension(this.source, this.extension, this.context);
+
+        verify(this.source).getContent();
+        assertNotModifiedSent();
+    }
+
+    @Test
+    public void noneMatchWhenTheContentChanged() throws Exception
+    {
+        when(this.request.getHeader(IF_NONE_MATCH)).thenReturn("\"other\"");
+        // If-None-Match takes precedence over If-Modified-Since
+        when(this.request.getDateHeader(IF_MODIFIED_SINCE)).thenReturn(LAST_MODIFIED_DATE);
+
+        this.action.renderExtension(this.source, this.extension, this.context);
+
+        assertContentSent();
+    }
+
+    @Test
+    public void conditionalRequestsWhenTheContentCannotBeCached() throws Exception
+    {
+        // e.g. the content is evaluated with Velocity
+        when(this.source.getCacheKey()).thenReturn(null);
+        when(this.request.getDateHeader(IF_MODIFIED_SINCE)).thenReturn(LAST_MODIFIED_DATE);
+
+        this.action.renderExtension(this.source, this.extension, this.context);
+
+        assertContentSent();
+        assertTrue(this.cachedContents.isEmpty());
+
+        // Only the entity tag of the evaluated content is trusted
+        when(this.request.getHeader(IF_NONE_MATCH)).thenReturn(getETag());
+        newResponse();
+
+        this.action.renderExtension(this.source, this.extension, this.context);
+
+        assertNotModifiedSent();
+        assertTrue(this.cachedContents.isEmpty());
+    }
+
+    @Test
+    public void conditionalRequestsWhenCachingIsForbidden() throws Exception
+    {
+        when(this.source.getCachePolicy()).thenReturn(CachePolicy.FORBID);
+        when(this.request.getHeader(IF_NONE_MATCH)).thenReturn(getETag());
+
+        this.action.renderExtension(this.source, this.extension, this.context);
+
+        assertContentSent();
+        assertTrue(this.cachedContents.isEmpty());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.skinx.internal;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link SxContentCache}.
+ *
+ * @version $Id$
+ * @since 9.10RC1
+ */
+public class SxContentCacheTest
+{
+    @Rule
+    public MockitoComponentMockingRule<SxContentCache> mocker =
+        new MockitoComponentMockingRule<>(SxContentCache.class);
+
+    private Cache<SxContent> cache;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void configure() throws Exception
+    {
+        this.cache = mock(Cache.class);
+
+        CacheManager cacheManager = this.mocker.getInstance(CacheManager.class);
+        when(cacheManager.<SxContent>createNewLocalCache(any(CacheConfiguration.class))).thenReturn(this.cache);
+    }
+
+    @Test
+    public void initialize() throws Exception
+    {
+        this.mocker.getComponentUnderTest();
+
+        ArgumentCaptor<CacheConfiguration> configurationCaptor = ArgumentCaptor.forClass(CacheConfiguration.class);
+        verify(this.mocker.<CacheManager>getInstance(CacheManager.class))
+            .createNewLocalCache(configurationCaptor.capture());
+
+        CacheConfiguration configuration = configurationCaptor.getValue();
+        assertEquals("skinx.content", configuration.getConfigurationId());
+        LRUEvictionConfiguration lru =
+            (LRUEvictionConfiguration) configuration.get(LRUEvictionConfiguration.CONFIGURATIONID);
+        assertEquals(500, lru.getMaxEntries());
+        assertEquals(24 * 3600, lru.getLifespan());
+    }
+
+    @Test
+    public void initializeWhenTheCacheCannotBeCreated() throws Exception
+    {
+        CacheException error = new CacheException("error");
+        CacheManager cacheManager = this.mocker.getInstance(CacheManager.class);
+        when(cacheManager.createNewLocalCache(any(CacheConfiguration.class))).thenThrow(error);
+
+        try {
+            this.mocker.getComponentUnderTest();
+            fail("The initialization should have failed");
+        } catch (ComponentLookupException e) {
+            assertSame(error, ExceptionUtils.getRootCause(e));
+        }
+    }
+
+    @Test
+    public void getAndSet() throws Exception
+    {
+        SxContent content = new SxContent("content");
+        when(this.cache.get("key")).thenReturn(content);
+
+        this.mocker.getComponentUnderTest().set("key", content);
+
+        verify(this.cache).set("key", content);
+        assertSame(content, this.mocker.getComponentUnderTest().get("key"));
+    }
+
+    @Test
+    public void dispose() throws Exception
+    {
+        this.mocker.getComponentUnderTest().dispose();
+
+        verify(this.cache).dispose();
+    }
+
+    @Test
+    public void contentETags()
+    {
+        SxContent content = new SxContent("content");
+
+        assertNotEquals(content.getETag(false), content.getETag(true));
+        assertEquals(content.getETag(false), new SxContent("content").getETag(false));
+        assertNotEquals(content.getETag(false), new SxContent("other").getETag(false));
+    }
+}
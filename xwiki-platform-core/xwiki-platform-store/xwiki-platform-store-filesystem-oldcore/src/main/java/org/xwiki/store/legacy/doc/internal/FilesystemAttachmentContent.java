@@ -23,6 +23,8 @@
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.AutoCloseInputStream;
@@ -108,6 +110,16 @@ public InputStream getContentInputStream()
         }
     }
 
+    @Override
+    public FileChannel getContentFileChannel() throws IOException
+    {
+        if (this.getFileItem() != null) {
+            return super.getContentFileChannel();
+        }
+
+        return FileChannel.open(this.storageFile.toPath(), StandardOpenOption.READ);
+    }
+
     @Override
     public long getLongSize()
     {
@@ -299,6 +299,15 @@ public void setAttachment(final XWikiAttachment attachment)
         this.attachment = attachment;
     }
 
+    /**
+     * @return the revisions of the attachment in this archive, ordered by version number ascending
+     * @since 9.10RC1
+     */
+    public List<XWikiAttachment> getRevisions()
+    {
+        return Collections.unmodifiableList(this.revisions);
+    }
+
     @Override
     public Version[] getVersions()
     {
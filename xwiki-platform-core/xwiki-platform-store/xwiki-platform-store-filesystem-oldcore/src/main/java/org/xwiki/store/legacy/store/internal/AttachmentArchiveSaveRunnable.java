@@ -35,6 +35,7 @@
 import org.xwiki.store.StreamProvider;
 import org.xwiki.store.filesystem.internal.AttachmentFileProvider;
 import org.xwiki.store.filesystem.internal.FilesystemStoreTools;
+import org.xwiki.store.legacy.doc.internal.ListAttachmentArchive;
 import org.xwiki.store.serialization.SerializationStreamProvider;
 import org.xwiki.store.serialization.Serializer;
 
@@ -76,15 +77,22 @@ public AttachmentArchiveSaveRunnable(final XWikiAttachmentArchive archive,
             archive.updateArchive(context);
         }
 
-        final Version[] versions = archive.getVersions();
-        final List<XWikiAttachment> attachmentVersions = new ArrayList<XWikiAttachment>(versions.length);
+        final List<XWikiAttachment> attachmentVersions;
+        if (archive instanceof ListAttachmentArchive) {
+            // The revisions don't need to be cloned since only their metadata and the content of the new ones are
+            // written.
+            attachmentVersions = new ArrayList<XWikiAttachment>(((ListAttachmentArchive) archive).getRevisions());
+        } else {
+            final Version[] versions = archive.getVersions();
+            attachmentVersions = new ArrayList<XWikiAttachment>(versions.length);
+            for (int i = 0; i < versions.length; i++) {
+                attachmentVersions.add(archive.getRevision(archive.getAttachment(), versions[i].toString(), context));
+            }
+        }
 
-        // Add the content files which need updating and add the attachments to the list.
-        for (int i = 0; i < versions.length; i++) {
-            final String versionName = versions[i].toString();
-            final XWikiAttachment attachVer =
-                archive.getRevision(archive.getAttachment(), versionName, context);
-            attachmentVersions.add(attachVer);
+        // Add the content files which need updating.
+        for (XWikiAttachment attachVer : attachmentVersions) {
+            final String versionName = attachVer.getVersion();
 
             // If the content is not dirty and the file was already saved then we will not update.
             if (attachVer.isContentDirty()
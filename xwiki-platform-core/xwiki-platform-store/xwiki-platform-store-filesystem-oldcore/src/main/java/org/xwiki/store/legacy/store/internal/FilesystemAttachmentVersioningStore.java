@@ -117,22 +117,11 @@ XWikiAttachmentArchive loadArchive(final XWikiAttachment attachment, final Attac
             return new ListAttachmentArchive(attachment);
         }
 
-        final ReadWriteLock lock = this.fileTools.getLockForFile(metaFile);
-        final List<XWikiAttachment> attachList;
-        lock.readLock().lock();
-        try {
-            final InputStream is = new FileInputStream(metaFile);
-            attachList = this.metaSerializer.parse(is);
-            is.close();
-        } finally {
-            lock.readLock().unlock();
-        }
+        final List<XWikiAttachment> attachList = loadMetadata(metaFile);
 
         // Get the content file and lock for each revision.
         for (XWikiAttachment attach : attachList) {
-            final File contentFile = provider.getAttachmentVersionContentFile(attach.getVersion());
-            attach.setAttachment_content(new FilesystemAttachmentContent(contentFile, attach));
-            attach.setContentStore(FileSystemStoreUtils.HINT);
+            setContent(attach, provider);
             // Pass the document since it will be lost in the serialize/deserialize.
             attach.setDoc(attachment.getDoc());
         }
@@ -142,6 +131,82 @@ XWikiAttachmentArchive loadArchive(final XWikiAttachment attachment, final Attac
         return out;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only the metadata of the revisions is read, the content of the returned revision is read from its own file when
+     * requested.
+     * </p>
+     *
+     * @see AttachmentVersioningStore#loadArchiveRevision(XWikiAttachment, String, XWikiContext)
+     */
+    @Override
+    public XWikiAttachment loadArchiveRevision(final XWikiAttachment attachment, final String version,
+        final XWikiContext context) throws XWikiException
+    {
+        if (version == null) {
+            return null;
+        }
+
+        try {
+            final AttachmentFileProvider provider =
+                this.fileTools.getAttachmentFileProvider(attachment.getReference());
+            final File metaFile = provider.getAttachmentVersioningMetaFile();
+            if (!metaFile.exists()) {
+                return null;
+            }
+
+            for (XWikiAttachment revision : loadMetadata(metaFile)) {
+                if (version.equals(revision.getVersion())) {
+                    setContent(revision, provider);
+                    revision.setDoc(attachment.getDoc(), false);
+
+                    return revision;
+                }
+            }
+
+            return null;
+        } catch (IOException e) {
+            final Object[] args = { version, attachment.getFilename(), UNKNOWN_NAME };
+            if (attachment.getDoc() != null) {
+                args[2] = attachment.getDoc().getFullName();
+            }
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE, XWikiException.ERROR_XWIKI_UNKNOWN,
+                "Exception while loading revision {0} of attachment {1} for document {2}", e, args);
+        }
+    }
+
+    /**
+     * Parse the metadata of all the revisions of an attachment.
+     *
+     * @param metaFile the file containing the metadata
+     * @return the revisions of the attachment, without their content
+     * @throws IOException if there is a failure while parsing the metadata
+     */
+    private List<XWikiAttachment> loadMetadata(final File metaFile) throws IOException
+    {
+        final ReadWriteLock lock = this.fileTools.getLockForFile(metaFile);
+        lock.readLock().lock();
+        try (InputStream is = new FileInputStream(metaFile)) {
+            return this.metaSerializer.parse(is);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Associate a revision with the file holding its content.
+     *
+     * @param revision the attachment revision
+     * @param provider a means of gaining access to the location where the revisions are stored
+     */
+    private void setContent(final XWikiAttachment revision, final AttachmentFileProvider provider)
+    {
+        final File contentFile = provider.getAttachmentVersionContentFile(revision.getVersion());
+        revision.setAttachment_content(new FilesystemAttachmentContent(contentFile, revision));
+        revision.setContentStore(FileSystemStoreUtils.HINT);
+    }
+
     /**
      * {@inheritDoc}
      * <p>
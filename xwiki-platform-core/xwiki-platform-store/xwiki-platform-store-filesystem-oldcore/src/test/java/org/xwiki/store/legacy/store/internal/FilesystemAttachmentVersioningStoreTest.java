@@ -179,6 +179,22 @@ public void loadArchiveTest() throws Exception
         Assert.assertSame(version3.getDoc(), this.archive.getAttachment().getDoc());
     }
 
+    @Test
+    public void loadArchiveRevisionTest() throws Exception
+    {
+        this.versionStore.saveArchive(this.archive, null, false);
+
+        final XWikiAttachment version2 =
+            this.versionStore.loadArchiveRevision(this.archive.getAttachment(), "1.2", null);
+
+        Assert.assertEquals("1.2", version2.getVersion());
+        Assert.assertEquals("attachment.txt", version2.getFilename());
+        Assert.assertEquals("I am version 1.2", IOUtils.toString(version2.getContentInputStream(null)));
+        Assert.assertSame(this.archive.getAttachment().getDoc(), version2.getDoc());
+
+        Assert.assertNull(this.versionStore.loadArchiveRevision(this.archive.getAttachment(), "1.4", null));
+    }
+
     @Test
     public void deleteArchiveTest() throws Exception
     {